@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.benchmarks;
+
+import java.util.Random;
+
+import top.gcszhn.jvision.chart.CircularHistogram;
+import top.gcszhn.jvision.chart.RingDiagram;
+
+/**
+ * 基准测试使用的合成数据，固定随机种子以保证各次运行输入一致
+ */
+final class BenchmarkData {
+    private static final String[] COLORS = { "#800080", "#FBBC05", "#4285F4", "#EA4335", "#BDB76B", "#6B8E23" };
+
+    private BenchmarkData() {}
+
+    /**
+     * 环形统计图数据，每行依次为标签、数值与颜色
+     * 
+     * @param rows 行数
+     * @return CSV文本
+     */
+    static String ringCsv(int rows) {
+        Random random = new Random(rows);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            builder.append("item").append(i).append(',')
+                    .append(String.format("%.4f", 0.9 + 0.1 * random.nextDouble())).append(',')
+                    .append(COLORS[i % COLORS.length]).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 环形直方图数据，含标题行与四个标准列
+     * 
+     * @param rows 数据行数
+     * @return CSV文本
+     */
+    static String histogramCsv(int rows) {
+        Random random = new Random(rows);
+        StringBuilder builder = new StringBuilder("Criteria,Ca,Cb,Cc,Cd\n");
+        for (int i = 0; i < rows; i++) {
+            builder.append("M").append(i);
+            for (int j = 0; j < 4; j++) {
+                builder.append(',').append(10 * random.nextInt(5));
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 与README示例相同配置的环形统计图
+     * 
+     * @param canvas 画布边长
+     * @return 未加载数据的图表
+     */
+    static RingDiagram ringDiagram(int canvas) {
+        float scale = canvas / 600f;
+        return new RingDiagram("Precision", canvas, canvas, 0.1f,
+                new float[] { 80 * scale, 200 * scale }, new float[] { 0.9f, 1f },
+                90, -336, 0.1f / 15, true);
+    }
+
+    static CircularHistogram circularHistogram() {
+        return new CircularHistogram();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 按sample目录中的CSV格式生成合成数据。环形统计图每行为标签、数值与颜色；
+ * 环形直方图首行为标题，其后每行为标签与若干数值列。数据逐行写出，
+ * 可生成千万行规模的文件。
+ */
+public class DatasetGenerator {
+    private static final String[] COLORS = { "#800080", "#FBBC05", "#4285F4", "#EA4335", "#BDB76B", "#6B8E23" };
+    private static final char[] LABEL_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz+".toCharArray();
+
+    /**
+     * 数值分布
+     */
+    public enum Distribution {
+        /** [0, max)均匀分布 */
+        UNIFORM,
+        /** 均值max/2、标准差max/6的正态分布，截断至[0, max] */
+        NORMAL,
+        /** 指数为1的长尾分布，少量行取值接近max */
+        ZIPF,
+        /** 全部取max/2，排序时触发大量相等比较 */
+        CONSTANT
+    }
+
+    /** 数值列数，仅用于环形直方图 */
+    private @Getter @Setter int columns = 4;
+    /** 标签字符数 */
+    private @Getter @Setter int labelLength = 12;
+    private @Getter @Setter Distribution distribution = Distribution.UNIFORM;
+    /** 数值上限 */
+    private @Getter @Setter double maxValue = 40;
+    private @Getter @Setter long seed = 20221019L;
+
+    /**
+     * 生成环形统计图数据
+     * 
+     * @param out  输出，不会被关闭
+     * @param rows 行数
+     * @throws IOException 写出异常
+     */
+    public void writeRingDiagram(Writer out, long rows) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder line = new StringBuilder();
+        for (long i = 0; i < rows; i++) {
+            line.setLength(0);
+            appendLabel(line, random, i);
+            line.append(',').append(format(0.9 + 0.1 * next(random) / maxValue))
+                    .append(',').append(COLORS[(int) (i % COLORS.length)]).append('\n');
+            out.append(line);
+        }
+    }
+
+    /**
+     * 生成环形直方图数据，含标题行
+     * 
+     * @param out  输出，不会被关闭
+     * @param rows 数据行数
+     * @throws IOException 写出异常
+     */
+    public void writeCircularHistogram(Writer out, long rows) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder line = new StringBuilder("Criteria");
+        for (int j = 0; j < columns; j++) {
+            line.append(",Criterion ").append(j);
+        }
+        out.append(line).append('\n');
+        for (long i = 0; i < rows; i++) {
+            line.setLength(0);
+            appendLabel(line, random, i);
+            for (int j = 0; j < columns; j++) {
+                line.append(',').append(format(next(random)));
+            }
+            out.append(line.append('\n'));
+        }
+    }
+
+    /**
+     * 生成数据文件
+     * 
+     * @param chart 图表类型，见{@link top.gcszhn.jvision.chart.ChartSpec}
+     * @param rows  数据行数
+     * @param file  输出文件
+     * @throws IOException 写出异常
+     */
+    public void write(String chart, long rows, File file) throws IOException {
+        try (Writer out = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            if ("ring".equals(chart)) {
+                writeRingDiagram(out, rows);
+            } else {
+                writeCircularHistogram(out, rows);
+            }
+        }
+    }
+
+    /**
+     * 标签以行号结尾保证唯一，其余位置随机填充
+     */
+    private void appendLabel(StringBuilder line, Random random, long index) {
+        String suffix = Long.toString(index);
+        for (int k = suffix.length(); k < labelLength; k++) {
+            line.append(LABEL_CHARS[random.nextInt(LABEL_CHARS.length)]);
+        }
+        line.append(suffix);
+    }
+
+    private double next(Random random) {
+        switch (distribution) {
+            case NORMAL:
+                return Math.min(maxValue, Math.max(0, maxValue / 2 + random.nextGaussian() * maxValue / 6));
+            case ZIPF:
+                return maxValue / (1 + random.nextInt(1000));
+            case CONSTANT:
+                return maxValue / 2;
+            default:
+                return random.nextDouble() * maxValue;
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.benchmarks;
+
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.chart.CircularHistogram;
+import top.gcszhn.jvision.chart.RingDiagram;
+
+/**
+ * 各输出格式的端到端绘制。环形直方图的jpg画布按数据量自适应，可达上万像素，
+ * 因此仅比较其固定画布的png、pdf与eps输出
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class DrawBenchmark {
+    @State(Scope.Thread)
+    public static class Ring {
+        @Param({ "png", "jpg", "pdf", "eps" })
+        private String format;
+        @Param({ "5", "50" })
+        private int rows;
+        @Param({ "600", "2400" })
+        private int canvas;
+        private RingDiagram chart;
+
+        @Setup
+        public void setup() throws JvisionException {
+            chart = BenchmarkData.ringDiagram(canvas);
+            chart.loadData(new StringReader(BenchmarkData.ringCsv(rows)));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Histogram {
+        @Param({ "png", "pdf", "eps" })
+        private String format;
+        @Param({ "50", "500" })
+        private int rows;
+        private CircularHistogram chart;
+
+        @Setup
+        public void setup() throws JvisionException {
+            chart = BenchmarkData.circularHistogram();
+            chart.loadData(new StringReader(BenchmarkData.histogramCsv(rows)), true, null, true);
+        }
+    }
+
+    @Benchmark
+    public void ringDiagram(Ring state) throws JvisionException {
+        state.chart.draw(OutputStream.nullOutputStream(), state.format);
+    }
+
+    @Benchmark
+    public void circularHistogram(Histogram state) throws JvisionException {
+        state.chart.draw(OutputStream.nullOutputStream(), state.format);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.sourceforge.jlibeps.epsgraphics.EpsGraphics2D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import top.gcszhn.jvision.tools.ImageTool;
+
+/**
+ * 图像编码，输出到丢弃字节的流以排除磁盘影响
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class EncodeBenchmark {
+    @Param({ "100", "1000" })
+    private int rows;
+    @Param({ "600", "2400" })
+    private int canvas;
+    private BufferedImage rgb;
+    private BufferedImage argb;
+
+    @Setup
+    public void setup() {
+        argb = new BufferedImage(canvas, canvas, BufferedImage.TYPE_INT_ARGB);
+        rgb = new BufferedImage(canvas, canvas, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = argb.createGraphics();
+        paint(graphics, rows, canvas);
+        graphics.dispose();
+        graphics = rgb.createGraphics();
+        paint(graphics, rows, canvas);
+        graphics.dispose();
+    }
+
+    /**
+     * 绘制rows个随机色块，使编码器面对接近真实图表的内容
+     */
+    private static void paint(Graphics2D graphics, int rows, int canvas) {
+        Random random = new Random(rows);
+        graphics.setBackground(Color.WHITE);
+        graphics.clearRect(0, 0, canvas, canvas);
+        for (int i = 0; i < rows; i++) {
+            graphics.setColor(new Color(random.nextInt(0xFFFFFF)));
+            graphics.fillRect(random.nextInt(canvas), random.nextInt(canvas), canvas / 20 + 1, canvas / 20 + 1);
+        }
+    }
+
+    @Benchmark
+    public void saveAsPNG() throws IOException {
+        ImageTool.saveAsPNG(argb, OutputStream.nullOutputStream(), 300);
+    }
+
+    @Benchmark
+    public void saveAsJPEG() throws IOException {
+        ImageTool.saveAsJPEG(rgb, OutputStream.nullOutputStream(), 300);
+    }
+
+    @Benchmark
+    public void saveAsEPS() throws IOException {
+        EpsGraphics2D eps = new EpsGraphics2D();
+        paint(eps, rows, canvas);
+        ImageTool.saveAsEPS(eps, OutputStream.nullOutputStream());
+    }
+}
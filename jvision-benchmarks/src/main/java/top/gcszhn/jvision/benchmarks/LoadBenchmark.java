@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.chart.CircularHistogram;
+import top.gcszhn.jvision.chart.RingDiagram;
+import top.gcszhn.jvision.tools.BasicTool;
+
+/**
+ * CSV解析与数据加载
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class LoadBenchmark {
+    @Param({ "100", "1000", "10000" })
+    private int rows;
+    private String ringCsv;
+    private String histogramCsv;
+    private RingDiagram ringDiagram;
+    private CircularHistogram histogram;
+
+    @Setup
+    public void setup() {
+        ringCsv = BenchmarkData.ringCsv(rows);
+        histogramCsv = BenchmarkData.histogramCsv(rows);
+        ringDiagram = BenchmarkData.ringDiagram(600);
+        histogram = BenchmarkData.circularHistogram();
+    }
+
+    @Benchmark
+    public void readCSV(Blackhole blackhole) throws IOException {
+        try (CSVParser parser = BasicTool.readCSV(new StringReader(histogramCsv))) {
+            for (CSVRecord record : parser) {
+                blackhole.consume(record.get(1));
+            }
+        }
+    }
+
+    @Benchmark
+    public RingDiagram loadRingDiagram() throws JvisionException {
+        ringDiagram.loadData(new StringReader(ringCsv));
+        return ringDiagram;
+    }
+
+    @Benchmark
+    public CircularHistogram loadCircularHistogram() throws JvisionException {
+        histogram.loadData(new StringReader(histogramCsv), true, null, true);
+        return histogram;
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.chart.CircularHistogram;
+import top.gcszhn.jvision.chart.JChart;
+
+/**
+ * 规模压测：按数据行数、输出格式与并发度的组合端到端加载并绘制图表，
+ * 报告吞吐、p50/p99延迟、堆与RSS峰值及输出大小。单个组合失败（如内存溢出）
+ * 会记录在报告中，不影响其余组合。
+ * 
+ * <pre class="code">
+ * java -cp benchmarks.jar top.gcszhn.jvision.benchmarks.LoadTest \
+ *     --charts ring,histogram --rows 1000,100000,10000000 --formats png,pdf \
+ *     --concurrency 1,4,16 --requests 32 --report target/loadtest.csv
+ * </pre>
+ */
+public class LoadTest {
+    private final List<String> charts;
+    private final List<Long> rowCounts;
+    private final List<String> formats;
+    private final List<Integer> concurrencies;
+    private final int requests;
+    /** 环形直方图截取的行数，其画布随行数增长 */
+    private final int cutoff;
+    private final DatasetGenerator generator = new DatasetGenerator();
+    private final File workDir;
+
+    public LoadTest(Map<String, String> options) {
+        charts = Arrays.asList(options.getOrDefault("charts", "ring,histogram").split(","));
+        rowCounts = new ArrayList<>();
+        for (String rows : options.getOrDefault("rows", "1000,10000,100000").split(",")) {
+            rowCounts.add(Long.parseLong(rows));
+        }
+        formats = Arrays.asList(options.getOrDefault("formats", "png,jpg,pdf,eps").split(","));
+        concurrencies = new ArrayList<>();
+        for (String c : options.getOrDefault("concurrency", "1,2,4,8").split(",")) {
+            concurrencies.add(Integer.parseInt(c));
+        }
+        requests = Integer.parseInt(options.getOrDefault("requests", "16"));
+        cutoff = Integer.parseInt(options.getOrDefault("cutoff", "100"));
+        generator.setColumns(Integer.parseInt(options.getOrDefault("columns", "4")));
+        generator.setLabelLength(Integer.parseInt(options.getOrDefault("labelLength", "12")));
+        generator.setDistribution(DatasetGenerator.Distribution.valueOf(
+                options.getOrDefault("distribution", "uniform").toUpperCase(Locale.ROOT)));
+        workDir = new File(options.getOrDefault("workDir", "target/loadtest"));
+    }
+
+    /**
+     * 执行全部组合
+     * 
+     * @param report 报告输出，CSV格式
+     * @throws IOException 数据生成异常
+     */
+    public void run(PrintStream report) throws IOException, InterruptedException {
+        if (!workDir.isDirectory() && !workDir.mkdirs())
+            throw new IOException("Can't create " + workDir.getAbsolutePath());
+        report.println("chart,rows,format,concurrency,requests,failed,throughput_per_s,p50_ms,p99_ms,"
+                + "peak_heap_mb,peak_rss_mb,output_bytes,error");
+        for (String chart : charts) {
+            for (long rows : rowCounts) {
+                File data = new File(workDir, chart + "-" + rows + ".csv");
+                if (!data.isFile()) generator.write(chart, rows, data);
+                for (String format : formats) {
+                    for (int concurrency : concurrencies) {
+                        report.println(runConfiguration(chart, rows, data, format, concurrency));
+                        report.flush();
+                    }
+                }
+                Files.deleteIfExists(data.toPath());
+            }
+        }
+    }
+
+    private String runConfiguration(String chart, long rows, File data, String format, int concurrency)
+            throws InterruptedException {
+        System.gc();
+        resetPeaks();
+        long[] latencies = new long[requests];
+        AtomicLong outputBytes = new AtomicLong();
+        List<Future<?>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> {
+                long begin = System.nanoTime();
+                CountingOutputStream out = new CountingOutputStream();
+                render(chart, data, format, out);
+                latencies[index] = System.nanoTime() - begin;
+                outputBytes.set(out.count);
+                return null;
+            }));
+        }
+        int failed = 0;
+        String error = "";
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                failed++;
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                error = cause.getClass().getSimpleName() + ": " + String.valueOf(cause.getMessage()).replace(',', ';');
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        long[] succeeded = Arrays.stream(latencies).filter(latency -> latency > 0).sorted().toArray();
+        return String.format(Locale.ROOT, "%s,%d,%s,%d,%d,%d,%.3f,%.1f,%.1f,%.1f,%.1f,%d,%s",
+                chart, rows, format, concurrency, requests, failed,
+                succeeded.length * 1e9 / elapsed,
+                percentile(succeeded, 0.50) / 1e6,
+                percentile(succeeded, 0.99) / 1e6,
+                peakHeapBytes() / 1048576.0,
+                peakRssBytes() / 1048576.0,
+                outputBytes.get(),
+                error);
+    }
+
+    private void render(String chart, File data, String format, OutputStream out) throws JvisionException {
+        JChart jChart;
+        if ("ring".equals(chart)) {
+            jChart = BenchmarkData.ringDiagram(600);
+            jChart.loadData(data.getPath());
+        } else {
+            CircularHistogram histogram = BenchmarkData.circularHistogram();
+            histogram.loadData(data.getPath(), true, cutoff, true);
+            jChart = histogram;
+        }
+        jChart.draw(out, format);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return Double.NaN;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        try {
+            // 5重置VmHWM，仅Linux支持
+            Files.write(Paths.get("/proc/self/clear_refs"), "5".getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            // 不支持时报告进程生命周期内的峰值
+        }
+    }
+
+    /**
+     * 各堆内存池峰值之和，是堆峰值的上界
+     */
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    /**
+     * 进程常驻内存峰值，非Linux系统返回-1
+     */
+    private static long peakRssBytes() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 非Linux系统
+        }
+        return -1;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * 参数均为{@code --name value}形式：charts、rows、formats、concurrency、
+     * requests、cutoff、columns、labelLength、distribution、workDir与report
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", System.getProperty("java.awt.headless", "true"));
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Unknown argument " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        LoadTest loadTest = new LoadTest(options);
+        String reportFile = options.get("report");
+        if (reportFile == null) {
+            loadTest.run(System.out);
+            return;
+        }
+        try (PrintStream report = new TeePrintStream(new File(reportFile))) {
+            loadTest.run(report);
+        }
+    }
+
+    /**
+     * 同时写入报告文件与标准输出
+     */
+    private static class TeePrintStream extends PrintStream {
+        TeePrintStream(File file) throws IOException {
+            super(Files.newOutputStream(file.toPath()), true, "UTF-8");
+        }
+
+        @Override
+        public void println(String line) {
+            super.println(line);
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.benchmarks;
+
+import java.awt.geom.PathIterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import top.gcszhn.jvision.shape.AngularRing;
+import top.gcszhn.jvision.shape.Ring;
+
+/**
+ * 环形几何的构造与路径遍历，rows个同心环铺满画布
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class ShapeBenchmark {
+    @Param({ "10", "100" })
+    private int rows;
+    @Param({ "600", "4800" })
+    private int canvas;
+
+    @Benchmark
+    public void ring(Blackhole blackhole) {
+        double band = canvas / 2.0 / rows;
+        for (int i = 1; i <= rows; i++) {
+            iterate(new Ring(canvas / 2.0, canvas / 2.0, i * band, band * 0.8).getPathIterator(null), blackhole);
+        }
+    }
+
+    @Benchmark
+    public void angularRing(Blackhole blackhole) {
+        double band = canvas / 2.0 / rows;
+        for (int i = 1; i <= rows; i++) {
+            iterate(new AngularRing(canvas / 2.0, canvas / 2.0, i * band, band * 0.8, 90, -336.0 * i / rows)
+                    .getPathIterator(null), blackhole);
+        }
+    }
+
+    @Benchmark
+    public void angularRingFlattened(Blackhole blackhole) {
+        double band = canvas / 2.0 / rows;
+        for (int i = 1; i <= rows; i++) {
+            iterate(new AngularRing(canvas / 2.0, canvas / 2.0, i * band, band * 0.8, 90, -336.0 * i / rows)
+                    .getPathIterator(null, 0.25), blackhole);
+        }
+    }
+
+    private static void iterate(PathIterator iterator, Blackhole blackhole) {
+        double[] coords = new double[6];
+        while (!iterator.isDone()) {
+            blackhole.consume(iterator.currentSegment(coords));
+            iterator.next();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import top.gcszhn.jvision.Constant;
+import top.gcszhn.jvision.tools.DrawTool;
+import top.gcszhn.jvision.tools.ImageTool;
+
+/**
+ * 旋转文字与旋转矩形，即环形直方图每行的绘制开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class TextBenchmark {
+    @Param({ "100", "1000" })
+    private int rows;
+    @Param({ "600", "2400" })
+    private int canvas;
+    private BufferedImage image;
+    private Graphics2D graphics;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        image = new BufferedImage(canvas, canvas, BufferedImage.TYPE_INT_ARGB);
+        graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setColor(Color.BLACK);
+        graphics.setFont(ImageTool.getFont(Constant.DEFAULT_FONT_FAMILY, Constant.DEFAULT_FONT_STYLE, 12));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage rotateText() {
+        double step = 340.0 / rows;
+        for (int i = 0; i < rows; i++) {
+            DrawTool.rotateText(graphics, "M" + i, canvas / 2.0, canvas / 2.0, i * step, canvas / 4.0, "l", "m");
+        }
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage drawSimpleBar() {
+        double step = 340.0 / rows;
+        for (int i = 0; i < rows; i++) {
+            DrawTool.drawSimpleBar(graphics, canvas / 2.0, canvas / 2.0, i * step, canvas / 8.0, 4, canvas / 8);
+        }
+        return image;
+    }
+}
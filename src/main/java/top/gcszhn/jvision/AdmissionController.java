@@ -0,0 +1,334 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Getter;
+import top.gcszhn.jvision.chart.JChart;
+import top.gcszhn.jvision.chart.SectorChart;
+import top.gcszhn.jvision.metrics.RenderMetrics;
+import top.gcszhn.jvision.tools.BasicTool;
+import top.gcszhn.jvision.tools.ImageEncoder;
+import top.gcszhn.jvision.tools.ImagePool;
+
+/**
+ * Admits draws into a shared memory budget using {@link RenderEstimate}.
+ * A draw that fits the budget waits until enough memory is free. A raster
+ * draw that could never fit is degraded instead of risking an
+ * OutOfMemoryError: png output of a {@link SectorChart} is painted and
+ * encoded band by band at full size, other raster output is painted on a
+ * downscaled canvas. Vector draws that exceed the budget are rejected.
+ * 
+ * <pre class="code">
+ * AdmissionController admission = new AdmissionController(Runtime.getRuntime().maxMemory() / 2);
+ * try (AdmissionController.Admission ticket = admission.admit(chart, "png")) {
+ *     ticket.draw(out);
+ * }
+ * </pre>
+ */
+public class AdmissionController {
+    /** How an admitted draw is run */
+    public enum Mode {
+        /** Draw normally */
+        FULL,
+        /** Paint and encode the full-size canvas band by band */
+        BANDED,
+        /** Paint on a canvas scaled to fit the budget */
+        DOWNSCALED
+    }
+
+    /** Message prefix of draws rejected for exceeding the budget in every mode */
+    public static final String REJECTED = "Estimated render memory";
+    /** Smallest band worth painting, thinner bands repaint the chart too often */
+    private static final int MIN_BAND_HEIGHT = 32;
+    /** Smallest downscale, below it the output is rejected */
+    private static final double MIN_SCALE = 1 / 16.0;
+    /** Budget in KiB permits */
+    private final Semaphore memory;
+    private final int memoryPermits;
+    /** Memory budget in bytes */
+    private @Getter final long budget;
+    private final LongAdder full = new LongAdder();
+    private final LongAdder banded = new LongAdder();
+    private final LongAdder downscaled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param budget max estimated memory of concurrent draws, in bytes
+     */
+    public AdmissionController(long budget) {
+        if (budget <= 0) throw new IllegalArgumentException("budget should be more than 0");
+        this.memoryPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, budget >> 10));
+        this.budget = (long) memoryPermits << 10;
+        this.memory = new Semaphore(memoryPermits);
+    }
+
+    /**
+     * Decide how a draw would run, without reserving memory
+     * 
+     * @param chart loaded chart
+     * @param type  output type
+     * @return plan of the draw, not admitted
+     * @throws JvisionException the draw cannot fit the budget in any mode
+     */
+    public Admission plan(JChart chart, String type) throws JvisionException {
+        type = type.toLowerCase();
+        RenderEstimate estimate = chart.estimate(type);
+        if (estimate.getPeakBytes() <= budget)
+            return new Admission(chart, type, Mode.FULL, estimate, estimate.getPeakBytes(), 1, 0);
+        if (estimate.isRaster()) {
+            long bytesPerRow = estimate.getBytesPerRow();
+            long fixed = estimate.getBandedPeakBytes(1) - bytesPerRow;
+            if ("png".equals(type) && chart instanceof SectorChart && bytesPerRow > 0) {
+                // 条带取预算内的最大高度，减少重复绘制的次数；完整绘制超出预算时该高度必小于画布高度
+                long rows = (budget - fixed) / bytesPerRow;
+                if (rows >= MIN_BAND_HEIGHT) {
+                    int bandHeight = Math.toIntExact(rows);
+                    return new Admission(chart, type, Mode.BANDED, estimate, estimate.getBandedPeakBytes(bandHeight),
+                            1, bandHeight);
+                }
+            }
+            long pixelBytes = estimate.getPeakBytes() - fixed;
+            if (pixelBytes > 0 && budget > fixed) {
+                double scale = Math.sqrt((double) (budget - fixed) / pixelBytes) * 0.99;
+                if (scale >= MIN_SCALE) {
+                    RenderEstimate scaled = estimate.scale(scale);
+                    return new Admission(chart, type, Mode.DOWNSCALED, scaled, Math.min(budget, scaled.getPeakBytes()),
+                            scale, 0);
+                }
+            }
+        }
+        throw new JvisionException(REJECTED + " " + (estimate.getPeakBytes() >> 20)
+                + "MiB exceeds the budget of " + (budget >> 20) + "MiB: " + estimate, null, Stage.GRAHPIC_INITIALIZATION);
+    }
+
+    private Admission checkedPlan(JChart chart, String type) throws JvisionException {
+        try {
+            return plan(chart, type);
+        } catch (JvisionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Admit a draw, waiting until its memory is free
+     * 
+     * @param chart loaded chart
+     * @param type  output type
+     * @return admitted draw, close it after drawing
+     * @throws JvisionException     the draw cannot fit the budget in any mode
+     * @throws InterruptedException interrupted while waiting
+     */
+    public Admission admit(JChart chart, String type) throws JvisionException, InterruptedException {
+        Admission admission = checkedPlan(chart, type);
+        memory.acquire(admission.permits);
+        return admission.admitted();
+    }
+
+    /**
+     * Admit a draw, waiting at most the given time for its memory
+     * 
+     * @param chart   loaded chart
+     * @param type    output type
+     * @param timeout max time to wait
+     * @param unit    unit of the timeout
+     * @return admitted draw, close it after drawing; null if the memory was not
+     *         freed in time
+     * @throws JvisionException     the draw cannot fit the budget in any mode
+     * @throws InterruptedException interrupted while waiting
+     */
+    public Admission tryAdmit(JChart chart, String type, long timeout, TimeUnit unit)
+            throws JvisionException, InterruptedException {
+        Admission admission = checkedPlan(chart, type);
+        if (!memory.tryAcquire(admission.permits, timeout, unit)) return null;
+        return admission.admitted();
+    }
+
+    /**
+     * Memory not reserved by admitted draws
+     * 
+     * @return bytes
+     */
+    public long getAvailableBytes() {
+        return (long) memory.availablePermits() << 10;
+    }
+
+    /** Draws admitted at full size */
+    public long getFull() {
+        return full.sum();
+    }
+
+    /** Draws admitted band by band */
+    public long getBanded() {
+        return banded.sum();
+    }
+
+    /** Draws admitted on a downscaled canvas */
+    public long getDownscaled() {
+        return downscaled.sum();
+    }
+
+    /** Draws rejected for exceeding the budget in every mode */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * A planned draw. Once admitted it holds its share of the budget until
+     * closed.
+     */
+    public class Admission implements AutoCloseable {
+        private final JChart chart;
+        private @Getter final String type;
+        private @Getter final Mode mode;
+        /** Estimate of the draw as run, at the downscaled size for {@link Mode#DOWNSCALED} */
+        private @Getter final RenderEstimate estimate;
+        /** Reserved memory in bytes */
+        private @Getter final long reservedBytes;
+        /** Canvas scale, 1 unless downscaled */
+        private @Getter final double scale;
+        /** Rows per band, 0 unless banded */
+        private @Getter final int bandHeight;
+        private final int permits;
+        private boolean admitted = false;
+
+        private Admission(JChart chart, String type, Mode mode, RenderEstimate estimate, long reservedBytes,
+                double scale, int bandHeight) {
+            this.chart = chart;
+            this.type = type;
+            this.mode = mode;
+            this.estimate = estimate;
+            this.reservedBytes = reservedBytes;
+            this.scale = scale;
+            this.bandHeight = bandHeight;
+            this.permits = (int) Math.min(memoryPermits, Math.max(1, (reservedBytes + 1023) >> 10));
+        }
+
+        private Admission admitted() {
+            admitted = true;
+            switch (mode) {
+                case BANDED: banded.increment(); break;
+                case DOWNSCALED: downscaled.increment(); break;
+                default: full.increment();
+            }
+            return this;
+        }
+
+        /**
+         * Draw to a file
+         * 
+         * @param file output file, its type should be the admitted type
+         * @throws JvisionException drawing or output failed
+         */
+        public void draw(String file) throws JvisionException {
+            if (mode == Mode.FULL) {
+                chart.draw(file);
+                return;
+            }
+            if (!BasicTool.getFileExtName(file).toLowerCase().equals(type))
+                throw new JvisionException("Output file should be " + type + ": " + file, null, Stage.GRAHPIC_INITIALIZATION);
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                draw(out);
+            } catch (IOException e) {
+                throw new JvisionException("Write " + file + " failed", e, Stage.GRAHPIC_SERIALIZATION);
+            }
+        }
+
+        /**
+         * Draw to a stream, the stream is flushed but not closed
+         * 
+         * @param out output stream
+         * @throws JvisionException drawing or output failed
+         */
+        public void draw(OutputStream out) throws JvisionException {
+            switch (mode) {
+                case BANDED: drawBanded(out); break;
+                case DOWNSCALED: drawDownscaled(out); break;
+                default: chart.draw(out, type);
+            }
+        }
+
+        private void drawBanded(OutputStream out) throws JvisionException {
+            BandedImage image = new BandedImage((SectorChart) chart, type, estimate.getWidth(), estimate.getHeight(),
+                    bandHeight);
+            try {
+                RenderMetrics.outputType(type);
+                RenderMetrics.imageAllocated(4L * estimate.getWidth() * bandHeight);
+                ImageEncoder.writePNG(image, out, chart.getDpi());
+                out.flush();
+            } catch (IOException e) {
+                throw new JvisionException("Save graphic to file failed", e, Stage.GRAHPIC_SERIALIZATION);
+            } catch (IllegalStateException e) {
+                if (image.getError() != null) throw image.getError();
+                throw e;
+            } finally {
+                image.dispose();
+            }
+        }
+
+        private void drawDownscaled(OutputStream out) throws JvisionException {
+            int width = estimate.getWidth(), height = estimate.getHeight();
+            BufferedImage image = ImagePool.borrow(width, height,
+                    "png".equals(type) ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_3BYTE_BGR);
+            try {
+                RenderMetrics.outputType(type);
+                RenderMetrics.imageAllocated(estimate.getCanvasBytes());
+                Graphics2D graphics = image.createGraphics();
+                try {
+                    graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HRGB);
+                    graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    RenderEstimate original = chart.estimate(type);
+                    graphics.scale((double) width / original.getWidth(), (double) height / original.getHeight());
+                    chart.paint(graphics, type);
+                } finally {
+                    graphics.dispose();
+                }
+                RenderMetrics.enter(Stage.GRAHPIC_SERIALIZATION);
+                if ("png".equals(type)) {
+                    ImageEncoder.writePNG(image, out, chart.getDpi());
+                } else {
+                    ImageEncoder.writeJPEG(image, out, chart.getDpi());
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new JvisionException("Save graphic to file failed", e, Stage.GRAHPIC_SERIALIZATION);
+            } finally {
+                ImagePool.release(image);
+            }
+        }
+
+        /**
+         * Return the reserved memory to the budget
+         */
+        @Override
+        public void close() {
+            if (!admitted) return;
+            admitted = false;
+            memory.release(permits);
+        }
+    }
+}
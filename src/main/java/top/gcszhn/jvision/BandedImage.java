@@ -0,0 +1,237 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Vector;
+
+import lombok.Getter;
+import top.gcszhn.jvision.chart.SectorChart;
+import top.gcszhn.jvision.tools.ImagePool;
+
+/**
+ * Transparent ARGB canvas of a sector chart painted band by band on demand.
+ * Only the band being read is held in memory, and each band paints only the
+ * sectors inside it, so an encoder reading rows in order paints every band
+ * once. Not thread safe, call {@link #dispose()} after encoding.
+ */
+class BandedImage implements RenderedImage {
+    private static final ColorModel COLOR_MODEL = ColorModel.getRGBdefault();
+    private final SectorChart chart;
+    private final String type;
+    private final int width;
+    private final int height;
+    private final int bandHeight;
+    private BufferedImage band;
+    /** Index of the painted band, -1 before the first band */
+    private int bandIndex = -1;
+    /** Bands painted so far */
+    private @Getter int paintedBands = 0;
+    /** Failure of the last band painting, rethrown after encoding */
+    private @Getter JvisionException error;
+
+    /**
+     * @param chart      loaded chart
+     * @param type       output type deciding the layout
+     * @param width      canvas width
+     * @param height     canvas height
+     * @param bandHeight rows per band
+     */
+    BandedImage(SectorChart chart, String type, int width, int height, int bandHeight) {
+        this.chart = chart;
+        this.type = type;
+        this.width = width;
+        this.height = height;
+        this.bandHeight = Math.max(1, Math.min(height, bandHeight));
+    }
+
+    /**
+     * Paint a band unless it is the current one
+     * 
+     * @param index band index
+     * @return band image, row 0 is canvas row {@code index * bandHeight}
+     */
+    private BufferedImage band(int index) {
+        if (index == bandIndex) return band;
+        if (band == null) band = ImagePool.borrow(width, bandHeight, BufferedImage.TYPE_INT_ARGB);
+        int y = index * bandHeight;
+        Graphics2D graphics = band.createGraphics();
+        try {
+            graphics.setComposite(AlphaComposite.Clear);
+            graphics.fillRect(0, 0, width, bandHeight);
+            graphics.setComposite(AlphaComposite.SrcOver);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HRGB);
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.translate(0, -y);
+            chart.paint(graphics, type, new Rectangle2D.Double(0, y, width, Math.min(bandHeight, height - y)));
+        } catch (JvisionException e) {
+            error = e;
+            throw new IllegalStateException(e.getMessage(), e);
+        } finally {
+            graphics.dispose();
+        }
+        bandIndex = index;
+        paintedBands++;
+        return band;
+    }
+
+    @Override
+    public Raster getData(Rectangle rect) {
+        Rectangle bounds = rect.intersection(new Rectangle(0, 0, width, height));
+        WritableRaster raster = COLOR_MODEL.createCompatibleWritableRaster(Math.max(1, bounds.width),
+                Math.max(1, bounds.height)).createWritableTranslatedChild(bounds.x, bounds.y);
+        if (!bounds.isEmpty()) copy(raster, bounds);
+        return raster;
+    }
+
+    @Override
+    public Raster getData() {
+        return getData(new Rectangle(0, 0, width, height));
+    }
+
+    @Override
+    public WritableRaster copyData(WritableRaster raster) {
+        if (raster == null) return (WritableRaster) getData();
+        Rectangle bounds = raster.getBounds().intersection(new Rectangle(0, 0, width, height));
+        if (!bounds.isEmpty()) copy(raster, bounds);
+        return raster;
+    }
+
+    /**
+     * Copy canvas pixels band by band
+     */
+    private void copy(WritableRaster raster, Rectangle bounds) {
+        for (int y = bounds.y; y < bounds.y + bounds.height;) {
+            int index = y / bandHeight;
+            int rows = Math.min(bounds.y + bounds.height, (index + 1) * bandHeight) - y;
+            Raster source = band(index).getRaster().createChild(bounds.x, y - index * bandHeight, bounds.width, rows,
+                    bounds.x, y, null);
+            raster.setRect(source);
+            y += rows;
+        }
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+        int y = tileY * bandHeight;
+        return getData(new Rectangle(0, y, width, Math.min(bandHeight, height - y)));
+    }
+
+    /**
+     * Return the band buffer to the pool
+     */
+    void dispose() {
+        ImagePool.release(band);
+        band = null;
+        bandIndex = -1;
+    }
+
+    @Override
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return Image.UndefinedProperty;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    @Override
+    public ColorModel getColorModel() {
+        return COLOR_MODEL;
+    }
+
+    @Override
+    public SampleModel getSampleModel() {
+        return COLOR_MODEL.createCompatibleSampleModel(width, bandHeight);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMinX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinY() {
+        return 0;
+    }
+
+    @Override
+    public int getNumXTiles() {
+        return 1;
+    }
+
+    @Override
+    public int getNumYTiles() {
+        return (height + bandHeight - 1) / bandHeight;
+    }
+
+    @Override
+    public int getMinTileX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinTileY() {
+        return 0;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return width;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return bandHeight;
+    }
+
+    @Override
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getTileGridYOffset() {
+        return 0;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import lombok.Getter;
+import top.gcszhn.jvision.chart.JChart;
+import top.gcszhn.jvision.metrics.RenderMetrics;
+import top.gcszhn.jvision.tools.BasicTool;
+
+/**
+ * Batch rendering engine. Jobs are pulled from a stream and run on an
+ * executor, with at most {@code maxInFlight} jobs loaded at a time and the
+ * estimated memory of concurrent draws kept under a memory cap by an
+ * {@link AdmissionController}, which degrades draws too large for the cap.
+ * Fonts, pdf base fonts and their mappings are cached process-wide, so they
+ * are shared by all jobs.
+ * 
+ * <pre class="code">
+ * try (BatchRenderer renderer = new BatchRenderer(8, 32, 2L &lt;&lt; 30)) {
+ *     renderer.render(files.stream().map(f -&gt; new RenderJob(f, chartOf(f), f, f + ".png")),
+ *             result -&gt; System.out.println(result));
+ * }
+ * </pre>
+ */
+public class BatchRenderer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(BatchRenderer.class.getName());
+    private final ExecutorService executor;
+    private final boolean shutdownExecutor;
+    /**
+     * Limits jobs submitted but not finished
+     */
+    private final Semaphore inFlight;
+    /**
+     * Memory budget of concurrent draws
+     */
+    private @Getter final AdmissionController admission;
+
+    /**
+     * Create a renderer with its own fixed thread pool
+     * 
+     * @param threads     worker threads
+     * @param maxInFlight max jobs submitted but not finished
+     * @param memoryCap   max estimated memory of concurrent draws, in bytes
+     */
+    public BatchRenderer(int threads, int maxInFlight, long memoryCap) {
+        this(Executors.newFixedThreadPool(threads), maxInFlight, memoryCap, true);
+    }
+
+    /**
+     * Create a renderer on a caller-managed executor, which is not shut down
+     * by {@link #close()}
+     * 
+     * @param executor    executor running the jobs
+     * @param maxInFlight max jobs submitted but not finished
+     * @param memoryCap   max estimated memory of concurrent draws, in bytes
+     */
+    public BatchRenderer(ExecutorService executor, int maxInFlight, long memoryCap) {
+        this(executor, maxInFlight, memoryCap, false);
+    }
+
+    private BatchRenderer(ExecutorService executor, int maxInFlight, long memoryCap, boolean shutdownExecutor) {
+        if (maxInFlight <= 0) throw new IllegalArgumentException("maxInFlight should be more than 0");
+        if (memoryCap <= 0) throw new IllegalArgumentException("memoryCap should be more than 0");
+        this.executor = executor;
+        this.shutdownExecutor = shutdownExecutor;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.admission = new AdmissionController(memoryCap);
+    }
+
+    /**
+     * Render all jobs, blocking until every job has finished. Results are
+     * passed to the listener from worker threads as jobs finish. Exceptions
+     * thrown by the listener are logged and do not stop the other jobs.
+     * 
+     * @param jobs     job stream, consumed lazily as in-flight slots free up
+     * @param listener receives one result per job
+     * @throws InterruptedException interrupted while waiting for a slot
+     */
+    public void render(Stream<RenderJob> jobs, Consumer<RenderResult> listener) throws InterruptedException {
+        Phaser pending = new Phaser(1);
+        long sequence = 0;
+        try {
+            for (Iterator<RenderJob> it = jobs.iterator(); it.hasNext();) {
+                RenderJob job = it.next();
+                long current = sequence++;
+                inFlight.acquire();
+                pending.register();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            RenderResult result = run(current, job);
+                            try {
+                                listener.accept(result);
+                            } catch (RuntimeException e) {
+                                // 监听器异常不影响其他任务，也不终止工作线程
+                                LOGGER.log(Level.WARNING, "Render listener failed on job " + job.getId(), e);
+                            }
+                        } finally {
+                            inFlight.release();
+                            pending.arriveAndDeregister();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    pending.arriveAndDeregister();
+                    throw e;
+                }
+            }
+        } finally {
+            pending.arriveAndAwaitAdvance();
+        }
+    }
+
+    /**
+     * Render all jobs and collect their results in stream order
+     * 
+     * @param jobs job stream
+     * @return one result per job
+     * @throws InterruptedException interrupted while waiting for a slot
+     */
+    public List<RenderResult> render(Stream<RenderJob> jobs) throws InterruptedException {
+        List<RenderResult> results = Collections.synchronizedList(new ArrayList<>());
+        render(jobs, results::add);
+        results.sort(Comparator.comparingLong(RenderResult::getSequence));
+        return results;
+    }
+
+    /**
+     * Load the chart of a job and draw each output within the memory budget
+     * 
+     * @param sequence position of the job in the stream
+     * @param job      job to run
+     * @return job result, carrying the error if any step failed
+     */
+    private RenderResult run(long sequence, RenderJob job) {
+        long start = System.nanoTime();
+        // 加载与各输出的绘制计入同一条绘制统计
+        try (RenderMetrics metrics = RenderMetrics.begin(null)) {
+            JChart chart = job.loadChart();
+            for (String file : job.getOutputFiles()) {
+                try (AdmissionController.Admission ticket = admission.admit(chart, BasicTool.getFileExtName(file))) {
+                    ticket.draw(file);
+                }
+            }
+            return new RenderResult(sequence, job.getId(), System.nanoTime() - start, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new RenderResult(sequence, job.getId(), System.nanoTime() - start, e);
+        } catch (Exception | OutOfMemoryError e) {
+            return new RenderResult(sequence, job.getId(), System.nanoTime() - start, e);
+        }
+    }
+
+    /**
+     * Estimate the peak memory of drawing a loaded chart
+     * 
+     * @param chart loaded chart
+     * @param type  output type
+     * @return estimated bytes
+     */
+    public static long estimateMemory(JChart chart, String type) {
+        return chart.estimate(type).getPeakBytes();
+    }
+
+    /**
+     * Shut down the executor if it was created by this renderer
+     */
+    @Override
+    public void close() {
+        if (shutdownExecutor) executor.shutdown();
+    }
+}
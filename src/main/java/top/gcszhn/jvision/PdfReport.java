@@ -0,0 +1,250 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.PageSize;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.FontMapper;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfSmartCopy;
+import com.lowagie.text.pdf.PdfTemplate;
+import com.lowagie.text.pdf.PdfWriter;
+
+import lombok.Getter;
+import lombok.Setter;
+import top.gcszhn.jvision.chart.JChart;
+import top.gcszhn.jvision.tools.CreateGraphics;
+
+/**
+ * Multi-chart PDF report. Charts are placed as templates on the pages of a
+ * single document, either one chart per page at its own canvas size or as a
+ * grid of panels on fixed-size pages.
+ * 
+ * <p>iText writers are not thread-safe, so the pages are split into parts of
+ * {@code partPages} pages. Every part is painted on the executor by its own
+ * writer, which embeds each font once and each chart once as a template, no
+ * matter how many of its pages use them. The parts are then appended in
+ * order by a {@link PdfSmartCopy}, which also writes streams repeated across
+ * parts only once. Larger parts embed fewer font subsets, smaller parts
+ * paint in parallel sooner.
+ * 
+ * <pre class="code">
+ * PdfReport report = new PdfReport();
+ * report.setColumns(2);
+ * report.setRows(3);
+ * charts.forEach(report::add);
+ * report.write("report.pdf", executor);
+ * </pre>
+ */
+public class PdfReport {
+    /**
+     * Parts painted ahead of the writer, bounding the memory of finished parts
+     */
+    private static final int PARTS_AHEAD = 16;
+    private final List<JChart> charts = new ArrayList<>();
+    /**
+     * Panels per row, one chart per page when both columns and rows are 1
+     */
+    private @Getter @Setter int columns = 1;
+    /**
+     * Panel rows per page
+     */
+    private @Getter @Setter int rows = 1;
+    /**
+     * Page size of grid layouts in points, A4 by default
+     */
+    private @Getter @Setter float pageWidth = PageSize.A4.getWidth();
+    private @Getter @Setter float pageHeight = PageSize.A4.getHeight();
+    /**
+     * Page margin of grid layouts in points
+     */
+    private @Getter @Setter float margin = 36;
+    /**
+     * Pages painted by one writer
+     */
+    private @Getter @Setter int partPages = 32;
+
+    /**
+     * Append a loaded chart to the report
+     * 
+     * @param chart loaded chart, not modified until the report is written
+     * @return this report
+     */
+    public PdfReport add(JChart chart) {
+        charts.add(chart);
+        return this;
+    }
+
+    /**
+     * Get the charts in report order
+     * 
+     * @return unmodifiable chart list
+     */
+    public List<JChart> getCharts() {
+        return Collections.unmodifiableList(charts);
+    }
+
+    /**
+     * Write the report to a file
+     * 
+     * @param file     PDF file name
+     * @param executor executor painting the parts
+     * @throws JvisionException painting or output failed
+     */
+    public void write(String file, Executor executor) throws JvisionException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            write(out, executor);
+        } catch (IOException e) {
+            throw new JvisionException("Write report failed", e, Stage.GRAHPIC_SERIALIZATION);
+        }
+    }
+
+    /**
+     * Write the report to an output stream, which is flushed but not closed
+     * 
+     * @param out      output stream
+     * @param executor executor painting the parts
+     * @throws JvisionException painting or output failed
+     */
+    public void write(OutputStream out, Executor executor) throws JvisionException {
+        if (columns <= 0 || rows <= 0 || partPages <= 0)
+            throw new JvisionException("Columns, rows and part pages should be more than 0", null, Stage.GRAHPIC_INITIALIZATION);
+        if (charts.isEmpty()) throw new JvisionException("No chart added", null, Stage.DATA_LOADING);
+        FontMapper fontMapper = CreateGraphics.getPdfFontMapper();
+        int partCharts = columns * rows * partPages;
+        ArrayDeque<CompletableFuture<byte[]>> parts = new ArrayDeque<>();
+        int next = 0;
+        Document document = new Document();
+        try {
+            PdfSmartCopy copy = new PdfSmartCopy(document, out);
+            copy.setCloseStream(false);
+            document.open();
+            while (next < charts.size() || !parts.isEmpty()) {
+                while (next < charts.size() && parts.size() < PARTS_AHEAD) {
+                    List<JChart> part = charts.subList(next, Math.min(next + partCharts, charts.size()));
+                    parts.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return paintPart(part, fontMapper);
+                        } catch (JvisionException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, executor));
+                    next += partCharts;
+                }
+                PdfReader reader = new PdfReader(join(parts.poll()));
+                for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+                    copy.addPage(copy.getImportedPage(reader, page));
+                }
+                copy.freeReader(reader);
+            }
+            document.close();
+            out.flush();
+        } catch (DocumentException | IOException e) {
+            parts.forEach(part -> part.cancel(false));
+            throw new JvisionException("Write report failed", e, Stage.GRAHPIC_SERIALIZATION);
+        } catch (JvisionException e) {
+            parts.forEach(part -> part.cancel(false));
+            throw e;
+        }
+    }
+
+    private static byte[] join(CompletableFuture<byte[]> part) throws JvisionException {
+        try {
+            return part.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof JvisionException) throw (JvisionException) e.getCause();
+            throw new JvisionException("Paint report part failed", e.getCause(), Stage.GRAHPIC_PAINTING);
+        }
+    }
+
+    /**
+     * Paint the pages of one part into a standalone PDF
+     * 
+     * @param part       charts of the part in report order
+     * @param fontMapper shared font mapper
+     * @return PDF bytes
+     * @throws JvisionException painting failed
+     */
+    private byte[] paintPart(List<JChart> part, FontMapper fontMapper) throws JvisionException {
+        boolean single = columns == 1 && rows == 1;
+        int perPage = columns * rows;
+        float cellWidth = (pageWidth - 2 * margin) / columns;
+        float cellHeight = (pageHeight - 2 * margin) / rows;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Document document = new Document();
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, buffer);
+            Map<JChart, PdfTemplate> templates = new IdentityHashMap<>();
+            for (int i = 0; i < part.size(); i++) {
+                JChart chart = part.get(i);
+                Dimension size = chart.getCanvasSize("pdf");
+                if (i % perPage == 0) {
+                    document.setPageSize(single ? new Rectangle(size.width, size.height) : new Rectangle(pageWidth, pageHeight));
+                    if (i == 0) document.open(); else document.newPage();
+                }
+                PdfContentByte content = writer.getDirectContent();
+                PdfTemplate template = templates.get(chart);
+                if (template == null) {
+                    template = content.createTemplate(size.width, size.height);
+                    Graphics2D graphics = template.createGraphics(size.width, size.height, fontMapper);
+                    graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HRGB);
+                    graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    try {
+                        chart.paint(graphics, "pdf");
+                    } finally {
+                        graphics.dispose();
+                    }
+                    templates.put(chart, template);
+                }
+                if (single) {
+                    content.addTemplate(template, 0, 0);
+                } else {
+                    // 等比缩放并居中于单元格，行从页面顶部开始
+                    int cell = i % perPage;
+                    float scale = Math.min(cellWidth / size.width, cellHeight / size.height);
+                    float x = margin + (cell % columns) * cellWidth + (cellWidth - size.width * scale) / 2;
+                    float y = pageHeight - margin - (cell / columns + 1) * cellHeight + (cellHeight - size.height * scale) / 2;
+                    content.addTemplate(template, scale, 0, 0, scale, x, y);
+                }
+            }
+            document.close();
+        } catch (DocumentException e) {
+            throw new JvisionException("Create report part failed", e, Stage.GRAHPIC_INITIALIZATION);
+        }
+        return buffer.toByteArray();
+    }
+}
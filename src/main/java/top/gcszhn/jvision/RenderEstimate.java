@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision;
+
+import lombok.Getter;
+
+/**
+ * Peak memory and work of drawing a loaded chart, estimated before the draw
+ * from the canvas size, the output type and the number of painted
+ * primitives. Raster outputs are dominated by the canvas buffer, vector
+ * outputs by the document held in memory until it is written.
+ * 
+ * <pre class="code">
+ * RenderEstimate estimate = histogram.estimate("jpg", true);
+ * if (estimate.getPeakBytes() &gt; budget) histogram.draw("chart.jpg", false);
+ * </pre>
+ */
+public class RenderEstimate {
+    /** Fixed memory of a draw, such as fonts, scratch images and encoder state */
+    public static final long BASE_BYTES = 1L << 20;
+    /** Memory per primitive while painting, such as geometry, label layout and grouped paths */
+    private static final long PRIMITIVE_BYTES = 64;
+    /** Memory per primitive in a pdf content stream */
+    private static final long PDF_PRIMITIVE_BYTES = 96;
+    /** Memory per primitive in an eps document, which is held as text and copied once on output */
+    private static final long EPS_PRIMITIVE_BYTES = 384;
+    /** Painting cost of a primitive in pixel equivalents */
+    private static final long PRIMITIVE_WORK = 64;
+
+    /** Output type */
+    private @Getter final String type;
+    /** Canvas width in pixels */
+    private @Getter final int width;
+    /** Canvas height in pixels */
+    private @Getter final int height;
+    /** Painted primitives, such as bars, rings, links and labels */
+    private @Getter final long primitives;
+    /** Chart specific memory per canvas pixel, such as an embedded raster */
+    private @Getter final double extraBytesPerPixel;
+    /** Canvas buffer of raster outputs, 0 for vector outputs */
+    private @Getter final long canvasBytes;
+    /** Estimated peak memory of the draw */
+    private @Getter final long peakBytes;
+    /** Estimated work in pixel equivalents, only comparable between estimates */
+    private @Getter final long work;
+
+    private RenderEstimate(String type, int width, int height, long primitives, double extraBytesPerPixel) {
+        this.type = type;
+        this.width = width;
+        this.height = height;
+        this.primitives = primitives;
+        this.extraBytesPerPixel = extraBytesPerPixel;
+        long pixels = (long) width * height;
+        this.canvasBytes = pixels * bytesPerPixel(type);
+        this.peakBytes = BASE_BYTES + canvasBytes + (long) Math.ceil(pixels * extraBytesPerPixel)
+                + primitives * primitiveBytes(type);
+        this.work = (isRaster() ? pixels : 0) + primitives * PRIMITIVE_WORK;
+    }
+
+    /**
+     * Estimate a draw
+     * 
+     * @param type               output type, such as png, jpg, pdf or eps
+     * @param width              canvas width in pixels
+     * @param height             canvas height in pixels
+     * @param primitives         painted primitives
+     * @param extraBytesPerPixel chart specific memory per canvas pixel
+     * @return estimate
+     */
+    public static RenderEstimate of(String type, int width, int height, long primitives, double extraBytesPerPixel) {
+        return new RenderEstimate(type.toLowerCase(), Math.max(0, width), Math.max(0, height), Math.max(0, primitives),
+                Math.max(0, extraBytesPerPixel));
+    }
+
+    /**
+     * Bytes per pixel of the canvas buffer
+     * 
+     * @param type output type
+     * @return 4 for png, 3 for jpg and 0 for vector outputs
+     */
+    public static int bytesPerPixel(String type) {
+        switch (type) {
+            case "png": return 4;
+            case "jpg": return 3;
+            default: return 0;
+        }
+    }
+
+    private static long primitiveBytes(String type) {
+        switch (type) {
+            case "pdf": return PDF_PRIMITIVE_BYTES;
+            case "eps": return EPS_PRIMITIVE_BYTES;
+            default: return PRIMITIVE_BYTES;
+        }
+    }
+
+    /**
+     * Whether the output is drawn on a canvas buffer
+     * 
+     * @return true for png and jpg
+     */
+    public boolean isRaster() {
+        return bytesPerPixel(type) > 0;
+    }
+
+    /**
+     * Memory of one canvas row, including the chart specific bytes per pixel
+     * 
+     * @return bytes, 0 for vector outputs without extra bytes
+     */
+    public long getBytesPerRow() {
+        return (long) width * bytesPerPixel(type) + (long) Math.ceil(width * extraBytesPerPixel);
+    }
+
+    /**
+     * Peak memory when the canvas is drawn and encoded band by band, so only
+     * one band of pixels is held at a time
+     * 
+     * @param bandHeight band height in pixels
+     * @return estimated bytes
+     */
+    public long getBandedPeakBytes(int bandHeight) {
+        long bandPixels = (long) width * Math.min(height, Math.max(1, bandHeight));
+        return BASE_BYTES + bandPixels * bytesPerPixel(type) + (long) Math.ceil(bandPixels * extraBytesPerPixel)
+                + primitives * primitiveBytes(type);
+    }
+
+    /**
+     * Estimate of the same draw on a scaled canvas
+     * 
+     * @param scale scale of both canvas dimensions
+     * @return estimate at the scaled size, at least 1×1
+     */
+    public RenderEstimate scale(double scale) {
+        return new RenderEstimate(type, Math.max(1, (int) Math.round(width * scale)),
+                Math.max(1, (int) Math.round(height * scale)), primitives, extraBytesPerPixel);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + width + "x" + height + ", " + primitives + " primitives, peak "
+                + (peakBytes >> 10) + "KiB, work " + work;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import lombok.Getter;
+import top.gcszhn.jvision.chart.JChart;
+
+/**
+ * A chart to load and draw to one or more output files, run by
+ * {@link BatchRenderer}. The chart is created by the job's supplier on a
+ * worker thread, so data loading runs in parallel as well.
+ */
+public class RenderJob {
+    /**
+     * Creates and loads the chart of a job
+     */
+    @FunctionalInterface
+    public interface ChartSupplier {
+        JChart get() throws JvisionException;
+    }
+
+    /** Job id reported in {@link RenderResult} */
+    private @Getter final String id;
+    /** Creates the loaded chart */
+    private final ChartSupplier supplier;
+    /** Output file names, the extension decides the output type */
+    private @Getter final List<String> outputFiles;
+
+    /**
+     * Job with a custom chart supplier, for example one that calls
+     * {@code CircularHistogram.loadData} with a cutoff.
+     * 
+     * @param id          job id
+     * @param supplier    creates and loads the chart
+     * @param outputFiles output file names
+     */
+    public RenderJob(String id, ChartSupplier supplier, String... outputFiles) {
+        this.id = id;
+        this.supplier = supplier;
+        this.outputFiles = Collections.unmodifiableList(Arrays.asList(outputFiles));
+    }
+
+    /**
+     * Job loading a configured chart from a data file.
+     * 
+     * @param id          job id
+     * @param chart       configured chart
+     * @param dataFile    data file passed to {@link JChart#loadData(String)}
+     * @param outputFiles output file names
+     */
+    public RenderJob(String id, JChart chart, String dataFile, String... outputFiles) {
+        this(id, () -> {
+            chart.loadData(dataFile);
+            return chart;
+        }, outputFiles);
+    }
+
+    /**
+     * Create and load the chart
+     * @return loaded chart
+     * @throws JvisionException loading failed
+     */
+    public JChart loadChart() throws JvisionException {
+        return supplier.get();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision;
+
+import lombok.Getter;
+
+/**
+ * Result of a single {@link RenderJob} run by {@link BatchRenderer}.
+ */
+public class RenderResult {
+    /** Position of the job in the submitted stream, starting from 0 */
+    private @Getter final long sequence;
+    /** Job id */
+    private @Getter final String id;
+    /** Wall time of loading and drawing, in nanoseconds */
+    private @Getter final long elapsedNanos;
+    /** Failure cause, null when the job succeeded */
+    private @Getter final Throwable error;
+
+    public RenderResult(long sequence, String id, long elapsedNanos, Throwable error) {
+        this.sequence = sequence;
+        this.id = id;
+        this.elapsedNanos = elapsedNanos;
+        this.error = error;
+    }
+
+    /**
+     * Whether the job loaded and drew all outputs
+     * @return true if no error occurred
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public String toString() {
+        return id + (isSuccess() ? " ok " : " failed ") + elapsedNanos / 1000000 + "ms"
+                + (isSuccess() ? "" : ": " + error.getMessage());
+    }
+}
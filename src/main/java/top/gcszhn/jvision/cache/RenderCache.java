@@ -0,0 +1,364 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.chart.ChartSpec;
+
+/**
+ * Content-addressed cache of rendered charts. Entries are keyed by a hash of
+ * the dataset bytes, every chart setting and the output type, kept in an LRU
+ * memory tier bounded by bytes and optionally in a disk directory, which is
+ * also bounded by bytes and evicts least recently used files. Concurrent
+ * requests for the same key share one render.
+ * 
+ * <p>Render {@link top.gcszhn.jvision.chart.JChart#setDeterministic(boolean)
+ * deterministic} charts so that a re-render after eviction yields the same
+ * bytes as the cached entry, which keeps HTTP ETags stable.
+ */
+public class RenderCache {
+    private static final Logger LOGGER = Logger.getLogger(RenderCache.class.getName());
+    /**
+     * Renders the bytes of a cache miss
+     */
+    @FunctionalInterface
+    public interface Renderer {
+        byte[] render() throws JvisionException;
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /** Default max bytes of the disk tier */
+    public static final long DEFAULT_MAX_DISK_BYTES = 1L << 30;
+    /** Max bytes of the memory tier */
+    private final long maxMemoryBytes;
+    /** Directory of the disk tier, null when disabled */
+    private final File directory;
+    /** Max bytes of the disk tier */
+    private final long maxDiskBytes;
+    /** File sizes of the disk tier in access order, guarded by itself */
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes = 0;
+    /** Memory tier in access order, guarded by itself */
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    /** Renders in progress, shared by concurrent requests of the same key */
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Create a cache with a disk tier of at most
+     * {@link #DEFAULT_MAX_DISK_BYTES}
+     * 
+     * @param maxMemoryBytes max bytes of the memory tier
+     * @param directory      directory of the disk tier, null to disable it
+     */
+    public RenderCache(long maxMemoryBytes, File directory) {
+        this(maxMemoryBytes, directory, DEFAULT_MAX_DISK_BYTES);
+    }
+
+    /**
+     * Create a cache. Files already in the directory count towards the disk
+     * tier, the least recently modified ones are evicted first.
+     * 
+     * @param maxMemoryBytes max bytes of the memory tier
+     * @param directory      directory of the disk tier, null to disable it
+     * @param maxDiskBytes   max bytes of the disk tier
+     */
+    public RenderCache(long maxMemoryBytes, File directory, long maxDiskBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+            throw new IllegalArgumentException("Can't create cache directory " + directory.getAbsolutePath());
+        if (directory != null) scanDisk();
+    }
+
+    /**
+     * Index the entries left in the disk tier by a previous run
+     */
+    private void scanDisk() {
+        List<File> files = new ArrayList<>();
+        File[] parents = directory.listFiles(File::isDirectory);
+        for (File parent : parents == null ? new File[0] : parents) {
+            File[] entries = parent.listFiles(file -> file.isFile() && !file.getName().endsWith(".tmp"));
+            if (entries != null) files.addAll(Arrays.asList(entries));
+        }
+        files.sort(Comparator.comparingLong(File::lastModified));
+        synchronized (disk) {
+            for (File file : files) {
+                disk.put(file.getName(), file.length());
+                diskBytes += file.length();
+            }
+            evictDisk();
+        }
+    }
+
+    /**
+     * Compute the cache key of a render
+     * 
+     * @param data   dataset bytes
+     * @param spec   chart settings
+     * @param format output type
+     * @return hex encoded SHA-256 hash
+     */
+    public static String key(byte[] data, ChartSpec spec, String format) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, format.getBytes(StandardCharsets.UTF_8));
+        update(digest, spec.toString().getBytes(StandardCharsets.UTF_8));
+        update(digest, data);
+        byte[] hash = digest.digest();
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Add a length-prefixed field, so that fields can't run into each other
+     */
+    private static void update(MessageDigest digest, byte[] field) {
+        int length = field.length;
+        digest.update(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length });
+        digest.update(field);
+    }
+
+    /**
+     * Get an entry from the memory tier
+     * 
+     * @param key cache key
+     * @return cached bytes, null on miss
+     */
+    public byte[] getIfPresent(String key) {
+        byte[] value;
+        synchronized (memory) {
+            value = memory.get(key);
+        }
+        if (value != null) memoryHits.increment();
+        return value;
+    }
+
+    /**
+     * Get an entry, reading the disk tier or rendering on miss. A render in
+     * progress for the same key is joined instead of started again.
+     * 
+     * @param key      cache key
+     * @param renderer renders the bytes on miss
+     * @param executor runs disk reads and renders
+     * @return future of the bytes
+     */
+    public CompletableFuture<byte[]> get(String key, Renderer renderer, Executor executor) {
+        byte[] value = getIfPresent(key);
+        if (value != null) return CompletableFuture.completedFuture(value);
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = pending.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(load(key, renderer));
+                } catch (Exception | OutOfMemoryError e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    pending.remove(key, future);
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private byte[] load(String key, Renderer renderer) throws JvisionException {
+        byte[] value;
+        synchronized (memory) {
+            value = memory.get(key);
+        }
+        if (value != null) {
+            memoryHits.increment();
+            return value;
+        }
+        value = readDisk(key);
+        if (value != null) {
+            diskHits.increment();
+        } else {
+            misses.increment();
+            value = renderer.render();
+            writeDisk(key, value);
+        }
+        put(key, value);
+        return value;
+    }
+
+    /**
+     * Put an entry into the memory tier, evicting least recently used ones
+     * 
+     * @param key   cache key
+     * @param value rendered bytes
+     */
+    private void put(String key, byte[] value) {
+        if (value.length > maxMemoryBytes) return;
+        synchronized (memory) {
+            byte[] old = memory.put(key, value);
+            memoryBytes += value.length - (old == null ? 0 : old.length);
+            for (Iterator<Map.Entry<String, byte[]>> it = memory.entrySet().iterator(); memoryBytes > maxMemoryBytes && it.hasNext();) {
+                memoryBytes -= it.next().getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    private File diskFile(String key) {
+        return new File(new File(directory, key.substring(0, 2)), key);
+    }
+
+    /**
+     * Read an entry from the disk tier, an unreadable file counts as a miss
+     */
+    private byte[] readDisk(String key) {
+        if (directory == null) return null;
+        synchronized (disk) {
+            if (disk.get(key) == null) return null;
+        }
+        try {
+            return Files.readAllBytes(diskFile(key).toPath());
+        } catch (NoSuchFileException e) {
+            // evicted meanwhile or deleted outside the cache
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Read cache file failed, render " + key + " again", e);
+        }
+        synchronized (disk) {
+            Long size = disk.remove(key);
+            if (size != null) diskBytes -= size;
+        }
+        return null;
+    }
+
+    /**
+     * Write an entry to the disk tier through a temporary file, so that
+     * readers never see a partial entry. A failed write only skips the disk
+     * tier, the rendered bytes are still served.
+     */
+    private void writeDisk(String key, byte[] value) {
+        if (directory == null || value.length > maxDiskBytes) return;
+        File file = diskFile(key);
+        File tmp = null;
+        boolean moved = false;
+        try {
+            File parent = file.getParentFile();
+            if (!parent.isDirectory()) parent.mkdirs();
+            tmp = File.createTempFile(key, ".tmp", parent);
+            Files.write(tmp.toPath(), value);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Write cache file failed, keep " + key + " out of the disk tier", e);
+            return;
+        } finally {
+            if (!moved && tmp != null && !tmp.delete() && tmp.exists())
+                LOGGER.warning("Can't delete cache temporary file " + tmp.getAbsolutePath());
+        }
+        synchronized (disk) {
+            Long old = disk.put(key, (long) value.length);
+            diskBytes += value.length - (old == null ? 0 : old);
+            evictDisk();
+        }
+    }
+
+    /**
+     * Delete least recently used files until the disk tier fits its bound,
+     * called with the disk index locked
+     */
+    private void evictDisk() {
+        for (Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator(); diskBytes > maxDiskBytes && it.hasNext();) {
+            Map.Entry<String, Long> entry = it.next();
+            diskFile(entry.getKey()).delete();
+            diskBytes -= entry.getValue();
+            it.remove();
+        }
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Bytes held by the memory tier
+     * @return bytes
+     */
+    public long getMemoryBytes() {
+        synchronized (memory) {
+            return memoryBytes;
+        }
+    }
+
+    /**
+     * Bytes held by the disk tier
+     * @return bytes
+     */
+    public long getDiskBytes() {
+        synchronized (disk) {
+            return diskBytes;
+        }
+    }
+}
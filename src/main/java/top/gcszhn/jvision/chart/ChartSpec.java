@@ -0,0 +1,328 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.chart;
+
+import java.awt.Font;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import lombok.Getter;
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.Stage;
+
+/**
+ * Declarative chart settings, used to create charts from key-value pairs such
+ * as HTTP query parameters or properties files. Keys follow the constructor
+ * parameters and setters of {@link RingDiagram}, {@link CircularHistogram},
+ * {@link ChordDiagram}, {@link SunburstDiagram} and {@link CircularHeatmap}.
+ * 
+ * <p>Ring diagram ({@code chart=ring}): {@code title}, {@code width},
+ * {@code height}, {@code gapRatio}, {@code radiusRange}, {@code valueRange},
+ * {@code startAngle}, {@code arcAngle}, {@code step}, {@code balance},
+ * {@code analyticRaster}.
+ * 
+ * <p>Circular histogram ({@code chart=histogram}): {@code hasTitle},
+ * {@code cutoff}, {@code sorted}, {@code totalAngle}, {@code maxValue},
+ * {@code dpi}, {@code backgroundColor}, {@code fontColor}, {@code barColors},
+ * {@code analyticRaster}.
+ * 
+ * <p>Chord diagram ({@code chart=chord}): {@code title}, {@code width},
+ * {@code height}, {@code gapAngle}, {@code bundling}, {@code minLinkWidth},
+ * {@code linkAlpha}, {@code colors}.
+ * 
+ * <p>Sunburst diagram ({@code chart=sunburst}): {@code title}, {@code width},
+ * {@code height}, {@code holeRatio}, {@code minSegmentWidth}, {@code colors}.
+ * 
+ * <p>Circular heatmap ({@code chart=heatmap}): {@code title}, {@code width},
+ * {@code height}, {@code holeRatio}, {@code startAngle}, {@code arcAngle},
+ * {@code trackGap}, {@code valueRange}, {@code colors}.
+ * 
+ * <p>All: {@code fontFamily} and {@code fontStyle} (plain, bold, italic or
+ * bolditalic). Ranges and color lists are comma separated.
+ */
+public class ChartSpec implements Serializable {
+    private static final long serialVersionUID = 202210191503001L;
+    /** Chart type of {@link RingDiagram} */
+    public static final String RING_DIAGRAM = "ring";
+    /** Chart type of {@link CircularHistogram} */
+    public static final String CIRCULAR_HISTOGRAM = "histogram";
+    /** Chart type of {@link ChordDiagram} */
+    public static final String CHORD_DIAGRAM = "chord";
+    /** Chart type of {@link SunburstDiagram} */
+    public static final String SUNBURST_DIAGRAM = "sunburst";
+    /** Chart type of {@link CircularHeatmap} */
+    public static final String CIRCULAR_HEATMAP = "heatmap";
+
+    private static final Set<String> COMMON_KEYS = new HashSet<>(Arrays.asList("fontFamily", "fontStyle"));
+    private static final Set<String> RING_KEYS = new HashSet<>(Arrays.asList("title", "width", "height",
+            "gapRatio", "radiusRange", "valueRange", "startAngle", "arcAngle", "step", "balance", "analyticRaster"));
+    private static final Set<String> HISTOGRAM_KEYS = new HashSet<>(Arrays.asList("hasTitle", "cutoff", "sorted",
+            "totalAngle", "maxValue", "dpi", "backgroundColor", "fontColor", "barColors", "analyticRaster"));
+    private static final Set<String> CHORD_KEYS = new HashSet<>(Arrays.asList("title", "width", "height",
+            "gapAngle", "bundling", "minLinkWidth", "linkAlpha", "colors"));
+    private static final Set<String> SUNBURST_KEYS = new HashSet<>(Arrays.asList("title", "width", "height",
+            "holeRatio", "minSegmentWidth", "colors"));
+    private static final Set<String> HEATMAP_KEYS = new HashSet<>(Arrays.asList("title", "width", "height",
+            "holeRatio", "startAngle", "arcAngle", "trackGap", "valueRange", "colors"));
+
+    /** Chart type, one of the chart type constants */
+    private @Getter final String chartType;
+    /** Settings sorted by key */
+    private final Map<String, String> params;
+
+    /**
+     * Create and validate a chart spec
+     * 
+     * @param chartType chart type
+     * @param params    settings, unknown keys are rejected
+     * @throws JvisionException unknown chart type or setting
+     */
+    public ChartSpec(String chartType, Map<String, String> params) throws JvisionException {
+        Set<String> keys;
+        switch (chartType) {
+            case RING_DIAGRAM: keys = RING_KEYS; break;
+            case CIRCULAR_HISTOGRAM: keys = HISTOGRAM_KEYS; break;
+            case CHORD_DIAGRAM: keys = CHORD_KEYS; break;
+            case SUNBURST_DIAGRAM: keys = SUNBURST_KEYS; break;
+            case CIRCULAR_HEATMAP: keys = HEATMAP_KEYS; break;
+            default: throw new JvisionException("Unsupport chart type: " + chartType, null, Stage.GRAHPIC_INITIALIZATION);
+        }
+        for (String key : params.keySet()) {
+            if (!keys.contains(key) && !COMMON_KEYS.contains(key))
+                throw new JvisionException("Unknown setting " + key + " for " + chartType, null, Stage.GRAHPIC_INITIALIZATION);
+        }
+        this.chartType = chartType;
+        this.params = Collections.unmodifiableMap(new TreeMap<>(params));
+    }
+
+    /**
+     * Get a setting
+     * @param key setting name
+     * @return setting value, null if absent
+     */
+    public String get(String key) {
+        return params.get(key);
+    }
+
+    /**
+     * Get all settings
+     * @return unmodifiable settings sorted by key
+     */
+    public Map<String, String> getParams() {
+        return params;
+    }
+
+    /**
+     * Create a chart and load data from file
+     * 
+     * @param file CSV file
+     * @return loaded chart
+     * @throws JvisionException invalid setting or data
+     */
+    public JChart load(String file) throws JvisionException {
+        Reader reader;
+        try {
+            reader = new FileReader(file);
+        } catch (IOException e) {
+            throw new JvisionException("Read CSV file failed", e, Stage.DATA_LOADING);
+        }
+        return load(reader);
+    }
+
+    /**
+     * Create a chart and load data from character stream, which is closed
+     * after loading
+     * 
+     * @param reader CSV content
+     * @return loaded chart
+     * @throws JvisionException invalid setting or data
+     */
+    public JChart load(Reader reader) throws JvisionException {
+        try {
+            switch (chartType) {
+                case RING_DIAGRAM: {
+                    RingDiagram chart = createRingDiagram();
+                    chart.loadData(reader);
+                    return chart;
+                }
+                case CHORD_DIAGRAM: {
+                    ChordDiagram chart = createChordDiagram();
+                    chart.loadData(reader);
+                    return chart;
+                }
+                case SUNBURST_DIAGRAM: {
+                    SunburstDiagram chart = createSunburstDiagram();
+                    chart.loadData(reader);
+                    return chart;
+                }
+                case CIRCULAR_HEATMAP: {
+                    CircularHeatmap chart = createCircularHeatmap();
+                    chart.loadData(reader);
+                    return chart;
+                }
+                default: {
+                    CircularHistogram chart = createCircularHistogram();
+                    chart.loadData(
+                            reader,
+                            Boolean.parseBoolean(get("hasTitle", "true")),
+                            params.containsKey("cutoff") ? Integer.valueOf(get("cutoff")) : null,
+                            Boolean.parseBoolean(get("sorted", "false")));
+                    return chart;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                e.addSuppressed(ex);
+            }
+            throw new JvisionException("Invalid chart setting: " + e.getMessage(), e, Stage.GRAHPIC_INITIALIZATION);
+        }
+    }
+
+    private RingDiagram createRingDiagram() {
+        float[] valueRange = parseRange(require("valueRange"));
+        RingDiagram chart = new RingDiagram(
+                get("title"),
+                Integer.parseInt(require("width")),
+                Integer.parseInt(require("height")),
+                Float.parseFloat(get("gapRatio", "0.2")),
+                parseRange(require("radiusRange")),
+                valueRange,
+                Float.parseFloat(get("startAngle", "90")),
+                Float.parseFloat(get("arcAngle", "-336")),
+                params.containsKey("step") ? Float.parseFloat(get("step")) : (valueRange[1] - valueRange[0]) / 10,
+                Boolean.parseBoolean(get("balance", "true")));
+        applyFont(chart);
+        chart.setAnalyticRaster(Boolean.parseBoolean(get("analyticRaster", "false")));
+        return chart;
+    }
+
+    private CircularHistogram createCircularHistogram() {
+        CircularHistogram chart = new CircularHistogram();
+        applyFont(chart);
+        if (params.containsKey("totalAngle")) chart.setTotalAngle(Double.valueOf(get("totalAngle")));
+        if (params.containsKey("maxValue")) chart.setMaxValue(Double.valueOf(get("maxValue")));
+        if (params.containsKey("dpi")) chart.setDpi(Integer.valueOf(get("dpi")));
+        if (params.containsKey("backgroundColor")) chart.setBackgroundColor(get("backgroundColor"));
+        if (params.containsKey("fontColor")) chart.setFontColor(get("fontColor"));
+        if (params.containsKey("barColors")) chart.setBarColorSet(get("barColors").split(","));
+        chart.setAnalyticRaster(Boolean.parseBoolean(get("analyticRaster", "false")));
+        return chart;
+    }
+
+    private ChordDiagram createChordDiagram() {
+        ChordDiagram chart = new ChordDiagram();
+        applyFont(chart);
+        chart.setTitle(get("title"));
+        if (params.containsKey("width")) chart.setWidth(Integer.parseInt(get("width")));
+        if (params.containsKey("height")) chart.setHeight(Integer.parseInt(get("height")));
+        if (params.containsKey("gapAngle")) chart.setGapAngle(Double.parseDouble(get("gapAngle")));
+        if (params.containsKey("bundling")) chart.setBundling(Double.parseDouble(get("bundling")));
+        if (params.containsKey("minLinkWidth")) chart.setMinLinkWidth(Double.parseDouble(get("minLinkWidth")));
+        if (params.containsKey("linkAlpha")) chart.setLinkAlpha(Float.parseFloat(get("linkAlpha")));
+        if (params.containsKey("colors")) chart.setColorSet(get("colors").split(","));
+        return chart;
+    }
+
+    private SunburstDiagram createSunburstDiagram() {
+        SunburstDiagram chart = new SunburstDiagram();
+        applyFont(chart);
+        chart.setTitle(get("title"));
+        if (params.containsKey("width")) chart.setWidth(Integer.parseInt(get("width")));
+        if (params.containsKey("height")) chart.setHeight(Integer.parseInt(get("height")));
+        if (params.containsKey("holeRatio")) chart.setHoleRatio(Double.parseDouble(get("holeRatio")));
+        if (params.containsKey("minSegmentWidth")) chart.setMinSegmentWidth(Double.parseDouble(get("minSegmentWidth")));
+        if (params.containsKey("colors")) chart.setColorSet(get("colors").split(","));
+        return chart;
+    }
+
+    private CircularHeatmap createCircularHeatmap() {
+        CircularHeatmap chart = new CircularHeatmap();
+        applyFont(chart);
+        chart.setTitle(get("title"));
+        if (params.containsKey("width")) chart.setWidth(Integer.parseInt(get("width")));
+        if (params.containsKey("height")) chart.setHeight(Integer.parseInt(get("height")));
+        if (params.containsKey("holeRatio")) chart.setHoleRatio(Double.parseDouble(get("holeRatio")));
+        if (params.containsKey("startAngle")) chart.setStartAngle(Double.parseDouble(get("startAngle")));
+        if (params.containsKey("arcAngle")) chart.setArcAngle(Double.parseDouble(get("arcAngle")));
+        if (params.containsKey("trackGap")) chart.setTrackGap(Double.parseDouble(get("trackGap")));
+        if (params.containsKey("valueRange")) chart.setValueRange(parseRange(get("valueRange")));
+        if (params.containsKey("colors")) chart.setColorSet(get("colors").split(","));
+        return chart;
+    }
+
+    private void applyFont(JChart chart) {
+        if (params.containsKey("fontFamily")) chart.setFontFamily(get("fontFamily"));
+        if (params.containsKey("fontStyle")) chart.setFontStyle(parseFontStyle(get("fontStyle")));
+    }
+
+    private String get(String key, String defaultValue) {
+        return params.getOrDefault(key, defaultValue);
+    }
+
+    private String require(String key) {
+        String value = params.get(key);
+        if (value == null) throw new IllegalArgumentException("missing " + key);
+        return value;
+    }
+
+    private static float[] parseRange(String value) {
+        String[] items = value.split(",");
+        if (items.length != 2) throw new IllegalArgumentException("range should be two numbers: " + value);
+        return new float[] { Float.parseFloat(items[0].trim()), Float.parseFloat(items[1].trim()) };
+    }
+
+    private static int parseFontStyle(String value) {
+        switch (value.toLowerCase()) {
+            case "plain": return Font.PLAIN;
+            case "bold": return Font.BOLD;
+            case "italic": return Font.ITALIC;
+            case "bolditalic": return Font.BOLD + Font.ITALIC;
+            default: return Integer.parseInt(value);
+        }
+    }
+
+    /**
+     * Canonical form, equal for specs with the same type and settings
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(chartType);
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            builder.append('\n').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof ChartSpec && toString().equals(obj.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
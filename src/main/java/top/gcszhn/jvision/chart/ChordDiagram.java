@@ -0,0 +1,640 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.chart;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import lombok.Getter;
+import lombok.Setter;
+import top.gcszhn.jvision.Constant;
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.RenderEstimate;
+import top.gcszhn.jvision.Stage;
+import top.gcszhn.jvision.jfr.ChartLoadEvent;
+import top.gcszhn.jvision.metrics.RenderMetrics;
+import top.gcszhn.jvision.shape.AngularRing;
+import top.gcszhn.jvision.tools.BasicTool;
+import top.gcszhn.jvision.tools.CreateGraphics;
+import top.gcszhn.jvision.tools.DrawTool;
+import top.gcszhn.jvision.tools.ImageTool;
+import top.gcszhn.jvision.tools.LabelGrid;
+
+/**
+ * 绘制弦图的业务实现类。节点为外圈的环段，弧长与节点的连接总权重成正比，连接线从各自环段内按权重分配的位置出发，
+ * 经圆心附近的控制点连接到另一端。连接线按颜色与线宽分组合并为少量路径绘制，共享线型对象，
+ * 线宽小于阈值像素的连接线不绘制，因此可绘制十万条以上的连接。数据加载后以不可变数据集发布，可并发绘制。
+ */
+public class ChordDiagram implements SectorChart {
+    private static final long serialVersionUID = 202210191830001L;
+    /**
+     * 线宽量化的精度，单位为像素，量化后同色同宽的连接线合并为一条路径
+     */
+    private static final float WIDTH_QUANTUM = 0.25f;
+    /**
+     * 宽于该像素数的连接线绘制为两端与弧段等宽的条带
+     */
+    private static final double RIBBON_WIDTH = 2;
+    /**
+     * 当前数据集，每次加载整体替换
+     */
+    private volatile Dataset dataset = null;
+    /**
+     * 最近一次计算的连接端点角度
+     */
+    private transient volatile Geometry geometry = null;
+    private @Setter @Getter String title = null;
+    private @Setter @Getter int width = 1000;
+    private @Setter @Getter int height = 1000;
+    private @Setter @Getter String fontFamily = Constant.DEFAULT_FONT_FAMILY;
+    private @Setter @Getter int fontStyle = Constant.DEFAULT_FONT_STYLE;
+    /**
+     * 是否输出逐字节确定的pdf与eps，相同数据与设置得到相同字节，默认关闭
+     */
+    private @Setter @Getter boolean deterministic = false;
+    /**
+     * 相邻环段的间隔角度，间隔总和最多为90度
+     */
+    private @Setter @Getter double gapAngle = 1;
+    /**
+     * 边捆绑强度，0为所有连接经过圆心，1为同一对节点的连接共享控制点而汇聚成束
+     */
+    private @Getter double bundling = 0;
+    /**
+     * 连接线的最小线宽，单位为像素，更细的连接线不绘制
+     */
+    private @Setter @Getter double minLinkWidth = 0.1;
+    /**
+     * 连接线颜色的不透明度
+     */
+    private @Getter float linkAlpha = 0.5f;
+    /**
+     * 节点颜色，按节点顺序循环使用
+     */
+    private @Getter Color[] colorSet = {
+            new Color(128, 0, 128),
+            new Color(251, 188, 5),
+            new Color(66, 133, 244),
+            new Color(234, 67, 53),
+            new Color(189, 183, 107),
+            new Color(107, 142, 35),
+            new Color(135, 206, 250),
+            new Color(186, 186, 186)
+    };
+
+    /**
+     * 设置边捆绑强度
+     * 
+     * @param bundling 0至1之间
+     */
+    public void setBundling(double bundling) {
+        if (bundling < 0 || bundling > 1) throw new IllegalArgumentException("bundling should be in [0, 1]");
+        this.bundling = bundling;
+    }
+
+    /**
+     * 设置连接线颜色的不透明度
+     * 
+     * @param linkAlpha 0至1之间
+     */
+    public void setLinkAlpha(float linkAlpha) {
+        if (linkAlpha < 0 || linkAlpha > 1) throw new IllegalArgumentException("linkAlpha should be in [0, 1]");
+        this.linkAlpha = linkAlpha;
+    }
+
+    /**
+     * 设置节点颜色
+     * 
+     * @param colorSet 十六进制颜色
+     */
+    public void setColorSet(String[] colorSet) {
+        Color[] colors = new Color[colorSet.length];
+        for (int i = 0; i < colorSet.length; i++) {
+            colors[i] = ImageTool.getColor(colorSet[i].trim());
+        }
+        this.colorSet = colors;
+    }
+
+    /**
+     * 加载数据，替换已加载的数据集
+     * 
+     * @param file 输入文件名，每行依次为起点、终点与权重，首行权重非数值时视为表头
+     */
+    @Override
+    public void loadData(String file) throws JvisionException {
+        Reader reader;
+        try {
+            reader = new FileReader(file);
+        } catch (IOException e) {
+            throw new JvisionException("Read CSV file failed", e, Stage.DATA_LOADING);
+        }
+        loadData(reader);
+    }
+
+    @Override
+    public void loadData(Reader reader) throws JvisionException {
+        ChartLoadEvent event = new ChartLoadEvent();
+        event.begin();
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CHORD_DIAGRAM)) {
+            RenderMetrics.enter(Stage.DATA_LOADING);
+            long charsRead = metrics.getBytesRead(Stage.DATA_LOADING);
+            Dataset data = parse(reader);
+            RenderMetrics.rows(data.weights.length);
+            dataset = data;
+            event.setRows(data.weights.length);
+            event.setCharsRead(metrics.getBytesRead(Stage.DATA_LOADING) - charsRead);
+        } finally {
+            event.setChartType(ChartSpec.CHORD_DIAGRAM);
+            event.commit();
+        }
+    }
+
+    private static Dataset parse(Reader reader) throws JvisionException {
+        Map<String, Integer> nodes = new LinkedHashMap<>();
+        int[] sources = new int[1024];
+        int[] targets = new int[1024];
+        double[] weights = new double[1024];
+        int size = 0;
+        try (CSVParser records = BasicTool.readCSV(reader)) {
+            for (CSVRecord record : records) {
+                double weight;
+                try {
+                    weight = Double.parseDouble(record.get(2));
+                } catch (NumberFormatException e) {
+                    if (record.getRecordNumber() == 1) continue;
+                    throw new JvisionException("Data parse error at record: " + record.getRecordNumber(), e,
+                            Stage.DATA_LOADING);
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    throw new JvisionException("Record " + record.getRecordNumber() + " should have three columns",
+                            e, Stage.DATA_LOADING);
+                }
+                if (!(weight >= 0) || Double.isInfinite(weight))
+                    throw new JvisionException("Weight should be non-negative at record: " + record.getRecordNumber(),
+                            null, Stage.DATA_LOADING);
+                if (size == weights.length) {
+                    sources = Arrays.copyOf(sources, size * 2);
+                    targets = Arrays.copyOf(targets, size * 2);
+                    weights = Arrays.copyOf(weights, size * 2);
+                }
+                sources[size] = nodes.computeIfAbsent(record.get(0), k -> nodes.size());
+                targets[size] = nodes.computeIfAbsent(record.get(1), k -> nodes.size());
+                weights[size++] = weight;
+            }
+        } catch (IOException e) {
+            throw new JvisionException("Read CSV file failed", e, Stage.DATA_LOADING);
+        }
+        double[] totals = new double[nodes.size()];
+        for (int i = 0; i < size; i++) {
+            totals[sources[i]] += weights[i];
+            totals[targets[i]] += weights[i];
+        }
+        return new Dataset(nodes.keySet().toArray(new String[0]), totals, Arrays.copyOf(sources, size),
+                Arrays.copyOf(targets, size), Arrays.copyOf(weights, size));
+    }
+
+    private Dataset checkData() throws JvisionException {
+        Dataset data = dataset;
+        if (data == null || data.weights.length == 0) {
+            throw new JvisionException("No data loaded", null, Stage.DATA_LOADING);
+        }
+        return data;
+    }
+
+    @Override
+    public void draw(String file) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CHORD_DIAGRAM)) {
+            Dataset data = checkData();
+            try (CreateGraphics cg = new CreateGraphics(width, height, BasicTool.getFileExtName(file), file, deterministic)) {
+                paint(cg.getGraphics(), data, null);
+                cg.saveToFile();
+            }
+        }
+    }
+
+    @Override
+    public void draw(OutputStream out, String type) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CHORD_DIAGRAM)) {
+            Dataset data = checkData();
+            try (CreateGraphics cg = new CreateGraphics(width, height, type, out, deterministic)) {
+                paint(cg.getGraphics(), data, null);
+                cg.saveToFile();
+            }
+        }
+    }
+
+    @Override
+    public void paint(Graphics2D graphics, String type) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CHORD_DIAGRAM)) {
+            paint(graphics, checkData(), null);
+        }
+    }
+
+    @Override
+    public void paint(Graphics2D graphics, String type, Rectangle2D region) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CHORD_DIAGRAM)) {
+            Dataset data = checkData();
+            Shape clip = graphics.getClip();
+            graphics.clip(region);
+            paint(graphics, data, region);
+            graphics.setClip(clip);
+        }
+    }
+
+    /**
+     * 估计绘制开销，每条连接与每个节点的环段和标签各计一个图元
+     */
+    @Override
+    public RenderEstimate estimate(String type) {
+        Dataset data = dataset;
+        return RenderEstimate.of(type, width, height,
+                data == null ? 0 : data.sources.length + 2L * data.nodes.length, 0);
+    }
+
+    @Override
+    public List<Sector> getSectors(String type) throws JvisionException {
+        Dataset data = checkData();
+        Geometry geometry = geometry(data);
+        double radius = radius();
+        double band = band(radius);
+        double[] signatures = new double[data.nodes.length];
+        Rectangle2D[] bounds = new Rectangle2D[data.nodes.length];
+        List<Sector> sectors = new ArrayList<>(data.nodes.length);
+        FontMetrics metrics = labelMetrics(labelFontSize());
+        for (int node = 0; node < data.nodes.length; node++) {
+            bounds[node] = segment(geometry, node, radius, band).getBounds2D();
+            // 标签沿半径方向，范围取其外端点并留出半个行高
+            double theta = Math.toRadians(geometry.nodeStarts[node] + geometry.nodeSpans[node] / 2);
+            double outer = radius + band + metrics.getHeight() / 2.0 + metrics.stringWidth(data.nodes[node]);
+            bounds[node].add(new Rectangle2D.Double(width / 2.0 + Math.cos(theta) * outer - metrics.getHeight(),
+                    height / 2.0 + Math.sin(theta) * outer - metrics.getHeight(), 2 * metrics.getHeight(),
+                    2 * metrics.getHeight()));
+        }
+        // 连接线改变时两端节点均需重绘，范围包括连接线控制点的凸包
+        float[] curve = new float[8];
+        for (int link = 0; link < data.weights.length; link++) {
+            int source = data.sources[link], target = data.targets[link];
+            signatures[source] += data.weights[link] * (target + Math.PI);
+            signatures[target] += data.weights[link] * (source + Math.E);
+            curve(geometry, data, link, radius, curve);
+            for (int node : new int[] { source, target }) {
+                for (int i = 0; i < 8; i += 2) bounds[node].add(curve[i], curve[i + 1]);
+            }
+        }
+        for (int node = 0; node < data.nodes.length; node++) {
+            sectors.add(new Sector(data.nodes[node], new double[] { data.totals[node], signatures[node] },
+                    color(node), segment(geometry, node, radius, band), bounds[node]));
+        }
+        return sectors;
+    }
+
+    @Override
+    public PolarHitIndex getHitIndex(String type) throws JvisionException {
+        Dataset data = checkData();
+        Geometry geometry = geometry(data);
+        double radius = radius();
+        PolarHitIndex index = new PolarHitIndex(width / 2.0, height / 2.0, 0);
+        for (int node = 0; node < data.nodes.length; node++) {
+            index.addWedge(node, 0, data.nodes[node], data.totals[node], geometry.nodeStarts[node],
+                    geometry.nodeSpans[node], radius, radius + band(radius));
+        }
+        return index;
+    }
+
+    /**
+     * 绘制弦图，依次为背景、连接线、环段、节点标签与标题
+     * 
+     * @param graphics 绘图对象
+     * @param data     数据集
+     * @param visible  可见区域，null为绘制全部
+     */
+    private void paint(Graphics2D graphics, Dataset data, Rectangle2D visible) {
+        Geometry geometry = geometry(data);
+        double radius = radius();
+        double band = band(radius);
+        graphics.setBackground(Constant.DEFAULT_BACKGROUND_COLOR);
+        graphics.clearRect(0, 0, width, height);
+        paintLinks(graphics, data, geometry, radius, visible);
+        for (int node = 0; node < data.nodes.length; node++) {
+            if (geometry.nodeSpans[node] <= 0) continue;
+            graphics.setColor(color(node));
+            graphics.fill(segment(geometry, node, radius, band));
+        }
+        RenderMetrics.primitives(data.nodes.length);
+        paintLabels(graphics, data, geometry, radius + band);
+        if (title != null) {
+            graphics.setColor(Constant.DEFAULT_FONT_COLOR);
+            graphics.setFont(ImageTool.getFont(fontFamily, fontStyle, Math.max(1, Math.min(width, height) / 30)));
+            DrawTool.drawText(graphics, title, width / 2.0, Math.min(width, height) / 30.0, "m", "m");
+        }
+    }
+
+    /**
+     * 分组绘制连接线。宽于{@link #RIBBON_WIDTH}像素的连接线按节点颜色合并为条带路径填充，
+     * 其余按颜色与量化线宽合并为曲线路径描边并共享线型
+     */
+    private void paintLinks(Graphics2D graphics, Dataset data, Geometry geometry, double radius,
+            Rectangle2D visible) {
+        double scale = Math.sqrt(Math.abs(graphics.getTransform().getDeterminant()));
+        if (scale <= 0) return;
+        double unitWidth = geometry.radiansPerWeight * radius;
+        Path2D.Float[] ribbons = new Path2D.Float[colorSet.length];
+        HashMap<Long, Path2D.Float> lines = new HashMap<>();
+        float[] curve = new float[8];
+        long drawn = 0;
+        for (int link = 0; link < data.weights.length; link++) {
+            double pixels = data.weights[link] * unitWidth * scale;
+            if (pixels < minLinkWidth) continue;
+            curve(geometry, data, link, radius, curve);
+            if (visible != null && !hullIntersects(visible, curve, pixels / scale / 2)) continue;
+            int color = data.sources[link] % colorSet.length;
+            if (pixels >= RIBBON_WIDTH) {
+                if (ribbons[color] == null) ribbons[color] = new Path2D.Float(Path2D.WIND_NON_ZERO, 64);
+                ribbon(ribbons[color], geometry, data, link, radius, curve);
+            } else {
+                int quantized = Math.max(1, Math.round((float) pixels / WIDTH_QUANTUM));
+                Path2D.Float path = lines.computeIfAbsent(((long) color << 32) | quantized,
+                        k -> new Path2D.Float(Path2D.WIND_NON_ZERO, 64));
+                path.moveTo(curve[0], curve[1]);
+                path.curveTo(curve[2], curve[3], curve[4], curve[5], curve[6], curve[7]);
+            }
+            drawn++;
+        }
+        int alpha = Math.round(linkAlpha * 255);
+        for (int color = 0; color < ribbons.length; color++) {
+            if (ribbons[color] == null) continue;
+            Color c = colorSet[color];
+            graphics.setColor(new Color(c.getRed(), c.getGreen(), c.getBlue(), alpha));
+            graphics.fill(ribbons[color]);
+        }
+        Stroke obs = graphics.getStroke();
+        for (Map.Entry<Long, Path2D.Float> group : lines.entrySet()) {
+            Color c = colorSet[(int) (group.getKey() >>> 32)];
+            graphics.setColor(new Color(c.getRed(), c.getGreen(), c.getBlue(), alpha));
+            graphics.setStroke(DrawTool.getLineStroke(group.getKey().intValue() * WIDTH_QUANTUM / (float) scale,
+                    true, 0));
+            graphics.draw(group.getValue());
+        }
+        graphics.setStroke(obs);
+        RenderMetrics.primitives(drawn);
+    }
+
+    /**
+     * 添加连接条带：起点弧段、至终点弧段的曲线、终点弧段与返回起点的曲线，两条曲线共用中心线的控制点
+     */
+    private void ribbon(Path2D.Float path, Geometry geometry, Dataset data, int link, double radius,
+            float[] curve) {
+        double centerX = width / 2.0, centerY = height / 2.0;
+        double half = Math.toDegrees(geometry.radiansPerWeight) * data.weights[link] / 2;
+        double a0 = geometry.endAngles[2 * link], a3 = geometry.endAngles[2 * link + 1];
+        double theta = Math.toRadians(a0 - half);
+        path.moveTo(centerX + Math.cos(theta) * radius, centerY + Math.sin(theta) * radius);
+        DrawTool.arcTo(path, centerX, centerY, radius, a0 - half, a0 + half);
+        theta = Math.toRadians(a3 - half);
+        path.curveTo(curve[2], curve[3], curve[4], curve[5],
+                centerX + Math.cos(theta) * radius, centerY + Math.sin(theta) * radius);
+        DrawTool.arcTo(path, centerX, centerY, radius, a3 - half, a3 + half);
+        theta = Math.toRadians(a0 - half);
+        path.curveTo(curve[4], curve[5], curve[2], curve[3],
+                centerX + Math.cos(theta) * radius, centerY + Math.sin(theta) * radius);
+        path.closePath();
+    }
+
+    /**
+     * 绘制节点标签，按总权重从大到小放置，跳过与已放置标签重叠的标签
+     */
+    private void paintLabels(Graphics2D graphics, Dataset data, Geometry geometry, double radius) {
+        int fontSize = labelFontSize();
+        graphics.setFont(ImageTool.getFont(fontFamily, fontStyle, fontSize));
+        graphics.setColor(Constant.DEFAULT_FONT_COLOR);
+        FontMetrics metrics = labelMetrics(fontSize);
+        double labelR = radius + fontSize / 2.0;
+        Integer[] order = new Integer[data.nodes.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(data.totals[b], data.totals[a]));
+        LabelGrid grid = new LabelGrid(Math.max(metrics.getHeight(), metrics.getMaxAdvance() * 4));
+        double centerX = width / 2.0, centerY = height / 2.0;
+        for (int node : order) {
+            if (geometry.nodeSpans[node] <= 0) continue;
+            String label = data.nodes[node];
+            double angle = geometry.nodeStarts[node] + geometry.nodeSpans[node] / 2;
+            double halfWidth = metrics.stringWidth(label) / 2.0;
+            double theta = Math.toRadians(angle);
+            if (!grid.place(centerX + Math.cos(theta) * (labelR + halfWidth),
+                    centerY + Math.sin(theta) * (labelR + halfWidth), halfWidth, metrics.getHeight() / 2.0, angle))
+                continue;
+            double normalized = ((angle % 360) + 360) % 360;
+            // 左半圆的标签旋转180度后右对齐，保持文字朝上
+            if (normalized > 90 && normalized < 270) {
+                DrawTool.rotateText(graphics, label, centerX, centerY, angle + 180, labelR, "r", "m");
+            } else {
+                DrawTool.rotateText(graphics, label, centerX, centerY, angle, labelR, "l", "m");
+            }
+        }
+    }
+
+    private int labelFontSize() {
+        return Math.max(1, Math.min(width, height) / 60);
+    }
+
+    private FontMetrics labelMetrics(int fontSize) {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scratch.createGraphics();
+        FontMetrics metrics = graphics.getFontMetrics(ImageTool.getFont(fontFamily, fontStyle, fontSize));
+        graphics.dispose();
+        return metrics;
+    }
+
+    /**
+     * 计算连接线的三次贝塞尔曲线，依次为起点、两个控制点与终点。捆绑强度将控制点由圆心拉向两端节点的环段中点
+     */
+    private void curve(Geometry geometry, Dataset data, int link, double radius, float[] curve) {
+        double centerX = width / 2.0, centerY = height / 2.0;
+        int source = data.sources[link], target = data.targets[link];
+        double a0 = Math.toRadians(geometry.endAngles[2 * link]);
+        double a3 = Math.toRadians(geometry.endAngles[2 * link + 1]);
+        double pull = bundling * radius / 2;
+        double s0 = Math.toRadians(geometry.nodeStarts[source] + geometry.nodeSpans[source] / 2);
+        double s3 = Math.toRadians(geometry.nodeStarts[target] + geometry.nodeSpans[target] / 2);
+        curve[0] = (float) (centerX + Math.cos(a0) * radius);
+        curve[1] = (float) (centerY + Math.sin(a0) * radius);
+        curve[2] = (float) (centerX + Math.cos(s0) * pull);
+        curve[3] = (float) (centerY + Math.sin(s0) * pull);
+        curve[4] = (float) (centerX + Math.cos(s3) * pull);
+        curve[5] = (float) (centerY + Math.sin(s3) * pull);
+        curve[6] = (float) (centerX + Math.cos(a3) * radius);
+        curve[7] = (float) (centerY + Math.sin(a3) * radius);
+    }
+
+    /**
+     * 贝塞尔曲线位于控制点的凸包内，以控制点外接矩形判断是否可能与可见区域相交
+     */
+    private static boolean hullIntersects(Rectangle2D visible, float[] curve, double margin) {
+        double minX = Math.min(Math.min(curve[0], curve[2]), Math.min(curve[4], curve[6]));
+        double maxX = Math.max(Math.max(curve[0], curve[2]), Math.max(curve[4], curve[6]));
+        double minY = Math.min(Math.min(curve[1], curve[3]), Math.min(curve[5], curve[7]));
+        double maxY = Math.max(Math.max(curve[1], curve[3]), Math.max(curve[5], curve[7]));
+        return visible.intersects(minX - margin, minY - margin, maxX - minX + 2 * margin, maxY - minY + 2 * margin);
+    }
+
+    private AngularRing segment(Geometry geometry, int node, double radius, double band) {
+        // 环段角度为逆时针方向，几何中为图像坐标的顺时针方向
+        return new AngularRing(width / 2.0, height / 2.0, radius + band, band, -geometry.nodeStarts[node],
+                -geometry.nodeSpans[node]);
+    }
+
+    private Color color(int node) {
+        return colorSet[node % colorSet.length];
+    }
+
+    /**
+     * 连接线端点所在的半径，外侧留出环段与标签的空间
+     */
+    private double radius() {
+        return Math.min(width, height) * 0.36;
+    }
+
+    private static double band(double radius) {
+        return radius * 0.05;
+    }
+
+    /**
+     * 计算各环段的起止角度与各连接端点的角度，结果按数据集与间隔角度缓存
+     */
+    private Geometry geometry(Dataset data) {
+        double gapAngle = this.gapAngle;
+        Geometry cached = geometry;
+        if (cached != null && cached.data == data && cached.gapAngle == gapAngle) return cached;
+        int nodes = data.nodes.length;
+        int links = data.weights.length;
+        double total = 0;
+        for (double value : data.totals) total += value;
+        // 节点很多时间隔总和不超过四分之一圆周
+        double gap = Math.min(gapAngle, 90.0 / nodes);
+        double available = 360 - gap * nodes;
+        double degreesPerWeight = total > 0 ? available / total : 0;
+        double[] nodeStarts = new double[nodes];
+        double[] nodeSpans = new double[nodes];
+        double angle = -90;
+        for (int node = 0; node < nodes; node++) {
+            nodeStarts[node] = angle;
+            nodeSpans[node] = data.totals[node] * degreesPerWeight;
+            angle += nodeSpans[node] + gap;
+        }
+        // 按节点分桶连接端点，每个桶内按另一端节点的顺时针相对位置排序以减少交叉
+        int[] offsets = new int[nodes + 1];
+        for (int link = 0; link < links; link++) {
+            offsets[data.sources[link] + 1]++;
+            offsets[data.targets[link] + 1]++;
+        }
+        for (int node = 0; node < nodes; node++) offsets[node + 1] += offsets[node];
+        long[] ends = new long[2 * links];
+        int[] fill = Arrays.copyOf(offsets, nodes);
+        for (int link = 0; link < links; link++) {
+            int source = data.sources[link], target = data.targets[link];
+            ends[fill[source]++] = ((long) ((target - source + nodes) % nodes) << 32) | (2L * link);
+            ends[fill[target]++] = ((long) ((source - target + nodes) % nodes) << 32) | (2L * link + 1);
+        }
+        float[] endAngles = new float[2 * links];
+        for (int node = 0; node < nodes; node++) {
+            Arrays.sort(ends, offsets[node], offsets[node + 1]);
+            double position = nodeStarts[node];
+            for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                int end = (int) ends[i];
+                double span = data.weights[end / 2] * degreesPerWeight;
+                endAngles[end] = (float) (position + span / 2);
+                position += span;
+            }
+        }
+        Geometry result = new Geometry(data, gapAngle, nodeStarts, nodeSpans, endAngles,
+                Math.toRadians(degreesPerWeight));
+        geometry = result;
+        return result;
+    }
+
+    /**
+     * 不可变数据集，连接以平行数组存储
+     */
+    private static class Dataset implements Serializable {
+        private static final long serialVersionUID = 202210191830002L;
+        /**
+         * 节点名称，按首次出现的顺序
+         */
+        private final String[] nodes;
+        /**
+         * 各节点的连接总权重
+         */
+        private final double[] totals;
+        private final int[] sources;
+        private final int[] targets;
+        private final double[] weights;
+
+        private Dataset(String[] nodes, double[] totals, int[] sources, int[] targets, double[] weights) {
+            this.nodes = nodes;
+            this.totals = totals;
+            this.sources = sources;
+            this.targets = targets;
+            this.weights = weights;
+        }
+    }
+
+    /**
+     * 环段与连接端点的角度，单位为度，为图像坐标中由x轴正向顺时针的角度
+     */
+    private static class Geometry {
+        private final Dataset data;
+        private final double gapAngle;
+        private final double[] nodeStarts;
+        private final double[] nodeSpans;
+        /**
+         * 第2i与2i+1个元素为第i条连接起点与终点的角度
+         */
+        private final float[] endAngles;
+        /**
+         * 单位权重对应的弧度，乘以半径即为连接线宽
+         */
+        private final double radiansPerWeight;
+
+        private Geometry(Dataset data, double gapAngle, double[] nodeStarts, double[] nodeSpans, float[] endAngles,
+                double radiansPerWeight) {
+            this.data = data;
+            this.gapAngle = gapAngle;
+            this.nodeStarts = nodeStarts;
+            this.nodeSpans = nodeSpans;
+            this.endAngles = endAngles;
+            this.radiansPerWeight = radiansPerWeight;
+        }
+    }
+}
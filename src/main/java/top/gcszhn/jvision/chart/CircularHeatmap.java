@@ -0,0 +1,600 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.chart;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import lombok.Getter;
+import lombok.Setter;
+import top.gcszhn.jvision.Constant;
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.RenderEstimate;
+import top.gcszhn.jvision.Stage;
+import top.gcszhn.jvision.jfr.ChartLoadEvent;
+import top.gcszhn.jvision.metrics.RenderMetrics;
+import top.gcszhn.jvision.tools.BasicTool;
+import top.gcszhn.jvision.tools.CreateGraphics;
+import top.gcszhn.jvision.tools.DrawTool;
+import top.gcszhn.jvision.tools.ImageTool;
+
+/**
+ * 绘制环形热图的业务实现类。每行数据为一圈轨道，每列为轨道上的一个角度区间。
+ * 绘制时先将单元格颜色写入轨道数乘角度像素数的矩形栅格，列数多于角度像素数时按像素合并取均值，
+ * 再逐像素按极坐标从栅格取色映射到环上，并整体作为一张图像绘制，pdf与eps中也只嵌入一张图像，
+ * 因此开销取决于像素数而与单元格数无关，可绘制百万个单元格。
+ */
+public class CircularHeatmap implements SectorChart {
+    private static final long serialVersionUID = 202210192130001L;
+    /**
+     * 颜色查找表的级数
+     */
+    private static final int LUT_SIZE = 256;
+    /**
+     * pdf中嵌入图像相对于画布的分辨率倍数，eps中图像以未压缩的十六进制写出，保持与画布相同的分辨率
+     */
+    private static final int PDF_RASTER_SCALE = 2;
+    /**
+     * 当前数据集，每次加载整体替换
+     */
+    private volatile Dataset dataset = null;
+    private @Setter @Getter String title = null;
+    private @Setter @Getter int width = 1000;
+    private @Setter @Getter int height = 1000;
+    private @Setter @Getter String fontFamily = Constant.DEFAULT_FONT_FAMILY;
+    private @Setter @Getter int fontStyle = Constant.DEFAULT_FONT_STYLE;
+    /**
+     * 是否输出逐字节确定的pdf与eps，相同数据与设置得到相同字节，默认关闭
+     */
+    private @Setter @Getter boolean deterministic = false;
+    /**
+     * 中心空白的半径与外半径之比
+     */
+    private @Getter double holeRatio = 0.4;
+    /**
+     * 起始角度，单位为度，为图像坐标中由x轴正向顺时针的角度，默认为正上方
+     */
+    private @Setter @Getter double startAngle = -90;
+    /**
+     * 顺时针方向的角度范围，起点前的空隙用于绘制轨道名
+     */
+    private @Getter double arcAngle = 340;
+    /**
+     * 相邻轨道的间隔与轨道宽度之比
+     */
+    private @Getter double trackGap = 0.1;
+    /**
+     * 颜色映射的数值范围，null时取数据的最小与最大值
+     */
+    private @Setter @Getter float[] valueRange = null;
+    /**
+     * 颜色映射的节点，数值范围内等距分布
+     */
+    private @Getter Color[] colorSet = {
+            new Color(59, 76, 192),
+            new Color(255, 255, 255),
+            new Color(180, 4, 38)
+    };
+
+    /**
+     * 设置中心空白的半径比例
+     * 
+     * @param holeRatio 0至1之间，不含1
+     */
+    public void setHoleRatio(double holeRatio) {
+        if (holeRatio < 0 || holeRatio >= 1) throw new IllegalArgumentException("holeRatio should be in [0, 1)");
+        this.holeRatio = holeRatio;
+    }
+
+    /**
+     * 设置顺时针方向的角度范围
+     * 
+     * @param arcAngle 0至360之间，不含0
+     */
+    public void setArcAngle(double arcAngle) {
+        if (arcAngle <= 0 || arcAngle > 360) throw new IllegalArgumentException("arcAngle should be in (0, 360]");
+        this.arcAngle = arcAngle;
+    }
+
+    /**
+     * 设置相邻轨道的间隔比例
+     * 
+     * @param trackGap 0至1之间，不含1
+     */
+    public void setTrackGap(double trackGap) {
+        if (trackGap < 0 || trackGap >= 1) throw new IllegalArgumentException("trackGap should be in [0, 1)");
+        this.trackGap = trackGap;
+    }
+
+    /**
+     * 设置颜色映射的节点
+     * 
+     * @param colorSet 至少两个十六进制颜色
+     */
+    public void setColorSet(String[] colorSet) {
+        if (colorSet.length < 2) throw new IllegalArgumentException("at least two colors are required");
+        Color[] colors = new Color[colorSet.length];
+        for (int i = 0; i < colorSet.length; i++) {
+            colors[i] = ImageTool.getColor(colorSet[i].trim());
+        }
+        this.colorSet = colors;
+    }
+
+    /**
+     * 加载数据，替换已加载的数据集
+     * 
+     * @param file 输入文件名，每行依次为轨道名与各列数值，空值与NA不着色，首行第二列非数值时视为表头
+     */
+    @Override
+    public void loadData(String file) throws JvisionException {
+        Reader reader;
+        try {
+            reader = new FileReader(file);
+        } catch (IOException e) {
+            throw new JvisionException("Read CSV file failed", e, Stage.DATA_LOADING);
+        }
+        loadData(reader);
+    }
+
+    @Override
+    public void loadData(Reader reader) throws JvisionException {
+        ChartLoadEvent event = new ChartLoadEvent();
+        event.begin();
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HEATMAP)) {
+            RenderMetrics.enter(Stage.DATA_LOADING);
+            long charsRead = metrics.getBytesRead(Stage.DATA_LOADING);
+            Dataset data = parse(reader);
+            RenderMetrics.rows(data.labels.length);
+            dataset = data;
+            event.setRows(data.labels.length);
+            event.setCharsRead(metrics.getBytesRead(Stage.DATA_LOADING) - charsRead);
+        } finally {
+            event.setChartType(ChartSpec.CIRCULAR_HEATMAP);
+            event.commit();
+        }
+    }
+
+    private static Dataset parse(Reader reader) throws JvisionException {
+        List<String> labels = new ArrayList<>();
+        float[] values = new float[1024];
+        int columns = -1, size = 0;
+        try (CSVParser records = BasicTool.readCSV(reader)) {
+            for (CSVRecord record : records) {
+                if (record.getRecordNumber() == 1 && record.size() > 1 && !isValue(record.get(1))) continue;
+                if (columns < 0) {
+                    columns = record.size() - 1;
+                    if (columns < 1)
+                        throw new JvisionException("Record " + record.getRecordNumber() + " has no value", null,
+                                Stage.DATA_LOADING);
+                } else if (record.size() - 1 != columns) {
+                    throw new JvisionException("Record " + record.getRecordNumber() + " should have " + columns
+                            + " values", null, Stage.DATA_LOADING);
+                }
+                if (size + columns > values.length)
+                    values = Arrays.copyOf(values, Math.max(values.length * 2, size + columns));
+                for (int i = 1; i <= columns; i++) {
+                    String text = record.get(i).trim();
+                    try {
+                        values[size++] = text.isEmpty() || text.equalsIgnoreCase("NA") ? Float.NaN
+                                : Float.parseFloat(text);
+                    } catch (NumberFormatException e) {
+                        throw new JvisionException("Data parse error at record: " + record.getRecordNumber(), e,
+                                Stage.DATA_LOADING);
+                    }
+                }
+                labels.add(record.get(0));
+            }
+        } catch (IOException e) {
+            throw new JvisionException("Read CSV file failed", e, Stage.DATA_LOADING);
+        }
+        return new Dataset(labels.toArray(new String[0]), Math.max(columns, 0), Arrays.copyOf(values, size));
+    }
+
+    private static boolean isValue(String text) {
+        text = text.trim();
+        if (text.isEmpty() || text.equalsIgnoreCase("NA")) return true;
+        try {
+            Float.parseFloat(text);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private Dataset checkData() throws JvisionException {
+        Dataset data = dataset;
+        if (data == null || data.labels.length == 0) {
+            throw new JvisionException("No data loaded", null, Stage.DATA_LOADING);
+        }
+        return data;
+    }
+
+    @Override
+    public void draw(String file) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HEATMAP)) {
+            Dataset data = checkData();
+            String type = BasicTool.getFileExtName(file);
+            try (CreateGraphics cg = new CreateGraphics(width, height, type, file, deterministic)) {
+                paint(cg.getGraphics(), data, type, null);
+                cg.saveToFile();
+            }
+        }
+    }
+
+    @Override
+    public void draw(OutputStream out, String type) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HEATMAP)) {
+            Dataset data = checkData();
+            try (CreateGraphics cg = new CreateGraphics(width, height, type, out, deterministic)) {
+                paint(cg.getGraphics(), data, type, null);
+                cg.saveToFile();
+            }
+        }
+    }
+
+    @Override
+    public void paint(Graphics2D graphics, String type) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HEATMAP)) {
+            paint(graphics, checkData(), type, null);
+        }
+    }
+
+    @Override
+    public void paint(Graphics2D graphics, String type, Rectangle2D region) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HEATMAP)) {
+            Dataset data = checkData();
+            Shape clip = graphics.getClip();
+            graphics.clip(region);
+            paint(graphics, data, type, region);
+            graphics.setClip(clip);
+        }
+    }
+
+    /**
+     * 估计绘制开销，单元格先写入栅格再重采样为约与画布等大的ARGB图像，
+     * pdf中该图像边长加倍，eps中以十六进制文本嵌入
+     */
+    @Override
+    public RenderEstimate estimate(String type) {
+        Dataset data = dataset;
+        type = type.toLowerCase();
+        double imageBytes = "pdf".equals(type) ? 4 * PDF_RASTER_SCALE * PDF_RASTER_SCALE : "eps".equals(type) ? 22 : 4;
+        return RenderEstimate.of(type, width, height, data == null ? 0 : data.labels.length, imageBytes);
+    }
+
+    /**
+     * 每圈轨道为一个扇区
+     */
+    @Override
+    public List<Sector> getSectors(String type) throws JvisionException {
+        Dataset data = checkData();
+        double outer = radius(), inner = outer * holeRatio, band = (outer - inner) / data.labels.length;
+        FontMetrics metrics = labelMetrics();
+        List<Sector> sectors = new ArrayList<>(data.labels.length);
+        for (int row = 0; row < data.labels.length; row++) {
+            double from = inner + row * band, to = from + band * (1 - trackGap);
+            double signature = 0;
+            for (int column = 0, offset = row * data.columns; column < data.columns; column++) {
+                float value = data.values[offset + column];
+                if (!Float.isNaN(value)) signature += value * (column + Math.PI);
+            }
+            Path2D.Double track = new Path2D.Double();
+            double theta = Math.toRadians(startAngle);
+            track.moveTo(width / 2.0 + Math.cos(theta) * from, height / 2.0 + Math.sin(theta) * from);
+            track.lineTo(width / 2.0 + Math.cos(theta) * to, height / 2.0 + Math.sin(theta) * to);
+            DrawTool.arcTo(track, width / 2.0, height / 2.0, to, startAngle, startAngle + arcAngle);
+            theta = Math.toRadians(startAngle + arcAngle);
+            track.lineTo(width / 2.0 + Math.cos(theta) * from, height / 2.0 + Math.sin(theta) * from);
+            DrawTool.arcTo(track, width / 2.0, height / 2.0, from, startAngle + arcAngle, startAngle);
+            track.closePath();
+            Rectangle2D bounds = track.getBounds2D();
+            bounds.add(labelBounds(data.labels[row], metrics, (from + to) / 2));
+            sectors.add(new Sector(data.labels[row], new double[] { data.means[row], signature }, null, track,
+                    bounds));
+        }
+        return sectors;
+    }
+
+    @Override
+    public PolarHitIndex getHitIndex(String type) throws JvisionException {
+        Dataset data = checkData();
+        double outer = radius(), inner = outer * holeRatio, band = (outer - inner) / data.labels.length;
+        PolarHitIndex index = new PolarHitIndex(width / 2.0, height / 2.0, inner);
+        for (int row = 0; row < data.labels.length; row++) {
+            double from = inner + row * band;
+            index.addWedge(row, row, data.labels[row], data.means[row], startAngle, arcAngle, from,
+                    from + band * (1 - trackGap));
+        }
+        return index;
+    }
+
+    /**
+     * 绘制环形热图，依次为背景、热图图像、轨道名、色标与标题
+     * 
+     * @param graphics 绘图对象
+     * @param data     数据集
+     * @param type     输出类型，pdf提高嵌入图像的分辨率
+     * @param visible  可见区域，null为绘制全部
+     */
+    private void paint(Graphics2D graphics, Dataset data, String type, Rectangle2D visible) {
+        double outer = radius(), inner = outer * holeRatio, band = (outer - inner) / data.labels.length;
+        double centerX = width / 2.0, centerY = height / 2.0;
+        graphics.setBackground(Constant.DEFAULT_BACKGROUND_COLOR);
+        graphics.clearRect(0, 0, width, height);
+        double pixelScale = Math.sqrt(Math.abs(graphics.getTransform().getDeterminant()));
+        if ("pdf".equals(type)) pixelScale *= PDF_RASTER_SCALE;
+        if (pixelScale > 0) {
+            int[] lut = lut();
+            float[] range = range(data);
+            int bins = (int) Math.max(1, Math.min(data.columns,
+                    Math.ceil(Math.toRadians(arcAngle) * outer * pixelScale)));
+            int[] raster = raster(data, bins, lut, range);
+            // 图像覆盖外圆的外接正方形，可见区域时只生成与其相交的像素
+            int size = (int) Math.ceil(2 * outer * pixelScale);
+            double pixel = 2 * outer / size;
+            int x0 = 0, y0 = 0, x1 = size, y1 = size;
+            if (visible != null) {
+                x0 = Math.max(0, (int) Math.floor((visible.getMinX() - centerX + outer) / pixel));
+                y0 = Math.max(0, (int) Math.floor((visible.getMinY() - centerY + outer) / pixel));
+                x1 = Math.min(size, (int) Math.ceil((visible.getMaxX() - centerX + outer) / pixel));
+                y1 = Math.min(size, (int) Math.ceil((visible.getMaxY() - centerY + outer) / pixel));
+            }
+            if (x1 > x0 && y1 > y0) {
+                BufferedImage image = resample(raster, data.labels.length, bins, inner, outer, band, pixel,
+                        x0, y0, x1 - x0, y1 - y0);
+                AffineTransform transform = AffineTransform.getTranslateInstance(centerX - outer + x0 * pixel,
+                        centerY - outer + y0 * pixel);
+                transform.scale(pixel, pixel);
+                graphics.drawImage(image, transform, null);
+                RenderMetrics.primitives(1);
+            }
+            paintLegend(graphics, lut, range, inner);
+        }
+        graphics.setFont(ImageTool.getFont(fontFamily, fontStyle, labelFontSize()));
+        graphics.setColor(Constant.DEFAULT_FONT_COLOR);
+        FontMetrics metrics = graphics.getFontMetrics();
+        for (int row = 0; row < data.labels.length; row++) {
+            double middle = inner + (row + (1 - trackGap) / 2) * band;
+            if (band * (1 - trackGap) < metrics.getAscent()) continue;
+            Rectangle2D box = labelBounds(data.labels[row], metrics, middle);
+            graphics.drawString(data.labels[row], (float) box.getX(),
+                    (float) (box.getY() + metrics.getAscent()));
+        }
+        if (title != null) {
+            graphics.setFont(ImageTool.getFont(fontFamily, fontStyle, Math.max(1, Math.min(width, height) / 30)));
+            DrawTool.drawText(graphics, title, centerX, Math.min(width, height) / 30.0, "m", "m");
+        }
+    }
+
+    /**
+     * 将单元格颜色写入轨道数乘角度区间数的栅格，列数多于区间数时每个区间取所含单元格的均值
+     * 
+     * @return 行优先的ARGB颜色，无数值的区间为全透明
+     */
+    private static int[] raster(Dataset data, int bins, int[] lut, float[] range) {
+        int rows = data.labels.length, columns = data.columns;
+        int[] raster = new int[rows * bins];
+        float[] sums = new float[bins];
+        int[] counts = new int[bins];
+        float low = range[0], factor = range[1] > range[0] ? (LUT_SIZE - 1) / (range[1] - range[0]) : 0;
+        for (int row = 0; row < rows; row++) {
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+            int offset = row * columns;
+            for (int column = 0; column < columns; column++) {
+                float value = data.values[offset + column];
+                if (Float.isNaN(value)) continue;
+                int bin = (int) ((long) column * bins / columns);
+                sums[bin] += value;
+                counts[bin]++;
+            }
+            for (int bin = 0; bin < bins; bin++) {
+                if (counts[bin] == 0) continue;
+                int level = (int) ((sums[bin] / counts[bin] - low) * factor + 0.5f);
+                raster[row * bins + bin] = lut[Math.max(0, Math.min(LUT_SIZE - 1, level))];
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * 按极坐标从栅格取色生成环形图像，内外圆、轨道间隔与起止角度的边缘按像素覆盖率抗锯齿
+     * 
+     * @param pixel 图像像素对应的画布长度
+     * @param x0    生成区域在外接正方形图像中的左上角
+     * @return 非预乘的ARGB图像
+     */
+    private BufferedImage resample(int[] raster, int rows, int bins, double inner, double outer, double band,
+            double pixel, int x0, int y0, int imageWidth, int imageHeight) {
+        BufferedImage image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        double filled = band * (1 - trackGap);
+        double arc = Math.toRadians(arcAngle), start = Math.toRadians(startAngle);
+        double half = pixel / 2;
+        for (int y = 0; y < imageHeight; y++) {
+            double dy = (y0 + y + 0.5) * pixel - outer;
+            if (Math.abs(dy) > outer + half) continue;
+            // 只遍历与外圆相交的横向范围
+            double span = Math.sqrt(Math.max(0, (outer + half) * (outer + half) - dy * dy));
+            int from = Math.max(0, (int) Math.floor((outer - span) / pixel) - x0);
+            int to = Math.min(imageWidth, (int) Math.ceil((outer + span) / pixel) - x0);
+            for (int x = from; x < to; x++) {
+                double dx = (x0 + x + 0.5) * pixel - outer;
+                double r = Math.sqrt(dx * dx + dy * dy);
+                double t = (r - inner) / band;
+                int row = (int) Math.floor(t);
+                if (row < 0 || row >= rows) {
+                    // 内圆以内或外圆以外半个像素内仍可能被覆盖
+                    row = row < 0 ? 0 : rows - 1;
+                }
+                double offset = r - inner - row * band;
+                // 间隔后半部分更接近下一轨道的内缘
+                if (offset > (band + filled) / 2 && row + 1 < rows) {
+                    row++;
+                    offset -= band;
+                }
+                double coverage = Math.min(offset, filled - offset) / pixel + 0.5;
+                if (coverage <= 0) continue;
+                double angle = Math.atan2(dy, dx) - start;
+                angle -= Math.floor(angle / (2 * Math.PI)) * 2 * Math.PI;
+                if (arc < 2 * Math.PI) {
+                    double edge = angle <= arc ? Math.min(angle, arc - angle)
+                            : Math.max(angle - 2 * Math.PI, arc - angle);
+                    coverage = Math.min(coverage, edge * r / pixel + 0.5);
+                    if (coverage <= 0) continue;
+                }
+                int bin = Math.min(bins - 1, (int) (Math.min(angle, arc) / arc * bins));
+                int color = raster[row * bins + bin];
+                int alpha = color >>> 24;
+                if (alpha == 0) continue;
+                if (coverage < 1) alpha = (int) (alpha * coverage + 0.5);
+                pixels[y * imageWidth + x] = (alpha << 24) | (color & 0xffffff);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * 在中心空白处绘制色标与数值范围
+     */
+    private void paintLegend(Graphics2D graphics, int[] lut, float[] range, double inner) {
+        int fontSize = labelFontSize();
+        if (inner < fontSize * 4) return;
+        BufferedImage bar = new BufferedImage(LUT_SIZE, 1, BufferedImage.TYPE_INT_ARGB);
+        bar.setRGB(0, 0, LUT_SIZE, 1, lut, 0, LUT_SIZE);
+        double barWidth = inner, barHeight = fontSize;
+        double x = width / 2.0 - barWidth / 2, y = height / 2.0 - barHeight;
+        AffineTransform transform = AffineTransform.getTranslateInstance(x, y);
+        transform.scale(barWidth / LUT_SIZE, barHeight);
+        graphics.drawImage(bar, transform, null);
+        graphics.setColor(Constant.DEFAULT_FONT_COLOR);
+        graphics.setFont(ImageTool.getFont(fontFamily, fontStyle, fontSize));
+        DrawTool.drawText(graphics, format(range[0]), x, y + barHeight, "l", "u");
+        DrawTool.drawText(graphics, format(range[1]), x + barWidth, y + barHeight, "r", "u");
+    }
+
+    private static String format(float value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e7 ? Long.toString((long) value)
+                : String.format("%.3g", value);
+    }
+
+    /**
+     * 轨道名位于起始角度处，右对齐于起点之前
+     */
+    private Rectangle2D labelBounds(String label, FontMetrics metrics, double middle) {
+        double theta = Math.toRadians(startAngle);
+        double x = width / 2.0 + Math.cos(theta) * middle - 4 - metrics.stringWidth(label);
+        double y = height / 2.0 + Math.sin(theta) * middle - metrics.getHeight() / 2.0;
+        return new Rectangle2D.Double(x, y, metrics.stringWidth(label), metrics.getHeight());
+    }
+
+    private FontMetrics labelMetrics() {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scratch.createGraphics();
+        FontMetrics metrics = graphics.getFontMetrics(ImageTool.getFont(fontFamily, fontStyle, labelFontSize()));
+        graphics.dispose();
+        return metrics;
+    }
+
+    private int labelFontSize() {
+        return Math.max(1, Math.min(width, height) / 60);
+    }
+
+    /**
+     * 按颜色节点线性插值生成颜色查找表
+     */
+    private int[] lut() {
+        Color[] colors = colorSet;
+        int[] lut = new int[LUT_SIZE];
+        for (int i = 0; i < LUT_SIZE; i++) {
+            double position = (double) i / (LUT_SIZE - 1) * (colors.length - 1);
+            int index = Math.min(colors.length - 2, (int) position);
+            double ratio = position - index;
+            Color a = colors[index], b = colors[index + 1];
+            lut[i] = 0xff000000
+                    | (int) Math.round(a.getRed() + (b.getRed() - a.getRed()) * ratio) << 16
+                    | (int) Math.round(a.getGreen() + (b.getGreen() - a.getGreen()) * ratio) << 8
+                    | (int) Math.round(a.getBlue() + (b.getBlue() - a.getBlue()) * ratio);
+        }
+        return lut;
+    }
+
+    private float[] range(Dataset data) {
+        float[] range = valueRange;
+        return range != null ? range : new float[] { data.min, data.max };
+    }
+
+    private double radius() {
+        return Math.min(width, height) * 0.44;
+    }
+
+    /**
+     * 不可变数据集，数值按行优先存储于一维数组
+     */
+    private static class Dataset implements Serializable {
+        private static final long serialVersionUID = 202210192130002L;
+        private final String[] labels;
+        private final int columns;
+        private final float[] values;
+        /**
+         * 各轨道的均值，无数值时为NaN
+         */
+        private final double[] means;
+        private final float min;
+        private final float max;
+
+        private Dataset(String[] labels, int columns, float[] values) {
+            this.labels = labels;
+            this.columns = columns;
+            this.values = values;
+            this.means = new double[labels.length];
+            float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+            for (int row = 0; row < labels.length; row++) {
+                double sum = 0;
+                int count = 0;
+                for (int i = row * columns; i < (row + 1) * columns; i++) {
+                    float value = values[i];
+                    if (Float.isNaN(value)) continue;
+                    sum += value;
+                    count++;
+                    if (value < min) min = value;
+                    if (value > max) max = value;
+                }
+                means[row] = count > 0 ? sum / count : Double.NaN;
+            }
+            this.min = min <= max ? min : 0;
+            this.max = min <= max ? max : 0;
+        }
+    }
+}
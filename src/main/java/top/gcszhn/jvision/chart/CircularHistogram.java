@@ -16,40 +16,96 @@
 package top.gcszhn.jvision.chart;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 
-import java.io.FileNotFoundException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
+import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 
 import lombok.Getter;
 import lombok.Setter;
 import top.gcszhn.jvision.Constant;
 import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.RenderEstimate;
 import top.gcszhn.jvision.Stage;
+import top.gcszhn.jvision.jfr.ChartLoadEvent;
+import top.gcszhn.jvision.metrics.RenderMetrics;
 import top.gcszhn.jvision.tools.BasicTool;
 import top.gcszhn.jvision.tools.CreateGraphics;
 import top.gcszhn.jvision.tools.DrawTool;
+import top.gcszhn.jvision.tools.ImagePool;
+import top.gcszhn.jvision.tools.ImageTool;
+import top.gcszhn.jvision.tools.LabelGrid;
+import top.gcszhn.jvision.tools.PolarRasterizer;
+import top.gcszhn.jvision.tools.StaticLayerCache;
 
 /**
- * 绘制环状柱形图的业务实现类
+ * 绘制环状柱形图的业务实现类。数据加载后以不可变数据集发布，绘制过程不修改对象状态，
+ * 因此同一对象可在多个线程中并发绘制。
  * 
  * @version 2.0
  * @since 14 2021-02-04
  * @author <a href="mailto:zhanghn@zju.edu.cn">Zhang Hongning</a>
  */
-public class CircularHistogram implements JChart {
+public class CircularHistogram implements SectorChart {
     private static final long serialVersionUID = 202207132326054L;
+    /**
+     * 渐进绘制各预览阶段的抽样行数
+     */
+    private static final int[] PREVIEW_ROWS = { 1000, 10000 };
+    /**
+     * 渐进绘制各预览阶段的图像宽度
+     */
+    private static final int[] PREVIEW_WIDTHS = { 800, 1600 };
+    /**
+     * 预览图中样本标签数上限
+     */
+    private static final int PREVIEW_LABELS = 180;
+    /**
+     * 瓦片金字塔的瓦片边长，单位为像素
+     */
+    public static final int TILE_SIZE = 256;
+    /**
+     * 所有环形柱状图共享的静态图层缓存
+     */
+    private static final StaticLayerCache STATIC_LAYERS = new StaticLayerCache(64L << 20);
     private @Getter @Setter String fontFamily = Constant.DEFAULT_FONT_FAMILY;
     private @Getter @Setter int fontStyle = Constant.DEFAULT_FONT_STYLE;
-    private @Getter int width;
-    private @Getter int height;
+    /**
+     * 是否输出逐字节确定的pdf与eps，相同数据与设置得到相同字节，默认关闭
+     */
+    private @Getter @Setter boolean deterministic = false;
     /** Background color */
     private Color bgColor = Constant.DEFAULT_BACKGROUND_COLOR;
     /**
@@ -57,7 +113,7 @@ public class CircularHistogram implements JChart {
      */
     private Color fontColor = Constant.DEFAULT_FONT_COLOR;
     /**
-     * 总角度为340°, 但应满足totalAngle + 2*angle 不超过360，否则会对totalAngle自动调整
+     * 总角度为340°, 但应满足totalAngle + 2*angle 不超过360，否则绘制时会自动调整所用的总角度
      */
     private double totalAngle = 340;
     /**
@@ -74,7 +130,7 @@ public class CircularHistogram implements JChart {
             new Color(186, 186, 186)// 灰色 #BABABA
     };
     /**
-     * 图例文本字符串组，第一个元素为图例标题，其余为各项文本
+     * 自定义图例文本字符串组，第一个元素为图例标题，其余为各项文本。为null时使用数据集中的图例
      */
     private String[] legendTextSet = null;
     /**
@@ -82,18 +138,21 @@ public class CircularHistogram implements JChart {
      */
     private double maxValue = 40;
     /**
-     * 2D绘图对象，用于绘制图形
+     * 当前数据集，每次加载整体替换
      */
-    private Graphics2D graphics = null;
+    private volatile Dataset dataset = null;
     /**
-     * 输入数据存储ArrayList，元素类型为Object[]
-     * Object[]对象length固定为6，依次为String, int, int, int, int, int
+     * 最近一次标签放置的结果
      */
-    private ArrayList<Object[]> criteriaList = new ArrayList<>();
+    private transient volatile LabelPlacement labelPlacement = null;
     /**
      * 对jpg图像进行dpi设置，单位为像素/英寸
      */
-    private int dpi = 360;
+    private @Getter int dpi = 360;
+    /**
+     * 输出png与jpg及绘制瓦片时，柱形与中心圆是否由{@link PolarRasterizer}直接写入像素，默认使用Java2D绘制
+     */
+    private @Getter @Setter boolean analyticRaster = false;
 
     /**
      * 设置jpg图像的输出dpi，单位为像素/英寸，包括纵向和横向dpi
@@ -109,7 +168,7 @@ public class CircularHistogram implements JChart {
     }
 
     /**
-     * 设置图例文本
+     * 设置图例文本，已设置时忽略
      * 
      * @param args 新的图例文本字符串组
      * @throws JvisionException
@@ -117,27 +176,24 @@ public class CircularHistogram implements JChart {
     public void setLegendTextSet(Iterator<String> args, int length) throws JvisionException {
         if (legendTextSet == null) {
             try {
-                legendTextSet = new String[length];
+                String[] legends = new String[length];
                 for (int i = 0; i < length; i++) {
-                    legendTextSet[i] = args.next();
+                    legends[i] = args.next();
                 }
+                legendTextSet = legends;
             } catch (NoSuchElementException e) {
                 throw new JvisionException("Load legend failed", e, Stage.DATA_LOADING);
             }
         }
     }
     /**
-     * 设置图例文件
+     * 设置默认图例文本，已设置时忽略
      * 
      * @param length 输入未定义图例时自定设置图例文本
      */
     public void setLegendTextSet(Integer length) {
         if (legendTextSet == null) {
-            legendTextSet = new String[length];
-            legendTextSet[0] = "Label";
-            for (int i = 1; i < length; i++) {
-                legendTextSet[i] = "Label " + i;
-            }
+            legendTextSet = defaultLegendTextSet(length);
         }
     }
 
@@ -201,34 +257,18 @@ public class CircularHistogram implements JChart {
     }
 
     /**
-     * 对数组进行排序，仅对内部数组使用
+     * 生成默认图例文本
      * 
-     * @param arraylist 待排序数组
-     * @param order     boolean值，true为升序，false为降序
-     * @return 排序后产生的ArrayList
+     * @param length 图例文本数量，包括标题
+     * @return 默认图例文本字符串组
      */
-    private static ArrayList<Object[]> sorted(ArrayList<Object[]> arraylist, boolean order) {
-        ArrayList<Object[]> res = new ArrayList<Object[]>();
-        @SuppressWarnings("unchecked")
-        ArrayList<Object[]> list = (ArrayList<Object[]>) arraylist.clone();
-        int length = list.size();
-        if (length > 0) {
-            for (int index = 0; index < length; index++) {
-                Object[] value = list.get(0);
-                for (Object[] e : list) {
-                    if (order) {
-                        if ((double) value[1] > (double) e[1])
-                            value = e;
-                    } else {
-                        if ((double) value[1] < (double) e[1])
-                            value = e;
-                    }
-                }
-                res.add(value);
-                list.remove(list.indexOf(value));
-            }
+    private static String[] defaultLegendTextSet(int length) {
+        String[] legends = new String[length];
+        legends[0] = "Label";
+        for (int i = 1; i < length; i++) {
+            legends[i] = "Label " + i;
         }
-        return res;
+        return legends;
     }
 
     @Override
@@ -237,88 +277,190 @@ public class CircularHistogram implements JChart {
     }
 
     /**
-     * 加载数据
+     * 加载数据，替换已加载的数据集
      * 
      * @param file     输入文件名
      * @param hasTitle 是否包含标题
-     * @param cutoff   筛选值，取前cutoff名保留
-     * @throws FileNotFoundException 文件缺失异常
-     * @throws IOException           输入输出异常
+     * @param cutoff   筛选值，取前cutoff名保留，为null时保留全部
+     * @param isSorted 是否按总值降序排序
+     * @throws JvisionException 读取或解析异常
      */
     public void loadData(String file, Boolean hasTitle, Integer cutoff, boolean isSorted) throws JvisionException {
-        if (cutoff <= 1) throw new JvisionException("Cutoff should be more than 1.", null, Stage.DATA_LOADING);
-        Iterable<CSVRecord> records;
+        if (cutoff != null && cutoff <= 1) throw new JvisionException("Cutoff should be more than 1.", null, Stage.DATA_LOADING);
+        Reader reader;
         try {
-            records = BasicTool.readCSV(file);
+            reader = new FileReader(file);
         } catch (IOException e) {
             throw new JvisionException("Read CSV file error.", e, Stage.DATA_LOADING);
         }
-        for (CSVRecord record: records) {
-            if (record.size() < 2) {
-                throw new JvisionException("Input data should at least two columns.", null, Stage.DATA_LOADING);
+        loadData(reader, hasTitle, cutoff, isSorted);
+    }
 
-            }
-            if (hasTitle) {
-                hasTitle = false;
-                setLegendTextSet(record.iterator(), record.size());
-                continue;
-            }
-            setLegendTextSet(record.size());
-            String label = record.get(0);
-            double Ct = 0.0;
-            Object[] criteria = new Object[record.size() + 1];
-            criteria[0] = label;
-            for (int i = 1; i < record.size(); i++) {
-                try {
-                    double curr = Double.parseDouble(record.get(i));
-                    Ct += curr;
-                    criteria[i + 1] = curr;
-                } catch (NumberFormatException ex) {
-                    throw new JvisionException("Input data should be numeric.", null, Stage.DATA_LOADING);
+    @Override
+    public void loadData(Reader reader) throws JvisionException {
+        loadData(reader, true, null, false);
+    }
+
+    /**
+     * 从字符流加载数据，替换已加载的数据集，加载后关闭字符流
+     * 
+     * @param reader   CSV字符流
+     * @param hasTitle 是否包含标题
+     * @param cutoff   筛选值，取前cutoff名保留，为null时保留全部
+     * @param isSorted 是否按总值降序排序
+     * @throws JvisionException 读取或解析异常
+     */
+    public void loadData(Reader reader, Boolean hasTitle, Integer cutoff, boolean isSorted) throws JvisionException {
+        ChartLoadEvent event = new ChartLoadEvent();
+        event.begin();
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HISTOGRAM)) {
+            RenderMetrics.enter(Stage.DATA_LOADING);
+            long charsRead = metrics.getBytesRead(Stage.DATA_LOADING);
+            Dataset data = parse(reader, hasTitle, cutoff, isSorted);
+            RenderMetrics.rows(data.rows.size());
+            dataset = data;
+            event.setRows(data.rows.size());
+            event.setCharsRead(metrics.getBytesRead(Stage.DATA_LOADING) - charsRead);
+        } finally {
+            event.setChartType(ChartSpec.CIRCULAR_HISTOGRAM);
+            event.commit();
+        }
+    }
+
+    private Dataset parse(Reader reader, Boolean hasTitle, Integer cutoff, boolean isSorted) throws JvisionException {
+        if (cutoff != null && cutoff <= 1) throw new JvisionException("Cutoff should be more than 1.", null, Stage.DATA_LOADING);
+        String[] legends = null;
+        ArrayList<Object[]> criteriaList = new ArrayList<>();
+        try (CSVParser records = BasicTool.readCSV(reader)) {
+            for (CSVRecord record: records) {
+                if (record.size() < 2) {
+                    throw new JvisionException("Input data should at least two columns.", null, Stage.DATA_LOADING);
+
+                }
+                if (hasTitle) {
+                    hasTitle = false;
+                    legends = new String[record.size()];
+                    for (int i = 0; i < legends.length; i++) {
+                        legends[i] = record.get(i);
+                    }
+                    continue;
+                }
+                if (legends == null)
+                    legends = defaultLegendTextSet(record.size());
+                String label = record.get(0);
+                double Ct = 0.0;
+                Object[] criteria = new Object[record.size() + 1];
+                criteria[0] = label;
+                for (int i = 1; i < record.size(); i++) {
+                    try {
+                        double curr = Double.parseDouble(record.get(i));
+                        Ct += curr;
+                        criteria[i + 1] = curr;
+                    } catch (NumberFormatException ex) {
+                        throw new JvisionException("Input data should be numeric.", null, Stage.DATA_LOADING);
+                    }
                 }
+                criteria[1] = Ct;
+                criteriaList.add(criteria);
             }
-            criteria[1] = Ct;
-            criteriaList.add(criteria);
+        } catch (IOException e) {
+            throw new JvisionException("Read CSV file error.", e, Stage.DATA_LOADING);
         }
 
-        if (isSorted)
-            criteriaList = sorted(criteriaList, false);
+        if (isSorted) // 稳定排序，总值相同时保持输入顺序
+            criteriaList.sort((a, b) -> Double.compare((double) b[1], (double) a[1]));
         if (cutoff != null) {
             if (cutoff > criteriaList.size()) {
                 System.err.println("cutoff value is more than all data and will be reset as " + criteriaList.size());
                 cutoff = criteriaList.size();
             }
-            ArrayList<Object[]> selectList = new ArrayList<>();
-            for (int index = 0; index < cutoff && index < criteriaList.size(); index++)
-                selectList.add(criteriaList.get(index));
-            criteriaList = selectList;
+            criteriaList = new ArrayList<>(criteriaList.subList(0, cutoff));
+        }
+        return new Dataset(Collections.unmodifiableList(criteriaList), legends);
+    }
+
+    /**
+     * 获取已加载的数据集
+     * 
+     * @return 数据集
+     * @throws JvisionException 未加载数据
+     */
+    private Dataset checkData() throws JvisionException {
+        Dataset data = dataset;
+        if (data == null || data.rows.isEmpty()) {
+            throw new JvisionException("No data loaded", null, Stage.DATA_LOADING);
         }
+        return data;
     }
 
     /**
      * 对Graphics2D对象进行绘制环形柱状图，Grraphics2D类不同子类绘制结果类型不同
      * 
-     * @param baseR    绘制图最内环半径，为基础半径
-     * @param fontSize 标签字体字号
-     * @param width    画布宽度
-     * @param height   画布高度
-     * @param angle    旋转绘制角度步长，单位为度，正数为顺时针旋转
-     * @throws Exception 相关异常
+     * @param graphics 绘图对象
+     * @param data     数据集
+     * @param layout   绘图布局
+     */
+    private void paint(Graphics2D graphics, Dataset data, Layout layout) {
+        paint(graphics, data, layout, 1, null);
+    }
+
+    /**
+     * 绘制环形柱状图，每labelStep行绘制一个样本标签，给定可见区域时跳过区域外的柱形与标签
+     * 
+     * @param graphics  绘图对象
+     * @param data      数据集
+     * @param layout    绘图布局
+     * @param labelStep 标签间隔行数，1为绘制全部标签
+     * @param visible   可见区域，为布局坐标，null为绘制全部
+     */
+    private void paint(Graphics2D graphics, Dataset data, Layout layout, int labelStep, Rectangle2D visible) {
+        paintBackground(graphics, layout);
+        paintData(graphics, data, layout, labelStep, visible);
+        paintLegend(graphics, legends(data), columns(data), layout);
+    }
+
+    /**
+     * 绘制数据图层，包括各圈柱形、中心圆与样本标签
+     * 
+     * @param graphics  绘图对象
+     * @param data      数据集
+     * @param layout    绘图布局
+     * @param labelStep 标签间隔行数，1为绘制全部标签
+     * @param visible   可见区域，为布局坐标，null为绘制全部
      */
-    private void draw(int baseR, int fontSize, int barWidth, int width, int height, double angle) {
+    private void paintData(Graphics2D graphics, Dataset data, Layout layout, int labelStep, Rectangle2D visible) {
+        paintData(graphics, data, layout, labelStep, visible, null);
+    }
+
+    /**
+     * 绘制数据图层，柱形与中心圆可由光栅化器直接写入像素
+     * 
+     * @param graphics  绘图对象
+     * @param data      数据集
+     * @param layout    绘图布局
+     * @param labelStep 标签间隔行数，1为绘制全部标签
+     * @param visible   可见区域，为布局坐标，null为绘制全部
+     * @param raster    与绘图对象同一图像的光栅化器，null时使用Java2D绘制
+     */
+    private void paintData(Graphics2D graphics, Dataset data, Layout layout, int labelStep, Rectangle2D visible,
+            PolarRasterizer raster) {
+        List<Object[]> criteriaList = data.rows;
+        int baseR = layout.r;
+        int fontSize = layout.fontSize;
+        int barWidth = layout.barWidth;
+        int width = layout.width;
+        int height = layout.height;
+        double angle = layout.angle;
+        double totalAngle = layout.totalAngle;
         int center_x = width - height / 2;
         int center_y = height / 2;
         double baseAngle = 450 - totalAngle;
-        /*
-         * clear graphics
-         */
-        graphics.setBackground(bgColor);
-        graphics.clearRect(0, 0, width, height);
         /*
          * add multiple layers circle histogram
          */
         int r = baseR;
         Object[] obj = criteriaList.get(0);
+        graphics.setFont(ImageTool.getFont(getFontFamily(), getFontStyle(), fontSize));
         for (int i = 0; i < obj.length - 2; i++) {
             for (int index = 0; index < criteriaList.size(); index++) {
                 obj = criteriaList.get(index);
@@ -328,9 +470,19 @@ public class CircularHistogram implements JChart {
                     System.err.println(length + "\t" + currentValue);
                     length = baseR;
                 }
+                if (visible != null && !intersects(visible, center_x, center_y, baseAngle + index * angle,
+                        0, 1, r, r + length, barWidth / 2.0))
+                    continue;
                 int colorindex = obj.length - 3 - i;// 最大圈颜色用索引最小值
                 while (colorindex >= barColorSet.length)
                     colorindex -= barColorSet.length;
+                if (raster != null) {
+                    // 与drawSimpleBar一致，宽度补为偶数
+                    raster.fillBar(center_x, center_y, baseAngle + index * angle, r, r + length,
+                            (barWidth + barWidth % 2) / 2.0, barColorSet[colorindex]);
+                    RenderMetrics.primitives(1);
+                    continue;
+                }
                 graphics.setColor(barColorSet[colorindex]);
                 DrawTool.drawSimpleBar(
                         graphics,
@@ -347,18 +499,31 @@ public class CircularHistogram implements JChart {
          * add center white circle
          */
         int ir = (int) (Math.sqrt(1.0 * baseR * baseR + barWidth * barWidth / 4.0) + 0.5);
-        graphics.setColor(bgColor);
-        graphics.fillOval(center_x - ir, center_y - ir, 2 * (int) ir, 2 * ir);
+        if (raster != null) {
+            raster.fillSector(center_x, center_y, 0, ir, 0, 360, bgColor);
+        } else {
+            graphics.setColor(bgColor);
+            graphics.fillOval(center_x - ir, center_y - ir, 2 * ir, 2 * ir);
+        }
+        RenderMetrics.primitives(1);
         /*
          * add sample label
          */
         r += baseR / 10;// 定义外围标签与图间距为r/50
-        for (int index = 0; index < criteriaList.size(); index++) {
+        FontMetrics metrics = graphics.getFontMetrics();
+        boolean[] placed = placeLabels(data, layout);
+        for (int index = 0; index < criteriaList.size(); index += labelStep) {
+            if (!placed[index])
+                continue;
             double currentAngle = 360 - totalAngle + index * angle;
+            String label = (String) criteriaList.get(index)[0];
+            if (visible != null && !intersects(visible, center_x, center_y, currentAngle,
+                    -1, 0, r, r + metrics.stringWidth(label) + 1, metrics.getHeight() / 2.0 + 1))
+                continue;
             graphics.setColor(fontColor);
             DrawTool.rotateText(
                     graphics,
-                    (String) criteriaList.get(index)[0],
+                    label,
                     center_x,
                     center_y,
                     currentAngle, // (currentAngle <= 90 || currentAngle>=270)?currentAngle:currentAngle - 180,
@@ -367,18 +532,113 @@ public class CircularHistogram implements JChart {
                     "m", // (currentAngle <= 90 || currentAngle>=270)?"r":"l",
                     false);
         }
+    }
+
+    /**
+     * 放置样本标签。按总值从大到小依次计算各标签旋转后的范围，与已放置标签重叠的标签不绘制，
+     * 结果按数据集与布局缓存
+     * 
+     * @param data   数据集
+     * @param layout 绘图布局
+     * @return 各行标签是否绘制
+     */
+    private boolean[] placeLabels(Dataset data, Layout layout) {
+        String key = labelKey(layout);
+        LabelPlacement cached = labelPlacement;
+        if (cached != null && cached.data == data && cached.key.equals(key))
+            return cached.placed;
+        List<Object[]> criteriaList = data.rows;
+        int size = criteriaList.size();
+        Integer[] order = new Integer[size];
+        boolean sorted = true;
+        for (int index = 0; index < size; index++) {
+            order[index] = index;
+            if (index > 0 && (double) criteriaList.get(index)[1] > (double) criteriaList.get(index - 1)[1])
+                sorted = false;
+        }
+        if (!sorted) // 已按总值降序加载时无需排序
+            Arrays.sort(order, (a, b) -> Double.compare((double) criteriaList.get(b)[1], (double) criteriaList.get(a)[1]));
+        FontMetrics metrics = labelMetrics(layout);
+        int labelR = labelRadius(layout, columns(data));
+        int centerX = layout.width - layout.height / 2;
+        int centerY = layout.height / 2;
+        double halfHeight = metrics.getHeight() / 2.0;
+        LabelGrid grid = new LabelGrid(Math.max(metrics.getHeight(), metrics.getMaxAdvance() * 4));
+        boolean[] placed = new boolean[size];
+        for (int index : order) {
+            String label = (String) criteriaList.get(index)[0];
+            double halfWidth = metrics.stringWidth(label) / 2.0;
+            double currentAngle = 360 - layout.totalAngle + index * layout.angle;
+            double theta = Math.toRadians(currentAngle);
+            double distance = labelR + halfWidth;
+            placed[index] = grid.place(centerX - Math.cos(theta) * distance, centerY - Math.sin(theta) * distance,
+                    halfWidth, halfHeight, currentAngle);
+        }
+        labelPlacement = new LabelPlacement(data, key, placed);
+        return placed;
+    }
+
+    /**
+     * 标签放置的缓存键，包括影响标签位置与尺寸的布局与字体
+     */
+    private String labelKey(Layout layout) {
+        return String.join("|", String.valueOf(layout.width), String.valueOf(layout.height),
+                String.valueOf(layout.r), String.valueOf(layout.fontSize), String.valueOf(layout.angle),
+                String.valueOf(layout.totalAngle), fontFamily, String.valueOf(fontStyle));
+    }
+
+    /**
+     * 样本标签的字体度量，与输出类型无关以保证各格式的标签放置一致
+     */
+    private FontMetrics labelMetrics(Layout layout) {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scratch.createGraphics();
+        FontMetrics metrics = graphics.getFontMetrics(ImageTool.getFont(getFontFamily(), getFontStyle(), layout.fontSize));
+        graphics.dispose();
+        return metrics;
+    }
+
+    /**
+     * 样本标签内侧到中心的距离
+     */
+    private static int labelRadius(Layout layout, int columns) {
+        return layout.r * (columns + 1) + layout.r / 10;
+    }
+
+    /**
+     * 以背景色清空画布
+     * 
+     * @param graphics 绘图对象
+     * @param layout   绘图布局
+     */
+    private void paintBackground(Graphics2D graphics, Layout layout) {
+        graphics.setBackground(bgColor);
+        graphics.clearRect(0, 0, layout.width, layout.height);
+    }
+
+    /**
+     * 绘制与数据值无关的图例，位于数据图层之上
+     * 
+     * @param graphics      绘图对象
+     * @param legendTextSet 图例文本，第一个元素为图例标题
+     * @param columns       数值列数
+     * @param layout        绘图布局
+     */
+    private void paintLegend(Graphics2D graphics, String[] legendTextSet, int columns, Layout layout) {
+        int width = layout.width;
+        int height = layout.height;
         /*
          * add legend
          */
         int legendX = width / 25;
         int legendY = height / 15;
-        fontSize = height / 50;
-        Font legendFont = new Font(getFontFamily(), getFontStyle(), fontSize);// 用默认字体
+        int fontSize = height / 50;
+        Font legendFont = ImageTool.getFont(getFontFamily(), getFontStyle(), fontSize);// 用默认字体
         graphics.setFont(legendFont);
         graphics.setColor(fontColor);
         DrawTool.drawText(graphics, legendTextSet[0], legendX, legendY, "l", "m");
-        graphics.setFont(new Font(getFontFamily(), getFontStyle(), fontSize * 2 / 3));
-        for (int i = 0; i < obj.length - 2; i++) {
+        graphics.setFont(ImageTool.getFont(getFontFamily(), getFontStyle(), fontSize * 2 / 3));
+        for (int i = 0; i < columns; i++) {
             int colorIndex = i;
             while (colorIndex >= barColorSet.length)
                 colorIndex -= barColorSet.length;
@@ -401,22 +661,412 @@ public class CircularHistogram implements JChart {
         }
     }
 
+    /**
+     * 图例所占范围，从画布左上角开始，并留出一个字号的余量
+     * 
+     * @param graphics      绘图对象，用于度量文本
+     * @param legendTextSet 图例文本
+     * @param columns       数值列数
+     * @param layout        绘图布局
+     * @return 图例范围
+     */
+    private Rectangle legendBounds(Graphics2D graphics, String[] legendTextSet, int columns, Layout layout) {
+        int legendX = layout.width / 25;
+        int legendY = layout.height / 15;
+        int fontSize = layout.height / 50;
+        FontMetrics titleMetrics = graphics.getFontMetrics(ImageTool.getFont(getFontFamily(), getFontStyle(), fontSize));
+        FontMetrics itemMetrics = graphics.getFontMetrics(ImageTool.getFont(getFontFamily(), getFontStyle(), fontSize * 2 / 3));
+        int right = legendX + titleMetrics.stringWidth(legendTextSet[0]);
+        for (int i = 0; i < columns; i++) {
+            right = Math.max(right, legendX + fontSize * 3 / 2 + itemMetrics.stringWidth(legendTextSet[i + 1]));
+        }
+        int bottom = legendY + columns * fontSize * 5 / 4 + Math.max(fontSize, titleMetrics.getHeight());
+        return new Rectangle(0, 0, right + fontSize, bottom + fontSize);
+    }
+
+    /**
+     * 静态图层的缓存键，包括除画布尺寸与输出类型外影响静态图层的全部设置
+     */
+    private String staticKey(String[] legendTextSet, int columns) {
+        StringBuilder key = new StringBuilder(getClass().getName());
+        key.append('|').append(fontFamily).append('|').append(fontStyle)
+                .append('|').append(bgColor.getRGB()).append('|').append(fontColor.getRGB())
+                .append('|').append(columns);
+        for (Color color : barColorSet) key.append('|').append(color.getRGB());
+        for (String text : legendTextSet) key.append('|').append(text.length()).append(':').append(text);
+        return key.toString();
+    }
+
+    /**
+     * 绘制使用的图例文本，未自定义时使用数据集中的图例
+     */
+    private String[] legends(Dataset data) {
+        return this.legendTextSet != null ? this.legendTextSet : data.legends;
+    }
+
+    /**
+     * 数值列数，与绘制的柱形圈数一致
+     */
+    private static int columns(Dataset data) {
+        return data.rows.get(data.rows.size() - 1).length - 2;
+    }
+
+    /**
+     * 判断绕中心旋转后的径向图形是否与可见区域相交。图形在未旋转时沿方向(dx, dy)
+     * 从距中心from延伸至to，两侧各宽halfWidth，按其外接矩形保守判断
+     * 
+     * @param visible      可见区域
+     * @param centerX      旋转中心横坐标
+     * @param centerY      旋转中心纵坐标
+     * @param rotateDegree 旋转角度，单位为度，正数为顺时针旋转
+     * @param dx           未旋转时的方向横分量
+     * @param dy           未旋转时的方向纵分量
+     * @param from         起始距离
+     * @param to           终止距离
+     * @param halfWidth    半宽
+     * @return 是否可能相交
+     */
+    private static boolean intersects(Rectangle2D visible, double centerX, double centerY, double rotateDegree,
+            double dx, double dy, double from, double to, double halfWidth) {
+        double theta = Math.toRadians(rotateDegree);
+        double cos = Math.cos(theta);
+        double sin = Math.sin(theta);
+        double ux = dx * cos - dy * sin;
+        double uy = dx * sin + dy * cos;
+        double x1 = centerX + ux * from, y1 = centerY + uy * from;
+        double x2 = centerX + ux * to, y2 = centerY + uy * to;
+        return visible.intersects(
+                Math.min(x1, x2) - halfWidth,
+                Math.min(y1, y2) - halfWidth,
+                Math.abs(x2 - x1) + 2 * halfWidth,
+                Math.abs(y2 - y1) + 2 * halfWidth);
+    }
+
     /**
      * 绘制环形柱状图
      * 
-     * @param file     输出文件基础名，与维度，类型一起构成完整文件名
-     * @param autoSize 是否自动调整尺寸，仅对jpg格式有效
-     * @throws JvisionException
-     * @throws IOException      输入输出异常
-     * @throws Exception        其他异常
+     * @param file     输出文件名，扩展名决定输出类型
+     * @param autoSize 是否自动调整尺寸，仅对jpg格式有效，null视为false
+     * @throws JvisionException 绘制或输出异常
      */
     public void draw(String file, Boolean autoSize) throws JvisionException {
-        String type = BasicTool.getFileExtName(file);
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HISTOGRAM)) {
+            Dataset data = checkData();
+            String type = BasicTool.getFileExtName(file).toLowerCase();
+            Layout layout = layout(data, type, Boolean.TRUE.equals(autoSize));
+            try (CreateGraphics cg = new CreateGraphics(layout.width, layout.height, type, file, deterministic)) {
+                draw(cg, data, layout);
+            }
+        }
+    }
+
+    /**
+     * 绘制环形柱状图到输出流，输出流不会被关闭
+     * 
+     * @param out      输出流
+     * @param type     输出类型，如png、jpg、pdf、eps
+     * @param autoSize 是否自动调整尺寸，仅对jpg格式有效，null视为false
+     * @throws JvisionException 绘制或输出异常
+     */
+    public void draw(OutputStream out, String type, Boolean autoSize) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HISTOGRAM)) {
+            Dataset data = checkData();
+            type = type.toLowerCase();
+            Layout layout = layout(data, type, Boolean.TRUE.equals(autoSize));
+            try (CreateGraphics cg = new CreateGraphics(layout.width, layout.height, type, out, deterministic)) {
+                draw(cg, data, layout);
+            }
+        }
+    }
+
+    /**
+     * 渐进绘制：先按数据的水塘抽样绘制低分辨率预览，预览关闭抗锯齿并减少标签，
+     * 依次以更多的抽样行数细化，最后输出与{@link #draw(OutputStream, String, Boolean)}
+     * 相同的完整结果。数据行数不超过抽样行数的阶段会被跳过
+     * 
+     * @param out      输出流，不会被关闭
+     * @param type     输出类型，如png、jpg、pdf、eps
+     * @param autoSize 是否自动调整尺寸，仅对jpg格式有效，null视为false
+     * @param listener 接收各阶段预览图
+     * @throws JvisionException 绘制或输出异常
+     */
+    public void drawProgressive(OutputStream out, String type, Boolean autoSize, PreviewListener listener)
+            throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HISTOGRAM)) {
+            Dataset data = checkData();
+            int stage = 0;
+            for (int i = 0; i < PREVIEW_ROWS.length && PREVIEW_ROWS[i] < data.rows.size(); i++) {
+                BufferedImage image = preview(sample(data, PREVIEW_ROWS[i]), PREVIEW_WIDTHS[i]);
+                listener.preview(image, stage++, PREVIEW_ROWS[i], data.rows.size());
+            }
+            type = type.toLowerCase();
+            Layout layout = layout(data, type, Boolean.TRUE.equals(autoSize));
+            try (CreateGraphics cg = new CreateGraphics(layout.width, layout.height, type, out, deterministic)) {
+                draw(cg, data, layout);
+            }
+        }
+    }
+
+    /**
+     * 以快速绘制设置绘制预览图，画布按png布局缩放至指定宽度
+     * 
+     * @param data  抽样数据集
+     * @param width 预览图宽度
+     * @return 预览图
+     */
+    private BufferedImage preview(Dataset data, int width) {
+        Layout layout = layout(data, "png", false);
+        double scale = (double) width / layout.width;
+        BufferedImage image = new BufferedImage(width, (int) Math.round(layout.height * scale), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        graphics.scale(scale, scale);
+        paint(graphics, data, layout, Math.max(1, data.rows.size() / PREVIEW_LABELS), null);
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * 水塘抽样，保持原有行序，随机种子固定以使相同数据得到相同预览
+     * 
+     * @param data 数据集
+     * @param size 抽样行数，小于数据行数
+     * @return 抽样数据集
+     */
+    private static Dataset sample(Dataset data, int size) {
+        List<Object[]> rows = data.rows;
+        int[] reservoir = new int[size];
+        Random random = new Random(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            if (i < size) {
+                reservoir[i] = i;
+            } else {
+                int j = random.nextInt(i + 1);
+                if (j < size) reservoir[j] = i;
+            }
+        }
+        Arrays.sort(reservoir);
+        List<Object[]> sampled = new ArrayList<>(size);
+        for (int index : reservoir) {
+            sampled.add(rows.get(index));
+        }
+        return new Dataset(Collections.unmodifiableList(sampled), data.legends);
+    }
+
+    /**
+     * 接收渐进绘制的预览图
+     */
+    @FunctionalInterface
+    public interface PreviewListener {
+        /**
+         * @param image       预览图
+         * @param stage       预览序号，从0开始
+         * @param sampledRows 抽样行数
+         * @param totalRows   数据总行数
+         */
+        void preview(BufferedImage image, int stage, int sampledRows, int totalRows);
+    }
+
+    /**
+     * 瓦片金字塔的层数，最高层为jpg自动尺寸的完整画布，逐层减半至1像素，与Deep Zoom一致
+     * 
+     * @return 层数，未加载数据时为0
+     */
+    public int getTileLevels() {
+        Dataset data = dataset;
+        if (data == null || data.rows.isEmpty()) return 0;
+        return tileLevels(layout(data, "jpg", true));
+    }
+
+    private static int tileLevels(Layout layout) {
+        int size = Math.max(layout.width, layout.height);
+        return 33 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    /**
+     * 按需绘制瓦片金字塔中的一块瓦片，只绘制与瓦片相交的柱形与标签
+     * 
+     * @param level 层级，0至{@link #getTileLevels()}-1，最高层为完整分辨率
+     * @param col   列号
+     * @param row   行号
+     * @return 瓦片图像，边长不超过{@link #TILE_SIZE}
+     * @throws JvisionException 未加载数据或瓦片越界
+     */
+    public BufferedImage drawTile(int level, int col, int row) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HISTOGRAM)) {
+            Dataset data = checkData();
+            return drawTile(data, layout(data, "jpg", true), level, col, row);
+        }
+    }
+
+    /**
+     * 以Deep Zoom格式并行输出瓦片金字塔，瓦片为{@code <名称>_files/<层级>/<列>_<行>.png}
+     * 
+     * @param dziFile  描述文件名，如chart.dzi
+     * @param executor 绘制瓦片的线程池
+     * @throws JvisionException 绘制或输出异常
+     */
+    public void drawDeepZoom(String dziFile, Executor executor) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HISTOGRAM)) {
+            Dataset data = checkData();
+            Layout layout = layout(data, "jpg", true);
+            int levels = tileLevels(layout);
+            String name = dziFile.endsWith(".dzi") ? dziFile.substring(0, dziFile.length() - 4) : dziFile;
+            List<CompletableFuture<Void>> tiles = new ArrayList<>();
+            for (int level = 0; level < levels; level++) {
+                File dir = new File(name + "_files", String.valueOf(level));
+                if (!dir.isDirectory() && !dir.mkdirs())
+                    throw new JvisionException("Create tile directory failed: " + dir, null, Stage.GRAHPIC_SERIALIZATION);
+                int scale = 1 << (levels - 1 - level);
+                int cols = ((layout.width + scale - 1) / scale + TILE_SIZE - 1) / TILE_SIZE;
+                int rows = ((layout.height + scale - 1) / scale + TILE_SIZE - 1) / TILE_SIZE;
+                for (int col = 0; col < cols; col++) {
+                    for (int row = 0; row < rows; row++) {
+                        int l = level, c = col, r = row;
+                        String tileFile = new File(dir, col + "_" + row + ".png").getPath();
+                        tiles.add(CompletableFuture.runAsync(() -> {
+                            BufferedImage tile = null;
+                            try {
+                                tile = drawTile(data, layout, l, c, r);
+                                ImageTool.saveAsPNG(tile, tileFile, dpi);
+                            } catch (JvisionException e) {
+                                throw new CompletionException(e);
+                            } catch (IOException e) {
+                                throw new CompletionException(new JvisionException(
+                                        "Write tile failed: " + tileFile, e, Stage.GRAHPIC_SERIALIZATION));
+                            } finally {
+                                ImagePool.release(tile);
+                            }
+                        }, executor));
+                    }
+                }
+            }
+            try {
+                CompletableFuture.allOf(tiles.toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof JvisionException) throw (JvisionException) e.getCause();
+                throw new JvisionException("Draw tile failed", e.getCause(), Stage.GRAHPIC_PAINTING);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(name + ".dzi"), StandardCharsets.UTF_8)) {
+                writer.write(String.format("<?xml version=\"1.0\" encoding=\"UTF-8\"?>%n"
+                        + "<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\"png\" Overlap=\"0\" TileSize=\"%d\">%n"
+                        + "  <Size Width=\"%d\" Height=\"%d\"/>%n"
+                        + "</Image>%n", TILE_SIZE, layout.width, layout.height));
+            } catch (IOException e) {
+                throw new JvisionException("Write dzi file failed", e, Stage.GRAHPIC_SERIALIZATION);
+            }
+        }
+    }
+
+    /**
+     * 绘制一块瓦片，画布平移缩放后以瓦片在布局坐标中的范围剔除柱形与标签
+     * 
+     * @param data   数据集
+     * @param layout 完整分辨率的绘图布局
+     * @param level  层级
+     * @param col    列号
+     * @param row    行号
+     * @return 瓦片图像
+     * @throws JvisionException 瓦片越界
+     */
+    private BufferedImage drawTile(Dataset data, Layout layout, int level, int col, int row) throws JvisionException {
+        int levels = tileLevels(layout);
+        if (level < 0 || level >= levels)
+            throw new JvisionException("Tile level should between 0 and " + (levels - 1), null, Stage.GRAHPIC_INITIALIZATION);
+        int scale = 1 << (levels - 1 - level);
+        int levelWidth = (layout.width + scale - 1) / scale;
+        int levelHeight = (layout.height + scale - 1) / scale;
+        int x = col * TILE_SIZE;
+        int y = row * TILE_SIZE;
+        if (col < 0 || row < 0 || x >= levelWidth || y >= levelHeight)
+            throw new JvisionException("Tile " + col + "_" + row + " out of level " + level, null, Stage.GRAHPIC_INITIALIZATION);
+        int tileWidth = Math.min(TILE_SIZE, levelWidth - x);
+        int tileHeight = Math.min(TILE_SIZE, levelHeight - y);
+        BufferedImage image = ImagePool.borrow(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HRGB);
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.translate(-x, -y);
+        graphics.scale(1.0 / scale, 1.0 / scale);
+        Rectangle2D visible = new Rectangle2D.Double(
+                (double) x * scale, (double) y * scale, (double) tileWidth * scale, (double) tileHeight * scale);
+        graphics.clip(visible);
+        paintBackground(graphics, layout);
+        paintData(graphics, data, layout, 1, visible, analyticRaster ? PolarRasterizer.of(graphics, image) : null);
+        paintLegend(graphics, legends(data), columns(data), layout);
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * 获取指定输出类型下的画布尺寸
+     * 
+     * @param type     输出类型，如png、jpg、pdf、eps
+     * @param autoSize 是否自动调整尺寸，仅对jpg格式有效
+     * @return 画布尺寸，未加载数据时为0×0
+     */
+    public Dimension getCanvasSize(String type, boolean autoSize) {
+        Dataset data = dataset;
+        if (data == null || data.rows.isEmpty()) return new Dimension();
+        Layout layout = layout(data, type.toLowerCase(), autoSize);
+        return new Dimension(layout.width, layout.height);
+    }
+
+    @Override
+    public Dimension getCanvasSize(String type) {
+        return getCanvasSize(type, false);
+    }
+
+    /**
+     * 估计绘制开销，每行每圈一个柱形，另有每行一个样本标签
+     * 
+     * @param type     输出类型，如png、jpg、pdf、eps
+     * @param autoSize 是否自动调整尺寸，仅对jpg格式有效，行数很多时画布可达23000像素
+     * @return {@link #draw(OutputStream, String, Boolean)}的开销估计
+     */
+    public RenderEstimate estimate(String type, boolean autoSize) {
+        Dataset data = dataset;
+        Dimension size = getCanvasSize(type, autoSize);
+        long primitives = data == null || data.rows.isEmpty() ? 0 : (long) data.rows.size() * (columns(data) + 1);
+        return RenderEstimate.of(type, size.width, size.height, primitives, 0);
+    }
+
+    @Override
+    public RenderEstimate estimate(String type) {
+        return estimate(type, false);
+    }
+
+    /**
+     * 默认输出（非jpg格式）的画布宽度
+     */
+    @Override
+    public int getWidth() {
+        return getCanvasSize("png", false).width;
+    }
+
+    /**
+     * 默认输出（非jpg格式）的画布高度
+     */
+    @Override
+    public int getHeight() {
+        return getCanvasSize("png", false).height;
+    }
+
+    /**
+     * 计算画布尺寸、基础半径、字号与柱宽，不修改对象状态
+     * 
+     * @param data     数据集
+     * @param type     输出类型
+     * @param autoSize 是否自动调整尺寸，仅对jpg格式有效
+     * @return 绘图布局
+     */
+    private Layout layout(Dataset data, String type, boolean autoSize) {
+        List<Object[]> criteriaList = data.rows;
+        double totalAngle = this.totalAngle;
         int cutoff = criteriaList.size();
         double angle = totalAngle / (cutoff - 1);
-        if (2 * angle + totalAngle > 360)
-            System.err.println(
-                    "Current total angle will be adjusted automatically because of \"2×step angle + total angle > 360\".");
         while (2 * angle + totalAngle > 360) {// 对总角度进行自适应，使其能够直观看到起止位置
             totalAngle = totalAngle - 10;
             angle = totalAngle / (criteriaList.size() - 1);
@@ -435,7 +1085,6 @@ public class CircularHistogram implements JChart {
             barWidth = (int) Math.round(Math.PI / 180 * angle * r * 1.5);
             fontSize = barWidth * 2;
         }
-        type = type.toLowerCase();
         if (!type.equals("jpg")) {
             width = 2000;
             height = (int) (width / widthPerHeight);
@@ -451,17 +1100,30 @@ public class CircularHistogram implements JChart {
             fontSize = 20;// 防止字号过大溢出
         if (barWidth < 1)
             barWidth = 1;// 保证至少一像素宽度
-        /*
-         * 实例化当前类，配置字体
-         */
+        return new Layout(width, height, r, fontSize, barWidth, angle, totalAngle);
+    }
 
-        Font awtFont = new Font(getFontFamily(), getFontStyle(), fontSize);
-        this.width = width;
-        this.height = height;
-        CreateGraphics cg = new CreateGraphics(width, height, type, file);
-        graphics = cg.getGraphics();
-        graphics.setFont(awtFont);
-        draw(r, fontSize, barWidth, width, height, angle);
+    /**
+     * 在画布上绘制并输出
+     * 
+     * @param cg     画布
+     * @param data   数据集
+     * @param layout 绘图布局
+     * @throws JvisionException 输出异常
+     */
+    private void draw(CreateGraphics cg, Dataset data, Layout layout) throws JvisionException {
+        if (layout.totalAngle != totalAngle)
+            System.err.println(
+                    "Current total angle will be adjusted automatically because of \"2×step angle + total angle > 360\".");
+        String[] legendTextSet = legends(data);
+        int columns = columns(data);
+        paintBackground(cg.getGraphics(), layout);
+        paintData(cg.getGraphics(), data, layout, 1, null,
+                analyticRaster ? PolarRasterizer.of(cg.getGraphics(), cg.getImage()) : null);
+        // 图例叠加在数据图层之上，柱形不会遮挡图例
+        STATIC_LAYERS.overlay(cg, staticKey(legendTextSet, columns),
+                legendBounds(cg.getGraphics(), legendTextSet, columns, layout),
+                graphics -> paintLegend(graphics, legendTextSet, columns, layout));
         cg.setJpegDPI(dpi);
         cg.saveToFile();
     }
@@ -470,4 +1132,169 @@ public class CircularHistogram implements JChart {
     public void draw(String file) throws JvisionException {
         draw(file, false);
     }
+
+    @Override
+    public void paint(Graphics2D graphics, String type) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HISTOGRAM)) {
+            Dataset data = checkData();
+            paint(graphics, data, layout(data, type.toLowerCase(), false));
+        }
+    }
+
+    @Override
+    public void draw(OutputStream out, String type) throws JvisionException {
+        draw(out, type, false);
+    }
+
+    @Override
+    public List<Sector> getSectors(String type) throws JvisionException {
+        Dataset data = checkData();
+        return sectors(data, layout(data, type.toLowerCase(), false));
+    }
+
+    @Override
+    public void paint(Graphics2D graphics, String type, Rectangle2D region) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.CIRCULAR_HISTOGRAM)) {
+            Dataset data = checkData();
+            Shape clip = graphics.getClip();
+            graphics.clip(region);
+            paint(graphics, data, layout(data, type.toLowerCase(), false), 1, region);
+            graphics.setClip(clip);
+        }
+    }
+
+    @Override
+    public PolarHitIndex getHitIndex(String type) throws JvisionException {
+        Dataset data = checkData();
+        Layout layout = layout(data, type.toLowerCase(), false);
+        List<Object[]> criteriaList = data.rows;
+        int baseR = layout.r;
+        int barWidth = layout.barWidth + layout.barWidth % 2;
+        int ir = (int) (Math.sqrt(1.0 * baseR * baseR + barWidth * barWidth / 4.0) + 0.5);
+        PolarHitIndex index = new PolarHitIndex(layout.width - layout.height / 2, layout.height / 2, ir);
+        double baseAngle = 450 - layout.totalAngle;
+        int r = baseR;
+        // 与paintData相同按圈绘制顺序登记，柱形沿旋转后的(0, 1)方向延伸
+        for (int i = 0; i < criteriaList.get(0).length - 2; i++) {
+            for (int row = 0; row < criteriaList.size(); row++) {
+                Object[] obj = criteriaList.get(row);
+                double currentValue = (double) obj[obj.length - 1 - i];
+                int length = Math.min((int) (currentValue * baseR / maxValue), baseR);
+                if (length > 0)
+                    index.addBar(row, i, (String) obj[0], currentValue, 90 + baseAngle + row * layout.angle, r,
+                            r + length, barWidth / 2.0);
+            }
+            r += baseR;
+        }
+        return index;
+    }
+
+    /**
+     * 计算各行柱形与标签的几何范围，与paintData的绘制位置一致
+     * 
+     * @param data   数据集
+     * @param layout 绘图布局
+     * @return 各行的扇区，形状为各圈柱形与绘制的标签框
+     */
+    private List<Sector> sectors(Dataset data, Layout layout) {
+        List<Object[]> criteriaList = data.rows;
+        int baseR = layout.r;
+        int barWidth = layout.barWidth + layout.barWidth % 2;
+        int centerX = layout.width - layout.height / 2;
+        int centerY = layout.height / 2;
+        double baseAngle = 450 - layout.totalAngle;
+        int labelR = labelRadius(layout, criteriaList.get(0).length - 2);
+        FontMetrics metrics = labelMetrics(layout);
+        boolean[] placed = placeLabels(data, layout);
+        List<Sector> sectors = new ArrayList<>(criteriaList.size());
+        for (int index = 0; index < criteriaList.size(); index++) {
+            Object[] obj = criteriaList.get(index);
+            Path2D.Double shape = new Path2D.Double(Path2D.WIND_NON_ZERO);
+            double[] values = new double[obj.length - 2];
+            AffineTransform barRotation = AffineTransform.getRotateInstance(
+                    Math.toRadians(baseAngle + index * layout.angle), centerX, centerY);
+            int r = baseR;
+            for (int i = 0; i < obj.length - 2; i++) {
+                double currentValue = (double) obj[obj.length - 1 - i];
+                values[i] = currentValue;
+                int length = Math.min((int) (currentValue * baseR / maxValue), baseR);
+                if (length > 0) {
+                    shape.append(barRotation.createTransformedShape(
+                            new Rectangle2D.Double(centerX - barWidth / 2, centerY + r, barWidth, length)), false);
+                }
+                r += baseR;
+            }
+            String label = (String) obj[0];
+            if (!placed[index]) {
+                sectors.add(new Sector(label, values, null, shape, shape.getBounds2D()));
+                continue;
+            }
+            AffineTransform labelRotation = AffineTransform.getRotateInstance(
+                    Math.toRadians(360 - layout.totalAngle + index * layout.angle), centerX, centerY);
+            Shape labelBox = labelRotation.createTransformedShape(new Rectangle2D.Double(
+                    centerX - labelR - metrics.stringWidth(label) - 1, centerY - metrics.getHeight() / 2.0 - 1,
+                    metrics.stringWidth(label) + 1, metrics.getHeight() + 2));
+            shape.append(labelBox, false);
+            sectors.add(new Sector(label, values, null, shape, shape.getBounds2D()));
+        }
+        return sectors;
+    }
+
+    /**
+     * 不可变数据集，包括各行数据与图例文本
+     */
+    private static class Dataset implements Serializable {
+        private static final long serialVersionUID = 202210191427001L;
+        /**
+         * 每行为Object[]，依次为标签、总值与各项值
+         */
+        private final List<Object[]> rows;
+        /**
+         * 图例文本字符串组，第一个元素为图例标题，其余为各项文本
+         */
+        private final String[] legends;
+
+        private Dataset(List<Object[]> rows, String[] legends) {
+            this.rows = rows;
+            this.legends = legends;
+        }
+    }
+
+    /**
+     * 一次标签放置的结果，数据集以引用比较
+     */
+    private static class LabelPlacement {
+        private final Dataset data;
+        private final String key;
+        private final boolean[] placed;
+
+        private LabelPlacement(Dataset data, String key, boolean[] placed) {
+            this.data = data;
+            this.key = key;
+            this.placed = placed;
+        }
+    }
+
+    /**
+     * 单次绘制的布局参数
+     */
+    private static class Layout {
+        private final int width;
+        private final int height;
+        private final int r;
+        private final int fontSize;
+        private final int barWidth;
+        private final double angle;
+        private final double totalAngle;
+
+        private Layout(int width, int height, int r, int fontSize, int barWidth, double angle, double totalAngle) {
+            this.width = width;
+            this.height = height;
+            this.r = r;
+            this.fontSize = fontSize;
+            this.barWidth = barWidth;
+            this.angle = angle;
+            this.totalAngle = totalAngle;
+        }
+    }
 }
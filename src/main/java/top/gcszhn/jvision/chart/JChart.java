@@ -15,12 +15,22 @@
  */
 package top.gcszhn.jvision.chart;
 
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.RenderEstimate;
+import top.gcszhn.jvision.tools.CreateGraphics;
 
 /**
- * Abstract class for drawing charts.
+ * Abstract class for drawing charts. Loading data replaces the whole dataset
+ * and drawing does not modify the chart, so a loaded chart can be drawn from
+ * several threads at once as long as its settings are not changed meanwhile.
  */
 public interface JChart extends Serializable {
 
@@ -31,6 +41,13 @@ public interface JChart extends Serializable {
      */
     public void loadData(String file) throws JvisionException;
 
+    /**
+     * Load data from character stream, the stream is closed after loading
+     * 
+     * @param reader CSV content
+     */
+    public void loadData(Reader reader) throws JvisionException;
+
     /**
      * Draw chart to image file
      * 
@@ -38,6 +55,34 @@ public interface JChart extends Serializable {
      */
     public void draw(String file) throws JvisionException;
 
+    /**
+     * Draw chart to output stream, the stream is flushed but not closed.
+     * 
+     * @param out  Output stream, such as a socket or in-memory stream
+     * @param type Image type, such as png, jpg, pdf, etc.
+     */
+    public void draw(OutputStream out, String type) throws JvisionException;
+
+    /**
+     * Draw chart to byte channel, the channel is not closed.
+     * 
+     * @param channel Writable byte channel
+     * @param type    Image type, such as png, jpg, pdf, etc.
+     */
+    public default void draw(WritableByteChannel channel, String type) throws JvisionException {
+        draw(Channels.newOutputStream(channel), type);
+    }
+
+    /**
+     * Paint chart onto a graphics context at the canvas size of the given
+     * output type, without writing any output. Used to place several charts
+     * on one canvas, such as panels of a PDF report.
+     * 
+     * @param graphics Graphics context, its transform and clip are respected
+     * @param type     Image type deciding the layout, such as png, jpg, pdf, etc.
+     */
+    public void paint(Graphics2D graphics, String type) throws JvisionException;
+
     /**
      * set chart font family
      * @param fontFamily font family available in system
@@ -62,7 +107,52 @@ public interface JChart extends Serializable {
      */
     public int getFontStyle();
 
+    /**
+     * set whether pdf and eps output is byte-for-byte reproducible, without
+     * creation dates and with a content-derived pdf file id
+     * @param deterministic reproducible output, false by default
+     */
+    public void setDeterministic(boolean deterministic);
+
+    /**
+     * whether pdf and eps output is byte-for-byte reproducible
+     * @return reproducible output
+     */
+    public boolean isDeterministic();
+
     public int getWidth();
 
     public int getHeight();
+
+    /**
+     * Resolution recorded in png and jpg output
+     * 
+     * @return dpi, unit is pixel/inch
+     */
+    public default int getDpi() {
+        return CreateGraphics.DEFAULT_DPI;
+    }
+
+    /**
+     * Canvas size used when drawing the given output type
+     * 
+     * @param type Image type, such as png, jpg, pdf, etc.
+     * @return canvas size in pixels
+     */
+    public default Dimension getCanvasSize(String type) {
+        return new Dimension(getWidth(), getHeight());
+    }
+
+    /**
+     * Estimate the peak memory and work of drawing the loaded data to the
+     * given output type, without drawing. Charts report their primitives so
+     * that vector outputs and dense data are accounted for.
+     * 
+     * @param type Image type, such as png, jpg, pdf, etc.
+     * @return estimate of {@link #draw(OutputStream, String)}
+     */
+    public default RenderEstimate estimate(String type) {
+        Dimension size = getCanvasSize(type.toLowerCase());
+        return RenderEstimate.of(type, size.width, size.height, 0, 0);
+    }
 }
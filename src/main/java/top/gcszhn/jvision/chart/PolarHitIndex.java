@@ -0,0 +1,378 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.chart;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import lombok.Getter;
+
+/**
+ * Hit-test index of a polar chart. Regions are grouped into radial bands by
+ * column, and regions of a band are sorted by angle, so a point query finds
+ * the band by radius and the region by a binary search over angles, in
+ * O(log n). Regions are either wedges bounded by two angles or straight bars
+ * pointing away from the center.
+ * 
+ * <p>Angles are in degrees, measured clockwise from the positive x axis in
+ * image coordinates. The index is filled once after construction and is
+ * read-only, and thread-safe, after the first query.
+ */
+public class PolarHitIndex {
+    @Getter
+    private final double centerX;
+    @Getter
+    private final double centerY;
+    /** Radius of the central hole, painted over all regions */
+    @Getter
+    private final double holeRadius;
+    private final List<Region> regions = new ArrayList<>();
+    private volatile Band[] bands = null;
+
+    /**
+     * @param centerX    Horizontal position of the center
+     * @param centerY    Vertical position of the center
+     * @param holeRadius Radius around the center where nothing is hit
+     */
+    public PolarHitIndex(double centerX, double centerY, double holeRadius) {
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.holeRadius = holeRadius;
+    }
+
+    /**
+     * Add a bar of the given half width, pointing from the center at an angle.
+     * Later regions are painted over earlier ones.
+     * 
+     * @param row       Data row
+     * @param column    Data column, deciding the band
+     * @param label     Row label
+     * @param value     Value painted by the bar
+     * @param angle     Direction of the bar
+     * @param from      Distance of the inner end from the center
+     * @param to        Distance of the outer end from the center
+     * @param halfWidth Half width of the bar
+     */
+    public void addBar(int row, int column, String label, double value, double angle, double from, double to,
+            double halfWidth) {
+        double halfSpan = from > halfWidth ? Math.toDegrees(Math.asin(halfWidth / from)) : 180;
+        add(new Region(row, column, label, value, normalize(angle), halfSpan, from, to, halfWidth));
+    }
+
+    /**
+     * Add a wedge between two radii and two angles. Later regions are painted
+     * over earlier ones.
+     * 
+     * @param row        Data row
+     * @param column     Data column, deciding the band
+     * @param label      Row label
+     * @param value      Value painted by the wedge
+     * @param startAngle First angle of the wedge
+     * @param sweep      Angular extent, negative for counterclockwise
+     * @param from       Inner radius
+     * @param to         Outer radius
+     */
+    public void addWedge(int row, int column, String label, double value, double startAngle, double sweep,
+            double from, double to) {
+        double halfSpan = Math.min(Math.abs(sweep), 360) / 2;
+        add(new Region(row, column, label, value, normalize(startAngle + sweep / 2), halfSpan, from, to, 0));
+    }
+
+    private void add(Region region) {
+        if (bands != null) throw new IllegalStateException("Index is already queried");
+        region.order = regions.size();
+        regions.add(region);
+    }
+
+    /**
+     * Region under a point
+     * 
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @return topmost region containing the point, null if none
+     */
+    public Region hit(double x, double y) {
+        Band[] bands = prepare();
+        double dx = x - centerX, dy = y - centerY;
+        double radius = Math.hypot(dx, dy);
+        if (radius < holeRadius || bands.length == 0) return null;
+        double angle = normalize(Math.toDegrees(Math.atan2(dy, dx)));
+        // Last band starting within the radius; bar tips may reach slightly past the next band start
+        int low = 0, high = bands.length - 1, found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (bands[mid].from <= radius) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        Region best = null;
+        for (int i = found; i >= 0 && i >= found - 1; i--) {
+            Region region = bands[i].hit(dx, dy, radius, angle);
+            if (region != null && (best == null || region.order > best.order)) best = region;
+        }
+        return best;
+    }
+
+    /**
+     * All regions in painting order
+     * 
+     * @return unmodifiable region list
+     */
+    public List<Region> getRegions() {
+        return Collections.unmodifiableList(regions);
+    }
+
+    /**
+     * Write an HTML image map with one polygon area per region, to be used
+     * with {@code <img usemap="#name">} over the png output
+     * 
+     * @param out  Writer, not closed
+     * @param name Map name
+     * @throws IOException Write failed
+     */
+    public void writeImageMap(Writer out, String name) throws IOException {
+        out.write("<map name=\"" + escapeHtml(name) + "\">\n");
+        // Browsers pick the first matching area, so write topmost regions first
+        for (int i = regions.size() - 1; i >= 0; i--) {
+            Region region = regions.get(i);
+            StringBuilder coords = new StringBuilder();
+            double[] polygon = region.polygon(centerX, centerY);
+            for (int j = 0; j < polygon.length; j++) {
+                if (j > 0) coords.append(',');
+                coords.append(Math.round(polygon[j]));
+            }
+            String title = escapeHtml(region.label + ": " + format(region.value));
+            out.write("  <area shape=\"poly\" coords=\"" + coords + "\" alt=\"" + title + "\" title=\"" + title
+                    + "\" data-row=\"" + region.row + "\" data-column=\"" + region.column + "\">\n");
+        }
+        out.write("</map>\n");
+        out.flush();
+    }
+
+    /**
+     * Write the index as JSON. Besides a polygon, each region carries its
+     * polar geometry, so that clients can run the same angle search.
+     * 
+     * @param out Writer, not closed
+     * @throws IOException Write failed
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write("{\"centerX\":" + format(centerX) + ",\"centerY\":" + format(centerY) + ",\"holeRadius\":"
+                + format(holeRadius) + ",\"regions\":[");
+        for (int i = 0; i < regions.size(); i++) {
+            Region region = regions.get(i);
+            StringBuilder json = new StringBuilder(i > 0 ? ",\n" : "\n");
+            json.append("{\"row\":").append(region.row)
+                    .append(",\"column\":").append(region.column)
+                    .append(",\"label\":\"").append(escapeJson(region.label))
+                    .append("\",\"value\":").append(format(region.value))
+                    .append(",\"angle\":").append(format(region.angle))
+                    .append(",\"halfSpan\":").append(format(region.halfSpan))
+                    .append(",\"from\":").append(format(region.from))
+                    .append(",\"to\":").append(format(region.to))
+                    .append(",\"halfWidth\":").append(format(region.halfWidth))
+                    .append(",\"polygon\":[");
+            double[] polygon = region.polygon(centerX, centerY);
+            for (int j = 0; j < polygon.length; j++) {
+                if (j > 0) json.append(',');
+                json.append(format(polygon[j]));
+            }
+            out.write(json.append("]}").toString());
+        }
+        out.write("\n]}\n");
+        out.flush();
+    }
+
+    private Band[] prepare() {
+        Band[] prepared = bands;
+        if (prepared != null) return prepared;
+        synchronized (this) {
+            if (bands == null) {
+                List<Region> sorted = new ArrayList<>(regions);
+                sorted.sort(Comparator.comparingInt((Region r) -> r.column).thenComparingDouble(r -> r.angle));
+                List<Band> list = new ArrayList<>();
+                int start = 0;
+                for (int i = 1; i <= sorted.size(); i++) {
+                    if (i == sorted.size() || sorted.get(i).column != sorted.get(start).column) {
+                        list.add(new Band(sorted.subList(start, i).toArray(new Region[0])));
+                        start = i;
+                    }
+                }
+                list.sort(Comparator.comparingDouble(b -> b.from));
+                bands = list.toArray(new Band[0]);
+            }
+            return bands;
+        }
+    }
+
+    private static double normalize(double angle) {
+        angle %= 360;
+        return angle < 0 ? angle + 360 : angle;
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String escapeJson(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') escaped.append('\\').append(c);
+            else if (c < 0x20) escaped.append(String.format("\\u%04x", (int) c));
+            else escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Regions of one column, sorted by angle
+     */
+    private static class Band {
+        private final Region[] regions;
+        private final double[] angles;
+        private final double from;
+        private final double maxHalfSpan;
+
+        private Band(Region[] regions) {
+            this.regions = regions;
+            this.angles = new double[regions.length];
+            double from = Double.MAX_VALUE, maxHalfSpan = 0;
+            for (int i = 0; i < regions.length; i++) {
+                angles[i] = regions[i].angle;
+                from = Math.min(from, regions[i].from);
+                maxHalfSpan = Math.max(maxHalfSpan, regions[i].halfSpan);
+            }
+            this.from = from;
+            this.maxHalfSpan = maxHalfSpan;
+        }
+
+        private Region hit(double dx, double dy, double radius, double angle) {
+            Region best = null;
+            if (maxHalfSpan >= 180) {
+                for (Region region : regions) {
+                    if ((best == null || region.order > best.order) && region.contains(dx, dy, radius, angle))
+                        best = region;
+                }
+                return best;
+            }
+            // Candidates are centered within maxHalfSpan of the angle, split where the range wraps at 0
+            double low = angle - maxHalfSpan, high = angle + maxHalfSpan;
+            best = scan(best, low, high, dx, dy, radius, angle);
+            if (low < 0) best = scan(best, low + 360, 360, dx, dy, radius, angle);
+            if (high >= 360) best = scan(best, 0, high - 360, dx, dy, radius, angle);
+            return best;
+        }
+
+        private Region scan(Region best, double low, double high, double dx, double dy, double radius,
+                double angle) {
+            int i = Arrays.binarySearch(angles, low);
+            if (i < 0) i = -i - 1;
+            while (i > 0 && angles[i - 1] == low) i--;
+            for (; i < angles.length && angles[i] <= high; i++) {
+                Region region = regions[i];
+                if ((best == null || region.order > best.order) && region.contains(dx, dy, radius, angle))
+                    best = region;
+            }
+            return best;
+        }
+    }
+
+    /**
+     * One bar or wedge of the chart
+     */
+    @Getter
+    public static class Region {
+        private final int row;
+        private final int column;
+        private final String label;
+        private final double value;
+        /** Center angle, in [0, 360) */
+        private final double angle;
+        /** Half angular extent; for bars, the extent at the inner end */
+        private final double halfSpan;
+        private final double from;
+        private final double to;
+        /** Half width of a bar, 0 for wedges */
+        private final double halfWidth;
+        private int order;
+
+        private Region(int row, int column, String label, double value, double angle, double halfSpan, double from,
+                double to, double halfWidth) {
+            this.row = row;
+            this.column = column;
+            this.label = label;
+            this.value = value;
+            this.angle = angle;
+            this.halfSpan = halfSpan;
+            this.from = from;
+            this.to = to;
+            this.halfWidth = halfWidth;
+        }
+
+        private boolean contains(double dx, double dy, double radius, double pointAngle) {
+            if (halfWidth > 0) {
+                double theta = Math.toRadians(angle);
+                double ux = Math.cos(theta), uy = Math.sin(theta);
+                double along = dx * ux + dy * uy;
+                return along >= from && along <= to && Math.abs(dx * uy - dy * ux) <= halfWidth;
+            }
+            if (radius < from || radius > to) return false;
+            double delta = Math.abs(pointAngle - angle);
+            return Math.min(delta, 360 - delta) <= halfSpan;
+        }
+
+        /**
+         * Outline as x, y pairs
+         */
+        private double[] polygon(double centerX, double centerY) {
+            double theta = Math.toRadians(angle);
+            double ux = Math.cos(theta), uy = Math.sin(theta);
+            if (halfWidth > 0) {
+                double px = -uy * halfWidth, py = ux * halfWidth;
+                return new double[] {
+                        centerX + ux * from + px, centerY + uy * from + py,
+                        centerX + ux * to + px, centerY + uy * to + py,
+                        centerX + ux * to - px, centerY + uy * to - py,
+                        centerX + ux * from - px, centerY + uy * from - py };
+            }
+            int steps = Math.max(1, (int) Math.ceil(halfSpan));
+            double[] polygon = new double[4 * (steps + 1)];
+            for (int i = 0; i <= steps; i++) {
+                double a = Math.toRadians(angle - halfSpan + 2 * halfSpan * i / steps);
+                polygon[2 * i] = centerX + Math.cos(a) * to;
+                polygon[2 * i + 1] = centerY + Math.sin(a) * to;
+                double b = Math.toRadians(angle + halfSpan - 2 * halfSpan * i / steps);
+                polygon[2 * (steps + 1) + 2 * i] = centerX + Math.cos(b) * from;
+                polygon[2 * (steps + 1) + 2 * i + 1] = centerY + Math.sin(b) * from;
+            }
+            return polygon;
+        }
+    }
+}
@@ -15,32 +15,66 @@
  */
 package top.gcszhn.jvision.chart;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.BasicStroke;
 import java.awt.Font;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
+import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 
 import lombok.Getter;
 import lombok.Setter;
 import top.gcszhn.jvision.shape.AngularRing;
+import top.gcszhn.jvision.tools.AnimatedGifWriter;
 import top.gcszhn.jvision.tools.BasicTool;
 import top.gcszhn.jvision.tools.CreateGraphics;
 import top.gcszhn.jvision.tools.DrawTool;
 import top.gcszhn.jvision.tools.ImageTool;
+import top.gcszhn.jvision.tools.PolarRasterizer;
+import top.gcszhn.jvision.tools.StaticLayerCache;
 import top.gcszhn.jvision.Constant;
 import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.RenderEstimate;
 import top.gcszhn.jvision.Stage;
+import top.gcszhn.jvision.jfr.ChartLoadEvent;
+import top.gcszhn.jvision.metrics.RenderMetrics;
 
-public class RingDiagram implements JChart {
+/**
+ * 绘制环形统计图的业务实现类。数据加载后以不可变数据集发布，绘制过程不修改对象状态，
+ * 因此同一对象可在多个线程中并发绘制。
+ */
+public class RingDiagram implements SectorChart {
     private static final long serialVersionUID = 202207131807254L;
-    private ArrayList<String> legends = new ArrayList<>();
-    private ArrayList<Float> values = new ArrayList<>();
-    private ArrayList<Color> colors = new ArrayList<>();
+    /**
+     * 所有环形统计图共享的静态图层缓存
+     */
+    private static final StaticLayerCache STATIC_LAYERS = new StaticLayerCache(64L << 20);
+    /**
+     * 当前数据集，每次加载整体替换
+     */
+    private volatile Dataset dataset = null;
     private String title;
     private @Setter @Getter int width;
     private @Setter @Getter int height;
@@ -53,6 +87,14 @@ public class RingDiagram implements JChart {
     private boolean balance;
     private @Setter @Getter String fontFamily = Constant.DEFAULT_FONT_FAMILY;
     private @Setter @Getter int fontStyle = Constant.DEFAULT_FONT_STYLE;
+    /**
+     * 是否输出逐字节确定的pdf与eps，相同数据与设置得到相同字节，默认关闭
+     */
+    private @Setter @Getter boolean deterministic = false;
+    /**
+     * 输出png与jpg时数据环是否由{@link PolarRasterizer}直接写入像素，默认使用Java2D绘制
+     */
+    private @Setter @Getter boolean analyticRaster = false;
 
     public RingDiagram(String title, int width, int height, float gapRatio, float[] radiusRange, float[] valueRange,
             float startAngle, float arcAngle, float step, boolean balance) {
@@ -68,37 +110,131 @@ public class RingDiagram implements JChart {
         setWidth(width);
     }
 
+    /**
+     * 加载数据，替换已加载的数据集
+     * 
+     * @param file 输入文件名，每行依次为标签、数值与十六进制颜色
+     */
     @Override
     public void loadData(String file) throws JvisionException {
-        Iterable<CSVRecord> records;
+        Reader reader;
         try {
-            records = BasicTool.readCSV(file);
+            reader = new FileReader(file);
+        } catch (IOException e) {
+            throw new JvisionException("Read CSV file failed", e, Stage.DATA_LOADING);
+        }
+        loadData(reader);
+    }
+
+    @Override
+    public void loadData(Reader reader) throws JvisionException {
+        ChartLoadEvent event = new ChartLoadEvent();
+        event.begin();
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.RING_DIAGRAM)) {
+            RenderMetrics.enter(Stage.DATA_LOADING);
+            long charsRead = metrics.getBytesRead(Stage.DATA_LOADING);
+            Dataset data = parse(reader);
+            RenderMetrics.rows(data.values.size());
+            dataset = data;
+            event.setRows(data.values.size());
+            event.setCharsRead(metrics.getBytesRead(Stage.DATA_LOADING) - charsRead);
+        } finally {
+            event.setChartType(ChartSpec.RING_DIAGRAM);
+            event.commit();
+        }
+    }
+
+    private static Dataset parse(Reader reader) throws JvisionException {
+        ArrayList<String> legends = new ArrayList<>();
+        ArrayList<Float> values = new ArrayList<>();
+        ArrayList<Color> colors = new ArrayList<>();
+        try (CSVParser records = BasicTool.readCSV(reader)) {
+            for (CSVRecord record : records) {
+                try {
+                    legends.add(record.get(0));
+                    values.add(Float.parseFloat(record.get(1)));
+                    colors.add(ImageTool.getColor(record.get(2)));
+                } catch (Exception e) {
+                    throw new JvisionException("Data parse error at record: " + record.getRecordNumber(), e,
+                            Stage.DATA_LOADING);
+                }
+            }
         } catch (IOException e1) {
             throw new JvisionException("Read CSV file failed", e1, Stage.DATA_LOADING);
         }
-        for (CSVRecord record : records) {
-            try {
-                legends.add(record.get(0));
-                values.add(Float.parseFloat(record.get(1)));
-                colors.add(ImageTool.getColor(record.get(2)));
-            } catch (Exception e) {
-                throw new JvisionException("Data parse error at record: " + record.getRecordNumber(), e,
-                        Stage.DATA_LOADING);
+        return new Dataset(
+                Collections.unmodifiableList(legends),
+                Collections.unmodifiableList(values),
+                Collections.unmodifiableList(colors));
+    }
+
+    @Override
+    public void draw(String file) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.RING_DIAGRAM)) {
+            Dataset data = checkData();
+            try (CreateGraphics cg = new CreateGraphics(width, height, BasicTool.getFileExtName(file), file, deterministic)) {
+                draw(cg, data, width, height);
             }
         }
     }
 
     @Override
-    public void draw(String file) throws JvisionException {
-        if (values.size() == 0) {
-            throw new JvisionException("No data loaded", null, Stage.DATA_LOADING);
+    public void draw(OutputStream out, String type) throws JvisionException {
+        draw(out, type, width, height);
+    }
+
+    /**
+     * 以指定尺寸绘制到输出流，图形按与设定尺寸的比例缩放，输出流不会被关闭
+     * 
+     * @param out    输出流
+     * @param type   输出类型，如png、jpg、pdf、eps
+     * @param width  画布宽度
+     * @param height 画布高度
+     * @throws JvisionException 绘制或输出异常
+     */
+    public void draw(OutputStream out, String type, int width, int height) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.RING_DIAGRAM)) {
+            Dataset data = checkData();
+            try (CreateGraphics cg = new CreateGraphics(width, height, type, out, deterministic)) {
+                draw(cg, data, width, height);
+            }
         }
+    }
 
-        String type = BasicTool.getFileExtName(file);
-        CreateGraphics cg = new CreateGraphics(width, height, type, file);
-        Graphics2D graphics2D = cg.getGraphics();
-        graphics2D.setBackground(Constant.DEFAULT_BACKGROUND_COLOR);
-        graphics2D.clearRect(0, 0, width, height);
+    @Override
+    public void paint(Graphics2D graphics, String type) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.RING_DIAGRAM)) {
+            paint(graphics, checkData(), width, height);
+        }
+    }
+
+    /**
+     * 估计绘制开销，每个数据行绘制一个环与一个标签
+     */
+    @Override
+    public RenderEstimate estimate(String type) {
+        Dataset data = dataset;
+        return RenderEstimate.of(type, width, height, data == null ? 0 : 2L * data.values.size(), 0);
+    }
+
+    @Override
+    public List<Sector> getSectors(String type) throws JvisionException {
+        Dataset data = checkData();
+        List<Sector> sectors = new ArrayList<>(data.values.size());
+        List<AngularRing> rings = rings(data);
+        for (int idx = 0; idx < rings.size(); idx++) {
+            AngularRing ring = rings.get(idx);
+            sectors.add(new Sector(data.legends.get(idx), new double[] { data.values.get(idx) }, data.colors.get(idx),
+                    ring, ring.getBounds2D()));
+        }
+        return sectors;
+    }
+
+    @Override
+    public PolarHitIndex getHitIndex(String type) throws JvisionException {
+        Dataset data = checkData();
+        List<Float> values = data.values;
+        PolarHitIndex index = new PolarHitIndex(width / 2, height / 2, 0);
         float band = (radiusRange[1] - radiusRange[0]) / (values.size()) / (1 + gapRatio);
         float gap = band * gapRatio;
         float radius = radiusRange[0];
@@ -106,21 +242,207 @@ public class RingDiagram implements JChart {
             radius += band + (idx > 0 ? gap : 0);
             float value = values.get(idx);
             float angle = (value - valueRange[0]) * this.arcAngle / (valueRange[1] - valueRange[0]);
-            graphics2D.setColor(colors.get(idx));
-            graphics2D.fill(new AngularRing(width / 2, height / 2, radius, band, startAngle, angle));
+            // 弧的角度为逆时针方向，索引中为图像坐标的顺时针方向
+            index.addWedge(idx, idx, data.legends.get(idx), value, -startAngle, -angle, radius - band, radius);
+        }
+        return index;
+    }
+
+    @Override
+    public void paint(Graphics2D graphics, String type, Rectangle2D region) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.RING_DIAGRAM)) {
+            Dataset data = checkData();
+            Shape clip = graphics.getClip();
+            graphics.clip(region);
+            paint(graphics, data, width, height);
+            graphics.setClip(clip);
+        }
+    }
+
+    /**
+     * 以多个数据文件为帧绘制gif动画，不改变已加载的数据集
+     *
+     * @param file       输出文件名
+     * @param dataFiles  各帧的数据文件，格式同{@link #loadData(String)}
+     * @param frameDelay 每帧显示时长，单位毫秒
+     * @throws JvisionException 加载、绘制或输出异常
+     */
+    public void drawAnimation(String file, List<String> dataFiles, int frameDelay) throws JvisionException {
+        Iterator<String> names = dataFiles.iterator();
+        Iterator<Reader> frames = new Iterator<Reader>() {
+            @Override
+            public boolean hasNext() {
+                return names.hasNext();
+            }
+
+            @Override
+            public Reader next() {
+                String name = names.next();
+                try {
+                    return new FileReader(name);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(name, e);
+                }
+            }
+        };
+        boolean saved = false;
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                drawAnimation(out, frames, frameDelay);
+            }
+            saved = true;
+        } catch (UncheckedIOException e) {
+            throw new JvisionException("Read CSV file failed", e.getCause(), Stage.DATA_LOADING);
+        } catch (IOException e) {
+            throw new JvisionException("Write gif file failed", e, Stage.GRAHPIC_SERIALIZATION);
+        } finally {
+            // 失败时删除残缺的文件
+            if (!saved) new File(file).delete();
         }
+    }
+
+    /**
+     * 以数据序列为帧绘制gif动画，输出流不会被关闭。静态图层只绘制一次，各帧在其上绘制数据图层，
+     * 并只编码与上一帧不同的矩形区域，数据行数变化时重新绘制静态图层。任一帧失败时不向输出流写入任何内容
+     *
+     * @param out        输出流
+     * @param frames     各帧的数据，格式同{@link #loadData(Reader)}，读取后关闭
+     * @param frameDelay 每帧显示时长，单位毫秒
+     * @throws JvisionException 加载、绘制或输出异常
+     */
+    public void drawAnimation(OutputStream out, Iterator<Reader> frames, int frameDelay) throws JvisionException {
+        if (!frames.hasNext()) throw new JvisionException("No animation frame", null, Stage.DATA_LOADING);
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.RING_DIAGRAM)) {
+            RenderMetrics.enter(Stage.GRAHPIC_INITIALIZATION);
+            RenderMetrics.outputType("gif");
+            BufferedImage background = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            RenderMetrics.imageAllocated(8L * width * height);
+            int backgroundCount = -1;
+            AnimatedGifWriter writer = null;
+            boolean done = false;
+            try {
+                writer = new AnimatedGifWriter(out, true);
+                while (frames.hasNext()) {
+                    RenderMetrics.enter(Stage.DATA_LOADING);
+                    Dataset data = parse(frames.next());
+                    int count = data.values.size();
+                    if (count == 0) throw new JvisionException("No data loaded", null, Stage.DATA_LOADING);
+                    RenderMetrics.rows(count);
+                    RenderMetrics.enter(Stage.GRAHPIC_PAINTING);
+                    if (count != backgroundCount) {
+                        Graphics2D graphics = createAnimationGraphics(background);
+                        paintStatic(graphics, count, width, height);
+                        graphics.dispose();
+                        backgroundCount = count;
+                    }
+                    Graphics2D graphics = createAnimationGraphics(frame);
+                    graphics.setComposite(AlphaComposite.Src);
+                    graphics.drawImage(background, 0, 0, null);
+                    graphics.setComposite(AlphaComposite.SrcOver);
+                    paintData(graphics, data, width, height);
+                    graphics.dispose();
+                    RenderMetrics.enter(Stage.GRAHPIC_SERIALIZATION);
+                    writer.writeFrame(frame, frameDelay);
+                }
+                RenderMetrics.enter(Stage.GRAHPIC_SERIALIZATION);
+                writer.close();
+                done = true;
+            } catch (IOException e) {
+                throw new JvisionException("Write gif failed", e, Stage.GRAHPIC_SERIALIZATION);
+            } finally {
+                if (!done && writer != null) writer.abort();
+            }
+        }
+    }
+
+    /**
+     * 创建动画帧的绘图对象，文字采用灰度抗锯齿，与png输出一致且避免彩色边缘增加调色板颜色
+     *
+     * @param image 帧图像
+     * @return 绘图对象
+     */
+    private static Graphics2D createAnimationGraphics(BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        return graphics;
+    }
+
+    private Dataset checkData() throws JvisionException {
+        Dataset data = dataset;
+        if (data == null || data.values.size() == 0) {
+            throw new JvisionException("No data loaded", null, Stage.DATA_LOADING);
+        }
+        return data;
+    }
+
+    private void draw(CreateGraphics cg, Dataset data, int canvasWidth, int canvasHeight) throws JvisionException {
+        int count = data.values.size();
+        STATIC_LAYERS.paint(cg, staticKey(count), Constant.DEFAULT_BACKGROUND_COLOR, null,
+                graphics -> paintStatic(graphics, count, canvasWidth, canvasHeight));
+        paintData(cg.getGraphics(), data, canvasWidth, canvasHeight, analyticRaster ? cg.getImage() : null);
+        cg.saveToFile();
+    }
+
+    /**
+     * 在指定尺寸的画布上绘制，图形按与设定尺寸的比例缩放
+     * 
+     * @param graphics2D   绘图对象
+     * @param data         数据集
+     * @param canvasWidth  画布宽度
+     * @param canvasHeight 画布高度
+     */
+    private void paint(Graphics2D graphics2D, Dataset data, int canvasWidth, int canvasHeight) {
+        paintStatic(graphics2D, data.values.size(), canvasWidth, canvasHeight);
+        paintData(graphics2D, data, canvasWidth, canvasHeight);
+    }
+
+    /**
+     * 静态图层的缓存键，包括除画布尺寸与输出类型外影响静态图层的全部设置
+     * 
+     * @param count 数据行数，决定坐标轴半径
+     * @return 缓存键
+     */
+    private String staticKey(int count) {
+        return String.join("|", getClass().getName(), String.valueOf(width), String.valueOf(height),
+                String.valueOf(gapRatio), Arrays.toString(radiusRange), Arrays.toString(valueRange),
+                String.valueOf(startAngle), String.valueOf(arcAngle), String.valueOf(step), String.valueOf(balance),
+                fontFamily, String.valueOf(fontStyle), String.valueOf(count));
+    }
+
+    /**
+     * 绘制与数据值无关的静态图层，包括背景、坐标轴与刻度，绘制后恢复变换
+     * 
+     * @param graphics2D   绘图对象
+     * @param count        数据行数
+     * @param canvasWidth  画布宽度
+     * @param canvasHeight 画布高度
+     */
+    private void paintStatic(Graphics2D graphics2D, int count, int canvasWidth, int canvasHeight) {
+        int width = this.width;
+        int height = this.height;
+        AffineTransform transform = graphics2D.getTransform();
+        graphics2D.setBackground(Constant.DEFAULT_BACKGROUND_COLOR);
+        graphics2D.clearRect(0, 0, canvasWidth, canvasHeight);
+        if (canvasWidth != width || canvasHeight != height)
+            graphics2D.scale(1.0 * canvasWidth / width, 1.0 * canvasHeight / height);
+        float band = (radiusRange[1] - radiusRange[0]) / count / (1 + gapRatio);
+        float gap = band * gapRatio;
+        float radius = radiusRange[0] + count * band + (count - 1) * gap;
         graphics2D.setColor(Color.BLACK);
         radius += gap > 0 ? gap : 0.5 * band;
         Arc2D.Double arc = new Arc2D.Double(width / 2 - radius, height / 2 - radius, radius * 2, radius * 2,
                 startAngle, arcAngle, Arc2D.OPEN);
         graphics2D.setStroke(new BasicStroke(0.5f * width / 150.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
         graphics2D.draw(arc);
+        RenderMetrics.primitives(1);
         double delta = this.step * Math.abs(this.arcAngle) / (valueRange[1] - valueRange[0]);
         int labelFontSize = (int) (radiusRange[1] * delta / 180);
         for (double scale = valueRange[0]; scale <= valueRange[1] + 1e-5; scale += this.step) {
             double rotateDegree = -(scale - valueRange[0]) * this.arcAngle / (valueRange[1] - valueRange[0])
                     - startAngle;
-            graphics2D.setFont(new Font(getFontFamily(), getFontStyle(), labelFontSize));
+            graphics2D.setFont(ImageTool.getFont(getFontFamily(), getFontStyle(), labelFontSize));
             DrawTool.rotateText(
                     graphics2D,
                     String.format("%.1f%%", scale * 100),
@@ -132,8 +454,61 @@ public class RingDiagram implements JChart {
                     "m",
                     balance);
         }
+        graphics2D.setTransform(transform);
+    }
+
+    /**
+     * 在静态图层上绘制各数据环与标题，绘制后恢复变换
+     * 
+     * @param graphics2D   绘图对象
+     * @param data         数据集
+     * @param canvasWidth  画布宽度
+     * @param canvasHeight 画布高度
+     */
+    private void paintData(Graphics2D graphics2D, Dataset data, int canvasWidth, int canvasHeight) {
+        paintData(graphics2D, data, canvasWidth, canvasHeight, null);
+    }
+
+    /**
+     * 绘制数据图层，给定目标图像时数据环由光栅化器直接写入像素
+     * 
+     * @param graphics2D   绘图对象
+     * @param data         数据集
+     * @param canvasWidth  画布宽度
+     * @param canvasHeight 画布高度
+     * @param image        绘图对象的目标图像，null时使用Java2D绘制
+     */
+    private void paintData(Graphics2D graphics2D, Dataset data, int canvasWidth, int canvasHeight,
+            BufferedImage image) {
+        int width = this.width;
+        int height = this.height;
+        List<Float> values = data.values;
+        List<Color> colors = data.colors;
+        AffineTransform transform = graphics2D.getTransform();
+        if (canvasWidth != width || canvasHeight != height)
+            graphics2D.scale(1.0 * canvasWidth / width, 1.0 * canvasHeight / height);
+        PolarRasterizer raster = PolarRasterizer.of(graphics2D, image);
+        if (raster != null) {
+            float band = band(values.size());
+            float radius = radiusRange[0];
+            for (int idx = 0; idx < values.size(); idx++) {
+                radius += band + (idx > 0 ? band * gapRatio : 0);
+                // 环段角度为逆时针方向，光栅化器为图像坐标的顺时针方向
+                raster.fillSector(width / 2, height / 2, radius - band, radius, -startAngle,
+                        -angle(values.get(idx)), colors.get(idx));
+            }
+        } else {
+            List<AngularRing> rings = rings(data);
+            for (int idx = 0; idx < rings.size(); idx++) {
+                graphics2D.setColor(colors.get(idx));
+                graphics2D.fill(rings.get(idx));
+            }
+        }
+        RenderMetrics.primitives(values.size());
+        // 标题可能与内圈重叠，因此绘制于数据之上
         if (title != null) {
-            graphics2D.setFont(new Font(getFontFamily(), Font.BOLD, 10 * width / 150));
+            graphics2D.setColor(Color.BLACK);
+            graphics2D.setFont(ImageTool.getFont(getFontFamily(), Font.BOLD, 10 * width / 150));
             DrawTool.drawText(
                     graphics2D,
                     this.title,
@@ -141,6 +516,59 @@ public class RingDiagram implements JChart {
                     height / 2,
                     "m", "m");
         }
-        cg.saveToFile();
+        graphics2D.setTransform(transform);
+    }
+
+    /**
+     * 按设定尺寸计算各数据环的形状
+     * 
+     * @param data 数据集
+     * @return 由内至外的数据环
+     */
+    private List<AngularRing> rings(Dataset data) {
+        List<Float> values = data.values;
+        List<AngularRing> rings = new ArrayList<>(values.size());
+        float band = band(values.size());
+        float gap = band * gapRatio;
+        float radius = radiusRange[0];
+        for (int idx = 0; idx < values.size(); idx++) {
+            radius += band + (idx > 0 ? gap : 0);
+            rings.add(new AngularRing(width / 2, height / 2, radius, band, startAngle, angle(values.get(idx))));
+        }
+        return rings;
+    }
+
+    /**
+     * 数据环的宽度
+     * 
+     * @param count 数据行数
+     */
+    private float band(int count) {
+        return (radiusRange[1] - radiusRange[0]) / count / (1 + gapRatio);
+    }
+
+    /**
+     * 数值对应的环段角度，逆时针为正
+     * 
+     * @param value 数值
+     */
+    private float angle(float value) {
+        return (value - valueRange[0]) * this.arcAngle / (valueRange[1] - valueRange[0]);
+    }
+
+    /**
+     * 不可变数据集，三个列表等长
+     */
+    private static class Dataset implements Serializable {
+        private static final long serialVersionUID = 202210191427002L;
+        private final List<String> legends;
+        private final List<Float> values;
+        private final List<Color> colors;
+
+        private Dataset(List<String> legends, List<Float> values, List<Color> colors) {
+            this.legends = legends;
+            this.values = values;
+            this.colors = colors;
+        }
     }
 }
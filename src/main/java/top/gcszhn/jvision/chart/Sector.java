@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.chart;
+
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Objects;
+
+import lombok.Getter;
+
+/**
+ * One angular sector of a {@link SectorChart}, such as a ring of a ring
+ * diagram or a row of bars of a circular histogram. Two sectors are equal
+ * when they would be painted identically, which lets views find the sectors
+ * changed by a data reload.
+ */
+@Getter
+public final class Sector {
+    /** Sector label */
+    private final String label;
+    /** Values painted by the sector */
+    private final double[] values;
+    /** Fill color, null when the sector uses several colors */
+    private final Color color;
+    /** Filled area, used for hit testing and highlighting */
+    private final Shape shape;
+    /** Bounds of everything painted for the sector, including its label */
+    private final Rectangle2D bounds;
+
+    public Sector(String label, double[] values, Color color, Shape shape, Rectangle2D bounds) {
+        this.label = label;
+        this.values = values;
+        this.color = color;
+        this.shape = shape;
+        this.bounds = bounds;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof Sector)) return false;
+        Sector other = (Sector) obj;
+        return Objects.equals(label, other.label) && Arrays.equals(values, other.values)
+                && Objects.equals(color, other.color) && Objects.equals(bounds, other.bounds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(label, Arrays.hashCode(values), color, bounds);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.chart;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.Stage;
+
+/**
+ * Chart made of angular sectors that can be painted region by region, so that
+ * interactive views repaint only the sectors affected by a change.
+ */
+public interface SectorChart extends JChart {
+
+    /**
+     * Sectors of the loaded data, in the coordinates used by
+     * {@link #paint(Graphics2D, String)} for the given type.
+     * 
+     * @param type Image type deciding the layout, such as png, jpg, pdf, etc.
+     * @return sectors in painting order
+     */
+    public List<Sector> getSectors(String type) throws JvisionException;
+
+    /**
+     * Hit-test index of the painted bars or rings, in the same coordinates as
+     * {@link #getSectors(String)}. Region rows are sector indexes.
+     * 
+     * @param type Image type deciding the layout, such as png, jpg, pdf, etc.
+     * @return hit-test index
+     */
+    public PolarHitIndex getHitIndex(String type) throws JvisionException;
+
+    /**
+     * Write the hit-test regions next to an image output, as an HTML image
+     * map for {@code .html} files or as JSON otherwise. The map is named
+     * after the file.
+     * 
+     * @param file Output file, such as chart.map.html or chart.json
+     * @param type Image type the regions should match, such as png or jpg
+     */
+    public default void writeHitRegions(String file, String type) throws JvisionException {
+        PolarHitIndex index = getHitIndex(type);
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            String name = new File(file).getName();
+            if (name.toLowerCase().endsWith(".html")) {
+                index.writeImageMap(out, name.substring(0, name.indexOf('.')));
+            } else {
+                index.writeJson(out);
+            }
+        } catch (IOException e) {
+            throw new JvisionException("Write hit regions failed", e, Stage.GRAHPIC_SERIALIZATION);
+        }
+    }
+
+    /**
+     * Paint the part of the chart inside a region. Sectors and labels outside
+     * the region may be skipped, and nothing is painted outside of it.
+     * 
+     * @param graphics Graphics context, its transform and clip are respected
+     * @param type     Image type deciding the layout, such as png, jpg, pdf, etc.
+     * @param region   Region to repaint, in chart coordinates
+     */
+    public void paint(Graphics2D graphics, String type, Rectangle2D region) throws JvisionException;
+}
@@ -0,0 +1,571 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.chart;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import lombok.Getter;
+import lombok.Setter;
+import top.gcszhn.jvision.Constant;
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.RenderEstimate;
+import top.gcszhn.jvision.Stage;
+import top.gcszhn.jvision.jfr.ChartLoadEvent;
+import top.gcszhn.jvision.metrics.RenderMetrics;
+import top.gcszhn.jvision.tools.BasicTool;
+import top.gcszhn.jvision.tools.CreateGraphics;
+import top.gcszhn.jvision.tools.DrawTool;
+import top.gcszhn.jvision.tools.ImageTool;
+
+/**
+ * 绘制旭日图的业务实现类。层级数据中每个节点为一段环，深度决定所在圈层，弧度与节点及其子孙的数值之和成正比。
+ * 加载时将树按先序展开为平行数组并一次计算全部角度；绘制时同色同层的环段合并为一条路径填充，
+ * 弧长小于阈值像素的节点与相邻的同类小节点合并为一段且不再绘制其子孙，因此可绘制数万个节点。
+ */
+public class SunburstDiagram implements SectorChart {
+    private static final long serialVersionUID = 202210192010001L;
+    /**
+     * 弧长不小于该像素数的环段之间绘制分隔线
+     */
+    private static final double SEPARATOR_WIDTH = 3;
+    /**
+     * 单一根节点的颜色
+     */
+    private static final Color ROOT_COLOR = new Color(220, 220, 220);
+    /**
+     * 当前数据集，每次加载整体替换
+     */
+    private volatile Dataset dataset = null;
+    private @Setter @Getter String title = null;
+    private @Setter @Getter int width = 1000;
+    private @Setter @Getter int height = 1000;
+    private @Setter @Getter String fontFamily = Constant.DEFAULT_FONT_FAMILY;
+    private @Setter @Getter int fontStyle = Constant.DEFAULT_FONT_STYLE;
+    /**
+     * 是否输出逐字节确定的pdf与eps，相同数据与设置得到相同字节，默认关闭
+     */
+    private @Setter @Getter boolean deterministic = false;
+    /**
+     * 中心空白的半径与总半径之比
+     */
+    private @Getter double holeRatio = 0.2;
+    /**
+     * 环段外弧的最小弧长，单位为像素，更小的节点合并绘制
+     */
+    private @Setter @Getter double minSegmentWidth = 1;
+    /**
+     * 分支颜色，按第一层分支的顺序循环使用，深层节点逐层变浅
+     */
+    private @Getter Color[] colorSet = {
+            new Color(128, 0, 128),
+            new Color(251, 188, 5),
+            new Color(66, 133, 244),
+            new Color(234, 67, 53),
+            new Color(189, 183, 107),
+            new Color(107, 142, 35),
+            new Color(135, 206, 250),
+            new Color(186, 186, 186)
+    };
+
+    /**
+     * 设置中心空白的半径比例
+     * 
+     * @param holeRatio 0至1之间，不含1
+     */
+    public void setHoleRatio(double holeRatio) {
+        if (holeRatio < 0 || holeRatio >= 1) throw new IllegalArgumentException("holeRatio should be in [0, 1)");
+        this.holeRatio = holeRatio;
+    }
+
+    /**
+     * 设置分支颜色
+     * 
+     * @param colorSet 十六进制颜色
+     */
+    public void setColorSet(String[] colorSet) {
+        Color[] colors = new Color[colorSet.length];
+        for (int i = 0; i < colorSet.length; i++) {
+            colors[i] = ImageTool.getColor(colorSet[i].trim());
+        }
+        this.colorSet = colors;
+    }
+
+    /**
+     * 加载数据，替换已加载的数据集
+     * 
+     * @param file 输入文件名，每行依次为节点、父节点与数值，根节点的父节点为空，首行数值非数值时视为表头
+     */
+    @Override
+    public void loadData(String file) throws JvisionException {
+        Reader reader;
+        try {
+            reader = new FileReader(file);
+        } catch (IOException e) {
+            throw new JvisionException("Read CSV file failed", e, Stage.DATA_LOADING);
+        }
+        loadData(reader);
+    }
+
+    @Override
+    public void loadData(Reader reader) throws JvisionException {
+        ChartLoadEvent event = new ChartLoadEvent();
+        event.begin();
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.SUNBURST_DIAGRAM)) {
+            RenderMetrics.enter(Stage.DATA_LOADING);
+            long charsRead = metrics.getBytesRead(Stage.DATA_LOADING);
+            Dataset data = parse(reader);
+            RenderMetrics.rows(data.names.length);
+            dataset = data;
+            event.setRows(data.names.length);
+            event.setCharsRead(metrics.getBytesRead(Stage.DATA_LOADING) - charsRead);
+        } finally {
+            event.setChartType(ChartSpec.SUNBURST_DIAGRAM);
+            event.commit();
+        }
+    }
+
+    private static Dataset parse(Reader reader) throws JvisionException {
+        Map<String, Integer> index = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<String> parentNames = new ArrayList<>();
+        double[] values = new double[1024];
+        try (CSVParser records = BasicTool.readCSV(reader)) {
+            for (CSVRecord record : records) {
+                double value;
+                try {
+                    String text = record.get(2).trim();
+                    value = text.isEmpty() ? 0 : Double.parseDouble(text);
+                } catch (NumberFormatException e) {
+                    if (record.getRecordNumber() == 1) continue;
+                    throw new JvisionException("Data parse error at record: " + record.getRecordNumber(), e,
+                            Stage.DATA_LOADING);
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    throw new JvisionException("Record " + record.getRecordNumber() + " should have three columns",
+                            e, Stage.DATA_LOADING);
+                }
+                if (!(value >= 0) || Double.isInfinite(value))
+                    throw new JvisionException("Value should be non-negative at record: " + record.getRecordNumber(),
+                            null, Stage.DATA_LOADING);
+                if (index.putIfAbsent(record.get(0), names.size()) != null)
+                    throw new JvisionException("Duplicate node " + record.get(0) + " at record: "
+                            + record.getRecordNumber(), null, Stage.DATA_LOADING);
+                if (names.size() == values.length) values = Arrays.copyOf(values, values.length * 2);
+                values[names.size()] = value;
+                names.add(record.get(0));
+                parentNames.add(record.get(1).trim());
+            }
+        } catch (IOException e) {
+            throw new JvisionException("Read CSV file failed", e, Stage.DATA_LOADING);
+        }
+        int size = names.size();
+        // 以数组存储子节点列表，子节点保持输入顺序
+        int[] parents = new int[size];
+        int[] offsets = new int[size + 2];
+        int roots = 0;
+        for (int i = 0; i < size; i++) {
+            String parentName = parentNames.get(i);
+            if (parentName.isEmpty()) {
+                parents[i] = -1;
+                roots++;
+            } else {
+                Integer parent = index.get(parentName);
+                if (parent == null)
+                    throw new JvisionException("Unknown parent " + parentName + " of node " + names.get(i), null,
+                            Stage.DATA_LOADING);
+                parents[i] = parent;
+            }
+            offsets[parents[i] + 2]++;
+        }
+        for (int i = 0; i < size; i++) offsets[i + 2] += offsets[i + 1];
+        int[] children = new int[size];
+        int[] fill = Arrays.copyOf(offsets, size + 1);
+        for (int i = 0; i < size; i++) children[fill[parents[i] + 1]++] = i;
+        // 非递归先序遍历，子节点逆序入栈以保持输入顺序
+        int[] order = new int[size];
+        int[] stack = new int[size];
+        int top = 0, visited = 0;
+        for (int i = offsets[1] - 1; i >= offsets[0]; i--) stack[top++] = children[i];
+        while (top > 0) {
+            int node = stack[--top];
+            order[visited++] = node;
+            for (int i = offsets[node + 2] - 1; i >= offsets[node + 1]; i--) stack[top++] = children[i];
+        }
+        if (visited != size)
+            throw new JvisionException("Hierarchy contains a cycle", null, Stage.DATA_LOADING);
+        return new Dataset(names, parents, values, order, roots == 1 ? 1 : 0);
+    }
+
+    private Dataset checkData() throws JvisionException {
+        Dataset data = dataset;
+        if (data == null || data.names.length == 0 || data.total <= 0) {
+            throw new JvisionException("No data loaded", null, Stage.DATA_LOADING);
+        }
+        return data;
+    }
+
+    @Override
+    public void draw(String file) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.SUNBURST_DIAGRAM)) {
+            Dataset data = checkData();
+            try (CreateGraphics cg = new CreateGraphics(width, height, BasicTool.getFileExtName(file), file, deterministic)) {
+                paint(cg.getGraphics(), data);
+                cg.saveToFile();
+            }
+        }
+    }
+
+    @Override
+    public void draw(OutputStream out, String type) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.SUNBURST_DIAGRAM)) {
+            Dataset data = checkData();
+            try (CreateGraphics cg = new CreateGraphics(width, height, type, out, deterministic)) {
+                paint(cg.getGraphics(), data);
+                cg.saveToFile();
+            }
+        }
+    }
+
+    @Override
+    public void paint(Graphics2D graphics, String type) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.SUNBURST_DIAGRAM)) {
+            paint(graphics, checkData());
+        }
+    }
+
+    @Override
+    public void paint(Graphics2D graphics, String type, Rectangle2D region) throws JvisionException {
+        try (RenderMetrics metrics = RenderMetrics.begin(ChartSpec.SUNBURST_DIAGRAM)) {
+            Dataset data = checkData();
+            Shape clip = graphics.getClip();
+            graphics.clip(region);
+            paint(graphics, data);
+            graphics.setClip(clip);
+        }
+    }
+
+    /**
+     * 估计绘制开销，每个节点计一个环段，聚合的细小节点同样计入
+     */
+    @Override
+    public RenderEstimate estimate(String type) {
+        Dataset data = dataset;
+        return RenderEstimate.of(type, width, height, data == null ? 0 : data.names.length, 0);
+    }
+
+    /**
+     * 每个第一层分支为一个扇区，分支内任一节点变化时整个分支重绘
+     */
+    @Override
+    public List<Sector> getSectors(String type) throws JvisionException {
+        Dataset data = checkData();
+        double radius = radius(), hole = radius * holeRatio;
+        List<Sector> sectors = new ArrayList<>();
+        for (int i = 0; i < data.names.length; i++) {
+            if (data.depths[i] != data.branchDepth) continue;
+            double signature = 0;
+            for (int j = i; j < i + data.subtrees[i]; j++) {
+                signature += data.sizes[j] * (j + 1) * (data.starts[j] + Math.PI);
+            }
+            Path2D.Double wedge = new Path2D.Double();
+            appendWedge(wedge, hole, radius, data.starts[i], data.spans[i]);
+            sectors.add(new Sector(data.names[i], new double[] { data.sizes[i], signature },
+                    color(data.branches[i], 0), wedge, wedge.getBounds2D()));
+            i += data.subtrees[i] - 1;
+        }
+        return sectors;
+    }
+
+    @Override
+    public PolarHitIndex getHitIndex(String type) throws JvisionException {
+        Dataset data = checkData();
+        double radius = radius(), hole = radius * holeRatio;
+        double band = (radius - hole) / (data.maxDepth + 1);
+        PolarHitIndex index = new PolarHitIndex(width / 2.0, height / 2.0, hole);
+        for (int i = 0; i < data.names.length; i++) {
+            if (data.spans[i] <= 0) continue;
+            int depth = data.depths[i];
+            index.addWedge(i, depth, data.names[i], data.sizes[i], data.starts[i], data.spans[i],
+                    hole + depth * band, hole + (depth + 1) * band);
+        }
+        return index;
+    }
+
+    /**
+     * 绘制旭日图，依次为背景、环段、分隔线、标签与标题
+     * 
+     * @param graphics 绘图对象
+     * @param data     数据集
+     */
+    private void paint(Graphics2D graphics, Dataset data) {
+        double scale = Math.sqrt(Math.abs(graphics.getTransform().getDeterminant()));
+        double radius = radius(), hole = radius * holeRatio;
+        double band = (radius - hole) / (data.maxDepth + 1);
+        double centerX = width / 2.0, centerY = height / 2.0;
+        int levels = data.maxDepth + 1;
+        graphics.setBackground(Constant.DEFAULT_BACKGROUND_COLOR);
+        graphics.clearRect(0, 0, width, height);
+        Path2D.Float[] fills = new Path2D.Float[(colorSet.length + 1) * levels];
+        Path2D.Float separators = new Path2D.Float();
+        // 各层待合并的连续小节点
+        double[] runStarts = new double[levels];
+        double[] runEnds = new double[levels];
+        int[] runKeys = new int[levels];
+        Arrays.fill(runKeys, -1);
+        boolean[] labeled = new boolean[data.names.length];
+        long primitives = 0;
+        for (int i = 0; i < data.names.length;) {
+            double span = data.spans[i];
+            if (span <= 0) {
+                i += data.subtrees[i];
+                continue;
+            }
+            int depth = data.depths[i];
+            double inner = hole + depth * band, outer = inner + band;
+            int key = (data.branches[i] < 0 ? 0 : data.branches[i] % colorSet.length + 1) * levels + depth;
+            if (Math.toRadians(span) * outer * scale < minSegmentWidth) {
+                if (runKeys[depth] != key || Math.abs(runEnds[depth] - data.starts[i]) > 1e-9) {
+                    primitives += flushRun(fills, runKeys, runStarts, runEnds, depth, inner, outer);
+                    runKeys[depth] = key;
+                    runStarts[depth] = data.starts[i];
+                }
+                runEnds[depth] = data.starts[i] + span;
+                i += data.subtrees[i];
+                continue;
+            }
+            if (fills[key] == null) fills[key] = new Path2D.Float(Path2D.WIND_NON_ZERO, 64);
+            appendWedge(fills[key], inner, outer, data.starts[i], span);
+            primitives++;
+            if (Math.toRadians(span) * outer * scale >= SEPARATOR_WIDTH && span < 360) {
+                double theta = Math.toRadians(data.starts[i]);
+                separators.moveTo(centerX + Math.cos(theta) * inner, centerY + Math.sin(theta) * inner);
+                separators.lineTo(centerX + Math.cos(theta) * outer, centerY + Math.sin(theta) * outer);
+                labeled[i] = true;
+            }
+            i++;
+        }
+        for (int depth = 0; depth < levels; depth++) {
+            primitives += flushRun(fills, runKeys, runStarts, runEnds, depth, hole + depth * band,
+                    hole + (depth + 1) * band);
+        }
+        for (int key = 0; key < fills.length; key++) {
+            if (fills[key] == null) continue;
+            graphics.setColor(color(key / levels - 1, key % levels - data.branchDepth));
+            graphics.fill(fills[key]);
+        }
+        graphics.setColor(Constant.DEFAULT_BACKGROUND_COLOR);
+        Stroke stroke = graphics.getStroke();
+        graphics.setStroke(DrawTool.getLineStroke((float) (1 / Math.max(scale, 1e-9)), true, 0));
+        graphics.draw(separators);
+        graphics.setStroke(stroke);
+        RenderMetrics.primitives(primitives);
+        paintLabels(graphics, data, labeled, hole, band);
+        if (title != null) {
+            graphics.setColor(Constant.DEFAULT_FONT_COLOR);
+            graphics.setFont(ImageTool.getFont(fontFamily, fontStyle, Math.max(1, Math.min(width, height) / 30)));
+            DrawTool.drawText(graphics, title, centerX, Math.min(width, height) / 30.0, "m", "m");
+        }
+    }
+
+    /**
+     * 将一层中待合并的小节点作为一段环加入对应颜色的路径
+     * 
+     * @return 加入的环段数
+     */
+    private int flushRun(Path2D.Float[] fills, int[] runKeys, double[] runStarts, double[] runEnds, int depth,
+            double inner, double outer) {
+        int key = runKeys[depth];
+        if (key < 0) return 0;
+        if (fills[key] == null) fills[key] = new Path2D.Float(Path2D.WIND_NON_ZERO, 64);
+        appendWedge(fills[key], inner, outer, runStarts[depth], runEnds[depth] - runStarts[depth]);
+        runKeys[depth] = -1;
+        return 1;
+    }
+
+    /**
+     * 沿半径方向绘制能放入环段的标签，左半圆的标签旋转180度保持文字朝上
+     */
+    private void paintLabels(Graphics2D graphics, Dataset data, boolean[] labeled, double hole, double band) {
+        int fontSize = Math.max(1, Math.min(width, height) / 70);
+        graphics.setFont(ImageTool.getFont(fontFamily, fontStyle, fontSize));
+        graphics.setColor(Constant.DEFAULT_FONT_COLOR);
+        FontMetrics metrics = graphics.getFontMetrics();
+        double centerX = width / 2.0, centerY = height / 2.0;
+        for (int i = 0; i < data.names.length; i++) {
+            if (!labeled[i]) continue;
+            double middle = hole + (data.depths[i] + 0.5) * band;
+            if (metrics.stringWidth(data.names[i]) > band - 4
+                    || Math.toRadians(data.spans[i]) * middle < metrics.getHeight())
+                continue;
+            double angle = data.starts[i] + data.spans[i] / 2;
+            double normalized = ((angle % 360) + 360) % 360;
+            if (normalized > 90 && normalized < 270) {
+                DrawTool.rotateText(graphics, data.names[i], centerX, centerY, angle + 180, middle, "m", "m");
+            } else {
+                DrawTool.rotateText(graphics, data.names[i], centerX, centerY, angle, -middle, "m", "m");
+            }
+        }
+    }
+
+    /**
+     * 加入一段环的闭合路径，角度单位为度，为图像坐标中由x轴正向顺时针的角度
+     */
+    private void appendWedge(Path2D path, double inner, double outer, double start, double span) {
+        double centerX = width / 2.0, centerY = height / 2.0;
+        double from = Math.toRadians(start), to = Math.toRadians(start + span);
+        path.moveTo(centerX + Math.cos(from) * inner, centerY + Math.sin(from) * inner);
+        path.lineTo(centerX + Math.cos(from) * outer, centerY + Math.sin(from) * outer);
+        DrawTool.arcTo(path, centerX, centerY, outer, start, start + span);
+        path.lineTo(centerX + Math.cos(to) * inner, centerY + Math.sin(to) * inner);
+        DrawTool.arcTo(path, centerX, centerY, inner, start + span, start);
+        path.closePath();
+    }
+
+    /**
+     * 获取分支颜色，随分支内的相对深度向白色混合
+     * 
+     * @param branch 分支序号，-1为单一根节点
+     * @param level  分支内的相对深度
+     * @return 颜色
+     */
+    private Color color(int branch, int level) {
+        if (branch < 0) return ROOT_COLOR;
+        Color base = colorSet[branch % colorSet.length];
+        double ratio = Math.min(0.6, level * 0.15);
+        return new Color((int) Math.round(base.getRed() + (255 - base.getRed()) * ratio),
+                (int) Math.round(base.getGreen() + (255 - base.getGreen()) * ratio),
+                (int) Math.round(base.getBlue() + (255 - base.getBlue()) * ratio));
+    }
+
+    private double radius() {
+        return Math.min(width, height) * 0.44;
+    }
+
+    /**
+     * 按先序展开的不可变层级数据，节点的子孙位于其后连续的{@code subtrees[i] - 1}个位置
+     */
+    private static class Dataset implements Serializable {
+        private static final long serialVersionUID = 202210192010002L;
+        private final String[] names;
+        private final int[] depths;
+        /**
+         * 节点及其子孙的节点数
+         */
+        private final int[] subtrees;
+        /**
+         * 节点及其子孙的数值之和
+         */
+        private final double[] sizes;
+        /**
+         * 所在第一层分支的序号，单一根节点为-1
+         */
+        private final int[] branches;
+        /**
+         * 环段起始角度与弧度，单位为度
+         */
+        private final double[] starts;
+        private final double[] spans;
+        private final int maxDepth;
+        /**
+         * 第一层分支的深度，单一根节点时为1，否则为0
+         */
+        private final int branchDepth;
+        private final double total;
+
+        /**
+         * @param names       输入顺序的节点名
+         * @param parents     输入顺序的父节点序号，根节点为-1
+         * @param values      输入顺序的节点自身数值
+         * @param order       先序遍历的输入序号
+         * @param branchDepth 第一层分支的深度
+         */
+        private Dataset(List<String> names, int[] parents, double[] values, int[] order, int branchDepth) {
+            int size = order.length;
+            int[] position = new int[size];
+            for (int i = 0; i < size; i++) position[order[i]] = i;
+            this.names = new String[size];
+            this.depths = new int[size];
+            this.subtrees = new int[size];
+            this.sizes = new double[size];
+            this.branches = new int[size];
+            this.starts = new double[size];
+            this.spans = new double[size];
+            this.branchDepth = branchDepth;
+            int[] parentPositions = new int[size];
+            int maxDepth = 0, branchCount = 0;
+            for (int i = 0; i < size; i++) {
+                int node = order[i];
+                int parent = parents[node] < 0 ? -1 : position[parents[node]];
+                parentPositions[i] = parent;
+                this.names[i] = names.get(node);
+                this.depths[i] = parent < 0 ? 0 : depths[parent] + 1;
+                this.branches[i] = depths[i] < branchDepth ? -1
+                        : depths[i] == branchDepth ? branchCount++ : branches[parent];
+                this.subtrees[i] = 1;
+                this.sizes[i] = values[node];
+                maxDepth = Math.max(maxDepth, depths[i]);
+            }
+            this.maxDepth = maxDepth;
+            // 逆先序累加子孙数值与节点数
+            double total = 0;
+            for (int i = size - 1; i >= 0; i--) {
+                int parent = parentPositions[i];
+                if (parent >= 0) {
+                    sizes[parent] += sizes[i];
+                    subtrees[parent] += subtrees[i];
+                } else {
+                    total += sizes[i];
+                }
+            }
+            this.total = total;
+            // 先序一次遍历，父节点的环段先于子节点确定，子节点依次占用父节点的弧度
+            double degreesPerValue = total > 0 ? 360 / total : 0;
+            double[] cursors = new double[size];
+            double rootCursor = -90;
+            for (int i = 0; i < size; i++) {
+                int parent = parentPositions[i];
+                spans[i] = sizes[i] * degreesPerValue;
+                if (parent < 0) {
+                    starts[i] = rootCursor;
+                    rootCursor += spans[i];
+                } else {
+                    starts[i] = cursors[parent];
+                    cursors[parent] += spans[i];
+                }
+                cursors[i] = starts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import top.gcszhn.jvision.BatchRenderer;
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.RenderJob;
+import top.gcszhn.jvision.chart.ChartSpec;
+import top.gcszhn.jvision.chart.JChart;
+
+/**
+ * Command line entry point rendering charts declared in {@link SpecFile}s.
+ * 
+ * <pre class="code">
+ * java -cp "jvision-1.2.jar:lib/*" top.gcszhn.jvision.cli.JvisionCli [--watch] [--threads N] [--memory MiB] spec.properties|dir ...
+ * </pre>
+ * 
+ * Directories contribute all their {@code *.properties} files. Charts render
+ * in parallel on a {@link BatchRenderer}. With {@code --watch} the process
+ * keeps running and re-renders only the charts whose spec or data file
+ * changed. Loaded charts are kept between runs and reused while their
+ * settings and data file are unchanged, so a spec edit that only changes
+ * outputs does not parse the data again.
+ */
+public class JvisionCli implements AutoCloseable {
+    private static final String SPEC_SUFFIX = ".properties";
+    /** Quiet period collecting further file events before re-rendering */
+    private static final long DEBOUNCE_MILLIS = 200;
+    private final BatchRenderer renderer;
+    /** Directories whose new spec files are picked up */
+    private final Set<Path> specDirectories = new HashSet<>();
+    /** Known specs by spec file */
+    private final Map<Path, SpecFile> specs = new LinkedHashMap<>();
+    /** Version of the inputs at the last render, by spec file */
+    private final Map<Path, String> rendered = new ConcurrentHashMap<>();
+    /** Loaded charts kept warm between runs, by spec file */
+    private final Map<Path, LoadedChart> charts = new ConcurrentHashMap<>();
+
+    public JvisionCli(int threads, long memoryCap) {
+        renderer = new BatchRenderer(threads, threads * 2, memoryCap);
+    }
+
+    /**
+     * Add spec files, directories contribute all their spec files
+     * 
+     * @param paths spec files or directories
+     * @return spec files that failed to parse
+     */
+    public int add(List<Path> paths) throws IOException {
+        int failed = 0;
+        for (Path path : paths) {
+            path = path.toAbsolutePath().normalize();
+            if (Files.isDirectory(path)) {
+                specDirectories.add(path);
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*" + SPEC_SUFFIX)) {
+                    for (Path file : files) {
+                        if (!addSpec(file.toAbsolutePath().normalize())) failed++;
+                    }
+                }
+            } else if (!addSpec(path)) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    private boolean addSpec(Path file) {
+        try {
+            specs.put(file, SpecFile.parse(file));
+            return true;
+        } catch (JvisionException e) {
+            specs.remove(file);
+            System.err.println(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Render the given specs, skipping those whose inputs did not change
+     * since their last render
+     * 
+     * @param targets specs to render
+     * @return failed renders
+     */
+    public int render(List<SpecFile> targets) throws InterruptedException {
+        List<RenderJob> jobs = new ArrayList<>();
+        for (SpecFile target : targets) {
+            String version = version(target);
+            if (version.equals(rendered.get(target.getPath()))) continue;
+            for (String output : target.getOutputFiles()) {
+                File parent = new File(output).getAbsoluteFile().getParentFile();
+                if (!parent.isDirectory()) parent.mkdirs();
+            }
+            rendered.put(target.getPath(), version);
+            jobs.add(new RenderJob(target.getPath().toString(), () -> load(target),
+                    target.getOutputFiles().toArray(new String[0])));
+        }
+        AtomicInteger failed = new AtomicInteger();
+        renderer.render(jobs.stream(), result -> {
+            if (!result.isSuccess()) {
+                failed.incrementAndGet();
+                // 失败后输入不变也应在下次重试
+                rendered.remove(Paths.get(result.getId()));
+            }
+            System.out.println(result);
+        });
+        return failed.get();
+    }
+
+    public int renderAll() throws InterruptedException {
+        return render(new ArrayList<>(specs.values()));
+    }
+
+    /**
+     * Loaded chart of a spec, reused while settings and data are unchanged
+     */
+    private JChart load(SpecFile target) throws JvisionException {
+        String dataVersion = fileVersion(target.getData());
+        LoadedChart loaded = charts.get(target.getPath());
+        if (loaded != null && loaded.spec.equals(target.getSpec()) && loaded.data.equals(target.getData())
+                && loaded.dataVersion.equals(dataVersion)) {
+            return loaded.chart;
+        }
+        JChart chart = target.getSpec().load(target.getData().toString());
+        charts.put(target.getPath(), new LoadedChart(target.getSpec(), target.getData(), dataVersion, chart));
+        return chart;
+    }
+
+    private static String version(SpecFile target) {
+        return fileVersion(target.getPath()) + "|" + fileVersion(target.getData());
+    }
+
+    /**
+     * Modification time and size, empty if the file is missing
+     */
+    private static String fileVersion(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis() + ":" + Files.size(file);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Watch spec and data directories and re-render affected charts until
+     * interrupted
+     */
+    public void watch() throws IOException, InterruptedException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            Set<Path> watched = new HashSet<>();
+            register(watcher, watched);
+            System.out.println("Watching " + watched.size() + " directories, press Ctrl+C to stop");
+            while (true) {
+                Set<Path> changed = new HashSet<>();
+                collect(watcher.take(), changed);
+                WatchKey key;
+                while ((key = watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, changed);
+                }
+                List<SpecFile> targets = affected(changed);
+                register(watcher, watched);
+                render(targets);
+            }
+        }
+    }
+
+    /**
+     * Apply changed files to the known specs, re-parsing edited specs,
+     * adding new ones of watched directories and dropping deleted ones
+     * 
+     * @param changed changed files, absolute and normalized
+     * @return specs whose spec or data file changed
+     */
+    public List<SpecFile> affected(Set<Path> changed) {
+        for (Path path : changed) {
+            boolean isSpec = specs.containsKey(path)
+                    || (path.toString().endsWith(SPEC_SUFFIX) && specDirectories.contains(path.getParent()));
+            if (!isSpec) continue;
+            if (Files.exists(path)) {
+                addSpec(path);
+            } else {
+                specs.remove(path);
+                rendered.remove(path);
+                charts.remove(path);
+            }
+        }
+        List<SpecFile> targets = new ArrayList<>();
+        for (SpecFile spec : specs.values()) {
+            if (changed.contains(spec.getPath()) || changed.contains(spec.getData())) targets.add(spec);
+        }
+        return targets;
+    }
+
+    /**
+     * Register directories of specs and data files not watched yet
+     */
+    private void register(WatchService watcher, Set<Path> watched) throws IOException {
+        Set<Path> directories = new HashSet<>(specDirectories);
+        for (SpecFile spec : specs.values()) {
+            directories.add(spec.getPath().getParent());
+            directories.add(spec.getData().getParent());
+        }
+        for (Path directory : directories) {
+            if (watched.add(directory) && Files.isDirectory(directory)) {
+                directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    private static void collect(WatchKey key, Set<Path> changed) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+            changed.add(directory.resolve((Path) event.context()).normalize());
+        }
+        key.reset();
+    }
+
+    @Override
+    public void close() {
+        renderer.close();
+    }
+
+    private static class LoadedChart {
+        private final ChartSpec spec;
+        private final Path data;
+        private final String dataVersion;
+        private final JChart chart;
+
+        private LoadedChart(ChartSpec spec, Path data, String dataVersion, JChart chart) {
+            this.spec = spec;
+            this.data = data;
+            this.dataVersion = dataVersion;
+            this.chart = chart;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: JvisionCli [--watch] [--threads N] [--memory MiB] spec.properties|dir ...");
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", System.getProperty("java.awt.headless", "true"));
+        boolean watch = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long memoryMiB = 1024;
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--watch": watch = true; break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--memory": memoryMiB = Long.parseLong(args[++i]); break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        usage();
+                        System.exit(2);
+                    }
+                    paths.add(Paths.get(args[i]));
+            }
+        }
+        if (paths.isEmpty()) {
+            usage();
+            System.exit(2);
+        }
+        int failed;
+        try (JvisionCli cli = new JvisionCli(threads, memoryMiB << 20)) {
+            failed = cli.add(paths);
+            failed += cli.renderAll();
+            if (watch) cli.watch();
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
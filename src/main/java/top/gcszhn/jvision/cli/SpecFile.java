@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.cli;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import lombok.Getter;
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.Stage;
+import top.gcszhn.jvision.chart.ChartSpec;
+
+/**
+ * A chart declared in a properties file. Besides the settings of
+ * {@link ChartSpec}, the file has the keys {@code chart} (ring or histogram),
+ * {@code data} (CSV file), {@code output} (output path without extension,
+ * defaults to the data file name) and {@code formats} (comma separated,
+ * defaults to png). Relative paths are resolved against the spec file.
+ * 
+ * <pre class="code">
+ * chart=ring
+ * data=data-precision-Wilcoxon.csv
+ * formats=png,pdf
+ * title=Precision
+ * width=600
+ * height=600
+ * radiusRange=80,200
+ * valueRange=0.9,1
+ * </pre>
+ */
+public class SpecFile {
+    /** Spec file, absolute and normalized */
+    private @Getter final Path path;
+    private @Getter final ChartSpec spec;
+    /** Data file, absolute and normalized */
+    private @Getter final Path data;
+    /** Output files, one per format */
+    private @Getter final List<String> outputFiles;
+
+    private SpecFile(Path path, ChartSpec spec, Path data, List<String> outputFiles) {
+        this.path = path;
+        this.spec = spec;
+        this.data = data;
+        this.outputFiles = outputFiles;
+    }
+
+    /**
+     * Parse a spec file
+     * 
+     * @param file spec file
+     * @return parsed spec
+     * @throws JvisionException unreadable file, missing key or invalid setting
+     */
+    public static SpecFile parse(Path file) throws JvisionException {
+        Path path = file.toAbsolutePath().normalize();
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new JvisionException("Read spec file " + path + " failed", e, Stage.GRAHPIC_INITIALIZATION);
+        }
+        Map<String, String> params = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            params.put(key, properties.getProperty(key).trim());
+        }
+        String chart = params.remove("chart");
+        String data = params.remove("data");
+        if (chart == null || data == null)
+            throw new JvisionException("Spec file " + path + " should set chart and data", null, Stage.GRAHPIC_INITIALIZATION);
+        Path dataPath = path.getParent().resolve(data).normalize();
+        String output = params.remove("output");
+        if (output == null) {
+            String name = dataPath.getFileName().toString();
+            output = dataPath.resolveSibling(name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name).toString();
+        } else {
+            output = path.getParent().resolve(output).normalize().toString();
+        }
+        String formats = params.remove("formats");
+        List<String> outputFiles = new ArrayList<>();
+        for (String format : (formats == null ? "png" : formats).split(",")) {
+            outputFiles.add(output + "." + format.trim().toLowerCase());
+        }
+        ChartSpec spec = new ChartSpec(chart, params);
+        return new SpecFile(path, spec, dataPath, Collections.unmodifiableList(outputFiles));
+    }
+}
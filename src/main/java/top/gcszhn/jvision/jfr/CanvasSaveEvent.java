@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import lombok.Setter;
+
+/**
+ * Encoding of a canvas by {@link top.gcszhn.jvision.tools.CreateGraphics#saveToFile()}
+ */
+@Name("top.gcszhn.jvision.CanvasSave")
+@Label("Canvas Save")
+@Category({ "jvision", "Rendering" })
+@Description("Encoding of a canvas to png, jpg, pdf or eps")
+@Setter
+public class CanvasSaveEvent extends jdk.jfr.Event {
+    @Label("Output Type")
+    private String outputType;
+
+    @Label("Width")
+    private int width;
+
+    @Label("Height")
+    private int height;
+
+    @Label("Bytes Written")
+    @DataAmount
+    private long bytesWritten;
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import lombok.Setter;
+
+/**
+ * Scan of the system font directory by
+ * {@link top.gcszhn.jvision.tools.ImageTool#loadSystemFontMap()}
+ */
+@Name("top.gcszhn.jvision.FontMapLoad")
+@Label("Font Map Load")
+@Category({ "jvision", "Fonts" })
+@Description("Scan of the system font directory")
+@Setter
+public class FontMapLoadEvent extends jdk.jfr.Event {
+    @Label("Font Directory")
+    private String fontDirectory;
+
+    @Label("Font Files")
+    private int fontFiles;
+}
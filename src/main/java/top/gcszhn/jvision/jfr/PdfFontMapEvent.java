@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import lombok.Setter;
+
+/**
+ * Creation of a pdf base font for an awt font. Mapped fonts are cached, so
+ * this occurs once per font file and embedding mode.
+ */
+@Name("top.gcszhn.jvision.PdfFontMap")
+@Label("PDF Font Map")
+@Category({ "jvision", "Fonts" })
+@Description("Creation of a pdf base font for an awt font")
+@Setter
+public class PdfFontMapEvent extends jdk.jfr.Event {
+    @Label("Font Family")
+    private String family;
+
+    @Label("Font Style")
+    private int style;
+
+    @Label("Font File")
+    private String fontFile;
+
+    @Label("Subset")
+    private boolean subset;
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.metrics;
+
+import java.util.Locale;
+
+import top.gcszhn.jvision.Stage;
+
+/**
+ * Aggregates the metrics of all renders into {@link LongHistogram}s per stage,
+ * showing whether time goes into CSV parsing, Java2D or encoding.
+ * 
+ * <pre class="code">
+ * HistogramRenderListener histograms = new HistogramRenderListener();
+ * RenderMetrics.addListener(histograms);
+ * ...
+ * System.out.println(histograms);
+ * </pre>
+ */
+public class HistogramRenderListener implements RenderListener {
+    /** Metric names, in the column order of the arrays below */
+    private static final String[] METRICS = { "wall_nanos", "cpu_nanos", "bytes_read", "bytes_written", "rows",
+            "primitives", "glyphs" };
+    private final LongHistogram[][] stages = new LongHistogram[Stage.values().length][METRICS.length];
+    private final LongHistogram renderNanos = new LongHistogram();
+    private final LongHistogram peakImageBytes = new LongHistogram();
+
+    public HistogramRenderListener() {
+        for (LongHistogram[] histograms : stages) {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LongHistogram();
+            }
+        }
+    }
+
+    @Override
+    public void renderFinished(RenderMetrics metrics) {
+        for (Stage stage : Stage.values()) {
+            LongHistogram[] histograms = stages[stage.ordinal()];
+            if (metrics.getWallNanos(stage) == 0) continue;
+            histograms[0].record(metrics.getWallNanos(stage));
+            histograms[1].record(metrics.getCpuNanos(stage));
+            histograms[2].record(metrics.getBytesRead(stage));
+            histograms[3].record(metrics.getBytesWritten(stage));
+            histograms[4].record(metrics.getRows(stage));
+            histograms[5].record(metrics.getPrimitives(stage));
+            histograms[6].record(metrics.getGlyphs(stage));
+        }
+        renderNanos.record(metrics.getWallNanos());
+        peakImageBytes.record(metrics.getPeakImageBytes());
+    }
+
+    /**
+     * Histogram of one metric of a stage
+     * 
+     * @param stage  stage
+     * @param metric one of wall_nanos, cpu_nanos, bytes_read, bytes_written,
+     *               rows, primitives and glyphs
+     * @return histogram
+     */
+    public LongHistogram get(Stage stage, String metric) {
+        for (int i = 0; i < METRICS.length; i++) {
+            if (METRICS[i].equals(metric)) return stages[stage.ordinal()][i];
+        }
+        throw new IllegalArgumentException("Unknown metric " + metric);
+    }
+
+    public LongHistogram getRenderNanos() {
+        return renderNanos;
+    }
+
+    public LongHistogram getPeakImageBytes() {
+        return peakImageBytes;
+    }
+
+    /**
+     * Export count, sum and quantiles in the Prometheus text format
+     * 
+     * @return text exposition
+     */
+    public String toPrometheus() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < METRICS.length; i++) {
+            String name = "jvision_render_stage_" + METRICS[i];
+            builder.append("# TYPE ").append(name).append(" summary\n");
+            for (Stage stage : Stage.values()) {
+                append(builder, name, "stage=\"" + stage + "\",", stages[stage.ordinal()][i]);
+            }
+        }
+        builder.append("# TYPE jvision_render_nanos summary\n");
+        append(builder, "jvision_render_nanos", "", renderNanos);
+        builder.append("# TYPE jvision_render_peak_image_bytes summary\n");
+        append(builder, "jvision_render_peak_image_bytes", "", peakImageBytes);
+        return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, String name, String labels, LongHistogram histogram) {
+        for (double quantile : new double[] { 0.5, 0.9, 0.99 }) {
+            builder.append(name).append('{').append(labels).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getQuantile(quantile)).append('\n');
+        }
+        String suffix = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        builder.append(name).append("_sum").append(suffix).append(' ').append(histogram.getSum()).append('\n');
+        builder.append(name).append("_count").append(suffix).append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "%-15s %8s %12s %12s %12s %12s%n", "stage", "count", "wall_p50_ms",
+                "wall_p99_ms", "cpu_p50_ms", "written_p50"));
+        for (Stage stage : Stage.values()) {
+            LongHistogram[] histograms = stages[stage.ordinal()];
+            builder.append(String.format(Locale.ROOT, "%-15s %8d %12.3f %12.3f %12.3f %12d%n", stage,
+                    histograms[0].getCount(),
+                    histograms[0].getQuantile(0.5) / 1e6,
+                    histograms[0].getQuantile(0.99) / 1e6,
+                    histograms[1].getQuantile(0.5) / 1e6,
+                    histograms[3].getQuantile(0.5)));
+        }
+        return builder.toString();
+    }
+}
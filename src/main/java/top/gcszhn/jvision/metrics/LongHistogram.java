@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values with power-of-two buckets, so
+ * that quantiles are exact within a factor of two. Recording is a few
+ * {@link LongAdder} increments and never blocks.
+ */
+public class LongHistogram {
+    /** Bucket i holds values in [2^(i-1), 2^i), bucket 0 holds 0 */
+    private final LongAdder[] buckets = new LongAdder[65];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LongHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a value, negative values count as 0
+     * 
+     * @param value value
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Upper bound of the bucket holding the quantile
+     * 
+     * @param quantile quantile in [0, 1]
+     * @return value at or above the quantile, 0 if empty
+     */
+    public long getQuantile(double quantile) {
+        long total = getCount();
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank && seen > 0) {
+                return Math.min(i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1, getMax());
+            }
+        }
+        return getMax();
+    }
+}
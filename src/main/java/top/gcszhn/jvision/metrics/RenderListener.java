@@ -0,0 +1,33 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.metrics;
+
+/**
+ * Receives the metrics of each finished render. Implementations are
+ * registered with {@link RenderMetrics#addListener(RenderListener)} or listed
+ * in {@code META-INF/services/top.gcszhn.jvision.metrics.RenderListener}.
+ * They are called on the rendering thread, so they should be fast and
+ * thread-safe.
+ */
+@FunctionalInterface
+public interface RenderListener {
+    /**
+     * Called once when a render scope is closed
+     * 
+     * @param metrics metrics of the render, not modified afterwards
+     */
+    void renderFinished(RenderMetrics metrics);
+}
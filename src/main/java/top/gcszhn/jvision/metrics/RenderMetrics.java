@@ -0,0 +1,267 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import lombok.Getter;
+import top.gcszhn.jvision.Stage;
+
+/**
+ * Per-render measurements, broken down by {@link Stage}. A render scope is
+ * bound to the current thread: charts open one around loading and drawing,
+ * and callers that load and draw in one job open an outer scope so both end
+ * up in the same record.
+ * 
+ * <pre class="code">
+ * try (RenderMetrics metrics = RenderMetrics.begin("ring")) {
+ *     chart.loadData(file);
+ *     chart.draw(out, "png");
+ * }
+ * </pre>
+ * 
+ * Library code reports through the static methods, which do nothing when no
+ * scope is open. Counters are attributed to the stage entered last; time
+ * between stages is not counted.
+ */
+public final class RenderMetrics implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(RenderMetrics.class.getName());
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+    private static final ThreadLocal<RenderMetrics> CURRENT = new ThreadLocal<>();
+    private static final List<RenderListener> LISTENERS = new CopyOnWriteArrayList<>();
+    static {
+        for (RenderListener listener : ServiceLoader.load(RenderListener.class)) {
+            LISTENERS.add(listener);
+        }
+    }
+
+    private static final int STAGES = Stage.values().length;
+    /** Chart name, given by the first scope that names it */
+    private @Getter String chart;
+    /** Output type of the last canvas created, null before drawing */
+    private @Getter String outputType;
+    private final long[] wallNanos = new long[STAGES];
+    private final long[] cpuNanos = new long[STAGES];
+    private final long[] bytesRead = new long[STAGES];
+    private final long[] bytesWritten = new long[STAGES];
+    private final long[] rows = new long[STAGES];
+    private final long[] primitives = new long[STAGES];
+    private final long[] glyphs = new long[STAGES];
+    /** Largest image buffer allocated, in bytes */
+    private @Getter long peakImageBytes;
+    private Stage stage;
+    private long stageWallStart;
+    private long stageCpuStart;
+    private int depth = 1;
+
+    private RenderMetrics(String chart) {
+        this.chart = chart;
+    }
+
+    /**
+     * Open a render scope on the current thread, or join the open one
+     * 
+     * @param chart chart name, null to let the chart name it
+     * @return scope to close when the render is done
+     */
+    public static RenderMetrics begin(String chart) {
+        RenderMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.depth++;
+            if (metrics.chart == null) metrics.chart = chart;
+            return metrics;
+        }
+        metrics = new RenderMetrics(chart);
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * Scope open on the current thread
+     * 
+     * @return scope, null if none
+     */
+    public static RenderMetrics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Register a listener for all renders of this process
+     * 
+     * @param listener listener
+     */
+    public static void addListener(RenderListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(RenderListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * End the current stage and start timing another one
+     * 
+     * @param stage stage entered
+     */
+    public static void enter(Stage stage) {
+        RenderMetrics metrics = CURRENT.get();
+        if (metrics != null) metrics.switchStage(stage);
+    }
+
+    public static void outputType(String type) {
+        RenderMetrics metrics = CURRENT.get();
+        if (metrics != null) metrics.outputType = type;
+    }
+
+    /**
+     * Count characters or bytes consumed from the input
+     * 
+     * @param count amount read
+     */
+    public static void bytesRead(long count) {
+        RenderMetrics metrics = CURRENT.get();
+        if (metrics != null) metrics.bytesRead[metrics.index()] += count;
+    }
+
+    public static void bytesWritten(long count) {
+        RenderMetrics metrics = CURRENT.get();
+        if (metrics != null) metrics.bytesWritten[metrics.index()] += count;
+    }
+
+    public static void rows(long count) {
+        RenderMetrics metrics = CURRENT.get();
+        if (metrics != null) metrics.rows[metrics.index()] += count;
+    }
+
+    /**
+     * Count shapes filled or stroked
+     * 
+     * @param count shapes drawn
+     */
+    public static void primitives(long count) {
+        RenderMetrics metrics = CURRENT.get();
+        if (metrics != null) metrics.primitives[metrics.index()] += count;
+    }
+
+    public static void glyphs(long count) {
+        RenderMetrics metrics = CURRENT.get();
+        if (metrics != null) metrics.glyphs[metrics.index()] += count;
+    }
+
+    /**
+     * Report an image buffer allocation
+     * 
+     * @param bytes buffer size
+     */
+    public static void imageAllocated(long bytes) {
+        RenderMetrics metrics = CURRENT.get();
+        if (metrics != null && bytes > metrics.peakImageBytes) metrics.peakImageBytes = bytes;
+    }
+
+    /**
+     * Stage used for counters reported outside any stage
+     */
+    private int index() {
+        return (stage != null ? stage : Stage.GRAHPIC_PAINTING).ordinal();
+    }
+
+    private void switchStage(Stage next) {
+        long wall = System.nanoTime();
+        long cpu = CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+        if (stage != null) {
+            wallNanos[stage.ordinal()] += wall - stageWallStart;
+            cpuNanos[stage.ordinal()] += cpu - stageCpuStart;
+        }
+        stage = next;
+        stageWallStart = wall;
+        stageCpuStart = cpu;
+    }
+
+    /**
+     * End the current stage, and notify the listeners when the outermost
+     * scope is closed
+     */
+    @Override
+    public void close() {
+        if (stage != null) switchStage(null);
+        if (--depth > 0) return;
+        CURRENT.remove();
+        for (RenderListener listener : LISTENERS) {
+            try {
+                listener.renderFinished(this);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Render listener " + listener.getClass().getName() + " failed", e);
+            }
+        }
+    }
+
+    public long getWallNanos(Stage stage) {
+        return wallNanos[stage.ordinal()];
+    }
+
+    /**
+     * CPU time of the rendering thread, 0 if the JVM does not measure it
+     * 
+     * @param stage stage
+     * @return nanoseconds
+     */
+    public long getCpuNanos(Stage stage) {
+        return cpuNanos[stage.ordinal()];
+    }
+
+    public long getBytesRead(Stage stage) {
+        return bytesRead[stage.ordinal()];
+    }
+
+    public long getBytesWritten(Stage stage) {
+        return bytesWritten[stage.ordinal()];
+    }
+
+    public long getRows(Stage stage) {
+        return rows[stage.ordinal()];
+    }
+
+    public long getPrimitives(Stage stage) {
+        return primitives[stage.ordinal()];
+    }
+
+    public long getGlyphs(Stage stage) {
+        return glyphs[stage.ordinal()];
+    }
+
+    public long getWallNanos() {
+        return sum(wallNanos);
+    }
+
+    public long getCpuNanos() {
+        return sum(cpuNanos);
+    }
+
+    private static long sum(long[] values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.Getter;
+import top.gcszhn.jvision.AdmissionController;
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.Stage;
+import top.gcszhn.jvision.cache.RenderCache;
+import top.gcszhn.jvision.chart.ChartSpec;
+import top.gcszhn.jvision.chart.JChart;
+import top.gcszhn.jvision.metrics.HistogramRenderListener;
+import top.gcszhn.jvision.metrics.RenderMetrics;
+import top.gcszhn.jvision.tools.CreateGraphics;
+import top.gcszhn.jvision.tools.ImageTool;
+
+/**
+ * Embedded chart rendering service on the JDK http server.
+ * 
+ * <pre class="code">
+ * curl --data-binary @data.csv -o chart.png \
+ *     "http://localhost:8080/render/ring?width=600&amp;height=600&amp;radiusRange=80,200&amp;valueRange=0.9,1&amp;format=png"
+ * </pre>
+ * 
+ * {@code POST /render/{chart}} takes the settings of {@link ChartSpec} as
+ * query parameters plus {@code format} (png, jpg, pdf or eps, default png),
+ * and the CSV data as request body. {@code GET /metrics} returns counters in
+ * the Prometheus text format. Renders run on a bounded worker pool, on
+ * virtual threads when the JVM supports them, and are abandoned with status
+ * 504 after the request timeout. With a {@link RenderCache}, 200 and 304
+ * responses carry the cache key as {@code ETag} and {@code If-None-Match} is
+ * answered with 304 without rendering. Draws are admitted into a memory budget by an
+ * {@link AdmissionController}; draws too large for it are rendered band by
+ * band or downscaled, and draws that fit in no mode are answered with 413.
+ */
+public class ChartServer {
+    /** Max request body size */
+    private static final int MAX_BODY_BYTES = 64 << 20;
+    /** Share of the max heap used as the default render memory budget */
+    private static final int DEFAULT_BUDGET_DIVISOR = 2;
+    private static final String BUDGET_BUSY = "Render memory budget is busy";
+    private static final Logger LOGGER = Logger.getLogger(ChartServer.class.getName());
+    private final HttpServer server;
+    private final ExecutorService exchangeExecutor;
+    private final ExecutorService renderExecutor;
+    /** Limits concurrent renders, including abandoned ones still running */
+    private final Semaphore renderSlots;
+    private final long timeoutMillis;
+    /** Render cache, null when disabled */
+    private final RenderCache cache;
+    /** Memory budget of concurrent draws */
+    private @Getter final AdmissionController admission;
+    private @Getter final ServerMetrics metrics = new ServerMetrics();
+    /** Per-stage render histograms, registered while the server runs */
+    private @Getter final HistogramRenderListener renderHistograms = new HistogramRenderListener();
+
+    /**
+     * Create a server, call {@link #start()} to accept requests
+     * 
+     * @param address       listening address
+     * @param workers       max concurrent renders
+     * @param timeoutMillis request timeout in milliseconds
+     * @throws IOException address unavailable
+     */
+    public ChartServer(InetSocketAddress address, int workers, long timeoutMillis) throws IOException {
+        this(address, workers, timeoutMillis, null);
+    }
+
+    /**
+     * Create a server with a render cache, call {@link #start()} to accept
+     * requests
+     * 
+     * @param address       listening address
+     * @param workers       max concurrent renders
+     * @param timeoutMillis request timeout in milliseconds
+     * @param cache         render cache, null to disable caching
+     * @throws IOException address unavailable
+     */
+    public ChartServer(InetSocketAddress address, int workers, long timeoutMillis, RenderCache cache) throws IOException {
+        this(address, workers, timeoutMillis, cache,
+                new AdmissionController(Runtime.getRuntime().maxMemory() / DEFAULT_BUDGET_DIVISOR));
+    }
+
+    /**
+     * Create a server with a render cache and a memory budget, call
+     * {@link #start()} to accept requests
+     * 
+     * @param address       listening address
+     * @param workers       max concurrent renders
+     * @param timeoutMillis request timeout in milliseconds
+     * @param cache         render cache, null to disable caching
+     * @param admission     memory budget of concurrent draws
+     * @throws IOException address unavailable
+     */
+    public ChartServer(InetSocketAddress address, int workers, long timeoutMillis, RenderCache cache,
+            AdmissionController admission) throws IOException {
+        this.timeoutMillis = timeoutMillis;
+        this.cache = cache;
+        this.admission = admission;
+        this.renderSlots = new Semaphore(workers);
+        this.renderExecutor = newWorkerExecutor(workers);
+        this.exchangeExecutor = newWorkerExecutor(workers * 4);
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(exchangeExecutor);
+        server.createContext("/render/", this::handleRender);
+        server.createContext("/metrics", this::handleMetrics);
+        // 预加载字体表，避免首个请求承担加载开销
+        ImageTool.getSystemFontMap();
+    }
+
+    /**
+     * Virtual thread executor on Java 21+, fixed thread pool otherwise
+     * 
+     * @param threads thread count of the fallback pool
+     * @return executor
+     */
+    private static ExecutorService newWorkerExecutor(int threads) {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    public void start() {
+        RenderMetrics.addListener(renderHistograms);
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests and shut down the worker pools
+     * 
+     * @param delaySeconds max seconds to wait for exchanges to finish
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        RenderMetrics.removeListener(renderHistograms);
+        exchangeExecutor.shutdown();
+        renderExecutor.shutdown();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        metrics.requestStarted();
+        int status = 200;
+        try {
+            String text = metrics.toPrometheus();
+            text += renderHistograms.toPrometheus();
+            if (cache != null) text += ServerMetrics.toPrometheus(cache);
+            text += ServerMetrics.toPrometheus(admission);
+            send(exchange, status, "text/plain; version=0.0.4", text.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            metrics.requestFinished(status, System.nanoTime() - start);
+        }
+    }
+
+    private void handleRender(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        metrics.requestStarted();
+        int status = 500;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                status = sendError(exchange, 405, "Use POST with CSV data as body");
+                return;
+            }
+            String chartType = exchange.getRequestURI().getPath().substring("/render/".length());
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            String format = params.containsKey("format") ? params.remove("format").toLowerCase() : "png";
+            if (!CreateGraphics.isSupportedFileType(format)) {
+                status = sendError(exchange, 415, "Unsupport File Type: " + format);
+                return;
+            }
+            ChartSpec spec;
+            try {
+                spec = new ChartSpec(chartType, params);
+            } catch (JvisionException e) {
+                status = sendError(exchange, 400, e.getMessage());
+                return;
+            }
+            byte[] data = readBody(exchange.getRequestBody());
+            if (data == null) {
+                status = sendError(exchange, 413, "Request body exceeds " + MAX_BODY_BYTES + " bytes");
+                return;
+            }
+            metrics.received(data.length);
+            String key = null;
+            if (cache != null) {
+                key = RenderCache.key(data, spec, format);
+                if (etag(key).equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    status = 304;
+                    exchange.getResponseHeaders().set("ETag", etag(key));
+                    send(exchange, status, contentType(format), new byte[0]);
+                    return;
+                }
+                byte[] cached = cache.getIfPresent(key);
+                if (cached != null) {
+                    status = 200;
+                    exchange.getResponseHeaders().set("ETag", etag(key));
+                    send(exchange, status, contentType(format), cached);
+                    return;
+                }
+            }
+            if (!renderSlots.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                status = sendError(exchange, 503, "All render workers are busy");
+                return;
+            }
+            Future<byte[]> future;
+            try {
+                if (key == null) {
+                    RenderTask task = new RenderTask(() -> render(spec, data, format, deadline));
+                    renderExecutor.execute(task);
+                    future = task;
+                } else {
+                    // 缓存任务可能被多个请求共享，超时后不取消，由完成回调归还名额
+                    future = cache.get(key, () -> render(spec, data, format, deadline), renderExecutor)
+                            .whenComplete((image, error) -> renderSlots.release());
+                }
+            } catch (RejectedExecutionException e) {
+                renderSlots.release();
+                status = sendError(exchange, 503, "Server is stopping");
+                return;
+            }
+            byte[] image;
+            try {
+                image = future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (key == null) future.cancel(true);
+                status = sendError(exchange, 504, "Render timed out after " + timeoutMillis + "ms");
+                return;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                boolean badRequest = cause instanceof JvisionException
+                        && ((JvisionException) cause).getStage() != Stage.GRAHPIC_SERIALIZATION;
+                if (cause instanceof RejectedExecutionException) {
+                    status = sendError(exchange, 503,
+                            BUDGET_BUSY.equals(cause.getMessage()) ? BUDGET_BUSY : "Server is stopping");
+                } else if (cause instanceof JvisionException && cause.getMessage().startsWith(AdmissionController.REJECTED)) {
+                    status = sendError(exchange, 413, cause.getMessage());
+                } else {
+                    status = sendError(exchange, badRequest ? 400 : 500, String.valueOf(cause.getMessage()));
+                }
+                return;
+            }
+            status = 200;
+            if (key != null) exchange.getResponseHeaders().set("ETag", etag(key));
+            send(exchange, status, contentType(format), image);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = sendError(exchange, 503, "Interrupted");
+        } finally {
+            metrics.requestFinished(status, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Load and draw a chart in memory, so that the response has a content
+     * length and the connection can be kept alive. The draw waits for its
+     * share of the memory budget until the request deadline.
+     */
+    private byte[] render(ChartSpec spec, byte[] data, String format, long deadline) throws JvisionException {
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (RenderMetrics renderMetrics = RenderMetrics.begin(spec.getChartType())) {
+            JChart chart = spec.load(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8));
+            // 缓存条目淘汰后重新绘制须得到相同字节，ETag才稳定
+            chart.setDeterministic(cache != null);
+            AdmissionController.Admission ticket;
+            try {
+                ticket = admission.tryAdmit(chart, format, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(BUDGET_BUSY, e);
+            }
+            if (ticket == null) throw new RejectedExecutionException(BUDGET_BUSY);
+            try {
+                ticket.draw(out);
+            } finally {
+                ticket.close();
+            }
+        }
+        metrics.rendered(System.nanoTime() - start);
+        return out.toByteArray();
+    }
+
+    private static String etag(String key) {
+        return "\"" + key + "\"";
+    }
+
+    /**
+     * Uncached render holding one of {@link #renderSlots}. The slot is
+     * returned when the render finishes, or on cancellation if the task
+     * never started, since a cancelled task may be dropped without running.
+     */
+    private class RenderTask extends FutureTask<byte[]> {
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private RenderTask(Callable<byte[]> render) {
+            super(render);
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) return;
+            try {
+                super.run();
+            } finally {
+                renderSlots.release();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() && claimed.compareAndSet(false, true)) renderSlots.release();
+        }
+    }
+
+    private static String contentType(String format) {
+        switch (format) {
+            case "png": return "image/png";
+            case "jpg": return "image/jpeg";
+            case "pdf": return "application/pdf";
+            case "eps": return "application/postscript";
+            default: return "application/octet-stream";
+        }
+    }
+
+    /**
+     * Read the whole request body
+     * @return body bytes, null if larger than {@link #MAX_BODY_BYTES}
+     */
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            if (body.size() + len > MAX_BODY_BYTES) return null;
+            body.write(buffer, 0, len);
+        }
+        return body.toByteArray();
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) return params;
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) continue;
+            int index = pair.indexOf('=');
+            String key = index < 0 ? pair : pair.substring(0, index);
+            String value = index < 0 ? "" : pair.substring(index + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private int sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, "text/plain; charset=utf-8", (message + "\n").getBytes(StandardCharsets.UTF_8));
+        return status;
+    }
+
+    private void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        metrics.sent(body.length);
+    }
+
+    /**
+     * Start a server, arguments are port, workers, timeout in milliseconds,
+     * memory cache size in MiB (0 disables caching), disk cache directory and
+     * disk cache size in MiB
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", System.getProperty("java.awt.headless", "true"));
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long timeout = args.length > 2 ? Long.parseLong(args[2]) : 30000;
+        long cacheMiB = args.length > 3 ? Long.parseLong(args[3]) : 256;
+        File cacheDir = args.length > 4 ? new File(args[4]) : null;
+        long diskMiB = args.length > 5 ? Long.parseLong(args[5]) : RenderCache.DEFAULT_MAX_DISK_BYTES >> 20;
+        RenderCache cache = null;
+        if (cacheMiB > 0 || cacheDir != null) cache = new RenderCache(cacheMiB << 20, cacheDir, diskMiB << 20);
+        ChartServer server = new ChartServer(new InetSocketAddress(port), workers, timeout, cache);
+        server.start();
+        LOGGER.info("jvision chart server listening on " + server.getAddress());
+    }
+}
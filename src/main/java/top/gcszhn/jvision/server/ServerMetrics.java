@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import top.gcszhn.jvision.AdmissionController;
+import top.gcszhn.jvision.cache.RenderCache;
+
+/**
+ * Lock-free counters of {@link ChartServer}, exported in the Prometheus text
+ * format by the {@code /metrics} endpoint.
+ */
+public class ServerMetrics {
+    private final ConcurrentHashMap<Integer, LongAdder> responses = new ConcurrentHashMap<>();
+    private final LongAdder renders = new LongAdder();
+    private final LongAdder renderNanos = new LongAdder();
+    private final LongAdder requestNanos = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    void requestStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    void requestFinished(int status, long nanos) {
+        inFlight.decrementAndGet();
+        responses.computeIfAbsent(status, key -> new LongAdder()).increment();
+        requestNanos.add(nanos);
+    }
+
+    void rendered(long nanos) {
+        renders.increment();
+        renderNanos.add(nanos);
+    }
+
+    void received(long bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    void sent(long bytes) {
+        bytesSent.add(bytes);
+    }
+
+    /**
+     * Export all counters
+     * @return Prometheus text exposition
+     */
+    public String toPrometheus() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("# TYPE jvision_http_responses_total counter\n");
+        for (Map.Entry<Integer, LongAdder> entry : new TreeMap<>(responses).entrySet()) {
+            builder.append("jvision_http_responses_total{status=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().sum()).append('\n');
+        }
+        append(builder, "jvision_http_request_seconds_sum", "counter", requestNanos.sum() / 1e9);
+        append(builder, "jvision_http_in_flight", "gauge", inFlight.get());
+        append(builder, "jvision_http_received_bytes_total", "counter", bytesReceived.sum());
+        append(builder, "jvision_http_sent_bytes_total", "counter", bytesSent.sum());
+        append(builder, "jvision_renders_total", "counter", renders.sum());
+        append(builder, "jvision_render_seconds_sum", "counter", renderNanos.sum() / 1e9);
+        return builder.toString();
+    }
+
+    /**
+     * Export the counters of a render cache
+     * @param cache render cache
+     * @return Prometheus text exposition
+     */
+    public static String toPrometheus(RenderCache cache) {
+        StringBuilder builder = new StringBuilder();
+        append(builder, "jvision_cache_memory_hits_total", "counter", cache.getMemoryHits());
+        append(builder, "jvision_cache_disk_hits_total", "counter", cache.getDiskHits());
+        append(builder, "jvision_cache_coalesced_total", "counter", cache.getCoalesced());
+        append(builder, "jvision_cache_misses_total", "counter", cache.getMisses());
+        append(builder, "jvision_cache_memory_bytes", "gauge", cache.getMemoryBytes());
+        append(builder, "jvision_cache_disk_bytes", "gauge", cache.getDiskBytes());
+        return builder.toString();
+    }
+
+    /**
+     * Export the counters of a render memory budget
+     * @param admission admission controller
+     * @return Prometheus text exposition
+     */
+    public static String toPrometheus(AdmissionController admission) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("# TYPE jvision_admissions_total counter\n");
+        builder.append("jvision_admissions_total{mode=\"full\"} ").append(admission.getFull()).append('\n');
+        builder.append("jvision_admissions_total{mode=\"banded\"} ").append(admission.getBanded()).append('\n');
+        builder.append("jvision_admissions_total{mode=\"downscaled\"} ").append(admission.getDownscaled()).append('\n');
+        append(builder, "jvision_admission_rejected_total", "counter", admission.getRejected());
+        append(builder, "jvision_admission_budget_bytes", "gauge", admission.getBudget());
+        append(builder, "jvision_admission_available_bytes", "gauge", admission.getAvailableBytes());
+        return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, String name, String type, Number value) {
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+}
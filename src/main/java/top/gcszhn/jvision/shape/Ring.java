@@ -35,6 +35,10 @@ public class Ring implements Shape {
      * The area object used to draw the ring.
      */
     protected Area area;
+    /**
+     * Center and radii of the outer and inner ellipse, used for analytic point tests.
+     */
+    private final double centerX, centerY, outerX, outerY, innerX, innerY;
     /**
      * Draw circle ring.
      * @param centerX the center x coordinate
@@ -59,6 +63,12 @@ public class Ring implements Shape {
         Ellipse2D.Double inEllipse2D = new Ellipse2D.Double(centerX + widthBand, centerY + heightBand, width - 2 * widthBand, height - 2 * heightBand);
         this.area = new Area(outEllipse2D);
         this.area.subtract(new Area(inEllipse2D));
+        this.centerX = centerX + width / 2;
+        this.centerY = centerY + height / 2;
+        this.outerX = width / 2;
+        this.outerY = height / 2;
+        this.innerX = width / 2 - widthBand;
+        this.innerY = height / 2 - heightBand;
     }
 
     @Override
@@ -71,14 +81,25 @@ public class Ring implements Shape {
         return this.area.getBounds2D();
     }
 
+    /**
+     * Test a point against the ellipse equations instead of the area outline,
+     * which avoids walking the curves of the area on every call.
+     */
     @Override
     public boolean contains(double x, double y) {
-        return this.area.contains(x, y);
+        if (outerX <= 0 || outerY <= 0) return false;
+        double dx = x - centerX, dy = y - centerY;
+        if (square(dx / outerX) + square(dy / outerY) >= 1) return false;
+        return innerX <= 0 || innerY <= 0 || square(dx / innerX) + square(dy / innerY) >= 1;
     }
 
     @Override
     public boolean contains(Point2D p) {
-        return this.area.contains(p);
+        return contains(p.getX(), p.getY());
+    }
+
+    private static double square(double value) {
+        return value * value;
     }
 
     @Override
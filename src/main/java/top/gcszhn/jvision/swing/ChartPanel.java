@@ -0,0 +1,414 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.swing;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import lombok.Getter;
+import top.gcszhn.jvision.Constant;
+import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.chart.PolarHitIndex;
+import top.gcszhn.jvision.chart.Sector;
+import top.gcszhn.jvision.chart.SectorChart;
+
+/**
+ * Swing component showing a {@link SectorChart} through a back-buffer. The
+ * chart is painted on a background thread; the buffer and the sector list are
+ * only touched on the event dispatch thread. Data reloads and hover changes
+ * repaint only the bounds of the sectors that changed, and resizes are
+ * throttled so that the whole chart is repainted once the size settles.
+ * 
+ * <p>Call {@link #refresh()} after loading new data into the chart. The
+ * component also works headless, where {@link #awaitIdle()} and
+ * {@link #getBuffer()} give access to the rendered image.
+ */
+public class ChartPanel extends JComponent {
+    private static final long serialVersionUID = 202210191720001L;
+    /** Output type deciding the chart layout */
+    private static final String TYPE = "png";
+    /** Fill of the hovered sector */
+    private static final Color HIGHLIGHT = new Color(0, 0, 0, 64);
+    /** Pixels added around dirty rectangles to cover antialiased edges */
+    private static final int DIRTY_MARGIN = 2;
+    private static final Logger LOGGER = Logger.getLogger(ChartPanel.class.getName());
+
+    private final @Getter SectorChart chart;
+    private final transient ExecutorService renderer;
+    private final Timer resizeTimer;
+    /** Render tasks whose result has not yet reached the event dispatch thread */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private transient BufferedImage buffer = null;
+    /** Chart to buffer transform of the current buffer */
+    private AffineTransform transform = new AffineTransform();
+    private transient List<Sector> sectors = Collections.emptyList();
+    private transient PolarHitIndex hitIndex = null;
+    private Dimension canvas = null;
+    private int hovered = -1;
+    /** Increased by each full render, region renders of older buffers are dropped */
+    private int generation = 0;
+    /** Message of the last failed render, shown over the chart until a render succeeds */
+    private @Getter String renderError = null;
+
+    /**
+     * @param chart         chart with loaded data
+     * @param resizeDelayMs time the size must stay unchanged before repainting
+     */
+    public ChartPanel(SectorChart chart, int resizeDelayMs) {
+        this.chart = chart;
+        this.renderer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "jvision-chart-panel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.resizeTimer = new Timer(resizeDelayMs, e -> renderAll());
+        resizeTimer.setRepeats(false);
+        setOpaque(true);
+        setBackground(Constant.DEFAULT_BACKGROUND_COLOR);
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                resizeTimer.restart();
+            }
+        });
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                setHoveredSector(sectorAt(e.getX(), e.getY()));
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                setHoveredSector(-1);
+            }
+        };
+        addMouseMotionListener(mouse);
+        addMouseListener(mouse);
+    }
+
+    public ChartPanel(SectorChart chart) {
+        this(chart, 150);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) return super.getPreferredSize();
+        return canvas != null ? new Dimension(canvas) : chart.getCanvasSize(TYPE);
+    }
+
+    /**
+     * Reload the sectors of the chart and repaint those that changed. Layout
+     * changes, such as a different number of sectors, repaint everything.
+     */
+    public void refresh() {
+        if (buffer == null) {
+            renderAll();
+            return;
+        }
+        submit(() -> {
+            List<Sector> update = chart.getSectors(TYPE);
+            PolarHitIndex index = chart.getHitIndex(TYPE);
+            Dimension size = chart.getCanvasSize(TYPE);
+            return () -> applySectors(update, index, size);
+        });
+    }
+
+    /**
+     * Index of the sector under a point of the component
+     * 
+     * @param x horizontal position in pixels
+     * @param y vertical position in pixels
+     * @return sector index, -1 if none
+     */
+    public int sectorAt(int x, int y) {
+        Point2D point;
+        try {
+            point = transform.inverseTransform(new Point2D.Double(x, y), null);
+        } catch (NoninvertibleTransformException e) {
+            return -1;
+        }
+        PolarHitIndex index = hitIndex;
+        PolarHitIndex.Region region = index == null ? null : index.hit(point.getX(), point.getY());
+        return region == null || region.getRow() >= sectors.size() ? -1 : region.getRow();
+    }
+
+    /**
+     * Highlight a sector, firing a {@code hoveredSector} property change
+     * 
+     * @param index sector index, -1 for none
+     */
+    public void setHoveredSector(int index) {
+        if (index == hovered) return;
+        int previous = hovered;
+        hovered = index;
+        Rectangle2D dirty = null;
+        if (previous >= 0 && previous < sectors.size()) dirty = union(dirty, sectors.get(previous).getBounds());
+        if (index >= 0 && index < sectors.size()) dirty = union(dirty, sectors.get(index).getBounds());
+        if (dirty != null) renderRegion(dirty);
+        firePropertyChange("hoveredSector", previous, index);
+    }
+
+    public int getHoveredSector() {
+        return hovered;
+    }
+
+    /**
+     * Current back-buffer, null before the first render. Only valid on the
+     * event dispatch thread or after {@link #awaitIdle()}.
+     * 
+     * @return buffer of the component size
+     */
+    public BufferedImage getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Wait until all scheduled renders have been applied to the buffer. Must
+     * not be called on the event dispatch thread.
+     * 
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitIdle() throws InterruptedException {
+        if (SwingUtilities.isEventDispatchThread())
+            throw new IllegalStateException("awaitIdle called on the event dispatch thread");
+        try {
+            do {
+                renderer.submit(() -> {}).get();
+                SwingUtilities.invokeAndWait(() -> {});
+            } while (pending.get() > 0);
+        } catch (ExecutionException | InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Stop the render thread, the component is not repainted afterwards
+     */
+    public void dispose() {
+        resizeTimer.stop();
+        renderer.shutdownNow();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        BufferedImage image = buffer;
+        if (image != null && image.getWidth() == getWidth() && image.getHeight() == getHeight()) {
+            g.drawImage(image, 0, 0, null);
+        } else if (image != null) {
+            // Scale the stale buffer until the size settles instead of repainting while dragging
+            double scale = Math.min(1.0 * getWidth() / image.getWidth(), 1.0 * getHeight() / image.getHeight());
+            int w = (int) (image.getWidth() * scale);
+            int h = (int) (image.getHeight() * scale);
+            g.drawImage(image, (getWidth() - w) / 2, (getHeight() - h) / 2, w, h, null);
+        }
+        if (renderError != null) {
+            g.setColor(Color.RED);
+            g.drawString(renderError, 8, 8 + g.getFontMetrics().getAscent());
+        }
+    }
+
+    /**
+     * Repaint the whole chart at the current component size
+     */
+    private void renderAll() {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) return;
+        int version = ++generation;
+        int highlight = hovered;
+        submit(() -> {
+            List<Sector> update = chart.getSectors(TYPE);
+            PolarHitIndex index = chart.getHitIndex(TYPE);
+            Dimension size = chart.getCanvasSize(TYPE);
+            AffineTransform fit = fit(size, width, height);
+            BufferedImage image = render(new Rectangle(0, 0, width, height), fit,
+                    highlight >= 0 && highlight < update.size() ? update.get(highlight) : null);
+            return () -> {
+                if (version != generation) return;
+                buffer = image;
+                transform = fit;
+                sectors = update;
+                hitIndex = index;
+                canvas = size;
+                if (hovered >= update.size()) hovered = -1;
+                repaint();
+            };
+        });
+    }
+
+    /**
+     * Repaint a region of the buffer
+     * 
+     * @param region region in chart coordinates
+     */
+    private void renderRegion(Rectangle2D region) {
+        if (buffer == null) return;
+        Rectangle pixels = transform.createTransformedShape(region).getBounds();
+        pixels.grow(DIRTY_MARGIN, DIRTY_MARGIN);
+        pixels = pixels.intersection(new Rectangle(0, 0, buffer.getWidth(), buffer.getHeight()));
+        if (pixels.isEmpty()) return;
+        Rectangle target = pixels;
+        int version = generation;
+        AffineTransform fit = transform;
+        Sector highlight = hovered >= 0 && hovered < sectors.size() ? sectors.get(hovered) : null;
+        submit(() -> {
+            BufferedImage image = render(target, fit, highlight);
+            return () -> {
+                if (version != generation) return;
+                Graphics2D graphics = buffer.createGraphics();
+                graphics.drawImage(image, target.x, target.y, null);
+                graphics.dispose();
+                repaint(target);
+            };
+        });
+    }
+
+    /**
+     * Apply reloaded sectors, repainting the bounds of changed sectors
+     */
+    private void applySectors(List<Sector> update, PolarHitIndex index, Dimension size) {
+        if (!size.equals(canvas) || update.size() != sectors.size()) {
+            renderAll();
+            return;
+        }
+        Rectangle2D dirty = null;
+        for (int i = 0; i < update.size(); i++) {
+            Sector before = sectors.get(i);
+            Sector after = update.get(i);
+            if (!before.equals(after)) dirty = union(union(dirty, before.getBounds()), after.getBounds());
+        }
+        sectors = update;
+        hitIndex = index;
+        if (dirty != null) renderRegion(dirty);
+    }
+
+    /**
+     * Paint part of the chart, runs on the render thread
+     * 
+     * @param pixels    buffer region to paint
+     * @param fit       chart to buffer transform
+     * @param highlight sector to highlight, may be null
+     * @return image of the region size
+     */
+    private BufferedImage render(Rectangle pixels, AffineTransform fit, Sector highlight) throws JvisionException {
+        BufferedImage image = new BufferedImage(pixels.width, pixels.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(getBackground());
+            graphics.fillRect(0, 0, pixels.width, pixels.height);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.translate(-pixels.x, -pixels.y);
+            graphics.transform(fit);
+            Rectangle2D region = fit.createInverse().createTransformedShape(pixels).getBounds2D();
+            chart.paint(graphics, TYPE, region);
+            if (highlight != null && highlight.getBounds().intersects(region)) {
+                graphics.clip(region);
+                graphics.setColor(HIGHLIGHT);
+                graphics.fill(highlight.getShape());
+            }
+        } catch (NoninvertibleTransformException e) {
+            // Empty canvas, nothing to paint
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Scale the chart canvas uniformly into the component and center it
+     */
+    private static AffineTransform fit(Dimension canvas, int width, int height) {
+        double scale = Math.min(1.0 * width / canvas.width, 1.0 * height / canvas.height);
+        AffineTransform fit = AffineTransform.getTranslateInstance(
+                (width - canvas.width * scale) / 2, (height - canvas.height * scale) / 2);
+        fit.scale(scale, scale);
+        return fit;
+    }
+
+    private static Rectangle2D union(Rectangle2D a, Rectangle2D b) {
+        if (a == null) return b.getBounds2D();
+        Rectangle2D result = a.getBounds2D();
+        result.add(b);
+        return result;
+    }
+
+    /**
+     * Run a render task off the event dispatch thread and apply its result on it
+     */
+    private void submit(RenderTask task) {
+        pending.incrementAndGet();
+        renderer.execute(() -> {
+            Runnable apply = null;
+            try {
+                Runnable update = task.call();
+                apply = () -> {
+                    renderError = null;
+                    if (update != null) update.run();
+                };
+            } catch (JvisionException e) {
+                LOGGER.log(Level.WARNING, "Render chart failed", e);
+                apply = () -> {
+                    renderError = String.valueOf(e.getMessage());
+                    repaint();
+                };
+            } finally {
+                Runnable result = apply;
+                SwingUtilities.invokeLater(() -> {
+                    try {
+                        if (result != null) result.run();
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                });
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface RenderTask {
+        Runnable call() throws JvisionException;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.tools;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * 逐帧写出gif动画。每帧与上一帧比较，只编码发生变化的最小矩形并保留上一帧的其余像素，
+ * 与上一帧完全相同的帧合并为上一帧的延时，因此静态背景只在第一帧编码一次。
+ * 所有帧须为相同尺寸的TYPE_INT_RGB图像，写出时在帧内各自生成调色板。
+ * 动画在内存中编码，成功关闭时才写入输出流，出错时调用{@link #abort()}丢弃，输出流不会收到残缺的gif。
+ */
+public class AnimatedGifWriter implements Closeable {
+    private static final String FORMAT = "javax_imageio_gif_image_1.0";
+    private final ImageWriter writer;
+    private final ImageOutputStream output;
+    /**
+     * 编码结果，成功关闭时写入输出流
+     */
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final OutputStream out;
+    private final boolean loop;
+    /**
+     * 上一帧像素，用于比较变化区域
+     */
+    private int[] previous = null;
+    private int width;
+    private int height;
+    /**
+     * 待写出的帧及其位置与延时，后续相同帧会累加其延时
+     */
+    private BufferedImage pending = null;
+    private Rectangle pendingBounds = null;
+    private int pendingDelay = 0;
+    private int frames = 0;
+    private boolean closed = false;
+
+    /**
+     * @param out  输出流，成功关闭本对象时写入并刷新，但不关闭
+     * @param loop 是否循环播放
+     * @throws IOException 无可用gif编码器或输出异常
+     */
+    public AnimatedGifWriter(OutputStream out, boolean loop) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
+        if (!writers.hasNext()) throw new IOException("No gif writer available");
+        this.writer = writers.next();
+        // 在内存中缓冲，不创建临时文件
+        this.output = new MemoryCacheImageOutputStream(buffer);
+        this.out = out;
+        this.loop = loop;
+        writer.setOutput(output);
+    }
+
+    /**
+     * 写入一帧，图像在调用后可被调用者修改
+     * 
+     * @param frame       TYPE_INT_RGB帧图像
+     * @param delayMillis 帧显示时长，单位毫秒，gif中精度为10毫秒
+     * @throws IOException 输出异常
+     */
+    public void writeFrame(BufferedImage frame, int delayMillis) throws IOException {
+        if (frame.getType() != BufferedImage.TYPE_INT_RGB)
+            throw new IllegalArgumentException("Frame should be TYPE_INT_RGB");
+        int[] pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        Rectangle dirty;
+        if (previous == null) {
+            width = frame.getWidth();
+            height = frame.getHeight();
+            previous = new int[width * height];
+            dirty = new Rectangle(0, 0, width, height);
+        } else {
+            if (frame.getWidth() != width || frame.getHeight() != height)
+                throw new IllegalArgumentException("Frame size should be " + width + "x" + height);
+            dirty = dirtyBounds(pixels);
+        }
+        if (dirty == null) {
+            pendingDelay += delayMillis;
+            return;
+        }
+        System.arraycopy(pixels, 0, previous, 0, previous.length);
+        flushPending();
+        // 复制变化区域，使调用者可以复用帧图像
+        BufferedImage copy = new BufferedImage(dirty.width, dirty.height, BufferedImage.TYPE_INT_RGB);
+        copy.getRaster().setRect(-dirty.x, -dirty.y, frame.getRaster());
+        pending = copy;
+        pendingBounds = dirty;
+        pendingDelay = delayMillis;
+    }
+
+    /**
+     * 计算与上一帧不同的像素的外接矩形
+     * 
+     * @param pixels 当前帧像素
+     * @return 外接矩形，完全相同时为null
+     */
+    private Rectangle dirtyBounds(int[] pixels) {
+        int top = -1, bottom = -1, left = width, right = -1;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int first = -1;
+            for (int x = 0; x < width; x++) {
+                if (pixels[row + x] != previous[row + x]) {
+                    first = x;
+                    break;
+                }
+            }
+            if (first < 0) continue;
+            if (top < 0) top = y;
+            bottom = y;
+            left = Math.min(left, first);
+            for (int x = width - 1; x > right; x--) {
+                if (pixels[row + x] != previous[row + x]) {
+                    right = x;
+                    break;
+                }
+            }
+        }
+        if (top < 0) return null;
+        return new Rectangle(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    private void flushPending() throws IOException {
+        if (pending == null) return;
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        IIOMetadata metadata = writer.getDefaultImageMetadata(
+                ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB), param);
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(FORMAT);
+        IIOMetadataNode control = child(root, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", "doNotDispose");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(Math.max(1, (pendingDelay + 5) / 10)));
+        control.setAttribute("transparentColorIndex", "0");
+        IIOMetadataNode descriptor = child(root, "ImageDescriptor");
+        descriptor.setAttribute("imageLeftPosition", Integer.toString(pendingBounds.x));
+        descriptor.setAttribute("imageTopPosition", Integer.toString(pendingBounds.y));
+        descriptor.setAttribute("imageWidth", Integer.toString(pendingBounds.width));
+        descriptor.setAttribute("imageHeight", Integer.toString(pendingBounds.height));
+        descriptor.setAttribute("interlaceFlag", "FALSE");
+        if (frames == 0 && loop) {
+            IIOMetadataNode extension = new IIOMetadataNode("ApplicationExtension");
+            extension.setAttribute("applicationID", "NETSCAPE");
+            extension.setAttribute("authenticationCode", "2.0");
+            extension.setUserObject(new byte[] { 1, 0, 0 });
+            child(root, "ApplicationExtensions").appendChild(extension);
+        }
+        metadata.setFromTree(FORMAT, root);
+        if (frames == 0) writer.prepareWriteSequence(null);
+        writer.writeToSequence(new IIOImage(pending, null, metadata), param);
+        frames++;
+        pending = null;
+    }
+
+    private static IIOMetadataNode child(IIOMetadataNode root, String name) {
+        for (int i = 0; i < root.getLength(); i++) {
+            if (root.item(i).getNodeName().equals(name)) return (IIOMetadataNode) root.item(i);
+        }
+        IIOMetadataNode node = new IIOMetadataNode(name);
+        root.appendChild(node);
+        return node;
+    }
+
+    /**
+     * 已写出的帧数，不含合并的相同帧
+     * 
+     * @return 帧数
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * 写出最后一帧并结束动画，将编码结果写入输出流，不关闭输出流。已关闭或中止时不再输出
+     * 
+     * @throws IOException           输出异常，此时不输出任何内容
+     * @throws IllegalStateException 未写入任何帧，此时不输出任何内容
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (pending == null && frames == 0) throw new IllegalStateException("No frame written");
+            flushPending();
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+            output.close();
+        }
+        buffer.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * 中止动画，丢弃待写帧与已编码的内容，不向输出流写入任何内容。已关闭或中止时不做任何操作
+     */
+    public void abort() {
+        if (closed) return;
+        closed = true;
+        writer.dispose();
+        try {
+            output.close();
+        } catch (IOException e) {
+            // 只写入内存缓冲，丢弃即可
+        }
+        pending = null;
+        buffer.reset();
+    }
+}
@@ -20,9 +20,11 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -41,7 +43,9 @@ import java.util.zip.GZIPInputStream;
  */
 
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.csv.CSVParser;
+
+import top.gcszhn.jvision.metrics.RenderMetrics;
 public class BasicTool {
     /**
      * 编码方式，默认为UTF-8
@@ -315,9 +319,44 @@ public class BasicTool {
         return res;
     }
 
-    public static Iterable<CSVRecord> readCSV(String filePath) throws IOException {
-        return CSVFormat.DEFAULT.parse(new FileReader(filePath));
-
+    /**
+     * 以默认CSV格式解析文件，调用者负责关闭返回的解析器以释放文件句柄
+     * @param filePath CSV文件路径
+     * @return CSV解析器，可迭代读取记录
+     * @throws IOException 文件读取异常
+     */
+    public static CSVParser readCSV(String filePath) throws IOException {
+        return readCSV(new FileReader(filePath));
+    }
+    /**
+     * 以默认CSV格式解析字符流，关闭返回的解析器时同时关闭字符流
+     * @param reader CSV字符流
+     * @return CSV解析器，可迭代读取记录
+     * @throws IOException 读取异常
+     */
+    public static CSVParser readCSV(Reader reader) throws IOException {
+        if (RenderMetrics.current() != null) reader = new CountingReader(reader);
+        return CSVFormat.DEFAULT.parse(reader);
+    }
+    /**
+     * 向当前绘制统计报告读取字符数的字符流
+     */
+    private static class CountingReader extends FilterReader {
+        private CountingReader(Reader in) {
+            super(in);
+        }
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) RenderMetrics.bytesRead(1);
+            return c;
+        }
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = super.read(cbuf, off, len);
+            if (n > 0) RenderMetrics.bytesRead(n);
+            return n;
+        }
     }
     public static String getFileExtName(String fileName) {
         return fileName.substring(fileName.lastIndexOf(".")+1);
@@ -19,30 +19,55 @@ import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.Rectangle;
 import com.lowagie.text.pdf.BaseFont;
+import com.lowagie.text.pdf.DefaultFontMapper;
 import com.lowagie.text.pdf.FontMapper;
 import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfName;
 import com.lowagie.text.pdf.PdfWriter;
 
 import lombok.Getter;
 import top.gcszhn.jvision.JvisionException;
 import top.gcszhn.jvision.Stage;
+import top.gcszhn.jvision.jfr.CanvasCreateEvent;
+import top.gcszhn.jvision.jfr.CanvasSaveEvent;
+import top.gcszhn.jvision.jfr.PdfFontMapEvent;
+import top.gcszhn.jvision.metrics.RenderMetrics;
 
 import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
-import java.awt.Transparency;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
 import org.sourceforge.jlibeps.epsgraphics.EpsGraphics2D;
 
 /**
- * 创建通用绘图画布的业务实现类，服务于其他具体绘图业务
+ * 创建通用绘图画布的业务实现类，服务于其他具体绘图业务。
+ * 应以try-with-resources使用，绘制中途失败时由{@link #close()}归还画布，并关闭、删除自行打开的输出文件
  * @version 1.0
  * @since 14 2021-02-04
  * @author <a href="mailto:zhanghn@zju.edu.cn">Zhang Hongning</a>
  */
-public class CreateGraphics {
+public class CreateGraphics implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(CreateGraphics.class.getName());
+    /**
+     * 位图输出的默认DPI
+     */
+    public static final int DEFAULT_DPI = 360;
+    /**
+     * 所有pdf画布共享的字体映射，避免每次绘制重复解析和创建字体
+     */
+    private static final SharedFontMapper PDF_FONT_MAPPER = new SharedFontMapper(true);
+    /**
+     * 确定性输出时使用的字体映射，嵌入完整字体以避免子集字体名的随机前缀
+     */
+    private static final SharedFontMapper PDF_FULL_FONT_MAPPER = new SharedFontMapper(false);
     /**
      * 用于绘图的Graphics 2D对象
      */
@@ -52,97 +77,194 @@ public class CreateGraphics {
      */
     private @Getter final String fileType;
     /**
-     * 输出文件名
+     * 输出流，已带缓冲
+     */
+    private final OutputStream output;
+    /**
+     * 是否在保存后关闭输出流，仅当输出流由本对象打开时为true
+     */
+    private final boolean closeOutput;
+    /**
+     * 自行打开的输出文件，输出到调用者的流时为null
+     */
+    private final File outputFile;
+    /**
+     * 是否已成功保存，未保存时{@link #close()}删除自行打开的输出文件
+     */
+    private boolean saved = false;
+    /**
+     * 统计写出字节数
+     */
+    private final CountingOutputStream counter;
+    /**
+     * 画布尺寸，单位像素
      */
-    private final String outputFileName;
+    private final int width;
+    private final int height;
     /**
      * 输出DPI，仅对jpg格式有效
      */
-    private int dpi = 360;
+    private int dpi = DEFAULT_DPI;
     /**
-     * BufferedImage对象，仅在输出jpg时使用
+     * BufferedImage对象，仅在输出jpg与png时使用，矢量输出时为null。
+     * 像素数组借自{@link ImagePool}，保存后归还并置为null
      */
-    private BufferedImage image = null;
+    private @Getter BufferedImage image = null;
     /**
      * Document对象，仅在输出pdf时使用
      */
     private Document document = null;
+    /**
+     * PdfWriter对象，仅在输出pdf时使用
+     */
+    private PdfWriter pdfWriter = null;
+    /**
+     * 改写pdf文件标识的输出流，仅在确定性输出pdf时使用
+     */
+    private DeterministicPdfOutputStream pdfOutput = null;
+    /**
+     * 是否输出逐字节确定的结果，开启后pdf与eps不写入创建时间，pdf文件标识由内容摘要生成
+     */
+    private final boolean deterministicOutput;
     /**
      * 构造方法创建CreateGraphics对象
      * @param width 画布宽度，单位像素
      * @param height 画布高度，单位像素
      * @param type 输出类型，仅支持pdf/eps/jpg/png
      * @param outfilename 输出文件名
-     * @throws DocumentException pdf文档异常
-     * @throws IOException 输入输出异常
-     * @throws Exception 其他异常
+     * @throws JvisionException 类型不支持或创建画布失败
      */
     public CreateGraphics(int width, int height, String type, String outfilename) throws JvisionException {
+        this(width, height, type, outfilename, false);
+    }
+    /**
+     * 构造方法创建CreateGraphics对象
+     * @param width 画布宽度，单位像素
+     * @param height 画布高度，单位像素
+     * @param type 输出类型，仅支持pdf/eps/jpg/png
+     * @param outfilename 输出文件名
+     * @param deterministic 是否输出逐字节确定的结果，相同绘制内容得到相同字节，便于缓存与比对。
+     * 开启后pdf与eps不写入创建时间，pdf文件标识由内容摘要生成
+     * @throws JvisionException 类型不支持或创建画布失败
+     */
+    public CreateGraphics(int width, int height, String type, String outfilename, boolean deterministic) throws JvisionException {
+        this(width, height, type, openOutputStream(type, outfilename), new File(outfilename), deterministic);
+    }
+    /**
+     * 构造方法创建输出到流的CreateGraphics对象，调用{@link #saveToFile()}后流被刷新但不会被关闭
+     * @param width 画布宽度，单位像素
+     * @param height 画布高度，单位像素
+     * @param type 输出类型，仅支持pdf/eps/jpg/png
+     * @param output 输出流，由调用者负责关闭
+     * @throws JvisionException 类型不支持或创建画布失败
+     */
+    public CreateGraphics(int width, int height, String type, OutputStream output) throws JvisionException {
+        this(width, height, type, output, null, false);
+    }
+    /**
+     * 构造方法创建输出到流的CreateGraphics对象，调用{@link #saveToFile()}后流被刷新但不会被关闭
+     * @param width 画布宽度，单位像素
+     * @param height 画布高度，单位像素
+     * @param type 输出类型，仅支持pdf/eps/jpg/png
+     * @param output 输出流，由调用者负责关闭
+     * @param deterministic 是否输出逐字节确定的结果，相同绘制内容得到相同字节，便于缓存与比对。
+     * 开启后pdf与eps不写入创建时间，pdf文件标识由内容摘要生成
+     * @throws JvisionException 类型不支持或创建画布失败
+     */
+    public CreateGraphics(int width, int height, String type, OutputStream output, boolean deterministic) throws JvisionException {
+        this(width, height, type, output, null, deterministic);
+    }
+
+    private CreateGraphics(int width, int height, String type, OutputStream output, File outputFile,
+            boolean deterministic) throws JvisionException {
+        checkFileType(type);
+        CanvasCreateEvent event = new CanvasCreateEvent();
+        event.begin();
+        RenderMetrics.enter(Stage.GRAHPIC_INITIALIZATION);
+        RenderMetrics.outputType(type);
         fileType = type;
-        outputFileName = outfilename;
-        switch (fileType) {
-            case "jpg":{
-                //RGBA模式不可以编码jpeg，https://community.oracle.com/message/5387869
-                image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-                graphics = image.createGraphics();
-                break;
-            }
-            case "png":{
-                image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-                graphics = image.createGraphics();
-                //下面实现绘制透明背景png
-                image = graphics.getDeviceConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT);
-                graphics.dispose();
-                graphics = image.createGraphics();
-                break;
-            }
-            case "pdf":{
-                document = new Document(new Rectangle(width, height));
-                BaseFont PDF_DEFAULT_FONT;
-                try {
-                    PDF_DEFAULT_FONT = BaseFont.createFont();
-                } catch (DocumentException|IOException e) {
-                    throw new JvisionException("Create pdf font failed", e, Stage.GRAHPIC_INITIALIZATION);
+        this.width = width;
+        this.height = height;
+        counter = new CountingOutputStream(output);
+        this.output = new BufferedOutputStream(counter);
+        this.closeOutput = outputFile != null;
+        this.outputFile = outputFile;
+        this.deterministicOutput = deterministic;
+        try {
+            switch (fileType) {
+                case "jpg":{
+                    //RGBA模式不可以编码jpeg，https://community.oracle.com/message/5387869
+                    image = ImagePool.borrow(width, height, BufferedImage.TYPE_3BYTE_BGR);
+                    RenderMetrics.imageAllocated(3L * width * height);
+                    graphics = image.createGraphics();
+                    break;
+                }
+                case "png":{
+                    //透明背景png
+                    image = ImagePool.borrow(width, height, BufferedImage.TYPE_INT_ARGB);
+                    RenderMetrics.imageAllocated(4L * width * height);
+                    graphics = image.createGraphics();
+                    break;
                 }
-                FontMapper fontMapper = new FontMapper() {
-                    @Override
-                    public BaseFont awtToPdf(Font font) {
-                        try {
-                            String pdfFontName = ImageTool.getFontFileName(font.getFamily(), font.getStyle());
-                            if (pdfFontName==null) return PDF_DEFAULT_FONT;
-                            BaseFont baseFont = BaseFont.createFont(pdfFontName, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
-                            return baseFont;
-                        } catch (Exception ex) {
-                            return PDF_DEFAULT_FONT;
-                        }
+                case "pdf":{
+                    document = new Document(new Rectangle(width, height));
+                    SharedFontMapper fontMapper = deterministicOutput ? PDF_FULL_FONT_MAPPER : PDF_FONT_MAPPER;
+                    try {
+                        fontMapper.getDefaultFont();
+                    } catch (DocumentException|IOException e) {
+                        close();
+                        throw new JvisionException("Create pdf font failed", e, Stage.GRAHPIC_INITIALIZATION);
                     }
-                    @Override
-                    public Font pdfToAwt(BaseFont bf, int i) {
-                        throw new UnsupportedOperationException("Not supported yet.");
+                    PdfWriter writer;
+                    if (deterministicOutput) pdfOutput = new DeterministicPdfOutputStream(this.output);
+                    try {
+                        writer = PdfWriter.getInstance(document, pdfOutput != null ? pdfOutput : this.output);
+                    } catch (DocumentException e) {
+                        close();
+                        throw new JvisionException("Create pdf writer failed", e, Stage.GRAHPIC_INITIALIZATION);
                     }
-                };
-                PdfWriter writer;
-                try {
-                    writer = PdfWriter.getInstance(document, new FileOutputStream(outputFileName));
-                } catch (DocumentException|IOException e) {
-                    throw new JvisionException("Create pdf writer failed", e, Stage.GRAHPIC_INITIALIZATION);
+                    // 输出流的关闭由saveToFile统一处理
+                    writer.setCloseStream(false);
+                    pdfWriter = writer;
+                    document.open();
+                    PdfContentByte pcb = writer.getDirectContent();
+                    graphics = pcb.createGraphics(width, height, fontMapper);
+                    break;
+                }
+                case "eps":{
+                    graphics = new EpsGraphics2D();
+                    break;
                 }
-                document.open();
-                PdfContentByte pcb = writer.getDirectContent();
-                graphics = pcb.createGraphics(width, height, fontMapper);
-                break;
-            }
-            case "eps":{
-                graphics = new EpsGraphics2D();
-                break;
             }
-            
-            default:throw new JvisionException("Unsupport File Type: "+ type, null, Stage.GRAHPIC_INITIALIZATION);
+        } catch (RuntimeException | Error e) {
+            // 画布创建失败，例如像素数组分配失败时，不留下打开的文件
+            close();
+            throw e;
         }
         graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HRGB);//文字抗锯齿
         graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);//画图抗锯齿
-        
+        RenderMetrics.enter(Stage.GRAHPIC_PAINTING);
+        event.setOutputType(type);
+        event.setWidth(width);
+        event.setHeight(height);
+        event.setImageBytes(image == null ? 0 : (type.equals("jpg") ? 3L : 4L) * width * height);
+        event.commit();
     }
+    /**
+     * 获取pdf画布使用的共享字体映射，嵌入字体子集
+     * @return 字体映射
+     * @throws JvisionException 创建默认字体失败
+     */
+    public static FontMapper getPdfFontMapper() throws JvisionException {
+        SharedFontMapper fontMapper = PDF_FONT_MAPPER;
+        try {
+            fontMapper.getDefaultFont();
+        } catch (DocumentException|IOException e) {
+            throw new JvisionException("Create pdf font failed", e, Stage.GRAHPIC_INITIALIZATION);
+        }
+        return fontMapper;
+    }
+
     /**
      * 设置jpg输出格式的dpi
      * @param dpi jpg输出格式的dpi
@@ -151,36 +273,231 @@ public class CreateGraphics {
         this.dpi = dpi;
     }
     /**
-     * 将绘图结果输出到文件
-     * @throws IOException 输入输出异常
-     * @throws Exception 其他异常
+     * 将绘图结果输出到文件或输出流
+     * @throws JvisionException 输出失败
      */
     public void saveToFile() throws JvisionException {
+        CanvasSaveEvent event = new CanvasSaveEvent();
+        event.begin();
+        RenderMetrics.enter(Stage.GRAHPIC_SERIALIZATION);
         try {
             switch(fileType) {
                 case "jpg": {
                     graphics.dispose();
-                    ImageTool.saveAsJPEG(image, outputFileName, dpi);
+                    ImageTool.saveAsJPEG(image, output, dpi);
                     break;
                 }
                 case "png": {
                     graphics.dispose();
-                    ImageTool.saveAsPNG(image, new FileOutputStream(outputFileName), dpi);
+                    ImageTool.saveAsPNG(image, output, dpi);
                     break;
                 }
                 case "pdf": {
                     graphics.dispose();
+                    if (pdfOutput != null) {
+                        pdfWriter.getInfo().remove(PdfName.CREATIONDATE);
+                        pdfWriter.getInfo().remove(PdfName.MODDATE);
+                    }
                     document.close();
+                    if (pdfOutput != null) pdfOutput.finish();
                     break;
                 }
                 case "eps": {
-                    ImageTool.saveAsEPS((EpsGraphics2D) graphics, outputFileName);
+                    if (deterministicOutput) {
+                        // 去除创建时间行
+                        String eps = graphics.toString().replaceFirst("%%CreationDate: [^\\n]*\\n", "");
+                        output.write(eps.getBytes());
+                    } else {
+                        ImageTool.saveAsEPS((EpsGraphics2D) graphics, output);
+                    }
                     break;
                 }
             }
+            output.flush();
+            RenderMetrics.bytesWritten(counter.count);
+            saved = true;
         } catch (Exception e) {
             throw new JvisionException("Save graphic to file failed", e, Stage.GRAHPIC_SERIALIZATION);
+        } finally {
+            if (image != null) {
+                ImagePool.release(image);
+                image = null;
+            }
+            if (closeOutput) closeQuietly();
+            if (!saved) deleteOutputFile();
+            event.setOutputType(fileType);
+            event.setWidth(width);
+            event.setHeight(height);
+            event.setBytesWritten(counter.count);
+            event.commit();
+        }
+    }
+
+    /**
+     * 未保存时归还画布、关闭并删除自行打开的输出文件，已保存时不做任何操作。
+     * 调用者的输出流不会被关闭，其中可能已写入部分内容
+     */
+    @Override
+    public void close() {
+        if (saved) return;
+        if (image != null) {
+            if (graphics != null) graphics.dispose();
+            ImagePool.release(image);
+            image = null;
+        }
+        closeQuietly();
+        deleteOutputFile();
+    }
+
+    /**
+     * 删除自行打开的未完成输出文件
+     */
+    private void deleteOutputFile() {
+        if (outputFile != null && outputFile.exists() && !outputFile.delete()) {
+            LOGGER.warning("Failed to delete incomplete output " + outputFile);
+        }
+    }
+
+    /**
+     * 检查输出类型是否受支持
+     * @param type 输出类型
+     * @throws JvisionException 输出类型不支持
+     */
+    private static void checkFileType(String type) throws JvisionException {
+        if (!isSupportedFileType(type))
+            throw new JvisionException("Unsupport File Type: "+ type, null, Stage.GRAHPIC_INITIALIZATION);
+    }
+
+    /**
+     * 判断输出类型是否受支持
+     * @param type 输出类型
+     * @return 支持pdf/eps/jpg/png时为true
+     */
+    public static boolean isSupportedFileType(String type) {
+        switch (type) {
+            case "jpg":
+            case "png":
+            case "pdf":
+            case "eps":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 检查输出类型后打开文件输出流，避免不支持的类型留下空文件
+     * @param type 输出类型
+     * @param outfilename 输出文件名
+     * @return 带缓冲的文件输出流
+     * @throws JvisionException 类型不支持或文件无法打开
+     */
+    private static OutputStream openOutputStream(String type, String outfilename) throws JvisionException {
+        checkFileType(type);
+        try {
+            return new BufferedOutputStream(new FileOutputStream(outfilename));
+        } catch (IOException e) {
+            throw new JvisionException("Open output file failed", e, Stage.GRAHPIC_INITIALIZATION);
+        }
+    }
+
+    /**
+     * 关闭自行打开的输出流，忽略关闭异常
+     */
+    private void closeQuietly() {
+        if (!closeOutput) return;
+        try {
+            output.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 统计写出字节数的输出流
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * 线程安全的awt到pdf字体映射，按字体文件缓存BaseFont
+     */
+    private static class SharedFontMapper implements FontMapper {
+        /**
+         * 字体文件名到BaseFont的缓存
+         */
+        private final ConcurrentHashMap<String, BaseFont> baseFonts = new ConcurrentHashMap<>();
+        /**
+         * 找不到字体文件时使用的默认字体
+         */
+        private volatile BaseFont defaultFont;
+        /**
+         * 是否嵌入字体子集
+         */
+        private final boolean subset;
+        /**
+         * pdf到awt的反向映射，只读使用，可在线程间共享
+         */
+        private static final DefaultFontMapper AWT_FONT_MAPPER = new DefaultFontMapper();
+
+        private SharedFontMapper(boolean subset) {
+            this.subset = subset;
         }
 
+        private BaseFont getDefaultFont() throws DocumentException, IOException {
+            BaseFont font = defaultFont;
+            if (font == null) {
+                font = BaseFont.createFont();
+                defaultFont = font;
+            }
+            return font;
+        }
+
+        @Override
+        public BaseFont awtToPdf(Font font) {
+            String pdfFontName = ImageTool.getFontFileName(font.getFamily(), font.getStyle());
+            if (pdfFontName == null) return defaultFont;
+            return baseFonts.computeIfAbsent(pdfFontName, name -> {
+                PdfFontMapEvent event = new PdfFontMapEvent();
+                event.begin();
+                try {
+                    if (subset) return BaseFont.createFont(name, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+                    // 不使用iText的全局缓存，避免修改子集设置影响共享实例
+                    BaseFont baseFont = BaseFont.createFont(name, BaseFont.IDENTITY_H, BaseFont.EMBEDDED, false, null, null);
+                    baseFont.setSubset(false);
+                    return baseFont;
+                } catch (Exception ex) {
+                    return defaultFont;
+                } finally {
+                    event.setFamily(font.getFamily());
+                    event.setStyle(font.getStyle());
+                    event.setFontFile(name);
+                    event.setSubset(subset);
+                    event.commit();
+                }
+            });
+        }
+
+        @Override
+        public Font pdfToAwt(BaseFont bf, int i) {
+            return AWT_FONT_MAPPER.pdfToAwt(bf, i);
+        }
     }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.tools;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 用内容摘要替换pdf尾部随机文件标识的输出流，使相同内容的pdf逐字节一致。
+ * 流经的字节直接写出，仅保留末尾一段以便在{@link #finish()}时改写trailer中的/ID，
+ * 新标识与原标识等长，因此交叉引用表的偏移不受影响。
+ */
+class DeterministicPdfOutputStream extends FilterOutputStream {
+    /**
+     * 保留的末尾字节数，足以容纳trailer
+     */
+    private static final int TAIL_SIZE = 2048;
+    private static final byte[] ID_MARK = "/ID [<".getBytes(StandardCharsets.ISO_8859_1);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private final MessageDigest digest;
+    private byte[] tail = new byte[TAIL_SIZE * 2];
+    private int count = 0;
+
+    DeterministicPdfOutputStream(OutputStream out) {
+        super(out);
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (count + len > tail.length) {
+            int release = Math.min(count, count + len - TAIL_SIZE);
+            if (release > 0) {
+                out.write(tail, 0, release);
+                digest.update(tail, 0, release);
+                System.arraycopy(tail, release, tail, 0, count - release);
+                count -= release;
+            }
+            if (count + len > tail.length) {
+                // 单次写入超过缓冲，直接写出超出末尾保留长度的部分
+                int direct = len - TAIL_SIZE;
+                out.write(b, off, direct);
+                digest.update(b, off, direct);
+                off += direct;
+                len -= direct;
+            }
+        }
+        System.arraycopy(b, off, tail, count, len);
+        count += len;
+    }
+
+    /**
+     * 改写/ID并写出保留的末尾字节，不关闭下游流
+     * @throws IOException 写出异常
+     */
+    public void finish() throws IOException {
+        int start = lastIndexOf(ID_MARK);
+        if (start >= 0) {
+            int first = start + ID_MARK.length;
+            int firstEnd = indexOf((byte) '>', first);
+            int second = firstEnd + 2;
+            int secondEnd = indexOf((byte) '>', second);
+            if (firstEnd > 0 && secondEnd > 0 && tail[firstEnd + 1] == '<') {
+                digest.update(tail, 0, first);
+                digest.update(tail, secondEnd, count - secondEnd);
+                byte[] hash = digest.digest();
+                fillHex(hash, first, firstEnd);
+                fillHex(hash, second, secondEnd);
+            }
+        }
+        out.write(tail, 0, count);
+        count = 0;
+        out.flush();
+    }
+
+    private void fillHex(byte[] hash, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int index = i - from;
+            int value = hash[(index / 2) % hash.length];
+            tail[i] = (byte) HEX[index % 2 == 0 ? (value >> 4) & 0xF : value & 0xF];
+        }
+    }
+
+    private int lastIndexOf(byte[] mark) {
+        for (int i = count - mark.length; i >= 0; i--) {
+            int j = 0;
+            while (j < mark.length && tail[i + j] == mark[j]) j++;
+            if (j == mark.length) return i;
+        }
+        return -1;
+    }
+
+    private int indexOf(byte b, int from) {
+        for (int i = from; i < count; i++) {
+            if (tail[i] == b) return i;
+        }
+        return -1;
+    }
+}
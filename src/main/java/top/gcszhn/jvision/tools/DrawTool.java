@@ -22,11 +22,18 @@ import java.awt.BasicStroke;
 import java.awt.geom.Arc2D;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
+import java.util.concurrent.ConcurrentHashMap;
 
 import top.gcszhn.jvision.JvisionException;
 import top.gcszhn.jvision.Stage;
+import top.gcszhn.jvision.metrics.RenderMetrics;
 
 public class DrawTool {
+    /**
+     * 线型缓存的上限，超出后不再缓存新线型
+     */
+    private static final int MAX_STROKES = 1024;
+    private static final ConcurrentHashMap<Long, BasicStroke> STROKES = new ConcurrentHashMap<>();
 
     public static void drawText(
             Graphics2D graphics2D,
@@ -134,6 +141,7 @@ public class DrawTool {
                 graphics2D.rotate(-rotateDegree * Math.PI / 180, locat_x, locat_y);
         }
         graphics2D.drawString(text, baseline_x, baseline_y);
+        RenderMetrics.glyphs(text.length());
         if (rotateDegree != 0) {
             if (stringBalance)
                 graphics2D.rotate(rotateDegree * Math.PI / 180, locat_x, locat_y);
@@ -192,14 +200,57 @@ public class DrawTool {
         }
 
         Stroke obs = graphics.getStroke();
-        BasicStroke solidStroke = new BasicStroke(bond);
-        BasicStroke dashStroke = new BasicStroke(bond, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0,
-                new float[] { dash }, 0);
-        graphics.setStroke(solid ? solidStroke : dashStroke);// 设置粗细
+        graphics.setStroke(getLineStroke(bond, solid, dash));// 设置粗细
         graphics.draw(path);
+        RenderMetrics.primitives(1);
         graphics.setStroke(obs);
     }
 
+    /**
+     * 获取连接线的线型，线型对象不可变，相同参数共享同一对象
+     * 
+     * @param bond  线条粗细
+     * @param solid 是否为实线
+     * @param dash  虚线段长，实线时忽略
+     * @return 线型
+     */
+    public static BasicStroke getLineStroke(float bond, boolean solid, float dash) {
+        long key = ((long) Float.floatToIntBits(bond) << 32) | (solid ? 0 : Float.floatToIntBits(dash) & 0xffffffffL);
+        if (!solid) key = ~key;
+        BasicStroke stroke = STROKES.get(key);
+        if (stroke == null) {
+            stroke = solid ? new BasicStroke(bond)
+                    : new BasicStroke(bond, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[] { dash }, 0);
+            if (STROKES.size() < MAX_STROKES) STROKES.putIfAbsent(key, stroke);
+        }
+        return stroke;
+    }
+
+    /**
+     * 从路径当前点沿圆弧连接至终点，以每段不超过90度的三次贝塞尔曲线逼近，当前点须为圆弧起点
+     * 
+     * @param path    路径
+     * @param centerX 圆心横坐标
+     * @param centerY 圆心纵坐标
+     * @param radius  半径
+     * @param from    起始角度，单位为度，正数为顺时针
+     * @param to      终止角度
+     */
+    public static void arcTo(Path2D path, double centerX, double centerY, double radius, double from, double to) {
+        int segments = (int) Math.ceil(Math.abs(to - from) / 90);
+        double step = Math.toRadians(to - from) / Math.max(1, segments);
+        double k = 4.0 / 3 * Math.tan(step / 4) * radius;
+        double theta = Math.toRadians(from);
+        for (int i = 0; i < segments; i++) {
+            double next = theta + step;
+            double cos0 = Math.cos(theta), sin0 = Math.sin(theta), cos1 = Math.cos(next), sin1 = Math.sin(next);
+            path.curveTo(centerX + radius * cos0 - k * sin0, centerY + radius * sin0 + k * cos0,
+                    centerX + radius * cos1 + k * sin1, centerY + radius * sin1 - k * cos1,
+                    centerX + radius * cos1, centerY + radius * sin1);
+            theta = next;
+        }
+    }
+
     /**
      * 绘制简单旋转矩形
      * 
@@ -218,6 +269,7 @@ public class DrawTool {
         int baseY = (int) (rotateCenter_y + rotateR);
         graphics.rotate(rotateDegree * Math.PI / 180, rotateCenter_x, rotateCenter_y);// 正数为顺时针转形状，也就是逆时针转画布, 旋转一次画一次
         graphics.fillRect(baseX, baseY, width, length);
+        RenderMetrics.primitives(1);
         graphics.rotate(-rotateDegree * Math.PI / 180, rotateCenter_x, rotateCenter_y);// 因此转回来，方便统计总角度
     }
 }
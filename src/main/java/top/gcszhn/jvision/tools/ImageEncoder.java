@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.tools;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.w3c.dom.Element;
+
+/**
+ * Reusable jpg and png encoders. Writers are kept in a bounded pool per format
+ * shared by all threads, together with their write parameters and the metadata
+ * templates of each dpi, so back-to-back encodes skip the writer lookup, the
+ * metadata DOM round trip and the ImageIO disk cache. An encode borrows an
+ * encoder and returns it afterwards, so short-lived threads such as virtual
+ * threads reuse writers as well, and writers beyond the bound are disposed.
+ */
+public final class ImageEncoder {
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+    private static final String STANDARD_METADATA_FORMAT = "javax_imageio_1.0";
+    /**
+     * Metadata templates kept per encoder, distinct dpi values are rare
+     */
+    private static final int MAX_TEMPLATES = 16;
+    /**
+     * Idle encoders kept per format, enough for every core to encode at once
+     */
+    private static final int MAX_IDLE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /**
+     * Idle encoders by format name, each queue is guarded by itself
+     */
+    private static final Map<String, ArrayDeque<ImageEncoder>> IDLE = new HashMap<>();
+
+    static {
+        IDLE.put("jpg", new ArrayDeque<>());
+        IDLE.put("png", new ArrayDeque<>());
+    }
+
+    private final String format;
+    private final ImageWriter writer;
+    private final ImageWriteParam param;
+    private final HashMap<Long, IIOMetadata> templates = new HashMap<>();
+
+    private ImageEncoder(String format) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) throw new IOException("No " + format + " writer available");
+        this.format = format;
+        this.writer = writers.next();
+        this.param = writer.getDefaultWriteParam();
+        if ("jpg".equals(format)) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(1f);
+        }
+    }
+
+    /**
+     * Encode with an idle encoder of the format, or a new one if all are in
+     * use, and return it to the pool afterwards.
+     * 
+     * @param format "jpg" or "png"
+     * @param image  image to encode
+     * @param out    output stream
+     * @param dpi    image dpi
+     * @throws IOException no writer is available, encoding or output failed
+     */
+    private static void encode(String format, RenderedImage image, OutputStream out, int dpi) throws IOException {
+        ArrayDeque<ImageEncoder> idle = IDLE.get(format);
+        ImageEncoder encoder;
+        synchronized (idle) {
+            encoder = idle.pollLast();
+        }
+        if (encoder == null) encoder = new ImageEncoder(format);
+        try {
+            encoder.write(image, out, dpi);
+        } finally {
+            synchronized (idle) {
+                if (idle.size() < MAX_IDLE) {
+                    idle.addLast(encoder);
+                    encoder = null;
+                }
+            }
+            if (encoder != null) encoder.writer.dispose();
+        }
+    }
+
+    /**
+     * Encode an RGB image as jpg with the best quality. The stream is flushed but
+     * not closed.
+     * 
+     * @param image image to encode
+     * @param out   output stream
+     * @param dpi   image dpi, unit is pixel/inch
+     * @throws IOException encoding or output failed
+     */
+    public static void writeJPEG(BufferedImage image, OutputStream out, int dpi) throws IOException {
+        encode("jpg", image, out, dpi);
+    }
+
+    /**
+     * Encode an image as png. The stream is flushed but not closed. Images
+     * other than BufferedImage are read row by row, so a tiled image such as
+     * a band-rendered canvas is never held in memory as a whole.
+     * 
+     * @param image image to encode
+     * @param out   output stream
+     * @param dpi   image dpi, unit is pixel/inch
+     * @throws IOException encoding or output failed
+     */
+    public static void writePNG(RenderedImage image, OutputStream out, int dpi) throws IOException {
+        encode("png", image, out, dpi);
+    }
+
+    private void write(RenderedImage image, OutputStream out, int dpi) throws IOException {
+        IIOMetadata metadata = template(image, dpi);
+        ImageOutputStream ios = new MemoryCacheImageOutputStream(out);
+        try {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            // 释放对输出流的引用并清除失败写出的状态，写出器留待下次复用
+            writer.reset();
+            ios.close();
+        }
+    }
+
+    /**
+     * Get the metadata template of an image type and dpi, the template is only
+     * read by the writer and can be shared by later encodes.
+     * 
+     * @param image image to encode
+     * @param dpi   image dpi
+     * @return metadata with the dpi
+     * @throws IOException metadata could not be built
+     */
+    private IIOMetadata template(RenderedImage image, int dpi) throws IOException {
+        // png沿用RGB类型的元数据，jpg的元数据与图像类型相关，自定义类型不缓存
+        int type = "png".equals(format) ? BufferedImage.TYPE_INT_RGB
+                : image instanceof BufferedImage ? ((BufferedImage) image).getType() : BufferedImage.TYPE_CUSTOM;
+        long key = ((long) type << 32) | (dpi & 0xffffffffL);
+        IIOMetadata metadata = type == BufferedImage.TYPE_CUSTOM ? null : templates.get(key);
+        if (metadata != null) return metadata;
+        ImageTypeSpecifier specifier = type == BufferedImage.TYPE_CUSTOM
+                ? ImageTypeSpecifier.createFromRenderedImage(image)
+                : ImageTypeSpecifier.createFromBufferedImageType(type);
+        metadata = writer.getDefaultImageMetadata(specifier, param);
+        if ("jpg".equals(format)) {
+            Element tree = (Element) metadata.getAsTree(JPEG_METADATA_FORMAT);
+            Element jfif = (Element) tree.getElementsByTagName("app0JFIF").item(0);
+            jfif.setAttribute("Xdensity", Integer.toString(dpi));
+            jfif.setAttribute("Ydensity", Integer.toString(dpi));
+            jfif.setAttribute("resUnits", "1");// density is dots per inch，如果没有设置会无效
+            metadata.setFromTree(JPEG_METADATA_FORMAT, tree);
+        } else if (!metadata.isReadOnly() && metadata.isStandardMetadataFormatSupported()) {
+            double dotsPerMilli = dpi / 25.4;
+            IIOMetadataNode horiz = new IIOMetadataNode("HorizontalPixelSize");
+            horiz.setAttribute("value", Double.toString(dotsPerMilli));
+            IIOMetadataNode vert = new IIOMetadataNode("VerticalPixelSize");
+            vert.setAttribute("value", Double.toString(dotsPerMilli));
+            IIOMetadataNode dim = new IIOMetadataNode("Dimension");
+            dim.appendChild(horiz);
+            dim.appendChild(vert);
+            IIOMetadataNode root = new IIOMetadataNode(STANDARD_METADATA_FORMAT);
+            root.appendChild(dim);
+            metadata.mergeTree(STANDARD_METADATA_FORMAT, root);
+        }
+        if (type != BufferedImage.TYPE_CUSTOM) {
+            if (templates.size() >= MAX_TEMPLATES) templates.clear();
+            templates.put(key, metadata);
+        }
+        return metadata;
+    }
+}
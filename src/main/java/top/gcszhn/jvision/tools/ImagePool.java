@@ -0,0 +1,271 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.tools;
+
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 位图画布的像素数组池。数组按容量分级保存，借出时按画布尺寸包装为BufferedImage并原地清零，
+ * 归还后供相同级别的下一次绘制复用，批量绘制时不再反复分配直接进入老年代的大数组。
+ * 支持TYPE_INT_RGB、TYPE_INT_ARGB与TYPE_3BYTE_BGR，借出的图像在归还后不可再使用。
+ */
+public final class ImagePool {
+    /**
+     * 每个2的幂区间再细分的级数，容量浪费不超过四分之一
+     */
+    private static final int STEPS = 4;
+    private static final int STEPS_SHIFT = Integer.numberOfTrailingZeros(STEPS);
+    /**
+     * 小于该字节数的图像直接分配，不值得入池
+     */
+    private static final long MIN_POOLED_BYTES = 64 * 1024;
+    private static final int LEVELS = 32 * STEPS;
+    private static final ColorModel RGB_MODEL = new DirectColorModel(24, 0xff0000, 0xff00, 0xff, 0);
+    private static final ColorModel ARGB_MODEL = ColorModel.getRGBdefault();
+    private static final ColorModel BGR_MODEL = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+            new int[] { 8, 8, 8 }, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+    /**
+     * 各级别空闲的数组，以级别的队列为锁
+     */
+    private static final List<ArrayDeque<int[]>> INT_ARRAYS = new ArrayList<>(LEVELS);
+    private static final List<ArrayDeque<byte[]>> BYTE_ARRAYS = new ArrayList<>(LEVELS);
+    /**
+     * 池中保留的字节数上限，默认为最大堆的八分之一且不超过256MiB
+     */
+    private static volatile long maxRetainedBytes = Math.min(Runtime.getRuntime().maxMemory() / 8, 256L << 20);
+    private static final AtomicLong retainedBytes = new AtomicLong();
+    private static final AtomicLong reused = new AtomicLong();
+    private static final AtomicLong allocated = new AtomicLong();
+
+    static {
+        for (int i = 0; i < LEVELS; i++) {
+            INT_ARRAYS.add(new ArrayDeque<>());
+            BYTE_ARRAYS.add(new ArrayDeque<>());
+        }
+    }
+
+    private ImagePool() {
+    }
+
+    /**
+     * 借出一张全部像素为0的图像，即TYPE_INT_ARGB为全透明、其余类型为黑色
+     * 
+     * @param width  宽度
+     * @param height 高度
+     * @param type   TYPE_INT_RGB、TYPE_INT_ARGB或TYPE_3BYTE_BGR
+     * @return 图像，用毕以{@link #release(BufferedImage)}归还
+     */
+    public static BufferedImage borrow(int width, int height, int type) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Image size should be positive: " + width + "x" + height);
+        long pixels = (long) width * height;
+        switch (type) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB: {
+                if (pixels * 4 < MIN_POOLED_BYTES || pixels > Integer.MAX_VALUE - 8)
+                    return new BufferedImage(width, height, type);
+                int size = (int) pixels;
+                int[] array = null;
+                int level = level(size);
+                ArrayDeque<int[]> arrays = INT_ARRAYS.get(level);
+                synchronized (arrays) {
+                    array = arrays.pollLast();
+                }
+                if (array != null) {
+                    retainedBytes.addAndGet(-4L * array.length);
+                    reused.incrementAndGet();
+                    Arrays.fill(array, 0, size, 0);
+                } else {
+                    allocated.incrementAndGet();
+                    array = new int[capacity(level, size)];
+                }
+                int[] masks = type == BufferedImage.TYPE_INT_ARGB
+                        ? new int[] { 0xff0000, 0xff00, 0xff, 0xff000000 }
+                        : new int[] { 0xff0000, 0xff00, 0xff };
+                WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(array, size), width, height, width,
+                        masks, (Point) null);
+                return new BufferedImage(type == BufferedImage.TYPE_INT_ARGB ? ARGB_MODEL : RGB_MODEL, raster, false, null);
+            }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                if (pixels * 3 < MIN_POOLED_BYTES || pixels * 3 > Integer.MAX_VALUE - 8)
+                    return new BufferedImage(width, height, type);
+                int size = (int) (pixels * 3);
+                byte[] array = null;
+                int level = level(size);
+                ArrayDeque<byte[]> arrays = BYTE_ARRAYS.get(level);
+                synchronized (arrays) {
+                    array = arrays.pollLast();
+                }
+                if (array != null) {
+                    retainedBytes.addAndGet(-array.length);
+                    reused.incrementAndGet();
+                    Arrays.fill(array, 0, size, (byte) 0);
+                } else {
+                    allocated.incrementAndGet();
+                    array = new byte[capacity(level, size)];
+                }
+                WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(array, size), width, height,
+                        width * 3, 3, new int[] { 2, 1, 0 }, (Point) null);
+                return new BufferedImage(BGR_MODEL, raster, false, null);
+            }
+            default:
+                return new BufferedImage(width, height, type);
+        }
+    }
+
+    /**
+     * 归还借出的图像，超出保留上限或非池中类型的图像交由垃圾回收
+     * 
+     * @param image 借出的图像，可为null
+     */
+    public static void release(BufferedImage image) {
+        if (image == null) return;
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        if (buffer.getNumBanks() != 1 || buffer.getOffset() != 0) return;
+        if (buffer instanceof DataBufferInt) {
+            int[] array = ((DataBufferInt) buffer).getData();
+            int level = level(array.length);
+            // 只接收级别容量的数组，保证同级借出时容量足够
+            if (capacity(level, array.length) != array.length) return;
+            if (4L * array.length < MIN_POOLED_BYTES || !reserve(4L * array.length)) return;
+            ArrayDeque<int[]> arrays = INT_ARRAYS.get(level);
+            synchronized (arrays) {
+                arrays.addLast(array);
+            }
+        } else if (buffer instanceof DataBufferByte) {
+            byte[] array = ((DataBufferByte) buffer).getData();
+            int level = level(array.length);
+            // 只接收级别容量的数组，保证同级借出时容量足够
+            if (capacity(level, array.length) != array.length) return;
+            if (array.length < MIN_POOLED_BYTES || !reserve(array.length)) return;
+            ArrayDeque<byte[]> arrays = BYTE_ARRAYS.get(level);
+            synchronized (arrays) {
+                arrays.addLast(array);
+            }
+        }
+    }
+
+    /**
+     * 在保留上限内登记归还的字节数
+     * 
+     * @param bytes 字节数
+     * @return 未超出上限时为true
+     */
+    private static boolean reserve(long bytes) {
+        long limit = maxRetainedBytes;
+        while (true) {
+            long current = retainedBytes.get();
+            if (current + bytes > limit) return false;
+            if (retainedBytes.compareAndSet(current, current + bytes)) return true;
+        }
+    }
+
+    /**
+     * 容量所属的级别，级别内的容量上界为{@link #capacity(int, int)}
+     * 
+     * @param size 所需元素数
+     * @return 级别
+     */
+    private static int level(int size) {
+        int exponent = 31 - Integer.numberOfLeadingZeros(Math.max(1, size - 1));
+        int step = (int) (((long) (size - 1) << STEPS_SHIFT >> exponent) & (STEPS - 1));
+        return exponent * STEPS + step;
+    }
+
+    /**
+     * 级别的数组容量，即该级别所能容纳的最大元素数
+     * 
+     * @param level 级别
+     * @param size  所需元素数，仅用于溢出时退回精确容量
+     * @return 数组容量
+     */
+    private static int capacity(int level, int size) {
+        int exponent = level / STEPS, step = level % STEPS;
+        long capacity = (1L << exponent) + ((step + 1L) << exponent >> STEPS_SHIFT);
+        return capacity > Integer.MAX_VALUE - 8 ? size : (int) capacity;
+    }
+
+    /**
+     * 设置池中保留的字节数上限，超出后归还的数组交由垃圾回收
+     * 
+     * @param bytes 上限，0为关闭复用
+     */
+    public static void setMaxRetainedBytes(long bytes) {
+        maxRetainedBytes = Math.max(0, bytes);
+        if (bytes <= 0) clear();
+    }
+
+    /**
+     * 清空池中保留的数组
+     */
+    public static void clear() {
+        for (ArrayDeque<int[]> arrays : INT_ARRAYS) {
+            synchronized (arrays) {
+                for (int[] array : arrays) retainedBytes.addAndGet(-4L * array.length);
+                arrays.clear();
+            }
+        }
+        for (ArrayDeque<byte[]> arrays : BYTE_ARRAYS) {
+            synchronized (arrays) {
+                for (byte[] array : arrays) retainedBytes.addAndGet(-array.length);
+                arrays.clear();
+            }
+        }
+    }
+
+    /**
+     * 池中保留的字节数
+     * 
+     * @return 字节数
+     */
+    public static long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * 复用池中数组的借出次数
+     * 
+     * @return 次数
+     */
+    public static long getReused() {
+        return reused.get();
+    }
+
+    /**
+     * 新分配数组的借出次数
+     * 
+     * @return 次数
+     */
+    public static long getAllocated() {
+        return allocated.get();
+    }
+}
@@ -5,26 +5,22 @@ import java.awt.FontFormatException;
 import java.awt.Color;
 import java.awt.GraphicsEnvironment;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.HashMap;
-import java.util.Iterator;
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageTypeSpecifier;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.imageio.metadata.IIOInvalidTreeException;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.metadata.IIOMetadataNode;
-import javax.imageio.stream.ImageOutputStream;
-import org.w3c.dom.Element;
 import org.sourceforge.jlibeps.epsgraphics.EpsGraphics2D;
 
+import top.gcszhn.jvision.jfr.FontMapLoadEvent;
+
 /**
  * General-purpose image processing tools that provide general functions such as
  * image IO for specific businesses.
@@ -38,6 +34,10 @@ public class ImageTool {
      * Font family in the system.
      */
     private static HashMap<String, HashMap<Integer, String>> systemFontMap = new HashMap<>();
+    /**
+     * Fonts shared by all renders, keyed by family, style and size.
+     */
+    private static final ConcurrentHashMap<String, Font> fontCache = new ConcurrentHashMap<>();
     static {
         try {
             loadSystemFontMap();
@@ -46,6 +46,20 @@ public class ImageTool {
         }
     }
 
+    /**
+     * Get a shared font instance. Fonts are immutable, so repeated renders
+     * reuse the same instance instead of creating one per label.
+     * 
+     * @param family font family
+     * @param style  font style, Font.PLAIN, Font.BOLD, Font.ITALIC or
+     *               Font.BOLD + Font.ITALIC
+     * @param size   font size in points
+     * @return font instance
+     */
+    public static Font getFont(String family, int style, int size) {
+        return fontCache.computeIfAbsent(family + "-" + style + "-" + size, key -> new Font(family, style, size));
+    }
+
     /**
      * Returns the width of a string in a specific font
      * 
@@ -67,40 +81,23 @@ public class ImageTool {
      * @throws IOException
      */
     public static void saveAsJPEG(BufferedImage image, String filename, int dpi) throws IOException {
-        saveAsJPEG(image, new FileOutputStream(filename), dpi);
+        try (OutputStream fos = new BufferedOutputStream(new FileOutputStream(filename))) {
+            saveAsJPEG(image, fos, dpi);
+        }
     }
 
     /**
-     * Save RGB mode images as jpg images
+     * Save RGB mode images as jpg images. The stream is flushed but not closed.
      * 
      * @param image buffered image object
-     * @param fos   FileOutputStream object for output file
+     * @param fos   OutputStream object for output
      * @param dpi   Image DPI, unit is pixel/inch
      * @throws FileNotFoundException
      * @throws IOException
      */
-    public static void saveAsJPEG(BufferedImage image, FileOutputStream fos, int dpi)
+    public static void saveAsJPEG(BufferedImage image, OutputStream fos, int dpi)
             throws FileNotFoundException, IOException {
-        for (Iterator<ImageWriter> iw = ImageIO.getImageWritersBySuffix("jpg"); iw.hasNext();) {
-            ImageWriter writer = iw.next();
-            ImageWriteParam writeParam = writer.getDefaultWriteParam();
-            writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-            // 调整图片质量
-            writeParam.setCompressionQuality(1f);
-            IIOMetadata data = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), writeParam);
-            Element tree = (Element) data.getAsTree("javax_imageio_jpeg_image_1.0");
-            Element jfif = (Element) tree.getElementsByTagName("app0JFIF").item(0);
-            jfif.setAttribute("Xdensity", "" + dpi);
-            jfif.setAttribute("Ydensity", "" + dpi);
-            jfif.setAttribute("resUnits", "1");// density is dots per inch，如果没有设置会无效
-            data.setFromTree("javax_imageio_jpeg_image_1.0", tree);// 将tree的内容保存回data，两者无映射关系需此操作，see:
-                                                                   // http://www.voidcn.com/article/p-zdkeyptk-bts.html
-            // 输出图片
-            ImageOutputStream ios = ImageIO.createImageOutputStream(fos);
-            writer.setOutput(ios);
-            writer.write(null, new IIOImage(image, null, data), writeParam);
-            ios.close();
-        }
+        ImageEncoder.writeJPEG(image, fos, dpi);
     }
 
     /**
@@ -112,9 +109,23 @@ public class ImageTool {
      * @throws IOException
      */
     public static void saveAsEPS(EpsGraphics2D eps, String outputfile) throws IOException {
-        FileWriter fos = new FileWriter(outputfile);
-        fos.write(eps.toString());
-        fos.close();
+        try (OutputStream fos = new BufferedOutputStream(new FileOutputStream(outputfile))) {
+            saveAsEPS(eps, fos);
+        }
+    }
+
+    /**
+     * Export EpsGraphics2D drawing results as an EPS document to a stream. The
+     * stream is flushed but not closed.
+     * 
+     * @param eps EpsGraphics2D object
+     * @param out EPS document output stream.
+     * @throws IOException
+     */
+    public static void saveAsEPS(EpsGraphics2D eps, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out);
+        writer.write(eps.toString());
+        writer.flush();
     }
 
     /**
@@ -128,50 +139,38 @@ public class ImageTool {
     public static void saveAsEPS(BufferedImage image, String outputfile) throws IOException {
         EpsGraphics2D epsg2d = new EpsGraphics2D();
         epsg2d.drawImage(image, -1, -1, null);
-        FileWriter fos = new FileWriter(outputfile);
-        fos.write(epsg2d.toString());
-        fos.close();
-
+        saveAsEPS(epsg2d, outputfile);
     }
 
     /**
      * Output the RGB mode BufferImage as png, and set the dpi.
      * 
+     * @param image    BufferImage object to be output
+     * @param filename png file name
+     * @param dpi      image dpi
+     * @throws IIOInvalidTreeException
+     * @throws IOException
+     */
+    public static void saveAsPNG(BufferedImage image, String filename, int dpi)
+            throws IIOInvalidTreeException, IOException {
+        try (OutputStream fos = new BufferedOutputStream(new FileOutputStream(filename))) {
+            saveAsPNG(image, fos, dpi);
+        }
+    }
+
+    /**
+     * Output the RGB mode BufferImage as png, and set the dpi. The stream is
+     * flushed but not closed.
+     * 
      * @param image BufferImage object to be output
-     * @param fos   FileOutputStream object to output
+     * @param fos   OutputStream object to output
      * @param dpi   image dpi
      * @throws IIOInvalidTreeException
      * @throws IOException
      */
-    public static void saveAsPNG(BufferedImage image, FileOutputStream fos, int dpi)
+    public static void saveAsPNG(BufferedImage image, OutputStream fos, int dpi)
             throws IIOInvalidTreeException, IOException {
-        for (Iterator<ImageWriter> iw = ImageIO.getImageWritersByFormatName("png"); iw.hasNext();) {
-            ImageWriter writer = iw.next();
-            ImageWriteParam writeParam = writer.getDefaultWriteParam();
-            ImageTypeSpecifier typeSpecifier = ImageTypeSpecifier
-                    .createFromBufferedImageType(BufferedImage.TYPE_INT_RGB);
-            IIOMetadata metadata = writer.getDefaultImageMetadata(typeSpecifier, writeParam);
-            if (metadata.isReadOnly() || !metadata.isStandardMetadataFormatSupported())
-                continue;
-
-            double inch2cm = 2.54;
-            double dotsPerMilli = 1.0 * dpi / 10 / inch2cm;
-            IIOMetadataNode horiz = new IIOMetadataNode("HorizontalPixelSize");
-            horiz.setAttribute("value", Double.toString(dotsPerMilli));
-            IIOMetadataNode vert = new IIOMetadataNode("VerticalPixelSize");
-            vert.setAttribute("value", Double.toString(dotsPerMilli));
-            IIOMetadataNode dim = new IIOMetadataNode("Dimension");
-            dim.appendChild(horiz);
-            dim.appendChild(vert);
-            IIOMetadataNode root = new IIOMetadataNode("javax_imageio_1.0");
-            root.appendChild(dim);
-            metadata.mergeTree("javax_imageio_1.0", root);
-
-            ImageOutputStream ios = ImageIO.createImageOutputStream(fos);
-            writer.setOutput(ios);
-            writer.write(metadata, new IIOImage(image, null, metadata), writeParam);
-            ios.close();
-        }
+        ImageEncoder.writePNG(image, fos, dpi);
     }
 
     /**
@@ -205,12 +204,16 @@ public class ImageTool {
         } else {
             throw new Exception("Unsupport Operation System");
         }
+        FontMapLoadEvent event = new FontMapLoadEvent();
+        event.begin();
         File[] fontFiles = new File(fontdir).listFiles(new FileFilter() {
             @Override
             public boolean accept(File pathname) {
                 return pathname.getName().toLowerCase().endsWith("ttf");
             }
         });
+        event.setFontDirectory(fontdir);
+        event.setFontFiles(fontFiles == null ? 0 : fontFiles.length);
         for (File fontfile : fontFiles) {
             String filename = fontfile.getAbsolutePath();
             Font font = Font.createFont(Font.TRUETYPE_FONT, fontfile);
@@ -227,6 +230,7 @@ public class ImageTool {
                 systemFontMap.get(family).put(Font.PLAIN, filename);
             }
         }
+        event.commit();
     }
 
     /**
@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 标签碰撞检测的均匀网格。已放置的标签以旋转矩形登记到其外接矩形覆盖的网格中，
+ * 放置新标签时只与相邻网格内的标签按分离轴判断是否重叠，网格边长接近标签尺寸时每次放置为常数时间。
+ */
+public class LabelGrid {
+    private final double cellSize;
+    private final HashMap<Long, List<Box>> cells = new HashMap<>();
+    private int size = 0;
+
+    /**
+     * @param cellSize 网格边长，取标签最大尺寸的一半左右为宜
+     */
+    public LabelGrid(double cellSize) {
+        this.cellSize = Math.max(1, cellSize);
+    }
+
+    /**
+     * 尝试放置旋转矩形标签，与已放置标签不重叠时登记
+     * 
+     * @param centerX      矩形中心横坐标
+     * @param centerY      矩形中心纵坐标
+     * @param halfWidth    未旋转时的半宽
+     * @param halfHeight   未旋转时的半高
+     * @param rotateDegree 旋转角度，单位为度，正数为顺时针旋转
+     * @return 是否放置成功
+     */
+    public boolean place(double centerX, double centerY, double halfWidth, double halfHeight, double rotateDegree) {
+        Box box = new Box(centerX, centerY, halfWidth, halfHeight, Math.toRadians(rotateDegree));
+        int minX = cell(centerX - box.extentX), maxX = cell(centerX + box.extentX);
+        int minY = cell(centerY - box.extentY), maxY = cell(centerY + box.extentY);
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                List<Box> boxes = cells.get(key(x, y));
+                if (boxes == null) continue;
+                for (Box other : boxes) {
+                    if (box.overlaps(other)) return false;
+                }
+            }
+        }
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                cells.computeIfAbsent(key(x, y), k -> new ArrayList<>(4)).add(box);
+            }
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * 已放置的标签数
+     * 
+     * @return 标签数
+     */
+    public int size() {
+        return size;
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    /**
+     * 旋转矩形，以中心、半宽半高与单位方向向量表示
+     */
+    private static class Box {
+        private final double centerX, centerY, halfWidth, halfHeight, cos, sin, extentX, extentY;
+
+        private Box(double centerX, double centerY, double halfWidth, double halfHeight, double theta) {
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.halfWidth = halfWidth;
+            this.halfHeight = halfHeight;
+            this.cos = Math.cos(theta);
+            this.sin = Math.sin(theta);
+            this.extentX = Math.abs(cos) * halfWidth + Math.abs(sin) * halfHeight;
+            this.extentY = Math.abs(sin) * halfWidth + Math.abs(cos) * halfHeight;
+        }
+
+        /**
+         * 以两矩形的四条边法向为分离轴判断是否重叠，仅接触不算重叠
+         */
+        private boolean overlaps(Box other) {
+            double dx = other.centerX - centerX, dy = other.centerY - centerY;
+            if (Math.abs(dx) >= extentX + other.extentX || Math.abs(dy) >= extentY + other.extentY) return false;
+            return !separated(dx, dy, cos, sin, other) && !separated(dx, dy, -sin, cos, other)
+                    && !other.separated(-dx, -dy, other.cos, other.sin, this)
+                    && !other.separated(-dx, -dy, -other.sin, other.cos, this);
+        }
+
+        /**
+         * 判断两矩形在本矩形的一条轴上的投影是否分离
+         */
+        private boolean separated(double dx, double dy, double axisX, double axisY, Box other) {
+            double distance = Math.abs(dx * axisX + dy * axisY);
+            double self = halfWidth * Math.abs(cos * axisX + sin * axisY)
+                    + halfHeight * Math.abs(-sin * axisX + cos * axisY);
+            double projected = other.halfWidth * Math.abs(other.cos * axisX + other.sin * axisY)
+                    + other.halfHeight * Math.abs(-other.sin * axisX + other.cos * axisY);
+            return distance >= self + projected;
+        }
+    }
+}
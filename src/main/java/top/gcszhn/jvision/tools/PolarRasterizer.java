@@ -0,0 +1,351 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.tools;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * 径向柱形与环段的专用光栅化器，直接写入BufferedImage的像素数组，不经过Java2D的路径迭代与通用光栅化，也不为每个图形分配对象，绘制统计由调用者计入。
+ * 覆盖率按像素方框与图形在径向及其垂直方向上的重叠长度之积计算，轴对齐时为精确值，旋转后的误差集中在图形的角点。
+ * 仅支持TYPE_INT_RGB、TYPE_INT_ARGB与TYPE_3BYTE_BGR图像，以及平移与等比缩放的变换和矩形裁剪区域，
+ * 其余情况{@link #of(Graphics2D, BufferedImage)}返回null，调用者应回退为Java2D绘制。
+ */
+public class PolarRasterizer {
+    private final BufferedImage image;
+    private final int[] ints;
+    private final byte[] bytes;
+    /**
+     * 像素数组中(0, 0)像素的偏移与每行的跨度，字节图像以字节计
+     */
+    private final int offset;
+    private final int stride;
+    private final boolean hasAlpha;
+    /**
+     * 创建时的变换，设备坐标 = 用户坐标 × scale + (translateX, translateY)
+     */
+    private final double scale;
+    private final double translateX;
+    private final double translateY;
+    /**
+     * 设备坐标中的裁剪范围，不含右边界与下边界
+     */
+    private final int clipX0, clipY0, clipX1, clipY1;
+
+    private PolarRasterizer(BufferedImage image, int[] ints, byte[] bytes, int offset, int stride, double scale,
+            double translateX, double translateY, Rectangle clip) {
+        this.image = image;
+        this.ints = ints;
+        this.bytes = bytes;
+        this.offset = offset;
+        this.stride = stride;
+        this.hasAlpha = image.getType() == BufferedImage.TYPE_INT_ARGB;
+        this.scale = scale;
+        this.translateX = translateX;
+        this.translateY = translateY;
+        this.clipX0 = clip.x;
+        this.clipY0 = clip.y;
+        this.clipX1 = clip.x + clip.width;
+        this.clipY1 = clip.y + clip.height;
+    }
+
+    /**
+     * 按绘图对象当前的变换与裁剪区域创建光栅化器，之后绘图对象的状态变化不影响光栅化器
+     * 
+     * @param graphics 绘制到image上的绘图对象
+     * @param image    目标图像
+     * @return 光栅化器，图像类型、变换、裁剪区域或合成规则不支持时为null
+     */
+    public static PolarRasterizer of(Graphics2D graphics, BufferedImage image) {
+        if (graphics == null || image == null) return null;
+        AffineTransform transform = graphics.getTransform();
+        // 旋转后再转回的变换残留微小的切变分量
+        if (Math.abs(transform.getShearX()) > 1e-9 || Math.abs(transform.getShearY()) > 1e-9
+                || transform.getScaleX() <= 0 || Math.abs(transform.getScaleX() - transform.getScaleY()) > 1e-9)
+            return null;
+        if (!(graphics.getComposite() instanceof AlphaComposite)) return null;
+        AlphaComposite composite = (AlphaComposite) graphics.getComposite();
+        if (composite.getRule() != AlphaComposite.SRC_OVER || composite.getAlpha() != 1f) return null;
+        Rectangle clip = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+        Shape userClip = graphics.getClip();
+        if (userClip != null) {
+            if (!(userClip instanceof Rectangle2D)) return null;
+            Rectangle2D device = transform.createTransformedShape(userClip).getBounds2D();
+            // 裁剪边界须落在像素边界上，否则边缘像素的部分覆盖无法表示
+            if (device.getX() != Math.rint(device.getX()) || device.getY() != Math.rint(device.getY())
+                    || device.getMaxX() != Math.rint(device.getMaxX())
+                    || device.getMaxY() != Math.rint(device.getMaxY()))
+                return null;
+            clip = clip.intersection(device.getBounds());
+        }
+        WritableRaster raster = image.getRaster();
+        // 子图像的像素在共享数组中有偏移
+        int translateX = -raster.getSampleModelTranslateX(), translateY = -raster.getSampleModelTranslateY();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB: {
+                SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+                DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+                int stride = model.getScanlineStride();
+                int offset = buffer.getOffset() + translateY * stride + translateX;
+                return new PolarRasterizer(image, buffer.getData(), null, offset, stride, transform.getScaleX(),
+                        transform.getTranslateX(), transform.getTranslateY(), clip);
+            }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+                DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+                int stride = model.getScanlineStride();
+                int offset = buffer.getOffset() + translateY * stride + translateX * 3;
+                return new PolarRasterizer(image, null, buffer.getData(), offset, stride, transform.getScaleX(),
+                        transform.getTranslateX(), transform.getTranslateY(), clip);
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 填充绕中心旋转的矩形，与{@link DrawTool#drawSimpleBar}的几何一致：未旋转时矩形沿y轴正向从距中心from延伸至to
+     * 
+     * @param centerX      旋转中心横坐标
+     * @param centerY      旋转中心纵坐标
+     * @param rotateDegree 旋转角度，单位为度，正数为顺时针旋转
+     * @param from         起始距离
+     * @param to           终止距离
+     * @param halfWidth    半宽
+     * @param color        颜色
+     */
+    public void fillBar(double centerX, double centerY, double rotateDegree, double from, double to,
+            double halfWidth, Color color) {
+        if (to <= from || halfWidth <= 0 || color.getAlpha() == 0) return;
+        double theta = Math.toRadians(rotateDegree);
+        // 径向单位向量u与其垂直方向v
+        double ux = -Math.sin(theta), uy = Math.cos(theta);
+        double vx = uy, vy = -ux;
+        double cx = centerX * scale + translateX, cy = centerY * scale + translateY;
+        from *= scale;
+        to *= scale;
+        halfWidth *= scale;
+        double uInverse = 1 / ux, vInverse = 1 / vx;
+        int rgb = color.getRGB();
+        int alpha = color.getAlpha();
+        // 像素中心的u与v分别落在两个外扩半像素的区间内时覆盖率非零，每行的横向范围为两个区间在该行的交集
+        int y0 = Math.max(clipY0, (int) Math.floor(cy - (Math.abs(uy) * (to - from) / 2 + Math.abs(vy) * halfWidth)
+                + uy * (from + to) / 2 - 1));
+        int y1 = Math.min(clipY1, (int) Math.ceil(cy + (Math.abs(uy) * (to - from) / 2 + Math.abs(vy) * halfWidth)
+                + uy * (from + to) / 2 + 1));
+        for (int y = y0; y < y1; y++) {
+            double dy = y + 0.5 - cy;
+            double uBase = dy * uy, vBase = dy * vy;
+            double left = Math.max(clipX0 - cx, Math.max(slabMin(from - 0.5 - uBase, to + 0.5 - uBase, ux, uInverse),
+                    slabMin(-halfWidth - 0.5 - vBase, halfWidth + 0.5 - vBase, vx, vInverse)));
+            double right = Math.min(clipX1 - cx, Math.min(slabMax(from - 0.5 - uBase, to + 0.5 - uBase, ux, uInverse),
+                    slabMax(-halfWidth - 0.5 - vBase, halfWidth + 0.5 - vBase, vx, vInverse)));
+            int x0 = (int) Math.ceil(cx + left - 0.5), x1 = (int) Math.floor(cx + right - 0.5);
+            if (x0 < clipX0) x0 = clipX0;
+            if (x1 >= clipX1) x1 = clipX1 - 1;
+            double dx = x0 + 0.5 - cx;
+            double u = dx * ux + uBase, v = dx * vx + vBase;
+            for (int x = x0; x <= x1; x++, u += ux, v += vx) {
+                double coverage = overlap(u, from, to) * overlap(v, -halfWidth, halfWidth);
+                if (coverage > 0) blend(x, y, rgb, (int) (coverage * alpha + 0.5));
+            }
+        }
+    }
+
+    /**
+     * 满足low ≤ dx × k ≤ high的dx下界
+     * 
+     * @param inverse k的倒数
+     */
+    private static double slabMin(double low, double high, double k, double inverse) {
+        if (Math.abs(k) < 1e-12) return low <= 0 && high >= 0 ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        return k > 0 ? low * inverse : high * inverse;
+    }
+
+    /**
+     * 满足low ≤ dx × k ≤ high的dx上界
+     * 
+     * @param inverse k的倒数
+     */
+    private static double slabMax(double low, double high, double k, double inverse) {
+        if (Math.abs(k) < 1e-12) return low <= 0 && high >= 0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        return k > 0 ? high * inverse : low * inverse;
+    }
+
+    /**
+     * 填充环段，内半径为0时为扇形。起止边的覆盖率按到两条半径所在直线的距离计算
+     * 
+     * @param centerX    圆心横坐标
+     * @param centerY    圆心纵坐标
+     * @param inner      内半径
+     * @param outer      外半径
+     * @param startAngle 起始角度，单位为度，为图像坐标中由x轴正向顺时针的角度
+     * @param sweep      角度范围，负数为逆时针
+     * @param color      颜色
+     */
+    public void fillSector(double centerX, double centerY, double inner, double outer, double startAngle,
+            double sweep, Color color) {
+        if (outer <= inner || sweep == 0 || color.getAlpha() == 0) return;
+        if (sweep < 0) {
+            startAngle += sweep;
+            sweep = -sweep;
+        }
+        boolean full = sweep >= 360;
+        boolean convex = sweep <= 180;
+        double cx = centerX * scale + translateX, cy = centerY * scale + translateY;
+        inner = Math.max(0, inner * scale);
+        outer *= scale;
+        double a0 = Math.toRadians(startAngle), a1 = Math.toRadians(startAngle + sweep);
+        double s0x = Math.cos(a0), s0y = Math.sin(a0), s1x = Math.cos(a1), s1y = Math.sin(a1);
+        // 外接矩形：两端的内外角点与范围内的坐标轴方向极值点
+        double minX = cx - outer, maxX = cx + outer, minY = cy - outer, maxY = cy + outer;
+        if (!full) {
+            minX = Math.min(Math.min(s0x * inner, s1x * inner), Math.min(s0x * outer, s1x * outer));
+            maxX = Math.max(Math.max(s0x * inner, s1x * inner), Math.max(s0x * outer, s1x * outer));
+            minY = Math.min(Math.min(s0y * inner, s1y * inner), Math.min(s0y * outer, s1y * outer));
+            maxY = Math.max(Math.max(s0y * inner, s1y * inner), Math.max(s0y * outer, s1y * outer));
+            for (int quarter = (int) Math.ceil(a0 / (Math.PI / 2)); quarter * Math.PI / 2 <= a1; quarter++) {
+                switch (Math.floorMod(quarter, 4)) {
+                    case 0: maxX = outer; break;
+                    case 1: maxY = outer; break;
+                    case 2: minX = -outer; break;
+                    default: minY = -outer; break;
+                }
+            }
+            minX += cx;
+            maxX += cx;
+            minY += cy;
+            maxY += cy;
+        }
+        int y0 = Math.max(clipY0, (int) Math.floor(minY - 1)), y1 = Math.min(clipY1, (int) Math.ceil(maxY + 1));
+        int boundX0 = Math.max(clipX0, (int) Math.floor(minX - 1));
+        int boundX1 = Math.min(clipX1, (int) Math.ceil(maxX + 1)) - 1;
+        double outerPad = outer + 0.5, innerPad = inner - 0.5;
+        // 半径平方在该范围内时径向完全覆盖，无需开方
+        double innerFull = (inner + 0.5) * (inner + 0.5);
+        double outerFull = outer > 0.5 ? (outer - 0.5) * (outer - 0.5) : -1;
+        int rgb = color.getRGB();
+        int alpha = color.getAlpha();
+        for (int y = y0; y < y1; y++) {
+            double dy = y + 0.5 - cy;
+            if (Math.abs(dy) >= outerPad) continue;
+            double span = Math.sqrt(outerPad * outerPad - dy * dy);
+            double hole = innerPad > 0 && Math.abs(dy) < innerPad ? Math.sqrt(innerPad * innerPad - dy * dy) : 0;
+            int x0 = Math.max(boundX0, (int) Math.floor(cx - span));
+            int x1 = Math.min(boundX1, (int) Math.ceil(cx + span));
+            // 内圆将该行分为左右两段
+            int holeX0 = hole > 0 ? (int) Math.ceil(cx - hole) : x1 + 1;
+            int holeX1 = hole > 0 ? (int) Math.floor(cx + hole) - 1 : x1 + 1;
+            double dx = x0 + 0.5 - cx;
+            // 到起止半径所在直线的有向距离，沿x线性变化
+            double d0 = s0x * dy - s0y * dx, d1 = dx * s1y - dy * s1x;
+            for (int x = x0; x <= x1; x++, dx++, d0 -= s0y, d1 += s1y) {
+                if (x >= holeX0 && x < holeX1) {
+                    int skip = holeX1 - x;
+                    x += skip - 1;
+                    dx += skip - 1;
+                    d0 -= s0y * (skip - 1);
+                    d1 += s1y * (skip - 1);
+                    continue;
+                }
+                double squared = dx * dx + dy * dy;
+                double coverage = squared >= innerFull && squared <= outerFull ? 1
+                        : overlap(Math.sqrt(squared), inner, outer);
+                if (coverage <= 0) continue;
+                if (!full) {
+                    double c0 = d0 <= -0.5 ? 0 : d0 >= 0.5 ? 1 : d0 + 0.5;
+                    double c1 = d1 <= -0.5 ? 0 : d1 >= 0.5 ? 1 : d1 + 0.5;
+                    coverage *= convex ? c0 * c1 : 1 - (1 - c0) * (1 - c1);
+                    if (coverage <= 0) continue;
+                }
+                blend(x, y, rgb, (int) (coverage * alpha + 0.5));
+            }
+        }
+    }
+
+    /**
+     * 以position为中心的单位长度区间与[from, to]的重叠长度
+     */
+    private static double overlap(double position, double from, double to) {
+        double length = Math.min(position + 0.5, to) - Math.max(position - 0.5, from);
+        return length <= 0 ? 0 : length >= 1 ? 1 : length;
+    }
+
+    /**
+     * 以源覆盖规则混合一个像素
+     * 
+     * @param alpha 0至255的不透明度
+     */
+    private void blend(int x, int y, int rgb, int alpha) {
+        if (alpha <= 0) return;
+        if (ints != null) {
+            int index = offset + y * stride + x;
+            if (alpha >= 255) {
+                ints[index] = rgb | 0xff000000;
+                return;
+            }
+            int dst = ints[index];
+            if (hasAlpha) {
+                int da = dst >>> 24;
+                // 非预乘颜色：结果不透明度为a + da(1 - a)，颜色按两者贡献加权
+                int k = da * (255 - alpha) / 255;
+                int oa = alpha + k;
+                ints[index] = oa << 24
+                        | (((rgb >> 16) & 0xff) * alpha + ((dst >> 16) & 0xff) * k) / oa << 16
+                        | (((rgb >> 8) & 0xff) * alpha + ((dst >> 8) & 0xff) * k) / oa << 8
+                        | ((rgb & 0xff) * alpha + (dst & 0xff) * k) / oa;
+            } else {
+                ints[index] = 0xff000000
+                        | mix((dst >> 16) & 0xff, (rgb >> 16) & 0xff, alpha) << 16
+                        | mix((dst >> 8) & 0xff, (rgb >> 8) & 0xff, alpha) << 8
+                        | mix(dst & 0xff, rgb & 0xff, alpha);
+            }
+        } else {
+            int index = offset + y * stride + x * 3;
+            bytes[index] = (byte) mix(bytes[index] & 0xff, rgb & 0xff, alpha);
+            bytes[index + 1] = (byte) mix(bytes[index + 1] & 0xff, (rgb >> 8) & 0xff, alpha);
+            bytes[index + 2] = (byte) mix(bytes[index + 2] & 0xff, (rgb >> 16) & 0xff, alpha);
+        }
+    }
+
+    /**
+     * 按0至255的不透明度由dst向src插值并四舍五入
+     */
+    private static int mix(int dst, int src, int alpha) {
+        return dst + ((src - dst) * alpha * 257 + 32768 >> 16);
+    }
+
+    /**
+     * 目标图像
+     * 
+     * @return 图像
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+}
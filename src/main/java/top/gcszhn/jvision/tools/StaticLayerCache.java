@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2022 <a href="mailto:zhang.h.n@foxmail.com">Zhang.H.N</a>.
+ *
+ * Licensed under the Apache License, Version 2.0 (thie "License");
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at
+ *
+ *       http://wwww.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language govering permissions and
+ * limitations under the License.
+ */
+package top.gcszhn.jvision.tools;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 图表静态图层的缓存。背景、坐标轴、刻度、图例与标题只取决于图表设置，
+ * 按(设置, 画布尺寸, 输出类型)缓存为光栅图层，重复绘制时直接复制像素作为底图，仅绘制数据层。
+ * 静态内容只占画布一部分时只缓存该范围，其余以背景色填充。
+ * 须位于数据层之上的静态内容以透明底图层缓存，绘制数据层后叠加。
+ * 矢量画布的字体与对象属于单个文档，无法跨文档复用，因此直接绘制静态图层。
+ */
+public class StaticLayerCache {
+    /**
+     * 缓存的最大字节数
+     */
+    private final long maxBytes;
+    /**
+     * 按访问顺序排列的图层，以自身加锁
+     */
+    private final LinkedHashMap<String, BufferedImage> layers = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    /**
+     * @param maxBytes 缓存的最大字节数，超过时淘汰最久未使用的图层，单个图层超过时不缓存，直接绘制
+     */
+    public StaticLayerCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 在尚未绘制的画布上绘制静态图层，绘制前后画布的变换不变
+     * 
+     * @param cg         画布
+     * @param key        图层键，需包含影响静态图层的全部设置
+     * @param background 背景色，静态图层之外的区域以其填充
+     * @param bounds     静态图层在画布中的范围，范围外只有背景，为null时缓存整个画布
+     * @param painter    在画布坐标系中绘制静态图层，需先以背景色清空画布
+     */
+    public void paint(CreateGraphics cg, String key, Color background, Rectangle bounds, Consumer<Graphics2D> painter) {
+        BufferedImage canvas = cg.getImage();
+        Rectangle region = new Rectangle(0, 0, canvas == null ? 0 : canvas.getWidth(), canvas == null ? 0 : canvas.getHeight());
+        if (bounds != null) region = region.intersection(bounds);
+        long layerBytes = 4L * region.width * region.height;
+        if (canvas == null || region.isEmpty() || layerBytes > maxBytes || canvas.getType() == BufferedImage.TYPE_CUSTOM) {
+            paint(cg.getGraphics(), painter);
+            return;
+        }
+        key = cg.getFileType() + ':' + canvas.getWidth() + 'x' + canvas.getHeight() + ':' + region + ':' + key;
+        BufferedImage layer = layer(cg, key, region, canvas.getType(), layerBytes, painter);
+        Graphics2D graphics = canvas.createGraphics();
+        if (region.width < canvas.getWidth() || region.height < canvas.getHeight()) {
+            graphics.setBackground(background);
+            graphics.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        }
+        // 以Src合成直接复制像素，同类型图像间为整块内存复制
+        graphics.setComposite(AlphaComposite.Src);
+        graphics.drawImage(layer, region.x, region.y, null);
+        graphics.dispose();
+    }
+
+    /**
+     * 在已绘制数据层的画布上叠加静态图层，图层以透明底缓存，只覆盖其绘制的像素，
+     * 绘制前后画布的变换不变。不透明画布上的文字为子像素抗锯齿，透明图层无法得到相同像素，
+     * 因此直接绘制
+     * 
+     * @param cg      画布
+     * @param key     图层键，需包含影响静态图层的全部设置
+     * @param bounds  静态图层在画布中的范围，范围外不绘制
+     * @param painter 在画布坐标系中绘制静态图层，不得清空画布
+     */
+    public void overlay(CreateGraphics cg, String key, Rectangle bounds, Consumer<Graphics2D> painter) {
+        BufferedImage canvas = cg.getImage();
+        Rectangle region = new Rectangle(0, 0, canvas == null ? 0 : canvas.getWidth(), canvas == null ? 0 : canvas.getHeight())
+                .intersection(bounds);
+        long layerBytes = 4L * region.width * region.height;
+        if (canvas == null || region.isEmpty() || layerBytes > maxBytes || canvas.getType() == BufferedImage.TYPE_CUSTOM
+                || canvas.getTransparency() == Transparency.OPAQUE) {
+            paint(cg.getGraphics(), painter);
+            return;
+        }
+        key = "overlay:" + cg.getFileType() + ':' + canvas.getWidth() + 'x' + canvas.getHeight() + ':' + region + ':' + key;
+        BufferedImage layer = layer(cg, key, region, BufferedImage.TYPE_INT_ARGB, layerBytes, painter);
+        Graphics2D graphics = canvas.createGraphics();
+        graphics.drawImage(layer, region.x, region.y, null);
+        graphics.dispose();
+    }
+
+    /**
+     * 获取缓存的图层，未命中时绘制并缓存
+     */
+    private BufferedImage layer(CreateGraphics cg, String key, Rectangle region, int type, long layerBytes,
+            Consumer<Graphics2D> painter) {
+        BufferedImage layer;
+        synchronized (layers) {
+            layer = layers.get(key);
+        }
+        if (layer == null) {
+            // 并发的首次绘制可能重复生成图层，结果相同，后者覆盖前者
+            layer = new BufferedImage(region.width, region.height, type);
+            Graphics2D graphics = layer.createGraphics();
+            graphics.setRenderingHints(cg.getGraphics().getRenderingHints());
+            graphics.translate(-region.x, -region.y);
+            painter.accept(graphics);
+            graphics.dispose();
+            put(key, layer, layerBytes);
+        }
+        return layer;
+    }
+
+    /**
+     * 直接绘制静态图层并恢复变换
+     */
+    private static void paint(Graphics2D graphics, Consumer<Graphics2D> painter) {
+        AffineTransform transform = graphics.getTransform();
+        painter.accept(graphics);
+        graphics.setTransform(transform);
+    }
+
+    private void put(String key, BufferedImage layer, long layerBytes) {
+        synchronized (layers) {
+            BufferedImage old = layers.put(key, layer);
+            if (old != null) bytes -= 4L * old.getWidth() * old.getHeight();
+            bytes += layerBytes;
+            for (Iterator<Map.Entry<String, BufferedImage>> it = layers.entrySet().iterator(); bytes > maxBytes && it.hasNext();) {
+                BufferedImage evicted = it.next().getValue();
+                it.remove();
+                bytes -= 4L * evicted.getWidth() * evicted.getHeight();
+            }
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        synchronized (layers) {
+            layers.clear();
+            bytes = 0;
+        }
+    }
+}
@@ -1,18 +1,96 @@
 package top.gcszhn;
 
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 import java.awt.Font;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.swing.SwingUtilities;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import com.lowagie.text.pdf.PdfReader;
+
 import org.junit.Test;
+import org.w3c.dom.Element;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import top.gcszhn.jvision.AdmissionController;
+import top.gcszhn.jvision.BatchRenderer;
 import top.gcszhn.jvision.Constant;
 import top.gcszhn.jvision.JvisionException;
+import top.gcszhn.jvision.PdfReport;
+import top.gcszhn.jvision.RenderEstimate;
+import top.gcszhn.jvision.RenderJob;
+import top.gcszhn.jvision.RenderResult;
+import top.gcszhn.jvision.Stage;
+import top.gcszhn.jvision.cache.RenderCache;
+import top.gcszhn.jvision.chart.ChordDiagram;
+import top.gcszhn.jvision.chart.CircularHeatmap;
 import top.gcszhn.jvision.chart.CircularHistogram;
+import top.gcszhn.jvision.chart.JChart;
+import top.gcszhn.jvision.chart.PolarHitIndex;
 import top.gcszhn.jvision.chart.RingDiagram;
+import top.gcszhn.jvision.chart.SunburstDiagram;
+import top.gcszhn.jvision.cli.JvisionCli;
+import top.gcszhn.jvision.cli.SpecFile;
+import top.gcszhn.jvision.metrics.HistogramRenderListener;
+import top.gcszhn.jvision.metrics.RenderListener;
+import top.gcszhn.jvision.metrics.RenderMetrics;
+import top.gcszhn.jvision.server.ChartServer;
+import top.gcszhn.jvision.swing.ChartPanel;
+import top.gcszhn.jvision.tools.AnimatedGifWriter;
+import top.gcszhn.jvision.tools.BasicTool;
 import top.gcszhn.jvision.tools.CreateGraphics;
 import top.gcszhn.jvision.tools.DrawTool;
+import top.gcszhn.jvision.tools.ImageEncoder;
+import top.gcszhn.jvision.tools.ImagePool;
 import top.gcszhn.jvision.tools.ImageTool;
+import top.gcszhn.jvision.tools.LabelGrid;
+import top.gcszhn.jvision.tools.PolarRasterizer;
 
 /**
  * Unit test
@@ -36,14 +114,14 @@ public class AppTest {
         ringDiagram0.setFontFamily("Calibri");
         ringDiagram0.setFontStyle(Font.PLAIN);
         ringDiagram0.loadData("sample/ring_diagram_data/data-precision-Wilcoxon.csv");
-        ringDiagram0.draw("sample/ring_diagram_data/data-precision-Wilcoxon.pdf");
-        ringDiagram0.draw("sample/ring_diagram_data/data-precision-Wilcoxon.png");
-        ringDiagram0.draw("sample/ring_diagram_data/data-precision-Wilcoxon.eps");
+        ringDiagram0.draw("target/data-precision-Wilcoxon.pdf");
+        ringDiagram0.draw("target/data-precision-Wilcoxon.png");
+        ringDiagram0.draw("target/data-precision-Wilcoxon.eps");
     }
 
     @Test
     public void rotateTextTest() throws Exception {
-        CreateGraphics cg = new CreateGraphics(500, 500, "pdf", "sample/rotate-text.pdf");
+        CreateGraphics cg = new CreateGraphics(500, 500, "pdf", "target/rotate-text.pdf");
         Graphics2D graphics2d = cg.getGraphics();
         graphics2d.setFont(new Font(Constant.DEFAULT_FONT_FAMILY, Font.PLAIN, 500 * 5 / 150));
         DrawTool.rotateText(
@@ -85,8 +163,915 @@ public class AppTest {
         CircularHistogram histogram = new CircularHistogram();
         histogram.setFontFamily("Courier New");
         histogram.loadData("sample/circular_histogram_data/sample.csv", true, 100, true);
-        histogram.draw("sample/circular_histogram_data/sample.pdf");
-        histogram.draw("sample/circular_histogram_data/sample.eps");
-        histogram.draw("sample/circular_histogram_data/sample.png");
+        histogram.draw("target/sample.pdf");
+        histogram.draw("target/sample.eps");
+        histogram.draw("target/sample.png");
+    }
+
+    @Test
+    public void batchRenderTest() throws Exception {
+        try (BatchRenderer renderer = new BatchRenderer(2, 4, 64L << 20)) {
+            List<RenderResult> results = renderer.render(Stream.of(
+                    new RenderJob("histogram", () -> {
+                        CircularHistogram histogram = new CircularHistogram();
+                        histogram.loadData("sample/circular_histogram_data/sample.csv", true, 100, true);
+                        return histogram;
+                    }, "target/batch-histogram.png", "target/batch-histogram.pdf"),
+                    new RenderJob("missing", new CircularHistogram(), "sample/missing.csv", "target/missing.png")));
+            assertEquals(2, results.size());
+            assertTrue(results.get(0).isSuccess());
+            assertFalse(results.get(1).isSuccess());
+        }
+    }
+
+    @Test
+    public void renderMetricsTest() throws Exception {
+        HistogramRenderListener histograms = new HistogramRenderListener();
+        RenderMetrics.addListener(histograms);
+        try (RenderMetrics metrics = RenderMetrics.begin(null)) {
+            CircularHistogram histogram = new CircularHistogram();
+            histogram.loadData("sample/circular_histogram_data/sample.csv", true, 100, true);
+            histogram.draw("target/metrics-histogram.png");
+        } finally {
+            RenderMetrics.removeListener(histograms);
+        }
+        assertEquals(1, histograms.getRenderNanos().getCount());
+        assertEquals(100, histograms.get(Stage.DATA_LOADING, "rows").getSum());
+        assertTrue(histograms.get(Stage.GRAHPIC_PAINTING, "glyphs").getSum() > 0);
+        assertTrue(histograms.get(Stage.GRAHPIC_SERIALIZATION, "bytes_written").getSum() > 0);
+    }
+
+    @Test
+    public void chartPanelTest() throws Exception {
+        float[] valueRange = new float[] { 0.9f, 1f };
+        RingDiagram ringDiagram = new RingDiagram("Precision", 600, 600, 0.2f, new float[] { 80, 200 }, valueRange,
+                90, -336, (valueRange[1] - valueRange[0]) / 15, true);
+        ringDiagram.loadData("sample/ring_diagram_data/data-precision-Wilcoxon.csv");
+        ChartPanel panel = new ChartPanel(ringDiagram);
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                panel.setSize(300, 300);
+                panel.refresh();
+            });
+            panel.awaitIdle();
+            BufferedImage before = panel.getBuffer();
+            assertEquals(300, before.getWidth());
+            assertEquals(-1, panel.sectorAt(0, 0));
+            int rgb = before.getRGB(150, 56);
+            SwingUtilities.invokeAndWait(() -> panel.setHoveredSector(2));
+            panel.awaitIdle();
+            assertTrue(panel.getBuffer().getRGB(150, 56) != rgb);
+            assertEquals(2, panel.sectorAt(150, 56));
+        } finally {
+            panel.dispose();
+        }
+    }
+
+    @Test
+    public void deterministicRenderCacheTest() throws Exception {
+        float[] valueRange = new float[] { 0.9f, 1f };
+        RingDiagram ringDiagram = new RingDiagram("Precision", 600, 600, 0.2f, new float[] { 80, 200 }, valueRange,
+                90, -336, (valueRange[1] - valueRange[0]) / 15, true);
+        ringDiagram.loadData("sample/ring_diagram_data/data-precision-Wilcoxon.csv");
+        ringDiagram.setDeterministic(true);
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        ringDiagram.draw(first, "pdf");
+        Thread.sleep(1100); // pdf时间戳精确到秒
+        ringDiagram.draw(second, "pdf");
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+
+        File dir = new File("target/render-cache-test");
+        if (dir.exists()) BasicTool.removeDirectory(dir);
+        byte[] pdf = first.toByteArray();
+        RenderCache cache = new RenderCache(1 << 20, dir, pdf.length + 1);
+        assertArrayEquals(pdf, cache.get("aa01", () -> pdf, Runnable::run).get());
+        byte[] hit = cache.get("aa01", () -> { throw new AssertionError("rendered again"); }, Runnable::run).get();
+        assertArrayEquals(pdf, hit);
+        assertEquals(1, cache.getMemoryHits());
+        // 新实例只有磁盘层，放入第二个条目后第一个被淘汰
+        RenderCache diskOnly = new RenderCache(0, dir, pdf.length + 1);
+        assertArrayEquals(pdf, diskOnly.get("aa01", () -> null, Runnable::run).get());
+        assertEquals(1, diskOnly.getDiskHits());
+        diskOnly.get("bb02", () -> pdf, Runnable::run).get();
+        assertEquals(pdf.length, diskOnly.getDiskBytes());
+        assertFalse(new File(dir, "aa/aa01").exists());
+        assertTrue(new File(dir, "bb/bb02").exists());
+    }
+
+    @Test
+    public void animatedGifTest() throws Exception {
+        float[] valueRange = new float[] { 0.9f, 1f };
+        RingDiagram ringDiagram = new RingDiagram("Precision", 300, 300, 0.2f, new float[] { 40, 100 }, valueRange,
+                90, -336, (valueRange[1] - valueRange[0]) / 15, true);
+        String csv = "Solo,0.99,#E3856C\nDoubletFinder,0.98,#AFABAB\nSoCube,1,#785F8E\n";
+        // 相同的第二帧合并为第一帧的延时
+        List<Reader> frames = Arrays.asList(new StringReader(csv), new StringReader(csv),
+                new StringReader(csv.replace("SoCube,1", "SoCube,0.95")));
+        ByteArrayOutputStream gif = new ByteArrayOutputStream();
+        ringDiagram.drawAnimation(gif, frames.iterator(), 200);
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        reader.setInput(ImageIO.createImageInputStream(new ByteArrayInputStream(gif.toByteArray())));
+        assertEquals(2, reader.getNumImages(true));
+        assertEquals(300, reader.getWidth(0));
+        int[] delays = new int[2];
+        for (int i = 0; i < delays.length; i++) {
+            IIOMetadataNode root = (IIOMetadataNode) reader.getImageMetadata(i).getAsTree("javax_imageio_gif_image_1.0");
+            IIOMetadataNode control = (IIOMetadataNode) root.getElementsByTagName("GraphicControlExtension").item(0);
+            delays[i] = Integer.parseInt(control.getAttribute("delayTime"));
+        }
+        assertArrayEquals(new int[] { 40, 20 }, delays);
+        reader.dispose();
+
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        AnimatedGifWriter writer = new AnimatedGifWriter(empty, true);
+        try {
+            writer.close();
+            fail("Empty animation should be rejected");
+        } catch (IllegalStateException e) {
+            assertEquals(0, empty.size());
+        }
+    }
+
+    @Test
+    public void labelGridTest() {
+        LabelGrid grid = new LabelGrid(10);
+        assertTrue(grid.place(0, 0, 20, 5, 0));
+        // 与第一个标签重叠的标签被剔除，相邻但不重叠的标签跨网格放置
+        assertFalse(grid.place(30, 0, 20, 5, 0));
+        assertTrue(grid.place(60, 0, 20, 5, 0));
+        // 外接矩形与第一个标签相交，但旋转后的矩形不相交
+        assertTrue(grid.place(26, 11, 10, 2, -45));
+        // 旋转90度后纵向覆盖第一个标签
+        assertFalse(grid.place(0, 20, 20, 5, 90));
+        assertEquals(3, grid.size());
+    }
+
+    @Test
+    public void polarHitIndexTest() {
+        PolarHitIndex index = new PolarHitIndex(100, 100, 10);
+        index.addWedge(0, 0, "a", 1, 0, 90, 20, 50);
+        index.addWedge(1, 0, "b", 2, 90, 90, 20, 50);
+        index.addBar(2, 1, "c", 3, 180, 60, 90, 5);
+        assertEquals("a", index.hit(130, 110).getLabel()); // 约18度，半径32
+        assertEquals("b", index.hit(95, 130).getLabel()); // 约100度
+        assertEquals("c", index.hit(25, 102).getLabel()); // 沿180度柱形75像素，偏离2像素
+        assertNull(index.hit(105, 100)); // 中心空洞内
+        assertNull(index.hit(70, 70)); // 225度无区域
+        assertNull(index.hit(25, 108)); // 柱形宽度外
+    }
+
+    @Test
+    public void chordDiagramTest() throws Exception {
+        ChordDiagram chord = chordDiagram("a,b,5\nb,c,3\nc,a,1\na,c,0.001\n");
+        assertEquals(3, chord.getSectors("png").size());
+        // 细于最小线宽的连接被剔除，图元为3个环段与3条连接
+        assertEquals(6, paintedPrimitives(chord));
+        chord.setMinLinkWidth(0);
+        assertEquals(7, paintedPrimitives(chord));
+        // 绘制后恢复原线型
+        BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        Stroke stroke = new BasicStroke(7);
+        graphics.setStroke(stroke);
+        chord.paint(graphics, "png");
+        assertSame(stroke, graphics.getStroke());
+        graphics.dispose();
+        // 相同参数的线型共享同一对象
+        assertSame(DrawTool.getLineStroke(0.75f, true, 0), DrawTool.getLineStroke(0.75f, true, 0));
+        assertSame(DrawTool.getLineStroke(2, false, 4), DrawTool.getLineStroke(2, false, 4));
+
+        // 同色条带合并为一次填充，增加同色条带不增加绘制次数
+        int ribbons = paintCalls(chordDiagram("a,b,5\na,c,5\n"));
+        assertEquals(ribbons, paintCalls(chordDiagram("a,b,5\na,c,5\na,b,5\na,c,5\n")));
+        assertEquals(ribbons + 1, paintCalls(chordDiagram("a,b,5\na,c,5\nb,c,5\n")));
+        // 同色同宽的细连接合并为一次描边，线宽不同时另起一组
+        int lines = paintCalls(chordDiagram("a,b,1000\nc,a,1\nc,b,1\n"));
+        assertEquals(lines, paintCalls(chordDiagram("a,b,1000\nc,a,1\nc,b,1\nc,a,1\n")));
+        assertEquals(lines + 1, paintCalls(chordDiagram("a,b,1000\nc,a,1\nc,b,1\nc,b,3\n")));
+
+        // 无捆绑时连接经过圆心，完全捆绑时连接汇聚于节点一侧，圆心露出背景
+        int[] centers = new int[2];
+        for (int i = 0; i < centers.length; i++) {
+            chord = chordDiagram("a,b,5\nb,c,5\nc,a,5\n");
+            chord.setBundling(i);
+            graphics = image.createGraphics();
+            chord.paint(graphics, "png");
+            graphics.dispose();
+            centers[i] = image.getRGB(200, 200);
+        }
+        assertTrue(centers[0] != Color.WHITE.getRGB());
+        assertEquals(Color.WHITE.getRGB(), centers[1]);
+        try {
+            chord.setBundling(1.5);
+            fail("bundling should be in [0, 1]");
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, chord.getBundling(), 0);
+        }
+    }
+
+    private static ChordDiagram chordDiagram(String csv) throws JvisionException {
+        ChordDiagram chord = new ChordDiagram();
+        chord.setWidth(400);
+        chord.setHeight(400);
+        chord.loadData(new StringReader(csv));
+        return chord;
+    }
+
+    /**
+     * 绘制图表并返回绘制阶段计数的图元数
+     */
+    private static long paintedPrimitives(JChart chart) throws JvisionException {
+        Dimension size = chart.getCanvasSize("png");
+        BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try (RenderMetrics metrics = RenderMetrics.begin(null)) {
+            chart.paint(graphics, "png");
+            return metrics.getPrimitives(Stage.GRAHPIC_PAINTING);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * 绘制图表并返回填充、描边与文字等绘制调用的次数，每次调用创建一个合成上下文
+     */
+    private static int paintCalls(JChart chart) throws JvisionException {
+        AtomicInteger calls = new AtomicInteger();
+        Dimension size = chart.getCanvasSize("png");
+        BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setComposite((srcColorModel, dstColorModel, hints) -> {
+            calls.incrementAndGet();
+            return AlphaComposite.SrcOver.createContext(srcColorModel, dstColorModel, hints);
+        });
+        try {
+            chart.paint(graphics, "png");
+        } finally {
+            graphics.dispose();
+        }
+        return calls.get();
+    }
+
+    @Test
+    public void sunburstDiagramTest() throws Exception {
+        SunburstDiagram sunburst = sunburstDiagram(1000);
+        // 每个第一层分支为一个扇区
+        assertEquals(2, sunburst.getSectors("png").size());
+        // 弧长不足1像素的子节点合并为一段环，图元为根、两个分支与一段合并的环
+        assertEquals(4, paintedPrimitives(sunburst));
+        int[] merged = ringColors(sunburst);
+        sunburst.setMinSegmentWidth(0);
+        assertEquals(1003, paintedPrimitives(sunburst));
+        // 合并前后子节点所在的环覆盖相同，且为同一颜色的连续填充
+        assertArrayEquals(merged, ringColors(sunburst));
+        assertEquals(2, Arrays.stream(merged).distinct().count());
+        assertEquals(303, paintedPrimitives(sunburstDiagram(300)));
+        // 同色环段合并为一条路径填充，绘制次数与节点数无关
+        int calls = paintCalls(sunburst);
+        assertEquals(calls, paintCalls(sunburstDiagram(1000)));
+        assertEquals(calls, paintCalls(sunburstDiagram(300)));
+        // 绘制后恢复原线型
+        BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        Stroke stroke = new BasicStroke(7);
+        graphics.setStroke(stroke);
+        sunburst.paint(graphics, "png");
+        assertSame(stroke, graphics.getStroke());
+        graphics.dispose();
+    }
+
+    /**
+     * 根节点下两个等大的分支，其中一个分支有指定数目的等大叶节点
+     */
+    private static SunburstDiagram sunburstDiagram(int children) throws JvisionException {
+        StringBuilder csv = new StringBuilder("root,,0\na,root," + children + "\nb,root," + children + "\n");
+        for (int i = 0; i < children; i++) csv.append("a").append(i).append(",a,1\n");
+        SunburstDiagram sunburst = new SunburstDiagram();
+        sunburst.setWidth(400);
+        sunburst.setHeight(400);
+        sunburst.loadData(new StringReader(csv.toString()));
+        return sunburst;
+    }
+
+    /**
+     * 逐度采样第三层环中线上的颜色，环的半径为0.44倍边长，中心空白占0.2
+     */
+    private static int[] ringColors(SunburstDiagram sunburst) throws JvisionException {
+        BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        sunburst.paint(graphics, "png");
+        graphics.dispose();
+        double radius = 400 * 0.44, hole = radius * 0.2;
+        double r = hole + 2.5 * (radius - hole) / 3;
+        int[] colors = new int[360];
+        for (int degree = 0; degree < colors.length; degree++) {
+            double theta = Math.toRadians(degree);
+            colors[degree] = image.getRGB((int) (200 + Math.cos(theta) * r), (int) (200 + Math.sin(theta) * r));
+        }
+        return colors;
+    }
+
+    @Test
+    public void circularHeatmapTest() throws Exception {
+        CircularHeatmap heatmap = new CircularHeatmap();
+        heatmap.setWidth(400);
+        heatmap.setHeight(400);
+        heatmap.setStartAngle(0);
+        heatmap.setValueRange(new float[] { -1, 1 });
+        heatmap.setColorSet(new String[] { "#0000ff", "#ffffff", "#ff0000" });
+        heatmap.loadData(new StringReader("track,-1,NA,1,0.5\n"));
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        heatmap.draw(png, "png");
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+        assertEquals(400, image.getWidth());
+        // 外径176，内径70.4，轨道中线约118；340度分为四列，每列85度，取各列中心
+        double radius = 118;
+        int[][] expected = { { 0, 0, 255 }, { 255, 255, 255 }, { 255, 0, 0 }, { 255, 128, 128 } };
+        for (int column = 0; column < expected.length; column++) {
+            double theta = Math.toRadians(85 * column + 42.5);
+            int rgb = image.getRGB((int) (200 + Math.cos(theta) * radius), (int) (200 + Math.sin(theta) * radius));
+            assertEquals(expected[column][0], rgb >> 16 & 0xff, 2);
+            assertEquals(expected[column][1], rgb >> 8 & 0xff, 2);
+            assertEquals(expected[column][2], rgb & 0xff, 2);
+        }
+    }
+
+    @Test
+    public void polarRasterizerTest() {
+        Color color = new Color(30, 120, 200);
+        for (int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR }) {
+            BufferedImage analytic = new BufferedImage(200, 200, type);
+            BufferedImage reference = new BufferedImage(200, 200, type);
+            Graphics2D fast = analytic.createGraphics(), java2d = reference.createGraphics();
+            for (Graphics2D graphics : new Graphics2D[] { fast, java2d }) {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, 200, 200);
+                graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            }
+            PolarRasterizer rasterizer = PolarRasterizer.of(fast, analytic);
+            rasterizer.fillSector(100, 100, 30.3, 80.7, -70.2, 95.5, color);
+            rasterizer.fillBar(100, 100, 137.4, 20.2, 90.6, 4.3, color);
+            java2d.setColor(color);
+            Path2D.Double sector = new Path2D.Double();
+            double start = Math.toRadians(-70.2), end = Math.toRadians(-70.2 + 95.5);
+            sector.moveTo(100 + Math.cos(start) * 30.3, 100 + Math.sin(start) * 30.3);
+            sector.lineTo(100 + Math.cos(start) * 80.7, 100 + Math.sin(start) * 80.7);
+            DrawTool.arcTo(sector, 100, 100, 80.7, -70.2, -70.2 + 95.5);
+            sector.lineTo(100 + Math.cos(end) * 30.3, 100 + Math.sin(end) * 30.3);
+            DrawTool.arcTo(sector, 100, 100, 30.3, -70.2 + 95.5, -70.2);
+            sector.closePath();
+            java2d.fill(sector);
+            java2d.rotate(Math.toRadians(137.4), 100, 100);
+            java2d.fill(new Rectangle2D.Double(100 - 4.3, 100 + 20.2, 8.6, 90.6 - 20.2));
+            fast.dispose();
+            java2d.dispose();
+            // 内部像素一致，边缘的覆盖率与Java2D的超采样近似相差不超过八分之一
+            long total = 0;
+            int max = 0, painted = 0;
+            for (int y = 0; y < 200; y++) {
+                for (int x = 0; x < 200; x++) {
+                    int a = analytic.getRGB(x, y), b = reference.getRGB(x, y);
+                    if (a == -1 && b == -1) continue;
+                    painted++;
+                    for (int shift = 0; shift < 24; shift += 8) {
+                        int diff = Math.abs((a >> shift & 0xff) - (b >> shift & 0xff));
+                        total += diff;
+                        max = Math.max(max, diff);
+                    }
+                }
+            }
+            assertEquals(color.getRGB(), analytic.getRGB(130, 60));
+            assertTrue(painted > 4000);
+            assertTrue("max channel difference " + max, max <= 32);
+            assertTrue("mean channel difference " + (double) total / painted / 3, total < painted * 3);
+        }
+    }
+
+    @Test
+    public void imagePoolTest() throws Exception {
+        long limit = Math.min(Runtime.getRuntime().maxMemory() / 8, 256L << 20);
+        ImagePool.clear();
+        try {
+            BufferedImage image = ImagePool.borrow(300, 300, BufferedImage.TYPE_INT_ARGB);
+            assertEquals(BufferedImage.TYPE_INT_ARGB, image.getType());
+            assertEquals(300, image.getWidth());
+            int[] array = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            image.setRGB(0, 0, 0xff123456);
+            ImagePool.release(image);
+            assertEquals(4L * array.length, ImagePool.getRetainedBytes());
+            // 90000与87000像素属于同一级别，复用同一数组且已清零
+            long reused = ImagePool.getReused();
+            BufferedImage smaller = ImagePool.borrow(290, 300, BufferedImage.TYPE_INT_ARGB);
+            assertSame(array, ((DataBufferInt) smaller.getRaster().getDataBuffer()).getData());
+            assertEquals(reused + 1, ImagePool.getReused());
+            assertEquals(0, ImagePool.getRetainedBytes());
+            assertEquals(0, smaller.getRGB(0, 0));
+            // 更大的级别与其他类型不复用该数组
+            long allocated = ImagePool.getAllocated();
+            ImagePool.release(smaller);
+            BufferedImage larger = ImagePool.borrow(600, 600, BufferedImage.TYPE_INT_ARGB);
+            BufferedImage bgr = ImagePool.borrow(300, 300, BufferedImage.TYPE_3BYTE_BGR);
+            assertEquals(allocated + 2, ImagePool.getAllocated());
+            assertEquals(BufferedImage.TYPE_3BYTE_BGR, bgr.getType());
+            ImagePool.release(larger);
+            ImagePool.release(bgr);
+            // 小图像不入池
+            long retained = ImagePool.getRetainedBytes();
+            ImagePool.release(ImagePool.borrow(10, 10, BufferedImage.TYPE_INT_ARGB));
+            assertEquals(retained, ImagePool.getRetainedBytes());
+            ImagePool.setMaxRetainedBytes(0);
+            assertEquals(0, ImagePool.getRetainedBytes());
+            ImagePool.setMaxRetainedBytes(limit);
+            // 连续绘制时第二次复用第一次归还的画布，输出不受上一次像素影响
+            SunburstDiagram sunburst = new SunburstDiagram();
+            sunburst.setWidth(400);
+            sunburst.setHeight(400);
+            sunburst.loadData(new StringReader("root,,0\na,root,3\nb,root,1\n"));
+            ByteArrayOutputStream first = new ByteArrayOutputStream(), second = new ByteArrayOutputStream();
+            sunburst.draw(first, "png");
+            reused = ImagePool.getReused();
+            sunburst.draw(second, "png");
+            assertEquals(reused + 1, ImagePool.getReused());
+            assertArrayEquals(first.toByteArray(), second.toByteArray());
+        } finally {
+            ImagePool.setMaxRetainedBytes(limit);
+        }
+    }
+
+    @Test
+    public void renderEstimateTest() {
+        RenderEstimate png = RenderEstimate.of("PNG", 100, 50, 10, 0.5);
+        assertEquals("png", png.getType());
+        assertTrue(png.isRaster());
+        assertEquals(20000, png.getCanvasBytes());
+        assertEquals(RenderEstimate.BASE_BYTES + 20000 + 2500 + 10 * 64, png.getPeakBytes());
+        assertEquals(450, png.getBytesPerRow());
+        assertEquals(RenderEstimate.BASE_BYTES + 10 * 450 + 10 * 64, png.getBandedPeakBytes(10));
+        assertEquals(png.getPeakBytes(), png.getBandedPeakBytes(500));
+        RenderEstimate half = png.scale(0.5);
+        assertEquals(50, half.getWidth());
+        assertEquals(25, half.getHeight());
+        RenderEstimate pdf = RenderEstimate.of("pdf", 100, 50, 10, 0);
+        assertFalse(pdf.isRaster());
+        assertEquals(0, pdf.getCanvasBytes());
+        assertEquals(RenderEstimate.BASE_BYTES + 10 * 96, pdf.getPeakBytes());
+    }
+
+    @Test
+    public void admissionControllerTest() throws Exception {
+        SunburstDiagram sunburst = new SunburstDiagram();
+        sunburst.setWidth(400);
+        sunburst.setHeight(400);
+        sunburst.loadData(new StringReader("root,,0\na,root,3\nb,root,1\na1,a,2\na2,a,1\n"));
+        RenderEstimate estimate = sunburst.estimate("png");
+        ByteArrayOutputStream full = new ByteArrayOutputStream();
+        AdmissionController roomy = new AdmissionController(estimate.getPeakBytes() * 2);
+        try (AdmissionController.Admission ticket = roomy.admit(sunburst, "png")) {
+            assertEquals(AdmissionController.Mode.FULL, ticket.getMode());
+            assertTrue(roomy.getAvailableBytes() <= roomy.getBudget() - ticket.getReservedBytes());
+            ticket.draw(full);
+        }
+        assertEquals(roomy.getBudget(), roomy.getAvailableBytes());
+        assertEquals(1, roomy.getFull());
+        // 预算只够约100行时png按条带绘制，输出与完整绘制尺寸相同
+        AdmissionController tight = new AdmissionController(estimate.getBandedPeakBytes(100));
+        ByteArrayOutputStream banded = new ByteArrayOutputStream();
+        try (AdmissionController.Admission ticket = tight.admit(sunburst, "png")) {
+            assertEquals(AdmissionController.Mode.BANDED, ticket.getMode());
+            assertTrue(ticket.getBandHeight() >= 32 && ticket.getBandHeight() <= 100);
+            assertTrue(ticket.getReservedBytes() <= tight.getBudget());
+            ticket.draw(banded);
+        }
+        assertEquals(1, tight.getBanded());
+        BufferedImage expected = ImageIO.read(new ByteArrayInputStream(full.toByteArray()));
+        BufferedImage actual = ImageIO.read(new ByteArrayInputStream(banded.toByteArray()));
+        assertEquals(400, actual.getWidth());
+        assertEquals(400, actual.getHeight());
+        int differing = 0;
+        for (int y = 0; y < 400; y++) {
+            for (int x = 0; x < 400; x++) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) differing++;
+            }
+        }
+        // 条带只在跨越条带边界的抗锯齿边缘与完整绘制不同
+        assertTrue("differing pixels " + differing, differing < 400 * 400 / 100);
+        // jpg不能分段编码，23000x17250的画布缩小至约百分之一面积，保留图表设置的dpi
+        CircularHistogram histogram = new CircularHistogram();
+        histogram.loadData("sample/circular_histogram_data/sample.csv", true, 100, true);
+        histogram.setDpi(144);
+        RenderEstimate jpg = histogram.estimate("jpg");
+        long fixed = jpg.getBandedPeakBytes(1) - jpg.getBytesPerRow();
+        AdmissionController small = new AdmissionController(fixed + jpg.getCanvasBytes() / 100);
+        ByteArrayOutputStream downscaled = new ByteArrayOutputStream();
+        try (AdmissionController.Admission ticket = small.admit(histogram, "jpg")) {
+            assertEquals(AdmissionController.Mode.DOWNSCALED, ticket.getMode());
+            assertEquals(0.1, ticket.getScale(), 0.01);
+            assertEquals(Math.round(jpg.getWidth() * ticket.getScale()), ticket.getEstimate().getWidth());
+            ticket.draw(downscaled);
+            ImageReader reader = ImageIO.getImageReadersByFormatName("jpg").next();
+            reader.setInput(ImageIO.createImageInputStream(new ByteArrayInputStream(downscaled.toByteArray())));
+            assertEquals(ticket.getEstimate().getWidth(), reader.getWidth(0));
+            assertEquals(ticket.getEstimate().getHeight(), reader.getHeight(0));
+            IIOMetadataNode root = (IIOMetadataNode) reader.getImageMetadata(0).getAsTree("javax_imageio_1.0");
+            IIOMetadataNode size = (IIOMetadataNode) root.getElementsByTagName("HorizontalPixelSize").item(0);
+            assertEquals(144, Math.round(25.4 / Float.parseFloat(size.getAttribute("value"))));
+            reader.dispose();
+        }
+        // 矢量输出超出预算时拒绝
+        AdmissionController none = new AdmissionController(RenderEstimate.BASE_BYTES);
+        try {
+            none.admit(sunburst, "pdf");
+            fail("pdf over budget should be rejected");
+        } catch (JvisionException e) {
+            assertTrue(e.getMessage().startsWith(AdmissionController.REJECTED));
+        }
+        assertEquals(1, none.getRejected());
+        assertEquals(none.getBudget(), none.getAvailableBytes());
+    }
+
+    @Test
+    public void createGraphicsCloseTest() throws Exception {
+        File file = new File("target/unfinished.png");
+        ImagePool.clear();
+        try (CreateGraphics cg = new CreateGraphics(400, 400, "png", file.getPath())) {
+            assertTrue(file.exists());
+            cg.getGraphics().fillRect(0, 0, 10, 10);
+            throw new IllegalStateException("paint failed");
+        } catch (IllegalStateException e) {
+            assertEquals("paint failed", e.getMessage());
+        }
+        // 绘制失败时删除未完成的文件并归还画布
+        assertFalse(file.exists());
+        assertEquals(4L * 400 * 400, ImagePool.getRetainedBytes(), 4L * 400 * 400 / 4);
+        try (CreateGraphics cg = new CreateGraphics(400, 400, "pdf", file.getPath().replace(".png", ".pdf"))) {
+            cg.getGraphics().fillRect(0, 0, 10, 10);
+            cg.saveToFile();
+        }
+        File pdf = new File("target/unfinished.pdf");
+        assertTrue(pdf.length() > 0);
+        pdf.delete();
+    }
+
+    @Test
+    public void batchRendererListenerTest() throws Exception {
+        AtomicInteger calls = new AtomicInteger(), uncaught = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task);
+            thread.setUncaughtExceptionHandler((t, e) -> uncaught.incrementAndGet());
+            return thread;
+        });
+        try (BatchRenderer renderer = new BatchRenderer(executor, 2, 64L << 20)) {
+            renderer.render(Stream.of("a", "b", "c").map(id -> new RenderJob(id, new CircularHistogram(),
+                    "sample/missing.csv", "target/missing.png")), result -> {
+                        calls.incrementAndGet();
+                        throw new IllegalStateException("listener failed");
+                    });
+        }
+        executor.shutdown();
+        // 监听器每次都抛出异常，异常被记录而不会终止工作线程
+        assertEquals(3, calls.get());
+        assertEquals(0, uncaught.get());
+    }
+
+    @Test
+    public void chartServerTest() throws Exception {
+        byte[] data = Files.readAllBytes(Paths.get("sample/ring_diagram_data/data-precision-Wilcoxon.csv"));
+        String query = "/render/ring?title=Precision&width=300&height=300&radiusRange=40,100&valueRange=0.9,1";
+        ChartServer cached = new ChartServer(new InetSocketAddress("127.0.0.1", 0), 2, 10000,
+                new RenderCache(16 << 20, null));
+        cached.start();
+        try {
+            String base = "http://127.0.0.1:" + cached.getAddress().getPort();
+            HttpURLConnection first = post(base + query, data, null);
+            assertEquals(200, first.getResponseCode());
+            String etag = first.getHeaderField("ETag");
+            assertTrue(etag.startsWith("\""));
+            assertEquals(300, ImageIO.read(first.getInputStream()).getWidth());
+            HttpURLConnection again = post(base + query, data, etag);
+            assertEquals(304, again.getResponseCode());
+            assertEquals(etag, again.getHeaderField("ETag"));
+            HttpURLConnection wrongFormat = post(base + query + "&format=gif", data, null);
+            assertEquals(415, wrongFormat.getResponseCode());
+            assertNull(wrongFormat.getHeaderField("ETag"));
+            HttpURLConnection metrics = (HttpURLConnection) new URL(base + "/metrics").openConnection();
+            assertEquals(200, metrics.getResponseCode());
+            String text = new String(metrics.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(text.contains("jvision_http_responses_total{status=\"304\"} 1"));
+            assertTrue(text.contains("jvision_renders_total 1"));
+            assertTrue(text.contains("jvision_cache_misses_total"));
+            assertTrue(text.contains("jvision_admissions_total{mode=\"full\"} 1"));
+        } finally {
+            cached.stop(0);
+        }
+        // 预算放不下任何模式时返回413
+        ChartServer tight = new ChartServer(new InetSocketAddress("127.0.0.1", 0), 1, 10000, null,
+                new AdmissionController(RenderEstimate.BASE_BYTES));
+        tight.start();
+        try {
+            String base = "http://127.0.0.1:" + tight.getAddress().getPort();
+            assertEquals(413, post(base + query + "&format=pdf", data, null).getResponseCode());
+        } finally {
+            tight.stop(0);
+        }
+        // 唯一的渲染名额被卡住的绘制占用：该请求超时返回504，其间的请求返回503，绘制结束后名额归还
+        AtomicBoolean block = new AtomicBoolean(true), released = new AtomicBoolean(false);
+        RenderListener stall = metrics -> {
+            if (!block.getAndSet(false)) return;
+            boolean interrupted = false;
+            while (!released.get()) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        };
+        ChartServer slow = new ChartServer(new InetSocketAddress("127.0.0.1", 0), 1, 500);
+        slow.start();
+        RenderMetrics.addListener(stall);
+        try {
+            String base = "http://127.0.0.1:" + slow.getAddress().getPort();
+            assertEquals(504, post(base + query, data, null).getResponseCode());
+            assertEquals(503, post(base + query, data, null).getResponseCode());
+            released.set(true);
+            int status = 0;
+            for (int i = 0; i < 50 && status != 200; i++) {
+                status = post(base + query, data, null).getResponseCode();
+                if (status != 200) Thread.sleep(50);
+            }
+            assertEquals(200, status);
+        } finally {
+            released.set(true);
+            RenderMetrics.removeListener(stall);
+            slow.stop(0);
+        }
+    }
+
+    private static HttpURLConnection post(String url, byte[] body, String ifNoneMatch) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        if (ifNoneMatch != null) connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        return connection;
+    }
+
+    @Test
+    public void renderCacheDiskFailureTest() throws Exception {
+        File dir = new File("target/render-cache-failure-test");
+        if (dir.exists()) BasicTool.removeDirectory(dir);
+        byte[] value = new byte[] { 1, 2, 3 };
+        RenderCache cache = new RenderCache(0, dir, 1 << 20);
+        // 分片目录被同名文件占用，写磁盘失败仍返回渲染结果
+        assertTrue(new File(dir, "cc").createNewFile());
+        assertArrayEquals(value, cache.get("cc01", () -> value, Runnable::run).get());
+        assertEquals(0, cache.getDiskBytes());
+        // 目标路径被非空目录占用，移动失败后不残留临时文件
+        File blocked = new File(dir, "dd/dd01/x");
+        assertTrue(blocked.mkdirs());
+        assertArrayEquals(value, cache.get("dd01", () -> value, Runnable::run).get());
+        assertEquals(1, new File(dir, "dd").listFiles().length);
+        assertEquals(0, cache.getDiskBytes());
+        // 已索引的条目读取失败按未命中处理，重新渲染
+        cache.get("ee01", () -> value, Runnable::run).get();
+        File entry = new File(dir, "ee/ee01");
+        assertTrue(entry.delete() && entry.mkdir() && new File(entry, "x").createNewFile());
+        assertArrayEquals(value, cache.get("ee01", () -> value, Runnable::run).get());
+        assertEquals(0, cache.getDiskHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(0, cache.getDiskBytes());
+    }
+
+    @Test
+    public void jvisionCliTest() throws Exception {
+        Path dir = Paths.get("target/cli-test").toAbsolutePath();
+        if (Files.exists(dir)) BasicTool.removeDirectory(dir.toFile());
+        Files.createDirectories(dir);
+        Path csv = Paths.get("sample/ring_diagram_data/data-precision-Wilcoxon.csv");
+        for (String name : new String[] { "a", "b" }) {
+            Files.copy(csv, dir.resolve(name + ".csv"));
+            writeSpec(dir.resolve(name + ".properties"), name + ".csv");
+        }
+        try (JvisionCli cli = new JvisionCli(2, 256 << 20)) {
+            assertEquals(0, cli.add(Arrays.asList(dir)));
+            assertEquals(0, cli.renderAll());
+            assertTrue(Files.deleteIfExists(dir.resolve("a.png")));
+            assertTrue(Files.deleteIfExists(dir.resolve("b.png")));
+            // 输入未变化的规格不再渲染
+            assertEquals(0, cli.renderAll());
+            assertFalse(Files.exists(dir.resolve("a.png")) || Files.exists(dir.resolve("b.png")));
+            // 数据缺失时渲染失败，输入不变也会重试
+            Path spec = dir.resolve("c.properties");
+            writeSpec(spec, "c.csv");
+            List<SpecFile> targets = cli.affected(Collections.singleton(spec));
+            assertEquals(1, targets.size());
+            assertEquals(1, cli.render(targets));
+            assertEquals(1, cli.render(targets));
+            Files.copy(csv, dir.resolve("c.csv"));
+            assertEquals(0, cli.render(cli.affected(Collections.singleton(dir.resolve("c.csv")))));
+            assertTrue(Files.exists(dir.resolve("c.png")));
+            // 监听模式只重新渲染数据变化的规格
+            Path data = dir.resolve("a.csv");
+            Files.setLastModifiedTime(data, FileTime.fromMillis(Files.getLastModifiedTime(data).toMillis() + 10000));
+            targets = cli.affected(Collections.singleton(data));
+            assertEquals(1, targets.size());
+            assertEquals(dir.resolve("a.properties"), targets.get(0).getPath());
+            assertEquals(0, cli.render(targets));
+            assertTrue(Files.exists(dir.resolve("a.png")));
+            assertFalse(Files.exists(dir.resolve("b.png")));
+            // 删除的规格不再参与渲染
+            Files.delete(dir.resolve("b.properties"));
+            assertTrue(cli.affected(Collections.singleton(dir.resolve("b.properties"))).isEmpty());
+            assertTrue(cli.affected(Collections.singleton(dir.resolve("b.csv"))).isEmpty());
+        }
+    }
+
+    private static void writeSpec(Path file, String data) throws IOException {
+        Files.write(file, Arrays.asList("chart=ring", "data=" + data, "title=" + data, "width=200", "height=200",
+                "radiusRange=30,80", "valueRange=0.9,1"), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void deepZoomTest() throws Exception {
+        CircularHistogram histogram = new CircularHistogram();
+        histogram.loadData("sample/circular_histogram_data/sample.csv", true, 10, true);
+        Dimension size = histogram.getCanvasSize("jpg", true);
+        int levels = 1;
+        while ((1 << (levels - 1)) < Math.max(size.width, size.height)) levels++;
+        assertEquals(levels, histogram.getTileLevels());
+
+        File dir = new File("target/deep-zoom-test");
+        if (dir.exists()) BasicTool.removeDirectory(dir);
+        assertTrue(dir.mkdirs());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            histogram.drawDeepZoom(new File(dir, "chart.dzi").getPath(), executor);
+        } finally {
+            executor.shutdown();
+        }
+        File files = new File(dir, "chart_files");
+        assertEquals(levels, files.list().length);
+        // 最低层仅一块1×1的瓦片
+        assertArrayEquals(new String[] { "0_0.png" }, new File(files, "0").list());
+        BufferedImage lowest = ImageIO.read(new File(files, "0/0_0.png"));
+        assertEquals(1, lowest.getWidth());
+        assertEquals(1, lowest.getHeight());
+        // 最高层为完整分辨率，边缘瓦片裁剪到画布边界
+        int tile = CircularHistogram.TILE_SIZE;
+        int cols = (size.width + tile - 1) / tile;
+        int rows = (size.height + tile - 1) / tile;
+        File top = new File(files, String.valueOf(levels - 1));
+        assertEquals(cols * rows, top.list().length);
+        BufferedImage first = ImageIO.read(new File(top, "0_0.png"));
+        assertEquals(Math.min(tile, size.width), first.getWidth());
+        assertEquals(Math.min(tile, size.height), first.getHeight());
+        BufferedImage last = ImageIO.read(new File(top, (cols - 1) + "_" + (rows - 1) + ".png"));
+        assertEquals(size.width - (cols - 1) * tile, last.getWidth());
+        assertEquals(size.height - (rows - 1) * tile, last.getHeight());
+        BufferedImage drawn = histogram.drawTile(levels - 1, cols - 1, rows - 1);
+        assertEquals(last.getWidth(), drawn.getWidth());
+        assertEquals(last.getHeight(), drawn.getHeight());
+        try {
+            histogram.drawTile(levels - 1, cols, 0);
+            fail("tile out of level");
+        } catch (JvisionException e) {
+            assertEquals(Stage.GRAHPIC_INITIALIZATION, e.getStage());
+        }
+
+        Element image = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new File(dir, "chart.dzi")).getDocumentElement();
+        assertEquals("Image", image.getTagName());
+        assertEquals("http://schemas.microsoft.com/deepzoom/2008", image.getAttribute("xmlns"));
+        assertEquals("png", image.getAttribute("Format"));
+        assertEquals("0", image.getAttribute("Overlap"));
+        assertEquals(String.valueOf(tile), image.getAttribute("TileSize"));
+        Element sizeElement = (Element) image.getElementsByTagName("Size").item(0);
+        assertEquals(String.valueOf(size.width), sizeElement.getAttribute("Width"));
+        assertEquals(String.valueOf(size.height), sizeElement.getAttribute("Height"));
+    }
+
+    @Test
+    public void pdfReportTest() throws Exception {
+        float[] valueRange = new float[] { 0.9f, 1f };
+        RingDiagram square = new RingDiagram("Square", 300, 300, 0.2f, new float[] { 40, 100 }, valueRange,
+                90, -336, (valueRange[1] - valueRange[0]) / 10, true);
+        RingDiagram wide = new RingDiagram("Wide", 400, 200, 0.2f, new float[] { 30, 80 }, valueRange,
+                90, -336, (valueRange[1] - valueRange[0]) / 10, true);
+        square.loadData("sample/ring_diagram_data/data-precision-Wilcoxon.csv");
+        wide.loadData("sample/ring_diagram_data/data-precision-Wilcoxon.csv");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // 单图布局，每部分2页，5页分3部分合并
+            PdfReport single = new PdfReport();
+            single.setPartPages(2);
+            for (int i = 0; i < 5; i++) single.add(i % 2 == 0 ? square : wide);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            single.write(out, executor);
+            PdfReader reader = new PdfReader(out.toByteArray());
+            assertEquals(5, reader.getNumberOfPages());
+            for (int page = 1; page <= 5; page++) {
+                Dimension size = (page % 2 == 1 ? square : wide).getCanvasSize("pdf");
+                assertEquals(size.width, reader.getPageSize(page).getWidth(), 1e-3);
+                assertEquals(size.height, reader.getPageSize(page).getHeight(), 1e-3);
+            }
+            reader.close();
+            // 2×2网格，每部分1页，9个图共3页
+            PdfReport grid = new PdfReport();
+            grid.setColumns(2);
+            grid.setRows(2);
+            grid.setPageWidth(500);
+            grid.setPageHeight(700);
+            grid.setPartPages(1);
+            for (int i = 0; i < 9; i++) grid.add(i % 2 == 0 ? square : wide);
+            grid.write("target/report-grid.pdf", executor);
+            reader = new PdfReader("target/report-grid.pdf");
+            assertEquals(3, reader.getNumberOfPages());
+            for (int page = 1; page <= 3; page++) {
+                assertEquals(500, reader.getPageSize(page).getWidth(), 1e-3);
+                assertEquals(700, reader.getPageSize(page).getHeight(), 1e-3);
+            }
+            reader.close();
+            // 单个部分与多部分合并的页数一致
+            grid.setPartPages(32);
+            out.reset();
+            grid.write(out, executor);
+            reader = new PdfReader(out.toByteArray());
+            assertEquals(3, reader.getNumberOfPages());
+            reader.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void animatedGifAbortTest() throws Exception {
+        float[] valueRange = new float[] { 0.9f, 1f };
+        RingDiagram ringDiagram = new RingDiagram("Precision", 300, 300, 0.2f, new float[] { 40, 100 }, valueRange,
+                90, -336, (valueRange[1] - valueRange[0]) / 15, true);
+        String csv = "Solo,0.99,#E3856C\nDoubletFinder,0.98,#AFABAB\nSoCube,1,#785F8E\n";
+        String malformed = csv.replace("SoCube,1", "SoCube,one");
+        // 第二帧解析失败时输出流不应收到残缺的gif
+        ByteArrayOutputStream gif = new ByteArrayOutputStream();
+        try {
+            ringDiagram.drawAnimation(gif, Arrays.<Reader>asList(new StringReader(csv), new StringReader(malformed)).iterator(), 200);
+            fail("Malformed frame should be rejected");
+        } catch (JvisionException e) {
+            assertEquals(Stage.DATA_LOADING, e.getStage());
+        }
+        assertEquals(0, gif.size());
+        // 写入文件时删除残缺的文件
+        Path dir = Files.createDirectories(Paths.get("target/gif-abort-test"));
+        Path good = Files.write(dir.resolve("good.csv"), csv.getBytes(StandardCharsets.UTF_8));
+        Path bad = Files.write(dir.resolve("bad.csv"), malformed.getBytes(StandardCharsets.UTF_8));
+        File file = dir.resolve("abort.gif").toFile();
+        try {
+            ringDiagram.drawAnimation(file.getPath(), Arrays.asList(good.toString(), bad.toString()), 200);
+            fail("Malformed frame should be rejected");
+        } catch (JvisionException e) {
+            assertEquals(Stage.DATA_LOADING, e.getStage());
+        }
+        assertFalse(file.exists());
+        ringDiagram.drawAnimation(file.getPath(), Arrays.asList(good.toString(), good.toString()), 200);
+        assertEquals(300, ImageIO.read(file).getWidth());
+    }
+
+    @Test
+    public void imageEncoderPoolTest() throws Exception {
+        BufferedImage image = new BufferedImage(120, 80, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.ORANGE);
+        graphics.fillOval(10, 10, 100, 60);
+        graphics.dispose();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ByteArrayOutputStream jpg = new ByteArrayOutputStream();
+        ImageEncoder.writePNG(image, png, 300);
+        ImageEncoder.writeJPEG(image, jpg, 300);
+        // 并发编码共享编码器池，结果与单次编码一致
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[][]>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                int dpi = i % 2 == 0 ? 300 : 72;
+                results.add(executor.submit(() -> {
+                    ByteArrayOutputStream p = new ByteArrayOutputStream();
+                    ByteArrayOutputStream j = new ByteArrayOutputStream();
+                    ImageEncoder.writePNG(image, p, dpi);
+                    ImageEncoder.writeJPEG(image, j, dpi);
+                    return new byte[][] { p.toByteArray(), j.toByteArray() };
+                }));
+            }
+            for (int i = 0; i < results.size(); i += 2) {
+                byte[][] encoded = results.get(i).get();
+                assertArrayEquals(png.toByteArray(), encoded[0]);
+                assertArrayEquals(jpg.toByteArray(), encoded[1]);
+                assertEquals(120, ImageIO.read(new ByteArrayInputStream(results.get(i + 1).get()[0])).getWidth());
+            }
+        } finally {
+            executor.shutdown();
+        }
     }
 }